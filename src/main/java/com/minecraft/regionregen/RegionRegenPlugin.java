@@ -1,33 +1,60 @@
 package com.minecraft.regionregen;
 
 import com.minecraft.regionregen.commands.RegionCommand;
+import com.minecraft.regionregen.listeners.BlockListener;
+import com.minecraft.regionregen.listeners.ChunkListener;
+import com.minecraft.regionregen.listeners.WorldListener;
 import com.minecraft.regionregen.managers.RegionManager;
+import com.minecraft.regionregen.managers.SnapshotManager;
 import com.minecraft.regionregen.utils.ConfigManager;
 import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.PluginExecutors;
 import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
+import java.io.File;
 import java.util.logging.Level;
 
 public class RegionRegenPlugin extends JavaPlugin {
 
     private static RegionRegenPlugin instance;
     private ConfigManager configManager;
+    private PluginExecutors executors;
     private RegionManager regionManager;
+    private SnapshotManager snapshotManager;
+
+    public RegionRegenPlugin() {
+        super();
+    }
+
+    /**
+     * Create the plugin outside of a server's plugin loader, for tests
+     */
+    protected RegionRegenPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
 
     @Override
     public void onEnable() {
         instance = this;
 
-        // Initialize managers
-        this.configManager = new ConfigManager(this);
-        this.regionManager = new RegionManager(this);
-
         // Load configuration
+        this.configManager = new ConfigManager(this);
         configManager.loadConfig();
 
+        // Background threads, sized from the config
+        this.executors = new PluginExecutors(this);
+
+        // Initialize managers
+        this.regionManager = new RegionManager(this);
+        this.snapshotManager = new SnapshotManager(this);
+
         // Load regions
         regionManager.loadRegions();
+        snapshotManager.loadStore();
+        regionManager.getChangeLog().load();
 
         // Register commands
         getCommand("regionregen").setExecutor(new RegionCommand(this));
@@ -43,6 +70,19 @@ public class RegionRegenPlugin extends JavaPlugin {
             return;
         }
 
+        // Restore deferred chunks as they load
+        Bukkit.getPluginManager().registerEvents(new ChunkListener(regionManager.getDeferredRestores()), this);
+        Bukkit.getPluginManager().registerEvents(new WorldListener(regionManager.getScratchWorlds()), this);
+        // Log block changes inside regions, for restoring them to a point in time
+        Bukkit.getPluginManager().registerEvents(new BlockListener(regionManager), this);
+
+        // Resume regenerations interrupted by the last shutdown, once every world is loaded
+        Bukkit.getScheduler().runTask(this, () -> {
+            regionManager.resumeInterruptedRegenerations();
+            regionManager.getDeferredRestores().load();
+            regionManager.getAutoRegen().start();
+        });
+
         // Setup metrics if needed
 
         MessageUtils.log("&aRegionRegen v" + getDescription().getVersion() + " has been enabled!");
@@ -52,7 +92,17 @@ public class RegionRegenPlugin extends JavaPlugin {
     public void onDisable() {
         // Save any pending data
         if (regionManager != null) {
-            regionManager.saveRegions();
+            regionManager.shutdown();
+            regionManager.saveRegions(false);
+        }
+
+        // Let pending file writes finish
+        if (executors != null) {
+            executors.shutdown();
+        }
+
+        if (configManager != null) {
+            configManager.shutdown();
         }
 
         MessageUtils.log("&cRegionRegen has been disabled!");
@@ -75,6 +125,14 @@ public class RegionRegenPlugin extends JavaPlugin {
         return configManager;
     }
 
+    /**
+     * Get the background worker pools and main-thread executor
+     * @return The executors
+     */
+    public PluginExecutors getExecutors() {
+        return executors;
+    }
+
     /**
      * Get the region manager
      * @return The region manager
@@ -82,4 +140,12 @@ public class RegionRegenPlugin extends JavaPlugin {
     public RegionManager getRegionManager() {
         return regionManager;
     }
+
+    /**
+     * Get the snapshot manager
+     * @return The snapshot manager
+     */
+    public SnapshotManager getSnapshotManager() {
+        return snapshotManager;
+    }
 }
\ No newline at end of file
@@ -3,21 +3,53 @@ package com.minecraft.regionregen.commands;
 import com.minecraft.regionregen.RegionRegenPlugin;
 import com.minecraft.regionregen.gui.RegionGUI;
 import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.regen.ChangeLog;
+import com.minecraft.regionregen.regen.RegenScheduler;
+import com.minecraft.regionregen.snapshot.CodecBenchmark;
+import com.minecraft.regionregen.snapshot.SectionCache;
+import com.minecraft.regionregen.snapshot.SectionCodec;
+import com.minecraft.regionregen.snapshot.SectionPrefetcher;
+import com.minecraft.regionregen.snapshot.SectionStore;
+import com.minecraft.regionregen.snapshot.SnapshotBundle;
 import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.PluginExecutors;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class RegionCommand implements CommandExecutor, TabCompleter {
 
+    private static final int LIST_PAGE_SIZE = 10;
+    // Enough to narrow down by typing, without sending thousands of IDs per keystroke
+    private static final int MAX_COMPLETIONS = 50;
+    private static final Pattern DURATION = Pattern.compile("(?i)(\\d+[dhms])+");
+    private static final Pattern DURATION_PART = Pattern.compile("(?i)(\\d+)([dhms])");
+    private static final DateTimeFormatter TIME_OF_DAY = DateTimeFormatter.ofPattern("H:mm[:ss]");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm[:ss]");
+
     private final RegionRegenPlugin plugin;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
@@ -53,6 +85,32 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
                 return handleListCommand(sender, args);
             case "regenerate":
                 return handleRegenerateCommand(sender, args);
+            case "regenerate-all":
+                return handleBulkRegenerate(sender, new ArrayList<>(plugin.getRegionManager().getAllRegions()));
+            case "snapshot":
+                return handleSnapshotCommand(sender, args);
+            case "export":
+                return handleExportCommand(sender, args);
+            case "import":
+                return handleImportCommand(sender, args);
+            case "diff":
+                return handleDiffCommand(sender, args);
+            case "validate":
+                return handleValidateCommand(sender, args);
+            case "undo":
+                return handleUndoCommand(sender, args);
+            case "restore":
+                return handleRestoreCommand(sender, args);
+            case "template":
+                return handleTemplateCommand(sender, args);
+            case "seed":
+                return handleSeedCommand(sender, args);
+            case "threshold":
+                return handleThresholdCommand(sender, args);
+            case "stats":
+                return handleStatsCommand(sender);
+            case "benchmark":
+                return handleBenchmarkCommand(sender, args);
             case "help":
                 showHelp(sender);
                 return true;
@@ -93,6 +151,7 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
 
         MessageUtils.sendMessage(player, "§aRegion §e" + regionId + " §acreated successfully!");
         MessageUtils.sendMessage(player, "§aSize: §e" + region.getVolume() + " §ablocks");
+        MessageUtils.sendMessage(player, "§7Saving the region's snapshot in the background...");
         return true;
     }
 
@@ -115,6 +174,11 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cCannot delete region §e" + regionId + " §cwhile its snapshot is being captured.");
+            return true;
+        }
+
         boolean deleted = plugin.getRegionManager().deleteRegion(regionId);
 
         if (deleted) {
@@ -144,8 +208,19 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
         MessageUtils.sendMessage(sender, "§7World: §f" + region.getWorldName());
         MessageUtils.sendMessage(sender, "§7Creator: §f" + region.getCreatorName());
         MessageUtils.sendMessage(sender, "§7Created: §f" + dateFormat.format(region.getCreationDate()));
+        MessageUtils.sendMessage(sender, "§7Shape: §f" + region.getShape());
         MessageUtils.sendMessage(sender, "§7Volume: §f" + region.getVolume() + " blocks");
         MessageUtils.sendMessage(sender, "§7Regeneration count: §f" + region.getRegenerationCount());
+        MessageUtils.sendMessage(sender, "§7Snapshot: §f" + (plugin.getSnapshotManager().hasSnapshot(region.getId()) ? "Stored" : "None"));
+        if (region.getTemplate() != null) {
+            MessageUtils.sendMessage(sender, "§7Template: §f" + region.getTemplate());
+        }
+        if (region.isFromSeed()) {
+            MessageUtils.sendMessage(sender, "§7Regenerates from: §fWorld seed");
+        }
+        MessageUtils.sendMessage(sender, "§7Undo generations: §f" + plugin.getSnapshotManager().getUndoStore().getGenerations(region.getId()).size());
+        MessageUtils.sendMessage(sender, "§7Mined: §f" + region.getMinedBlocks() + " blocks (" + String.format("%.1f", region.getMinedPercent()) + "%)"
+                + (region.getRegenThreshold() > 0 ? " §7regenerates at §f" + region.getRegenThreshold() + "%" : ""));
 
         if (region.getLastRegenerationDate() != null) {
             MessageUtils.sendMessage(sender, "§7Last regenerated: §f" + dateFormat.format(region.getLastRegenerationDate()));
@@ -161,27 +236,51 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
     }
 
     private boolean handleListCommand(CommandSender sender, String[] args) {
-        List<Region> regions = new ArrayList<>(plugin.getRegionManager().getAllRegions());
-
-        if (regions.isEmpty()) {
+        if (plugin.getRegionManager().getAllRegions().isEmpty()) {
             MessageUtils.sendMessage(sender, "§cNo regions defined yet.");
             return true;
         }
 
-        MessageUtils.sendMessage(sender, "§8=== §eRegions §8(§6" + regions.size() + "§8) ===");
+        // list [page] [filter], or list <filter> for its first page
+        int page = 1;
+        String filter = null;
+        if (args.length >= 2) {
+            try {
+                page = Integer.parseInt(args[1]);
+                filter = args.length >= 3 ? args[2] : null;
+            } catch (NumberFormatException e) {
+                filter = args[1];
+            }
+        }
 
-        for (Region region : regions) {
+        int total = plugin.getRegionManager().countRegions(filter);
+        if (total == 0) {
+            MessageUtils.sendMessage(sender, "§cNo regions match §e" + filter + "§c.");
+            return true;
+        }
+        int pages = (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE;
+        if (page < 1 || page > pages) {
+            MessageUtils.sendMessage(sender, "§cPage must be between 1 and " + pages + ".");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§8=== §eRegions §8(§6" + total + "§8) §7page §f" + page + "§7/§f" + pages + " §8===");
+
+        for (Region region : plugin.getRegionManager().getRegionPage(filter, page, LIST_PAGE_SIZE)) {
             String statusIndicator = plugin.getRegionManager().isRegenerationInProgress(region.getId()) ? " §c[REGENERATING]" : "";
             MessageUtils.sendMessage(sender, "§6" + region.getId() + " §7- §f" + region.getWorldName() +
                     " §7(§f" + region.getVolume() + " blocks§7)" + statusIndicator);
         }
 
+        if (page < pages) {
+            MessageUtils.sendMessage(sender, "§7Use §e/regionregen list " + (page + 1) + (filter != null ? " " + filter : "") + " §7for more.");
+        }
         return true;
     }
 
     private boolean handleRegenerateCommand(CommandSender sender, String[] args) {
         if (args.length < 2) {
-            MessageUtils.sendMessage(sender, "§cUsage: /regionregen regenerate <id>");
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen regenerate <id|glob|world:name>");
             return true;
         }
 
@@ -189,8 +288,13 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
         Region region = plugin.getRegionManager().getRegion(regionId);
 
         if (region == null) {
-            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
-            return true;
+            // Not an exact ID, try it as a glob or world selector
+            List<Region> matches = plugin.getRegionManager().findRegions(regionId);
+            if (matches.isEmpty()) {
+                MessageUtils.sendMessage(sender, "§cNo regions match §e" + regionId + "§c.");
+                return true;
+            }
+            return handleBulkRegenerate(sender, matches);
         }
 
         if (plugin.getRegionManager().isRegenerationInProgress(regionId)) {
@@ -206,35 +310,727 @@ public class RegionCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean handleBulkRegenerate(CommandSender sender, List<Region> regions) {
+        if (regions.isEmpty()) {
+            MessageUtils.sendMessage(sender, "§cNo regions defined yet.");
+            return true;
+        }
+
+        int busy = 0;
+        for (Region region : regions) {
+            if (plugin.getRegionManager().isRegenerationInProgress(region.getId())) {
+                busy++;
+            }
+        }
+        if (busy == regions.size()) {
+            MessageUtils.sendMessage(sender, "§cAll matching regions are already regenerating.");
+            return true;
+        }
+        if (busy > 0) {
+            MessageUtils.sendMessage(sender, "§eSkipping §6" + busy + " §eregions that are already regenerating.");
+        }
+
+        Player player = (sender instanceof Player) ? (Player) sender : null;
+        plugin.getRegionManager().regenerateRegions(regions, player);
+
+        return true;
+    }
+
+    private boolean handleSnapshotCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen snapshot <id>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (plugin.getRegionManager().isRegenerationInProgress(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cis busy, try again when it has finished.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aSaving the current state of region §e" + regionId + " §aas its snapshot...");
+
+        Player player = (sender instanceof Player) ? (Player) sender : null;
+        plugin.getRegionManager().captureSnapshot(region, player);
+
+        return true;
+    }
+
+    private boolean handleExportCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen export <id> [bundle|delta [base]]");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (!plugin.getSnapshotManager().hasSnapshot(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no snapshot to export yet.");
+            return true;
+        }
+
+        if (args.length >= 3) {
+            return exportBundle(sender, region, args);
+        }
+
+        MessageUtils.sendMessage(sender, "§aExporting region §e" + regionId + " §ato a schematic...");
+
+        plugin.getSnapshotManager().exportSchematic(region).thenAcceptAsync(file -> {
+            if (file != null) {
+                MessageUtils.sendMessage(sender, "§aExported region §e" + regionId + " §ato §e" + file.getName() + "§a.");
+            } else {
+                MessageUtils.sendMessage(sender, "§cFailed to export region §e" + regionId + "§c. Check the console for details.");
+            }
+        }, plugin.getExecutors().mainThread());
+        return true;
+    }
+
+    private boolean handleImportCommand(CommandSender sender, String[] args) {
+        if (args.length == 2) {
+            return importBundle(sender, args[1]);
+        }
+        if (args.length < 3) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen import <bundle> §7or §c/regionregen import <id> <schematic>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        File file = plugin.getSnapshotManager().getSchematicFile(args[2]);
+        if (file == null || !file.isFile()) {
+            MessageUtils.sendMessage(sender, "§cSchematic §e" + args[2] + " §cwas not found in the schematics folder.");
+            return true;
+        }
+
+        if (plugin.getRegionManager().isRegenerationInProgress(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cis busy, try again when it has finished.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aImporting §e" + file.getName() + " §aas the snapshot of region §e" + regionId + "§a...");
+
+        plugin.getSnapshotManager().importSchematic(region, file).thenAcceptAsync(success -> {
+            if (success) {
+                plugin.getRegionManager().countBlocks(region);
+                MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §awill now regenerate to §e" + file.getName() + "§a.");
+            } else {
+                MessageUtils.sendMessage(sender, "§cFailed to import §e" + file.getName() + "§c. It must be the same size as the region.");
+            }
+        }, plugin.getExecutors().mainThread());
+        return true;
+    }
+
+    private boolean exportBundle(CommandSender sender, Region region, String[] args) {
+        String mode = args[2].toLowerCase();
+        if (!mode.equals("bundle") && !mode.equals("delta")) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen export <id> [bundle|delta [base]]");
+            return true;
+        }
+
+        String regionId = region.getId();
+        String baseName = null;
+        if (mode.equals("delta")) {
+            baseName = args.length >= 4 ? args[3] : regionId;
+            File base = plugin.getSnapshotManager().getBundleFile(baseName);
+            if (base == null || !base.isFile()) {
+                MessageUtils.sendMessage(sender, "§cBundle §e" + baseName + " §cwas not found in the bundles folder. Export a full bundle first.");
+                return true;
+            }
+        }
+
+        MessageUtils.sendMessage(sender, "§aExporting region §e" + regionId + " §ato a " + (baseName != null ? "delta " : "") + "bundle...");
+
+        plugin.getSnapshotManager().exportBundle(region, baseName).thenAcceptAsync(transfer -> {
+            if (transfer == null) {
+                MessageUtils.sendMessage(sender, "§cFailed to export region §e" + regionId + "§c. Check the console for details.");
+                return;
+            }
+            MessageUtils.sendMessage(sender, "§aExported region §e" + regionId + " §ato §e" + transfer.getFile().getName()
+                    + " §7(" + transfer.getCopied() + " sections" + (transfer.getSkipped() > 0 ? ", " + transfer.getSkipped() + " left to the base" : "")
+                    + ", " + formatKilobytes(transfer.getBytes()) + ")§a.");
+        }, plugin.getExecutors().mainThread());
+        return true;
+    }
+
+    private boolean importBundle(CommandSender sender, String name) {
+        File file = plugin.getSnapshotManager().getBundleFile(name);
+        if (file == null || !file.isFile()) {
+            MessageUtils.sendMessage(sender, "§cBundle §e" + name + " §cwas not found in the bundles folder.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aImporting bundle §e" + file.getName() + "§a...");
+
+        plugin.getRegionManager().importBundle(file, sender.getName()).thenAccept(transfer -> {
+            if (transfer == null) {
+                MessageUtils.sendMessage(sender, "§cFailed to import bundle §e" + file.getName() + "§c. Check the console for details.");
+                return;
+            }
+            MessageUtils.sendMessage(sender, "§aImported §e" + file.getName() + " §7(" + transfer.getRecords() + " sections: "
+                    + transfer.getSkipped() + " already stored, " + transfer.getCopied() + " copied, " + formatKilobytes(transfer.getBytes())
+                    + ")§a. The region will regenerate to it.");
+        });
+        return true;
+    }
+
+    private boolean handleDiffCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen diff <id> [restore]");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (!plugin.getSnapshotManager().hasSnapshot(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no snapshot to compare with yet.");
+            return true;
+        }
+
+        boolean restore = args.length > 2 && args[2].equalsIgnoreCase("restore");
+        if (restore && plugin.getRegionManager().isRegenerationInProgress(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegeneration of region §e" + regionId + " §cis already in progress.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aComparing region §e" + regionId + " §awith its snapshot...");
+
+        plugin.getSnapshotManager().diffSnapshot(region).thenAcceptAsync(diff -> {
+            if (diff == null) {
+                MessageUtils.sendMessage(sender, "§cFailed to compare region §e" + regionId + "§c. Check the console for details.");
+                return;
+            }
+
+            MessageUtils.sendMessage(sender, "§8=== §eDiff of " + regionId + " §8===");
+            MessageUtils.sendMessage(sender, "§7Changed blocks: §f" + diff.getBlocksChanged() + " §7in §f" + diff.getChangedSections().size()
+                    + " §7sections (§f" + diff.getSectionsUnchanged() + "§7/§f" + diff.getSectionsCompared() + " §7unchanged, "
+                    + diff.getElapsedMillis() + " ms)");
+            if (diff.isClean()) {
+                MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §amatches its snapshot.");
+                return;
+            }
+            MessageUtils.sendMessage(sender, "§7Expected: §f" + formatHistogram(diff.getExpectedMaterials()));
+            MessageUtils.sendMessage(sender, "§7Found: §f" + formatHistogram(diff.getActualMaterials()));
+
+            if (restore) {
+                Player player = (sender instanceof Player) ? (Player) sender : null;
+                plugin.getRegionManager().restoreDifferences(region, diff, player);
+            } else {
+                MessageUtils.sendMessage(sender, "§7Use §e/regionregen diff " + regionId + " restore §7to restore only these blocks.");
+            }
+        }, plugin.getExecutors().mainThread());
+        return true;
+    }
+
+    private boolean handleValidateCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen validate <id>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (!plugin.getSnapshotManager().hasSnapshot(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no snapshot to validate against yet.");
+            return true;
+        }
+
+        plugin.getSnapshotManager().validateSnapshot(region, false).thenAcceptAsync(validation -> {
+            if (validation == null) {
+                MessageUtils.sendMessage(sender, "§cFailed to validate region §e" + regionId + "§c. Check the console for details.");
+                return;
+            }
+
+            List<int[]> diverged = validation.getDivergedSections();
+            MessageUtils.sendMessage(sender, "§7Validated §f" + validation.getSectionsChecked() + " §7sections of §e" + regionId
+                    + " §7in §f" + validation.getElapsedMillis() + " ms §7(§f" + String.format("%.1f", validation.getHashMillis())
+                    + " ms §7hashing)");
+            if (diverged.isEmpty()) {
+                MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §amatches its snapshot.");
+                return;
+            }
+
+            StringBuilder sections = new StringBuilder();
+            for (int i = 0; i < diverged.size() && i < 5; i++) {
+                int[] section = diverged.get(i);
+                if (i > 0) {
+                    sections.append("§7, §f");
+                }
+                sections.append(section[0] << 4).append(' ').append(section[1] << 4).append(' ').append(section[2] << 4);
+            }
+            if (diverged.size() > 5) {
+                sections.append("§7, +").append(diverged.size() - 5).append(" more");
+            }
+            MessageUtils.sendMessage(sender, "§e" + diverged.size() + " §7sections diverge, at §f" + sections);
+            MessageUtils.sendMessage(sender, "§7Use §e/regionregen diff " + regionId + " §7to see which blocks changed.");
+        }, plugin.getExecutors().mainThread());
+        return true;
+    }
+
+    private static String formatHistogram(Map<Material, Long> histogram) {
+        StringBuilder sb = new StringBuilder();
+        int shown = 0;
+        for (Map.Entry<Material, Long> entry : histogram.entrySet()) {
+            if (shown++ == 5) {
+                sb.append("§7, +").append(histogram.size() - 5).append(" more");
+                break;
+            }
+            if (sb.length() > 0) {
+                sb.append("§7, §f");
+            }
+            sb.append(entry.getKey().name().toLowerCase()).append(" x").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private boolean handleUndoCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen undo <id>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (plugin.getRegionManager().isRegenerationInProgress(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cis busy, try again when it has finished.");
+            return true;
+        }
+
+        if (plugin.getSnapshotManager().getUndoStore().getGenerations(regionId).isEmpty()) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no regeneration to undo.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aRolling back the last regeneration of region §e" + regionId + "§a...");
+
+        Player player = (sender instanceof Player) ? (Player) sender : null;
+        plugin.getRegionManager().undoRegeneration(region, player);
+        return true;
+    }
+
+    private boolean handleRestoreCommand(CommandSender sender, String[] args) {
+        if (args.length < 4 || !args[2].equalsIgnoreCase("--at")) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen restore <id> --at <30m|2h30m|HH:mm|yyyy-MM-dd HH:mm>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        String when = String.join(" ", Arrays.copyOfRange(args, 3, args.length));
+        long time = parseTime(when);
+        if (time < 0) {
+            MessageUtils.sendMessage(sender, "§cInvalid time §e" + when + "§c. Use a duration ago like §e30m §cor §e2h30m§c, "
+                    + "a time today like §e14:30§c, or a date like §e2024-05-01 14:30§c.");
+            return true;
+        }
+        if (time > System.currentTimeMillis()) {
+            MessageUtils.sendMessage(sender, "§c" + dateFormat.format(new Date(time)) + " is in the future.");
+            return true;
+        }
+
+        if (plugin.getRegionManager().isRegenerationInProgress(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cis busy, try again when it has finished.");
+            return true;
+        }
+
+        long historyStart = plugin.getRegionManager().getChangeLog().getHistoryStart(regionId);
+        if (historyStart < 0 || !plugin.getSnapshotManager().hasSnapshot(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no change history. It starts at the next regeneration or snapshot.");
+            return true;
+        }
+        if (time < historyStart) {
+            MessageUtils.sendMessage(sender, "§cThe change history of region §e" + regionId + " §conly goes back to §e"
+                    + dateFormat.format(new Date(historyStart)) + "§c.");
+            return true;
+        }
+
+        Player player = (sender instanceof Player) ? (Player) sender : null;
+        plugin.getRegionManager().restoreRegionAt(region, time, player);
+        return true;
+    }
+
+    /**
+     * Parse a point in time: a duration ago like 30m or 1d2h, a time today
+     * like 14:30, or a date and time like 2024-05-01 14:30
+     *
+     * @return The time in milliseconds, or -1 if it cannot be parsed
+     */
+    private static long parseTime(String text) {
+        Matcher duration = DURATION.matcher(text);
+        if (duration.matches()) {
+            long millis = 0;
+            Matcher part = DURATION_PART.matcher(text);
+            while (part.find()) {
+                long amount = Long.parseLong(part.group(1));
+                switch (part.group(2).toLowerCase()) {
+                    case "d":
+                        millis += TimeUnit.DAYS.toMillis(amount);
+                        break;
+                    case "h":
+                        millis += TimeUnit.HOURS.toMillis(amount);
+                        break;
+                    case "m":
+                        millis += TimeUnit.MINUTES.toMillis(amount);
+                        break;
+                    default:
+                        millis += TimeUnit.SECONDS.toMillis(amount);
+                        break;
+                }
+            }
+            return System.currentTimeMillis() - millis;
+        }
+
+        try {
+            if (text.indexOf('-') < 0) {
+                return LocalTime.parse(text, TIME_OF_DAY).atDate(LocalDate.now())
+                        .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(text.replace('T', ' '), DATE_TIME)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private boolean handleTemplateCommand(CommandSender sender, String[] args) {
+        if (args.length < 3) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen template <id> <template|none>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (args[2].equalsIgnoreCase("none")) {
+            plugin.getRegionManager().setTemplate(region, null);
+            MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §ais restored from its own snapshot again.");
+            return true;
+        }
+
+        Region template = plugin.getRegionManager().getRegion(args[2]);
+        if (template == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + args[2] + " §cdoes not exist.");
+            return true;
+        }
+
+        if (template == region) {
+            MessageUtils.sendMessage(sender, "§cA region cannot be its own template.");
+            return true;
+        }
+
+        if (!plugin.getSnapshotManager().hasSnapshot(template.getId())) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + template.getId() + " §chas no snapshot to use as a template.");
+            return true;
+        }
+
+        int[] size = region.getSize();
+        int[] templateSize = template.getSize();
+        if (!Arrays.equals(size, templateSize)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cis " + size[0] + "x" + size[1] + "x" + size[2]
+                    + " but template §e" + template.getId() + " §cis " + templateSize[0] + "x" + templateSize[1] + "x" + templateSize[2] + "§c.");
+            return true;
+        }
+
+        plugin.getRegionManager().setTemplate(region, template.getId());
+        MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §ais now restored from template §e" + template.getId() + "§a.");
+        return true;
+    }
+
+    private boolean handleSeedCommand(CommandSender sender, String[] args) {
+        if (args.length < 3 || (!args[2].equalsIgnoreCase("on") && !args[2].equalsIgnoreCase("off"))) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen seed <id> <on|off>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        boolean fromSeed = args[2].equalsIgnoreCase("on");
+        plugin.getRegionManager().setFromSeed(region, fromSeed);
+        if (fromSeed) {
+            MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §anow regenerates with fresh terrain from the world generator.");
+            if (!plugin.getConfigManager().getSettings().getRegeneration().isSeedTerrain()) {
+                MessageUtils.sendMessage(sender, "§eRegeneration from the seed is off; set §6regeneration.seed-terrain §ein config.yml to enable it.");
+            }
+        } else {
+            MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §ais restored from its snapshot again.");
+        }
+        return true;
+    }
+
+    private boolean handleBenchmarkCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen benchmark <id>");
+            return true;
+        }
+
+        String regionId = args[1];
+        if (plugin.getRegionManager().getRegion(regionId) == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+        if (!plugin.getSnapshotManager().hasSnapshot(regionId) || plugin.getSnapshotManager().isCapturing(regionId)) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §chas no snapshot to benchmark on yet.");
+            return true;
+        }
+
+        MessageUtils.sendMessage(sender, "§aBenchmarking section codecs on region §e" + regionId + "§a...");
+        plugin.getSnapshotManager().benchmarkCodecs(regionId).thenAccept(results -> {
+            if (results == null || results.isEmpty()) {
+                MessageUtils.sendMessage(sender, "§cFailed to benchmark region §e" + regionId + "§c. Check the console for details.");
+                return;
+            }
+
+            SectionCodec current = plugin.getConfigManager().getSettings().getSnapshot().getCodec();
+            MessageUtils.sendMessage(sender, "§8=== §eCodecs on " + regionId + " §8(§7" + results.get(0).getSections() + " sections§8) ===");
+            for (CodecBenchmark.Result result : results) {
+                MessageUtils.sendMessage(sender, "§e" + result.getCodec().getName() + (result.getCodec() == current ? " §a(current)" : "")
+                        + "§7: ratio §f" + String.format("%.2f", result.getRatio()) + "x§7, " + formatMegabytes(result.getCompressedBytes())
+                        + ", encode §f" + String.format("%.0f", result.getEncodeMegabytesPerSecond()) + " MB/s§7, decode §f"
+                        + String.format("%.0f", result.getDecodeMegabytesPerSecond()) + " MB/s");
+            }
+            MessageUtils.sendMessage(sender, "§7Set §esnapshot.codec §7in config.yml to change the codec of new sections.");
+        });
+        return true;
+    }
+
+    private boolean handleThresholdCommand(CommandSender sender, String[] args) {
+        if (args.length < 3) {
+            MessageUtils.sendMessage(sender, "§cUsage: /regionregen threshold <id> <percent|off>");
+            return true;
+        }
+
+        String regionId = args[1];
+        Region region = plugin.getRegionManager().getRegion(regionId);
+
+        if (region == null) {
+            MessageUtils.sendMessage(sender, "§cRegion §e" + regionId + " §cdoes not exist.");
+            return true;
+        }
+
+        if (args[2].equalsIgnoreCase("off")) {
+            plugin.getRegionManager().setRegenThreshold(region, 0);
+            MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §ano longer regenerates on its own.");
+            return true;
+        }
+
+        int threshold;
+        try {
+            threshold = Integer.parseInt(args[2].endsWith("%") ? args[2].substring(0, args[2].length() - 1) : args[2]);
+        } catch (NumberFormatException e) {
+            threshold = -1;
+        }
+        if (threshold < 1 || threshold > 100) {
+            MessageUtils.sendMessage(sender, "§cThe threshold must be a percentage from 1 to 100, or off.");
+            return true;
+        }
+
+        plugin.getRegionManager().setRegenThreshold(region, threshold);
+        MessageUtils.sendMessage(sender, "§aRegion §e" + regionId + " §anow regenerates once §e" + threshold
+                + "% §aof it is mined (§e" + String.format("%.1f", region.getMinedPercent()) + "% §anow).");
+        return true;
+    }
+
+    private boolean handleStatsCommand(CommandSender sender) {
+        SectionCache cache = plugin.getSnapshotManager().getSectionCache();
+        long hits = cache.getHits();
+        long lookups = hits + cache.getMisses();
+
+        MessageUtils.sendMessage(sender, "§8=== §eRegionRegen Stats §8===");
+        MessageUtils.sendMessage(sender, "§7Section cache: §f" + formatMegabytes(cache.getUsedBytes()) + " §7/ §f"
+                + formatMegabytes(cache.getMaxBytes()) + " §7(§f" + cache.getEntryCount() + " §7sections)");
+        MessageUtils.sendMessage(sender, "§7Cache hits: §f" + hits + " §7misses: §f" + cache.getMisses()
+                + " §7hit rate: §f" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%");
+        MessageUtils.sendMessage(sender, "§7Cache evictions: §f" + cache.getEvictions());
+
+        SectionStore store = plugin.getSnapshotManager().getSectionStore();
+        MessageUtils.sendMessage(sender, "§7Section store: §f" + store.getSectionCount() + " §7unique sections for §f"
+                + store.getReferenceCount() + " §7references (§f" + formatMegabytes(store.getStoredBytes()) + "§7)");
+        SectionPrefetcher prefetcher = plugin.getSnapshotManager().getPrefetcher();
+        MessageUtils.sendMessage(sender, "§7Sections read ahead: §f" + prefetcher.getReads() + " §7(§f" + formatMegabytes(prefetcher.getBytesRead())
+                + "§7), decoders waited on disk §f" + prefetcher.getWaits() + " §7times (§f" + prefetcher.getWaitMillis() + " ms§7)");
+        MessageUtils.sendMessage(sender, "§7Chunks waiting to load for restore: §f" + plugin.getRegionManager().getDeferredRestores().getPendingCount());
+        RegenScheduler scheduler = plugin.getRegionManager().getRegenScheduler();
+        long ticksApplied = scheduler.getTicksApplied();
+        MessageUtils.sendMessage(sender, "§7Applier: §f" + scheduler.getBlocksApplied() + " §7blocks in §f" + ticksApplied + " §7ticks, §f"
+                + String.format("%.2f", ticksApplied == 0 ? 0 : scheduler.getApplyNanos() / 1e6 / ticksApplied) + " ms§7/tick avg, §f"
+                + String.format("%.2f", scheduler.getMaxApplyNanos() / 1e6) + " ms §7longest");
+        MessageUtils.sendMessage(sender, "§7Regenerations started by mined thresholds: §f" + plugin.getRegionManager().getAutoRegen().getTriggered());
+        ChangeLog changeLog = plugin.getRegionManager().getChangeLog();
+        MessageUtils.sendMessage(sender, "§7Change log: §f" + changeLog.getActiveCount() + " §7regions logged, §f"
+                + changeLog.getRecordsWritten() + " §7changes written");
+
+        PluginExecutors executors = plugin.getExecutors();
+        MessageUtils.sendMessage(sender, formatPool("Worker pool", executors.getWorkerMetrics()));
+        MessageUtils.sendMessage(sender, formatPool("I/O pool", executors.getIoMetrics()));
+        MessageUtils.sendMessage(sender, "§7Main thread: §f" + executors.getMainThreadQueued() + " §7queued, §f"
+                + executors.getMainThreadCompleted() + " §7done, §f" + executors.getTicksOverBudget() + " §7ticks over budget");
+        return true;
+    }
+
+    private static String formatPool(String name, PluginExecutors.PoolMetrics metrics) {
+        return "§7" + name + ": §f" + metrics.getActive() + "§7/§f" + metrics.getThreads() + " §7busy, §f"
+                + metrics.getQueued() + " §7queued, §f" + metrics.getCompleted() + " §7done";
+    }
+
+    private static String formatMegabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String formatKilobytes(long bytes) {
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+
     private void showHelp(CommandSender sender) {
         MessageUtils.sendMessage(sender, "§8=== §eRegionRegen Help §8===");
         MessageUtils.sendMessage(sender, "§6/regionregen §7- Open the region management GUI");
         MessageUtils.sendMessage(sender, "§6/regionregen create <id> §7- Create a new region");
         MessageUtils.sendMessage(sender, "§6/regionregen delete <id> §7- Delete a region");
         MessageUtils.sendMessage(sender, "§6/regionregen info <id> §7- Show info about a region");
-        MessageUtils.sendMessage(sender, "§6/regionregen list §7- List all regions");
+        MessageUtils.sendMessage(sender, "§6/regionregen list [page] [filter] §7- List regions, optionally only IDs starting with or matching a filter");
         MessageUtils.sendMessage(sender, "§6/regionregen regenerate <id> §7- Regenerate a region");
+        MessageUtils.sendMessage(sender, "§6/regionregen regenerate <glob|world:name> §7- Regenerate matching regions as one job");
+        MessageUtils.sendMessage(sender, "§6/regionregen regenerate-all §7- Regenerate every region as one job");
+        MessageUtils.sendMessage(sender, "§6/regionregen snapshot <id> §7- Save a region's current state as its snapshot");
+        MessageUtils.sendMessage(sender, "§6/regionregen export <id> §7- Export a region's snapshot as a schematic");
+        MessageUtils.sendMessage(sender, "§6/regionregen export <id> bundle §7- Export a region and its snapshot as a bundle for other servers");
+        MessageUtils.sendMessage(sender, "§6/regionregen export <id> delta [base] §7- Export only the sections a base bundle does not have");
+        MessageUtils.sendMessage(sender, "§6/regionregen import <id> <schematic> §7- Use a schematic as a region's snapshot");
+        MessageUtils.sendMessage(sender, "§6/regionregen import <bundle> §7- Create or update a region from a bundle");
+        MessageUtils.sendMessage(sender, "§6/regionregen diff <id> [restore] §7- Compare a region with its snapshot, optionally restoring only what differs");
+        MessageUtils.sendMessage(sender, "§6/regionregen validate <id> §7- Quickly check which sections of a region differ from its snapshot");
+        MessageUtils.sendMessage(sender, "§6/regionregen undo <id> §7- Roll back the last regeneration of a region");
+        MessageUtils.sendMessage(sender, "§6/regionregen restore <id> --at <time> §7- Restore a region to how it was at a point in time");
+        MessageUtils.sendMessage(sender, "§6/regionregen template <id> <template|none> §7- Restore a region from another region's snapshot");
+        MessageUtils.sendMessage(sender, "§6/regionregen seed <id> <on|off> §7- Regenerate a region from the world generator instead of its snapshot");
+        MessageUtils.sendMessage(sender, "§6/regionregen threshold <id> <percent|off> §7- Regenerate a region on its own once that much of it is mined");
+        MessageUtils.sendMessage(sender, "§6/regionregen stats §7- Show cache and performance statistics");
+        MessageUtils.sendMessage(sender, "§6/regionregen benchmark <id> §7- Measure the compression ratio and speed of each section codec on a region's snapshot");
         MessageUtils.sendMessage(sender, "§6/regionregen help §7- Show this help message");
     }
 
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            return Arrays.asList("create", "delete", "info", "list", "regenerate", "help")
+            return Arrays.asList("create", "delete", "info", "list", "regenerate", "regenerate-all", "snapshot", "export", "import", "diff", "validate", "undo", "restore", "template", "seed", "threshold", "stats", "benchmark", "help")
                     .stream()
                     .filter(s -> s.startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         } else if (args.length == 2) {
             String subCommand = args[0].toLowerCase();
-            if (subCommand.equals("delete") || subCommand.equals("info") || subCommand.equals("regenerate")) {
-                return plugin.getRegionManager().getAllRegions()
-                        .stream()
-                        .map(Region::getId)
-                        .filter(s -> s.startsWith(args[1]))
-                        .collect(Collectors.toList());
+            if (subCommand.equals("delete") || subCommand.equals("info") || subCommand.equals("regenerate")
+                    || subCommand.equals("snapshot") || subCommand.equals("export") || subCommand.equals("import") || subCommand.equals("diff") || subCommand.equals("validate") || subCommand.equals("benchmark") || subCommand.equals("undo")
+                    || subCommand.equals("restore")
+                    || subCommand.equals("template") || subCommand.equals("seed") || subCommand.equals("threshold")) {
+                List<String> completions = plugin.getRegionManager().completeRegionIds(args[1], MAX_COMPLETIONS);
+                if (subCommand.equals("import")) {
+                    completions.addAll(completeFiles(plugin.getSnapshotManager().getBundleDirectory(), args[1], SnapshotBundle.FILE_EXTENSION));
+                }
+                String typed = args[1].toLowerCase();
+                if (subCommand.equals("regenerate") && ("world:".startsWith(typed) || typed.startsWith("world:"))) {
+                    for (World world : Bukkit.getWorlds()) {
+                        String option = "world:" + world.getName();
+                        if (option.startsWith(args[1])) {
+                            completions.add(option);
+                        }
+                    }
+                }
+                return completions;
+            }
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("template")) {
+            List<String> completions = plugin.getRegionManager().completeRegionIds(args[2], MAX_COMPLETIONS);
+            completions.remove(args[1]);
+            if ("none".startsWith(args[2].toLowerCase())) {
+                completions.add("none");
             }
+            return completions;
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("seed")) {
+            return Arrays.asList("on", "off").stream()
+                    .filter(s -> s.startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("threshold")) {
+            return Arrays.asList("25", "50", "75", "off").stream()
+                    .filter(s -> s.startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("restore")) {
+            return "--at".startsWith(args[2].toLowerCase()) ? Arrays.asList("--at") : new ArrayList<>();
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("diff")) {
+            return "restore".startsWith(args[2].toLowerCase()) ? Arrays.asList("restore") : new ArrayList<>();
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("export")) {
+            return Arrays.asList("bundle", "delta").stream()
+                    .filter(s -> s.startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
+        } else if (args.length == 4 && args[0].equalsIgnoreCase("export") && args[2].equalsIgnoreCase("delta")) {
+            return completeFiles(plugin.getSnapshotManager().getBundleDirectory(), args[3], SnapshotBundle.FILE_EXTENSION);
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("import")) {
+            return completeFiles(plugin.getSnapshotManager().getSchematicDirectory(), args[2], "");
         }
 
         return new ArrayList<>();
     }
+
+    private static List<String> completeFiles(File directory, String prefix, String extension) {
+        File[] files = directory.listFiles();
+        List<String> completions = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.getName().startsWith(prefix) && file.getName().endsWith(extension)) {
+                    completions.add(file.getName());
+                }
+            }
+        }
+        return completions;
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.minecraft.regionregen.gui;
 import com.minecraft.regionregen.RegionRegenPlugin;
 import com.minecraft.regionregen.models.Region;
 import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.GuiSettings;
 import org.bukkit.Location;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -21,9 +22,7 @@ import java.util.*;
  */
 public class RegionGUI {
 
-    private static final String INVENTORY_TITLE = "Region Manager";
     private static final int ROWS = 6; // 6 rows (54 slots)
-    private static final int REGIONS_PER_PAGE = 28;
 
     private static final Map<UUID, Integer> playerPages = new HashMap<>();
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -50,8 +49,11 @@ public class RegionGUI {
         // Sort regions alphabetically by ID
         regions.sort(Comparator.comparing(Region::getId));
 
+        GuiSettings settings = RegionRegenPlugin.getInstance().getConfigManager().getSettings().getGui();
+        int regionsPerPage = settings.getRegionsPerPage();
+
         // Calculate the total pages
-        int totalPages = (int) Math.ceil((double) regions.size() / REGIONS_PER_PAGE);
+        int totalPages = (int) Math.ceil((double) regions.size() / regionsPerPage);
         if (totalPages < 1) totalPages = 1;
 
         // Adjust page if out of bounds
@@ -62,12 +64,11 @@ public class RegionGUI {
         playerPages.put(player.getUniqueId(), page);
 
         // Create inventory
-        String title = RegionRegenPlugin.getInstance().getConfigManager().getConfig().getString("gui.main-title", INVENTORY_TITLE);
-        Inventory inventory = Bukkit.createInventory(null, ROWS * 9, ChatColor.translateAlternateColorCodes('&', title));
+        Inventory inventory = Bukkit.createInventory(null, ROWS * 9, settings.getMainTitle());
 
         // Add regions for current page
-        int startIndex = (page - 1) * REGIONS_PER_PAGE;
-        int endIndex = Math.min(startIndex + REGIONS_PER_PAGE, regions.size());
+        int startIndex = (page - 1) * regionsPerPage;
+        int endIndex = Math.min(startIndex + regionsPerPage, regions.size());
 
         for (int i = startIndex; i < endIndex; i++) {
             Region region = regions.get(i);
@@ -174,11 +175,11 @@ public class RegionGUI {
      * @param region The region to display details for
      */
     public static void openRegionDetailGUI(Player player, Region region) {
-        String title = RegionRegenPlugin.getInstance().getConfigManager().getConfig()
-                .getString("gui.info-title", "Region Info: %region%")
+        String title = RegionRegenPlugin.getInstance().getConfigManager().getSettings()
+                .getGui().getInfoTitle()
                 .replace("%region%", region.getId());
 
-        Inventory inventory = Bukkit.createInventory(null, 3 * 9, ChatColor.translateAlternateColorCodes('&', title));
+        Inventory inventory = Bukkit.createInventory(null, 3 * 9, title);
 
         // Region info item
         ItemStack infoItem = new ItemStack(Material.BOOK);
@@ -193,6 +194,8 @@ public class RegionGUI {
         infoLore.add(ChatColor.GRAY + "Min: " + ChatColor.WHITE + formatLocation(region.getMinPoint()));
         infoLore.add(ChatColor.GRAY + "Max: " + ChatColor.WHITE + formatLocation(region.getMaxPoint()));
         infoLore.add(ChatColor.GRAY + "Regeneration count: " + ChatColor.WHITE + region.getRegenerationCount());
+        infoLore.add(ChatColor.GRAY + "Mined: " + ChatColor.WHITE + String.format("%.1f", region.getMinedPercent()) + "%"
+                + (region.getRegenThreshold() > 0 ? ChatColor.GRAY + " (regenerates at " + region.getRegenThreshold() + "%)" : ""));
 
         if (region.getLastRegenerationDate() != null) {
             infoLore.add(ChatColor.GRAY + "Last regenerated: " + ChatColor.WHITE +
@@ -213,7 +216,11 @@ public class RegionGUI {
 
             List<String> regenerateLore = new ArrayList<>();
             regenerateLore.add(ChatColor.GRAY + "Click to regenerate this region");
-            regenerateLore.add(ChatColor.RED + "Warning: This cannot be undone!");
+            if (RegionRegenPlugin.getInstance().getConfigManager().getSettings().getRegeneration().getUndoGenerations() > 0) {
+                regenerateLore.add(ChatColor.YELLOW + "Roll back with /regionregen undo");
+            } else {
+                regenerateLore.add(ChatColor.RED + "Warning: This cannot be undone!");
+            }
 
             regenerateMeta.setLore(regenerateLore);
             regenerateItem.setItemMeta(regenerateMeta);
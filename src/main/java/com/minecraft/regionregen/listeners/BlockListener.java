@@ -0,0 +1,139 @@
+package com.minecraft.regionregen.listeners;
+
+import com.minecraft.regionregen.managers.RegionManager;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.regen.ChangeLog;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockMultiPlaceEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+
+import java.util.List;
+
+/**
+ * Hands block changes inside regions to the {@link ChangeLog}, and counts
+ * the snapshot blocks removed from and put back into each region for its
+ * mined share, see {@link Region#recordMined}. Air and liquids do not count
+ * as blocks.
+ * Pistons are not followed: blocks they move are logged once something else
+ * changes them.
+ */
+public class BlockListener implements Listener {
+
+    private final RegionManager regionManager;
+    private final ChangeLog changeLog;
+
+    /**
+     * Create a new BlockListener
+     *
+     * @param regionManager The region manager, for finding the regions a block is in
+     */
+    public BlockListener(RegionManager regionManager) {
+        this.regionManager = regionManager;
+        this.changeLog = regionManager.getChangeLog();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        // Beds and doors place several blocks, and are dispatched to this handler too
+        if (event instanceof BlockMultiPlaceEvent) {
+            for (BlockState replaced : ((BlockMultiPlaceEvent) event).getReplacedBlockStates()) {
+                record(replaced.getBlock(), replaced.getBlockData(), replaced.getBlock().getBlockData());
+            }
+            return;
+        }
+        record(event.getBlock(), event.getBlockReplacedState().getBlockData(), event.getBlock().getBlockData());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), event.getNewState().getBlockData());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), event.getNewState().getBlockData());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        // Liquid spreading, or a dragon egg teleporting
+        record(event.getToBlock(), event.getToBlock().getBlockData(), event.getBlock().getBlockData());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        record(event.getBlock(), event.getBlock().getBlockData(), event.getBlockData());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        recordAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        recordAll(event.blockList());
+    }
+
+    private void recordAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            record(block, block.getBlockData(), null);
+        }
+    }
+
+    /**
+     * @param previous The block's state before the change
+     * @param next Its state after the change, null when it becomes air
+     */
+    private void record(Block block, BlockData previous, BlockData next) {
+        List<Region> regions = regionManager.getRegionsAt(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        if (regions.isEmpty()) {
+            return;
+        }
+        boolean wasBlock = isBlock(previous);
+        boolean isBlock = isBlock(next);
+        for (Region region : regions) {
+            regionManager.loadSnapshotBlocks(region);
+            region.recordMined(block.getX(), block.getY(), block.getZ(), wasBlock, isBlock);
+            changeLog.record(region.getId(), block, previous);
+        }
+    }
+
+    private static boolean isBlock(BlockData data) {
+        if (data == null) {
+            return false;
+        }
+        Material type = data.getMaterial();
+        return !type.isAir() && type != Material.WATER && type != Material.LAVA;
+    }
+}
@@ -0,0 +1,31 @@
+package com.minecraft.regionregen.listeners;
+
+import com.minecraft.regionregen.regen.DeferredRestores;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+
+/**
+ * Hands loaded chunks to {@link DeferredRestores}, which restores the ones
+ * whose restore was put off until they loaded
+ */
+public class ChunkListener implements Listener {
+
+    private final DeferredRestores deferredRestores;
+
+    /**
+     * Create a new ChunkListener
+     *
+     * @param deferredRestores The pending chunk restores
+     */
+    public ChunkListener(DeferredRestores deferredRestores) {
+        this.deferredRestores = deferredRestores;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        // Only schedules the restore, blocks are written by the regen scheduler within its budget
+        deferredRestores.onChunkLoad(event.getChunk());
+    }
+}
@@ -0,0 +1,28 @@
+package com.minecraft.regionregen.listeners;
+
+import com.minecraft.regionregen.regen.ScratchWorlds;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldInitEvent;
+
+/**
+ * Lets {@link ScratchWorlds} configure scratch worlds before their spawn area is loaded
+ */
+public class WorldListener implements Listener {
+
+    private final ScratchWorlds scratchWorlds;
+
+    /**
+     * Create a new WorldListener
+     *
+     * @param scratchWorlds The scratch world pool
+     */
+    public WorldListener(ScratchWorlds scratchWorlds) {
+        this.scratchWorlds = scratchWorlds;
+    }
+
+    @EventHandler
+    public void onWorldInit(WorldInitEvent event) {
+        scratchWorlds.onWorldInit(event.getWorld());
+    }
+}
@@ -1,38 +1,86 @@
 package com.minecraft.regionregen.managers;
 
 import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.RegionMask;
+import com.minecraft.regionregen.models.SnapshotBlocks;
+import com.minecraft.regionregen.regen.AutoRegen;
+import com.minecraft.regionregen.regen.ChangeLog;
+import com.minecraft.regionregen.regen.ChangeReplay;
+import com.minecraft.regionregen.regen.ChunkWork;
+import com.minecraft.regionregen.regen.DeferredRestores;
+import com.minecraft.regionregen.regen.GeneratedTerrain;
+import com.minecraft.regionregen.regen.RegenScheduler;
+import com.minecraft.regionregen.regen.RestoreCheckpoint;
+import com.minecraft.regionregen.regen.RestoreJob;
+import com.minecraft.regionregen.regen.ScratchWorlds;
+import com.minecraft.regionregen.snapshot.SchematicBridge;
+import com.minecraft.regionregen.snapshot.SnapshotBundle;
+import com.minecraft.regionregen.snapshot.SnapshotDiff;
+import com.minecraft.regionregen.utils.MessageTemplate;
 import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.RegenerationSettings;
 import com.minecraft.regionregen.utils.WorldEditUtils;
-import com.sk89q.worldedit.EditSession;
-import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldedit.bukkit.BukkitWorld;
-import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.regions.CuboidRegion;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 
 /**
  * Manages all regions registered in the plugin
  */
 public class RegionManager {
 
+    private static final MessageTemplate MSG_REGEN_STARTED = MessageTemplate.compile("§aStarting regeneration of region: §e%region%");
+    private static final MessageTemplate MSG_REGEN_COMPLETED = MessageTemplate.compile("§aCompleted regeneration of region: §e%region%");
+    private static final MessageTemplate MSG_REGEN_FAILED = MessageTemplate.compile("§cError regenerating region: §e%region%");
+    private static final MessageTemplate MSG_BULK_STARTED = MessageTemplate.compile("§aStarting regeneration of §e%count% §aregions across §e%chunks% §achunks");
+    private static final MessageTemplate MSG_BULK_COMPLETED = MessageTemplate.compile("§aRegenerated §e%done% §aof §e%count% §aregions");
+    private static final MessageTemplate MSG_SNAPSHOT_SAVED = MessageTemplate.compile("§aSaved snapshot of region §e%region%§a.");
+    private static final MessageTemplate MSG_SNAPSHOT_FAILED = MessageTemplate.compile("§cFailed to save snapshot of region §e%region%§c.");
+    private static final MessageTemplate MSG_UNDO_COMPLETED = MessageTemplate.compile("§aRolled back the last regeneration of region: §e%region%");
+    private static final MessageTemplate MSG_UNDO_FAILED = MessageTemplate.compile("§cFailed to roll back region: §e%region%");
+    private static final MessageTemplate MSG_RESTORE_AT_STARTED = MessageTemplate.compile("§aRestoring region §e%region% §ato §e%time%§a...");
+    private static final MessageTemplate MSG_RESTORE_AT_COMPLETED = MessageTemplate.compile("§aRestored region §e%region% §ato §e%time%§a.");
+    private static final MessageTemplate MSG_RESTORE_AT_FAILED = MessageTemplate.compile("§cFailed to restore region §e%region% §cto §e%time%§c.");
+    private static final MessageTemplate MSG_NEARBY_REGEN = MessageTemplate.compile("§eA nearby region (§6%region%§e) is being regenerated!");
+
     private final RegionRegenPlugin plugin;
-    private final Map<String, com.minecraft.regionregen.models.Region> regions = new HashMap<>();
+    // Sorted by ID, so prefix lookups are a range scan instead of a pass over every region
+    private final NavigableMap<String, com.minecraft.regionregen.models.Region> regions = new TreeMap<>();
+    // World name -> chunk key -> regions reaching into the chunk, for block listeners
+    private final Map<String, Map<Long, List<com.minecraft.regionregen.models.Region>>> regionsByChunk = new HashMap<>();
     private final File regionsFile;
-    private final Map<String, Boolean> regenerationInProgress = new HashMap<>();
+    private final File masksDir;
+    private final Map<String, Boolean> regenerationInProgress = new ConcurrentHashMap<>();
+    // Snapshot block counts being read, or that failed, by region ID; main thread only
+    private final Map<String, CompletableFuture<SnapshotBlocks>> blockCounts = new HashMap<>();
+    private final RegenScheduler regenScheduler;
+    private final ChangeLog changeLog;
+    private final AutoRegen autoRegen;
+    // Orders regions.yml writes, so a slow older save never replaces a newer one
+    private final Object saveLock = new Object();
+    private long nextSaveSequence;
+    private long writtenSaveSequence = -1;
 
     /**
      * Create a new RegionManager
@@ -42,6 +90,10 @@ public class RegionManager {
     public RegionManager(RegionRegenPlugin plugin) {
         this.plugin = plugin;
         this.regionsFile = new File(plugin.getDataFolder(), "regions.yml");
+        this.masksDir = new File(plugin.getDataFolder(), "masks");
+        this.regenScheduler = new RegenScheduler(plugin);
+        this.changeLog = new ChangeLog(plugin);
+        this.autoRegen = new AutoRegen(plugin, this);
     }
 
     /**
@@ -69,7 +121,9 @@ public class RegionManager {
             try {
                 Map<String, Object> regionMap = config.getConfigurationSection("regions." + key).getValues(true);
                 com.minecraft.regionregen.models.Region region = new com.minecraft.regionregen.models.Region(regionMap);
+                loadMask(region);
                 regions.put(region.getId(), region);
+                indexChunks(region);
                 MessageUtils.debug("Loaded region: " + region.getId());
             } catch (Exception e) {
                 plugin.getLogger().log(Level.WARNING, "Failed to load region: " + key, e);
@@ -80,9 +134,47 @@ public class RegionManager {
     }
 
     /**
-     * Save all regions to storage
+     * Get the membership mask file of a region
+     *
+     * @param regionId The region ID
+     * @return The mask file, which only exists for non-cuboid regions
+     */
+    private File getMaskFile(String regionId) {
+        return new File(masksDir, URLEncoder.encode(regionId, StandardCharsets.UTF_8) + ".mask");
+    }
+
+    /**
+     * Load the membership mask of a non-cuboid region. A missing or unreadable
+     * mask leaves the region acting as its bounding box.
+     */
+    private void loadMask(com.minecraft.regionregen.models.Region region) {
+        if (region.isCuboid()) {
+            return;
+        }
+
+        try {
+            region.setMask(region.getShape(), RegionMask.read(getMaskFile(region.getId())));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load mask of " + region.getShape() + " region " +
+                    region.getId() + ", treating it as a cuboid", e);
+            region.setMask(RegionMask.SHAPE_CUBOID, null);
+        }
+    }
+
+    /**
+     * Save all regions to storage, writing the file on the I/O pool
      */
     public void saveRegions() {
+        saveRegions(true);
+    }
+
+    /**
+     * Save all regions to storage. The regions are serialized on the calling
+     * thread, which must be the main thread.
+     *
+     * @param async Write the file off the main thread
+     */
+    public void saveRegions(boolean async) {
         FileConfiguration config = new YamlConfiguration();
 
         for (com.minecraft.regionregen.models.Region region : regions.values()) {
@@ -94,11 +186,38 @@ public class RegionManager {
             }
         }
 
-        try {
-            config.save(regionsFile);
-            MessageUtils.debug("Saved " + regions.size() + " regions.");
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to save regions", e);
+        String contents = config.saveToString();
+        int count = regions.size();
+        long sequence;
+        synchronized (saveLock) {
+            sequence = nextSaveSequence++;
+        }
+        if (!async) {
+            writeRegions(contents, count, sequence);
+            return;
+        }
+        plugin.getExecutors().io().execute(() -> writeRegions(contents, count, sequence));
+    }
+
+    /**
+     * Replace regions.yml unless a newer save has already been written
+     */
+    private void writeRegions(String contents, int count, long sequence) {
+        synchronized (saveLock) {
+            if (sequence < writtenSaveSequence) {
+                return;
+            }
+            writtenSaveSequence = sequence;
+
+            try {
+                // Written aside and moved over, so a crash or a backup never sees half a file
+                File temp = new File(regionsFile.getParentFile(), regionsFile.getName() + ".tmp");
+                Files.write(temp.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp.toPath(), regionsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                MessageUtils.debug("Saved " + count + " regions.");
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to save regions", e);
+            }
         }
     }
 
@@ -140,10 +259,27 @@ public class RegionManager {
         );
 
         com.minecraft.regionregen.models.Region region = new com.minecraft.regionregen.models.Region(id, player.getWorld().getName(), min, max, player.getName());
+
+        // Non-cuboid selections keep a per-section membership mask
+        String shape = RegionMask.shapeOf(selection);
+        RegionMask mask = RegionMask.fromSelection(selection);
+        if (mask != null) {
+            try {
+                mask.write(getMaskFile(id));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to save mask of region: " + id, e);
+                return null;
+            }
+        }
+        region.setMask(shape, mask);
         regions.put(id, region);
+        indexChunks(region);
+
+        // Record the blocks the region will be restored to
+        captureSnapshot(region, player);
 
         // Save if configured to do so on modification
-        if (plugin.getConfigManager().getConfig().getBoolean("storage.save-on-modify", true)) {
+        if (plugin.getConfigManager().getSettings().getStorage().isSaveOnModify()) {
             saveRegions();
         }
 
@@ -151,20 +287,37 @@ public class RegionManager {
     }
 
     /**
-     * Delete a region
+     * Delete a region. A region is not deleted while it is being regenerated or
+     * captured; its snapshot is deleted in the background.
      *
      * @param id The ID of the region to delete
-     * @return True if the region was deleted, false if it wasn't found
+     * @return True if the region was deleted, false if it wasn't found or is in use
      */
     public boolean deleteRegion(String id) {
-        if (!regions.containsKey(id)) {
+        if (!regions.containsKey(id) || isRegenerationInProgress(id) || plugin.getSnapshotManager().isCapturing(id)) {
             return false;
         }
 
-        regions.remove(id);
+        unindexChunks(regions.remove(id));
+        for (com.minecraft.regionregen.models.Region region : regions.values()) {
+            if (id.equals(region.getTemplate())) {
+                region.setTemplate(null);
+                MessageUtils.log("§eRegion " + region.getId() + " used deleted template " + id + ", it uses its own snapshot again.");
+            }
+        }
+        plugin.getSnapshotManager().deleteSnapshot(id).thenAccept(deleted -> {
+            if (!deleted) {
+                MessageUtils.debug("No snapshot deleted with region " + id);
+            }
+        });
+        regenScheduler.getDeferredRestores().forget(id);
+        plugin.getSnapshotManager().getUndoStore().forget(id);
+        changeLog.forget(id);
+        autoRegen.forget(id);
+        getMaskFile(id).delete();
 
         // Save if configured to do so on modification
-        if (plugin.getConfigManager().getConfig().getBoolean("storage.save-on-modify", true)) {
+        if (plugin.getConfigManager().getSettings().getStorage().isSaveOnModify()) {
             saveRegions();
         }
 
@@ -184,12 +337,243 @@ public class RegionManager {
     /**
      * Get all regions
      *
-     * @return A collection of all regions
+     * @return A collection of all regions, sorted by ID
      */
     public Collection<com.minecraft.regionregen.models.Region> getAllRegions() {
         return regions.values();
     }
 
+    /**
+     * Get the regions containing a block, e.g. for block listeners
+     *
+     * @param world The block's world
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return The regions containing the block, empty if there are none
+     */
+    public List<com.minecraft.regionregen.models.Region> getRegionsAt(World world, int x, int y, int z) {
+        Map<Long, List<com.minecraft.regionregen.models.Region>> chunks = regionsByChunk.get(world.getName());
+        List<com.minecraft.regionregen.models.Region> candidates = chunks == null ? null : chunks.get(ChunkWork.key(x >> 4, z >> 4));
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        List<com.minecraft.regionregen.models.Region> found = null;
+        for (com.minecraft.regionregen.models.Region region : candidates) {
+            if (region.contains(x, y, z)) {
+                if (found == null) {
+                    found = new ArrayList<>(1);
+                }
+                found.add(region);
+            }
+        }
+        return found == null ? Collections.emptyList() : found;
+    }
+
+    private void indexChunks(com.minecraft.regionregen.models.Region region) {
+        Set<Long> chunks = new HashSet<>();
+        collectChunks(region, chunks);
+        Map<Long, List<com.minecraft.regionregen.models.Region>> world =
+                regionsByChunk.computeIfAbsent(region.getWorldName(), w -> new HashMap<>());
+        for (long chunk : chunks) {
+            world.computeIfAbsent(chunk, c -> new ArrayList<>(1)).add(region);
+        }
+    }
+
+    private void unindexChunks(com.minecraft.regionregen.models.Region region) {
+        Map<Long, List<com.minecraft.regionregen.models.Region>> world = regionsByChunk.get(region.getWorldName());
+        if (world == null) {
+            return;
+        }
+        world.values().removeIf(list -> list.remove(region) && list.isEmpty());
+    }
+
+    /**
+     * Get the IDs that start with a prefix, e.g. for tab completion
+     *
+     * @param prefix The typed prefix, case sensitive
+     * @param limit Maximum number of IDs to return
+     * @return Up to limit matching IDs, sorted
+     */
+    public List<String> completeRegionIds(String prefix, int limit) {
+        List<String> ids = new ArrayList<>(Math.min(limit, 16));
+        forEachMatching(prefix, null, region -> {
+            ids.add(region.getId());
+            return ids.size() < limit;
+        });
+        return ids;
+    }
+
+    /**
+     * Get one page of the regions whose ID matches a filter
+     *
+     * @param filter An ID prefix, a glob with {@code *} or {@code ?}, or null for every region
+     * @param page The page, starting at 1
+     * @param pageSize Regions per page
+     * @return The regions on the page, sorted by ID; empty past the last page
+     */
+    public List<com.minecraft.regionregen.models.Region> getRegionPage(String filter, int page, int pageSize) {
+        List<com.minecraft.regionregen.models.Region> matches = new ArrayList<>(pageSize);
+        long skip = (long) (page - 1) * pageSize;
+        long[] seen = {0};
+        forEachMatching(filterPrefix(filter), filterPattern(filter), region -> {
+            if (seen[0]++ >= skip) {
+                matches.add(region);
+            }
+            return matches.size() < pageSize;
+        });
+        return matches;
+    }
+
+    /**
+     * Count the regions whose ID matches a filter
+     *
+     * @param filter An ID prefix, a glob with {@code *} or {@code ?}, or null for every region
+     * @return The number of matching regions
+     */
+    public int countRegions(String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return regions.size();
+        }
+        int[] count = {0};
+        forEachMatching(filterPrefix(filter), filterPattern(filter), region -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * Visit the regions whose ID starts with a prefix and matches a pattern, in ID order,
+     * without copying the index
+     *
+     * @param prefix The ID prefix, empty for every region
+     * @param pattern Pattern the whole ID must match, or null
+     * @param visitor Called with each match, returns false to stop
+     */
+    private void forEachMatching(String prefix, Pattern pattern, Predicate<com.minecraft.regionregen.models.Region> visitor) {
+        for (Map.Entry<String, com.minecraft.regionregen.models.Region> entry : regions.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                return;
+            }
+            if ((pattern == null || pattern.matcher(entry.getKey()).matches()) && !visitor.test(entry.getValue())) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isGlob(String filter) {
+        return filter.indexOf('*') >= 0 || filter.indexOf('?') >= 0;
+    }
+
+    /**
+     * The literal part of a filter every match starts with
+     */
+    private static String filterPrefix(String filter) {
+        if (filter == null) {
+            return "";
+        }
+        if (!isGlob(filter)) {
+            return filter;
+        }
+        int wildcard = filter.indexOf('*');
+        int single = filter.indexOf('?');
+        int end = wildcard < 0 ? single : (single < 0 ? wildcard : Math.min(wildcard, single));
+        return filter.substring(0, end);
+    }
+
+    private static Pattern filterPattern(String filter) {
+        return filter != null && isGlob(filter) ? globToPattern(filter) : null;
+    }
+
+    /**
+     * Regenerate a region with fresh terrain from the world generator from now
+     * on, instead of restoring its snapshot or template
+     *
+     * @param region The region
+     * @param fromSeed True to regenerate from the world generator, false to restore the snapshot again
+     */
+    public void setFromSeed(com.minecraft.regionregen.models.Region region, boolean fromSeed) {
+        region.setFromSeed(fromSeed);
+        if (fromSeed) {
+            region.setTemplate(null);
+        }
+        saveIfConfigured(true);
+    }
+
+    /**
+     * Restore a region from another region's snapshot from now on, e.g. one of
+     * many identical arenas from a single template. The template's minimum
+     * corner is placed on the region's minimum corner, in the region's world.
+     *
+     * @param region The region to restore from the template
+     * @param templateId The template region's ID, or null to restore the region from its own snapshot again
+     */
+    public void setTemplate(com.minecraft.regionregen.models.Region region, String templateId) {
+        region.setTemplate(templateId);
+        if (templateId != null) {
+            region.setFromSeed(false);
+        }
+        saveIfConfigured(true);
+    }
+
+    /**
+     * Set the mined share at which a region regenerates on its own. Where
+     * its snapshot holds blocks is read first if it is not loaded yet.
+     *
+     * @param region The region
+     * @param threshold The threshold in percent, 0 to turn automatic regeneration off
+     */
+    public void setRegenThreshold(com.minecraft.regionregen.models.Region region, int threshold) {
+        region.setRegenThreshold(threshold);
+        autoRegen.forget(region.getId());
+        if (threshold > 0) {
+            loadSnapshotBlocks(region);
+        }
+        saveIfConfigured(true);
+    }
+
+    /**
+     * Count the minable blocks of a region's snapshot in the background, the
+     * base its mined share is measured against. Block changes are not counted
+     * against the region until this finishes.
+     *
+     * @param region The region
+     */
+    public void countBlocks(com.minecraft.regionregen.models.Region region) {
+        region.setSnapshotBlocks(null);
+        if (!plugin.getSnapshotManager().hasSnapshot(region.getId())) {
+            blockCounts.remove(region.getId());
+            return;
+        }
+        CompletableFuture<SnapshotBlocks> future = plugin.getSnapshotManager().countBlocks(region.getId());
+        blockCounts.put(region.getId(), future);
+        future.thenAccept(blocks -> {
+            // A failed count stays in the map, so block changes do not read the snapshot again and again
+            if (blocks == null || blockCounts.get(region.getId()) != future) {
+                return;
+            }
+            blockCounts.remove(region.getId());
+            if (regions.get(region.getId()) == region) {
+                region.setSnapshotBlocks(blocks);
+                saveIfConfigured(true);
+            }
+        });
+    }
+
+    /**
+     * Read where a region's snapshot holds blocks, if its mined count needs it
+     * and it is not being read already. Called for block changes in the region,
+     * so the snapshot is read for regions that are actually mined.
+     *
+     * @param region The region
+     */
+    public void loadSnapshotBlocks(com.minecraft.regionregen.models.Region region) {
+        if (region.needsSnapshotBlocks() && !blockCounts.containsKey(region.getId())) {
+            countBlocks(region);
+        }
+    }
+
     /**
      * Check if regeneration is in progress for a region
      *
@@ -210,8 +594,8 @@ public class RegionManager {
     public CompletableFuture<Boolean> regenerateRegion(com.minecraft.regionregen.models.Region region, Player initiator) {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
 
-        // Check if regeneration is already in progress
-        if (isRegenerationInProgress(region.getId())) {
+        // Check if regeneration is already in progress, or the snapshot is still being written
+        if (isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())) {
             future.complete(false);
             return future;
         }
@@ -228,84 +612,848 @@ public class RegionManager {
         }
 
         // Notify nearby players if configured
-        if (plugin.getConfigManager().getConfig().getBoolean("regeneration.notify-nearby-players", true)) {
+        if (plugin.getConfigManager().getSettings().getRegeneration().isNotifyNearbyPlayers()) {
             notifyNearbyPlayers(region);
         }
 
         // Log the regeneration
         MessageUtils.log("§aStarting regeneration of region: " + region.getId());
         if (initiator != null) {
-            MessageUtils.sendMessage(initiator, "§aStarting regeneration of region: §e" + region.getId());
-        }
-
-        // Get the blocks per tick from config
-        int blocksPerTick = plugin.getConfigManager().getConfig().getInt("regeneration.blocks-per-tick", 50);
-
-        // Start a task to regenerate the region
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    // Get locations from the region
-                    Location min = region.getMinPoint();
-                    Location max = region.getMaxPoint();
-
-                    // Create a WorldEdit session
-                    try (EditSession editSession = WorldEdit.getInstance().newEditSession(new BukkitWorld(world))) {
-                        // Create a cuboid region
-                        CuboidRegion cuboidRegion = new CuboidRegion(
-                                BukkitAdapter.adapt(world),
-                                BlockVector3.at(min.getX(), min.getY(), min.getZ()),
-                                BlockVector3.at(max.getX(), max.getY(), max.getZ())
-                        );
-
-                        // Regenerate the region using WorldEdit's built-in functionality
-                        // Calculate chunk coordinates
-                        int minChunkX = (int)min.getX() >> 4;
-                        int minChunkZ = (int)min.getZ() >> 4;
-                        int maxChunkX = (int)max.getX() >> 4;
-                        int maxChunkZ = (int)max.getZ() >> 4;
-
-                        // Regenerate chunks one by one
-                        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
-                            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
-                                world.regenerateChunk(cx, cz);
-                            }
-                        }
-
-                        Operations.complete(editSession.commit());
-
-                        // Record the regeneration
-                        region.recordRegeneration();
-
-                        // Save the updated region data
-                        if (plugin.getConfigManager().getConfig().getBoolean("storage.save-on-modify", true)) {
-                            saveRegions();
-                        }
-
-                        // Log completion
-                        MessageUtils.log("§aCompleted regeneration of region: " + region.getId());
-                        if (initiator != null && initiator.isOnline()) {
-                            MessageUtils.sendMessage(initiator, "§aCompleted regeneration of region: §e" + region.getId());
-                        }
-
-                        regenerationInProgress.put(region.getId(), false);
-                        future.complete(true);
-                    }
-                } catch (Exception e) {
-                    plugin.getLogger().log(Level.SEVERE, "Error regenerating region: " + region.getId(), e);
-                    if (initiator != null && initiator.isOnline()) {
-                        MessageUtils.sendMessage(initiator, "§cError regenerating region: §e" + region.getId());
-                    }
-                    regenerationInProgress.put(region.getId(), false);
-                    future.complete(false);
+            MessageUtils.sendMessage(initiator, MSG_REGEN_STARTED, region.getId());
+        }
+
+        if (region.getTemplate() != null) {
+            restoreFromTemplate(region.getTemplate(), Collections.singletonList(region), initiator).thenAccept(restored -> {
+                saveIfConfigured(restored > 0);
+                future.complete(restored > 0);
+            });
+            return future;
+        }
+
+        // Restore from the stored snapshot when there is one, otherwise generate fresh terrain
+        CompletableFuture<Boolean> job;
+        if (!region.isFromSeed() && plugin.getSnapshotManager().hasSnapshot(region.getId())) {
+            job = restoreUnlessClean(world, region);
+        } else {
+            job = regenerateTerrain(world, Collections.singletonList(region));
+        }
+
+        job.thenAccept(success -> {
+            finishRegeneration(region, initiator, success);
+            saveIfConfigured(success);
+            future.complete(success);
+        });
+        return future;
+    }
+
+    /**
+     * Regenerate only the blocks of a region that differ from its snapshot.
+     * Useful for regions whose changes were never tracked, since nothing
+     * that still matches the snapshot is touched.
+     *
+     * @param region The region to regenerate
+     * @param diff A diff of the region, see {@link SnapshotManager#diffSnapshot}
+     * @param initiator The player who initiated the regeneration (can be null)
+     * @return A CompletableFuture that completes when regeneration is done
+     */
+    public CompletableFuture<Boolean> restoreDifferences(com.minecraft.regionregen.models.Region region, SnapshotDiff diff, Player initiator) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        World world = Bukkit.getWorld(region.getWorldName());
+        if (world == null || isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())) {
+            future.complete(false);
+            return future;
+        }
+
+        regenerationInProgress.put(region.getId(), true);
+        if (plugin.getConfigManager().getSettings().getRegeneration().isNotifyNearbyPlayers()) {
+            notifyNearbyPlayers(region);
+        }
+        MessageUtils.log("§aRestoring " + diff.getBlocksChanged() + " changed blocks of region: " + region.getId());
+        if (initiator != null) {
+            MessageUtils.sendMessage(initiator, MSG_REGEN_STARTED, region.getId());
+        }
+
+        RestoreJob job = RestoreJob.forSections(plugin, region, world,
+                plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow(), diff.getChangedSections());
+        regenScheduler.submit(job);
+        job.getFuture().thenAccept(success -> {
+            rebaseChangeLogs(Collections.singletonList(region), success);
+            finishRegeneration(region, initiator, success);
+            saveIfConfigured(success);
+            future.complete(success);
+        });
+        return future;
+    }
+
+    /**
+     * Roll a region back to the state it had before its last regeneration,
+     * from the newest undo generation. The generation is consumed, so
+     * undoing again goes one regeneration further back.
+     *
+     * @param region The region to roll back
+     * @param initiator The player who initiated the rollback (can be null)
+     * @return A CompletableFuture that completes when the rollback is done, false if there was nothing to undo
+     */
+    public CompletableFuture<Boolean> undoRegeneration(com.minecraft.regionregen.models.Region region, Player initiator) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        World world = Bukkit.getWorld(region.getWorldName());
+        List<File> generations = plugin.getSnapshotManager().getUndoStore().getGenerations(region.getId());
+        // A capture running meanwhile would record a half rolled back region
+        if (world == null || generations.isEmpty() || isRegenerationInProgress(region.getId())
+                || plugin.getSnapshotManager().isCapturing(region.getId())) {
+            future.complete(false);
+            return future;
+        }
+
+        regenerationInProgress.put(region.getId(), true);
+        // Chunks still waiting to be restored were never changed, they already hold the old state
+        regenScheduler.getDeferredRestores().forget(region.getId());
+        MessageUtils.log("§aRolling back the last regeneration of region: " + region.getId());
+
+        File generation = generations.get(0);
+        RestoreJob job = RestoreJob.forUndo(plugin, region, world, plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow(), generation);
+        regenScheduler.submit(job);
+        job.getFuture().thenAccept(success -> {
+            regenerationInProgress.put(region.getId(), false);
+            changeLog.end(region.getId());
+            if (success) {
+                plugin.getSnapshotManager().getUndoStore().discard(generation);
+            }
+            if (initiator != null && initiator.isOnline()) {
+                MessageUtils.sendMessage(initiator, success ? MSG_UNDO_COMPLETED : MSG_UNDO_FAILED, region.getId());
+            }
+            future.complete(success);
+        });
+        return future;
+    }
+
+    /**
+     * Restore a region to the state it had at a point in time: its snapshot
+     * with the logged block changes up to then replayed over it.
+     *
+     * @param region The region to restore
+     * @param time The point in time, in milliseconds
+     * @param initiator The player who initiated the restore (can be null)
+     * @return A CompletableFuture that completes when the restore is done, false if the log does not reach back that far
+     */
+    public CompletableFuture<Boolean> restoreRegionAt(com.minecraft.regionregen.models.Region region, long time, Player initiator) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        World world = Bukkit.getWorld(region.getWorldName());
+        if (world == null || isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())
+                || !plugin.getSnapshotManager().hasSnapshot(region.getId())) {
+            future.complete(false);
+            return future;
+        }
+
+        regenerationInProgress.put(region.getId(), true);
+        // Deferred chunks of an earlier restore must not overwrite the replay later
+        regenScheduler.getDeferredRestores().forget(region.getId());
+        if (plugin.getConfigManager().getSettings().getRegeneration().isNotifyNearbyPlayers()) {
+            notifyNearbyPlayers(region);
+        }
+        String when = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time));
+        MessageUtils.log("§aRestoring region " + region.getId() + " to " + when);
+        if (initiator != null) {
+            MessageUtils.sendMessage(initiator, MSG_RESTORE_AT_STARTED, region.getId(), when);
+        }
+
+        changeLog.replay(region.getId(), time).thenAcceptAsync(pointInTime -> {
+            if (pointInTime == null) {
+                finishRestoreAt(region, initiator, when, false);
+                future.complete(false);
+                return;
+            }
+            ChangeReplay replay;
+            try {
+                replay = new ChangeReplay(plugin.getSnapshotManager().openStream(region.getId()), pointInTime.getStates());
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to open the snapshot of region: " + region.getId(), e);
+                finishRestoreAt(region, initiator, when, false);
+                future.complete(false);
+                return;
+            }
+            MessageUtils.debug("Replaying " + pointInTime.getRecords() + " logged changes over region " + region.getId());
+
+            RestoreJob job = RestoreJob.forReplay(plugin, region, world, plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow(), replay);
+            regenScheduler.submit(job);
+            job.getFuture().thenAccept(success -> {
+                if (success) {
+                    changeLog.rebase(region.getId(), pointInTime);
+                } else {
+                    changeLog.end(region.getId());
+                }
+                finishRestoreAt(region, initiator, when, success);
+                saveIfConfigured(success);
+                future.complete(success);
+            });
+        }, plugin.getExecutors().mainThread()).exceptionally(error -> {
+            plugin.getLogger().log(Level.SEVERE, "Failed to replay the change log of region: " + region.getId(), error);
+            finishRestoreAt(region, initiator, when, false);
+            future.complete(false);
+            return null;
+        });
+        return future;
+    }
+
+    private void finishRestoreAt(com.minecraft.regionregen.models.Region region, Player initiator, String when, boolean success) {
+        if (success) {
+            region.recordRegeneration();
+            MessageUtils.log("§aRestored region " + region.getId() + " to " + when);
+        } else {
+            MessageUtils.log("§cFailed to restore region " + region.getId() + " to " + when);
+        }
+        if (initiator != null && initiator.isOnline()) {
+            MessageUtils.sendMessage(initiator, success ? MSG_RESTORE_AT_COMPLETED : MSG_RESTORE_AT_FAILED, region.getId(), when);
+        }
+        regenerationInProgress.put(region.getId(), false);
+    }
+
+    /**
+     * Regenerate a region by pasting a WorldEdit clipboard over it, with all
+     * block side effects off. The clipboard's minimum corner is placed on the
+     * region's minimum corner and the whole clipboard box is pasted, so masks
+     * of non-cuboid regions are not applied. Must be called on the main thread.
+     *
+     * @param region The region to regenerate
+     * @param clipboard The clipboard to paste, e.g. from {@link SchematicBridge#readSchematic(File)}
+     * @param initiator The player who initiated the regeneration (can be null)
+     * @return True if the clipboard was pasted
+     */
+    public boolean regenerateFromClipboard(com.minecraft.regionregen.models.Region region, Clipboard clipboard, Player initiator) {
+        World world = Bukkit.getWorld(region.getWorldName());
+        if (world == null || isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())) {
+            return false;
+        }
+
+        if (plugin.getConfigManager().getSettings().getRegeneration().isNotifyNearbyPlayers()) {
+            notifyNearbyPlayers(region);
+        }
+
+        boolean success;
+        try {
+            // Paste positions the clipboard origin, so shift it to line the minimum corners up
+            BlockVector3 to = BukkitAdapter.asBlockVector(region.getMinPoint())
+                    .add(clipboard.getOrigin().subtract(clipboard.getMinimumPoint()));
+            int changed = SchematicBridge.paste(world, clipboard, to);
+            MessageUtils.debug("Pasted " + changed + " blocks into region " + region.getId());
+            success = true;
+        } catch (WorldEditException e) {
+            plugin.getLogger().log(Level.SEVERE, "Error pasting clipboard into region: " + region.getId(), e);
+            success = false;
+        }
+
+        changeLog.end(region.getId());
+        finishRegeneration(region, initiator, success);
+        saveIfConfigured(success);
+        return success;
+    }
+
+    /**
+     * Regenerate many regions as one job.
+     *
+     * <p>Regions are planned per world. Snapshot restores of all regions in a
+     * world are merged chunk by chunk, so a chunk shared by several regions
+     * is loaded and written once, and overlapping sections are combined before
+     * they are applied. Regions without a snapshot have the union of their
+     * chunks regenerated, each chunk once.</p>
+     *
+     * @param requested The regions to regenerate
+     * @param initiator The player who initiated the regeneration (can be null)
+     * @return A CompletableFuture with the number of regions regenerated
+     */
+    public CompletableFuture<Integer> regenerateRegions(Collection<com.minecraft.regionregen.models.Region> requested, Player initiator) {
+        Map<World, List<com.minecraft.regionregen.models.Region>> restoreByWorld = new LinkedHashMap<>();
+        Map<World, List<com.minecraft.regionregen.models.Region>> terrainByWorld = new LinkedHashMap<>();
+        Map<String, List<com.minecraft.regionregen.models.Region>> byTemplate = new LinkedHashMap<>();
+        List<com.minecraft.regionregen.models.Region> planned = new ArrayList<>();
+
+        for (com.minecraft.regionregen.models.Region region : requested) {
+            if (isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())) {
+                continue;
+            }
+            World world = Bukkit.getWorld(region.getWorldName());
+            if (world == null) {
+                continue;
+            }
+
+            regenerationInProgress.put(region.getId(), true);
+            planned.add(region);
+            if (region.getTemplate() != null) {
+                byTemplate.computeIfAbsent(region.getTemplate(), t -> new ArrayList<>()).add(region);
+                continue;
+            }
+            Map<World, List<com.minecraft.regionregen.models.Region>> target =
+                    !region.isFromSeed() && plugin.getSnapshotManager().hasSnapshot(region.getId()) ? restoreByWorld : terrainByWorld;
+            target.computeIfAbsent(world, w -> new ArrayList<>()).add(region);
+        }
+
+        if (planned.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        // Report how much chunk work the merge saves
+        Set<Long> uniqueChunks = new HashSet<>();
+        long totalChunks = 0;
+        for (com.minecraft.regionregen.models.Region region : planned) {
+            totalChunks += collectChunks(region, uniqueChunks);
+        }
+        MessageUtils.log("§aStarting regeneration of " + planned.size() + " regions (" + uniqueChunks.size()
+                + " chunks, " + (totalChunks - uniqueChunks.size()) + " shared)");
+        if (initiator != null) {
+            MessageUtils.sendMessage(initiator, MSG_BULK_STARTED, planned.size(), uniqueChunks.size());
+        }
+
+        if (plugin.getConfigManager().getSettings().getRegeneration().isNotifyNearbyPlayers()) {
+            for (com.minecraft.regionregen.models.Region region : planned) {
+                notifyNearbyPlayers(region);
+            }
+        }
+
+        List<CompletableFuture<Integer>> jobs = new ArrayList<>();
+        for (Map.Entry<World, List<com.minecraft.regionregen.models.Region>> entry : restoreByWorld.entrySet()) {
+            List<com.minecraft.regionregen.models.Region> group = entry.getValue();
+            jobs.add(restoreFromSnapshots(entry.getKey(), group).thenApply(success -> finishGroup(group, success)));
+        }
+        for (Map.Entry<String, List<com.minecraft.regionregen.models.Region>> entry : byTemplate.entrySet()) {
+            jobs.add(restoreFromTemplate(entry.getKey(), entry.getValue(), null));
+        }
+        for (Map.Entry<World, List<com.minecraft.regionregen.models.Region>> entry : terrainByWorld.entrySet()) {
+            List<com.minecraft.regionregen.models.Region> group = entry.getValue();
+            jobs.add(regenerateTerrain(entry.getKey(), group).thenApply(success -> finishGroup(group, success)));
+        }
+
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        CompletableFuture.allOf(jobs.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            int regenerated = 0;
+            for (CompletableFuture<Integer> job : jobs) {
+                regenerated += job.getNow(0);
+            }
+            saveIfConfigured(regenerated > 0);
+
+            MessageUtils.log("§aCompleted regeneration of " + regenerated + " of " + planned.size() + " regions");
+            if (initiator != null && initiator.isOnline()) {
+                MessageUtils.sendMessage(initiator, MSG_BULK_COMPLETED, regenerated, planned.size());
+            }
+            future.complete(regenerated);
+        });
+        return future;
+    }
+
+    private int finishGroup(List<com.minecraft.regionregen.models.Region> group, boolean success) {
+        for (com.minecraft.regionregen.models.Region region : group) {
+            finishRegeneration(region, null, success);
+        }
+        return success ? group.size() : 0;
+    }
+
+    /**
+     * Find regions by ID, glob or world.
+     *
+     * <p>{@code world:<name>} selects every region in a world, a pattern with
+     * {@code *} or {@code ?} is matched as a glob against region IDs, and
+     * anything else is an exact ID.</p>
+     *
+     * @param selector The selector
+     * @return The matching regions, sorted by ID
+     */
+    public List<com.minecraft.regionregen.models.Region> findRegions(String selector) {
+        List<com.minecraft.regionregen.models.Region> matches = new ArrayList<>();
+
+        if (selector.regionMatches(true, 0, "world:", 0, 6)) {
+            String worldName = selector.substring(6);
+            for (com.minecraft.regionregen.models.Region region : regions.values()) {
+                if (region.getWorldName().equalsIgnoreCase(worldName)) {
+                    matches.add(region);
                 }
             }
-        }.runTaskAsynchronously(plugin);
+        } else if (isGlob(selector)) {
+            forEachMatching(filterPrefix(selector), globToPattern(selector), matches::add);
+        } else {
+            com.minecraft.regionregen.models.Region region = regions.get(selector);
+            if (region != null) {
+                matches.add(region);
+            }
+        }
 
+        // Already in ID order, the index is sorted
+        return matches;
+    }
+
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Add the chunks a region covers to a set
+     *
+     * @param region The region
+     * @param chunks The set to add packed chunk keys to
+     * @return The number of chunks the region covers
+     */
+    private static int collectChunks(com.minecraft.regionregen.models.Region region, Set<Long> chunks) {
+        int minChunkX = region.getMinPoint().getBlockX() >> 4;
+        int minChunkZ = region.getMinPoint().getBlockZ() >> 4;
+        int maxChunkX = region.getMaxPoint().getBlockX() >> 4;
+        int maxChunkZ = region.getMaxPoint().getBlockZ() >> 4;
+        RegionMask mask = region.getMask();
+
+        int count = 0;
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                if (mask == null || mask.intersectsChunk(cx, cz)) {
+                    chunks.add(ChunkWork.key(cx, cz));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Restore regions of one world from their snapshots as a single merged job
+     */
+    private CompletableFuture<Boolean> restoreFromSnapshots(World world, List<com.minecraft.regionregen.models.Region> group) {
+        RestoreJob job = new RestoreJob(plugin, group, world, plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow());
+        regenScheduler.submit(job);
+        return job.getFuture().thenApply(success -> rebaseChangeLogs(group, success));
+    }
+
+    /**
+     * Restore a region from its snapshot, unless validating it shows that it
+     * already matches. Regions known to have been mined are restored right
+     * away, and so is everything while unloaded chunks are deferred, since
+     * validating would load them.
+     */
+    private CompletableFuture<Boolean> restoreUnlessClean(World world, com.minecraft.regionregen.models.Region region) {
+        RegenerationSettings settings = plugin.getConfigManager().getSettings().getRegeneration();
+        if (!settings.isSkipClean() || settings.isDeferUnloaded() || region.getMinedBlocks() != 0) {
+            return restoreFromSnapshots(world, Collections.singletonList(region));
+        }
+
+        return plugin.getSnapshotManager().validateSnapshot(region, true).thenComposeAsync(validation -> {
+            if (validation == null || !validation.isClean()) {
+                return restoreFromSnapshots(world, Collections.singletonList(region));
+            }
+            MessageUtils.log("§aRegion " + region.getId() + " already matches its snapshot (" + validation.getSectionsChecked()
+                    + " sections checked in " + String.format("%.1f", validation.getHashMillis()) + " ms), skipping the restore.");
+            return CompletableFuture.completedFuture(rebaseChangeLogs(Collections.singletonList(region), true));
+        }, plugin.getExecutors().mainThread());
+    }
+
+    /**
+     * Start new change log segments for regions that now match their snapshots,
+     * or end them when a restore failed part way
+     *
+     * @return The restore's outcome
+     */
+    private boolean rebaseChangeLogs(List<com.minecraft.regionregen.models.Region> group, boolean success) {
+        for (com.minecraft.regionregen.models.Region region : group) {
+            if (success) {
+                changeLog.rebase(region.getId());
+            } else {
+                changeLog.end(region.getId());
+            }
+        }
+        return success;
+    }
+
+    private boolean endChangeLogs(List<com.minecraft.regionregen.models.Region> group, boolean success) {
+        for (com.minecraft.regionregen.models.Region region : group) {
+            changeLog.end(region.getId());
+        }
+        return success;
+    }
+
+    /**
+     * Restore regions from a template. The template is decoded once and every
+     * target gets its own job reading the same decoded sections, so targets
+     * in any world are restored concurrently for the cost of one decode.
+     *
+     * @param templateId The template region's ID
+     * @param targets The regions to restore, marked as in progress by the caller
+     * @param initiator The player who initiated the regeneration (can be null)
+     * @return A CompletableFuture with the number of targets restored
+     */
+    private CompletableFuture<Integer> restoreFromTemplate(String templateId, List<com.minecraft.regionregen.models.Region> targets,
+                                                           Player initiator) {
+        if (!regions.containsKey(templateId) || !plugin.getSnapshotManager().hasSnapshot(templateId)) {
+            MessageUtils.log("§cCannot regenerate " + describe(targets) + ": template " + templateId + " has no snapshot.");
+            for (com.minecraft.regionregen.models.Region target : targets) {
+                finishRegeneration(target, initiator, false);
+            }
+            return CompletableFuture.completedFuture(0);
+        }
+
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        plugin.getSnapshotManager().loadTemplate(templateId).thenAccept(template -> {
+            List<CompletableFuture<Boolean>> jobs = new ArrayList<>();
+            for (com.minecraft.regionregen.models.Region target : targets) {
+                World world = Bukkit.getWorld(target.getWorldName());
+                if (template == null || world == null) {
+                    finishRegeneration(target, initiator, false);
+                    continue;
+                }
+                // Deferred chunks of an earlier restore must not overwrite the template later
+                regenScheduler.getDeferredRestores().forget(target.getId());
+                RestoreJob job = RestoreJob.forTemplate(plugin, template, target, world,
+                        plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow());
+                regenScheduler.submit(job);
+                jobs.add(job.getFuture().thenApply(success -> {
+                    changeLog.end(target.getId());
+                    finishRegeneration(target, initiator, success);
+                    return success;
+                }));
+            }
+
+            CompletableFuture.allOf(jobs.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+                int restored = 0;
+                for (CompletableFuture<Boolean> job : jobs) {
+                    if (job.getNow(false)) {
+                        restored++;
+                    }
+                }
+                future.complete(restored);
+            });
+        });
         return future;
     }
 
+    /**
+     * Resume restores that were interrupted by a shutdown or crash, from their
+     * last checkpoint. Regions that cannot be resumed are reported, since they
+     * may be left partially restored.
+     */
+    public void resumeInterruptedRegenerations() {
+        List<RestoreCheckpoint> checkpoints = regenScheduler.getCheckpoints().load();
+        if (checkpoints.isEmpty()) {
+            return;
+        }
+        if (plugin.getConfigManager().getSettings().getRegeneration().getCheckpointIntervalSeconds() <= 0) {
+            // Checkpoints are off: resume what is left, but do not leave the file behind to resume again
+            regenScheduler.getCheckpoints().save(Collections.emptyList(), false);
+        }
+
+        for (RestoreCheckpoint checkpoint : checkpoints) {
+            World world = checkpoint.getWorldName() == null ? null : Bukkit.getWorld(checkpoint.getWorldName());
+            List<com.minecraft.regionregen.models.Region> group = new ArrayList<>();
+            List<Long> generations = new ArrayList<>();
+            for (String regionId : checkpoint.getRegionIds()) {
+                com.minecraft.regionregen.models.Region region = regions.get(regionId);
+                if (region == null || world == null || !plugin.getSnapshotManager().hasSnapshot(regionId)
+                        || isRegenerationInProgress(regionId)) {
+                    plugin.getLogger().warning("Cannot resume the interrupted regeneration of region " + regionId
+                            + ", it may be partially restored. Regenerate it again to fix it.");
+                    continue;
+                }
+                group.add(region);
+                generations.add(plugin.getSnapshotManager().getGeneration(regionId));
+            }
+            if (group.isEmpty()) {
+                continue;
+            }
+
+            // A checkpoint only lines up with the exact snapshots it was taken against
+            RestoreCheckpoint resume = checkpoint;
+            if (group.size() != checkpoint.getRegionIds().size() || !generations.equals(checkpoint.getGenerations())) {
+                resume = checkpoint.restart(generations);
+                MessageUtils.log("§eSnapshots changed since regeneration of " + describe(group) + " was interrupted, restarting it.");
+            } else if (checkpoint.isStarted()) {
+                MessageUtils.log("§aResuming regeneration of " + describe(group) + " after chunk "
+                        + checkpoint.getChunkX() + ", " + checkpoint.getChunkZ());
+            } else {
+                MessageUtils.log("§aRestarting interrupted regeneration of " + describe(group));
+            }
+
+            for (com.minecraft.regionregen.models.Region region : group) {
+                regenerationInProgress.put(region.getId(), true);
+            }
+            RestoreJob job = new RestoreJob(plugin, group, world, plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow(), resume);
+            regenScheduler.submit(job);
+            job.getFuture().thenAccept(success -> saveIfConfigured(finishGroup(group, rebaseChangeLogs(group, success)) > 0));
+        }
+    }
+
+    private static String describe(List<com.minecraft.regionregen.models.Region> group) {
+        StringBuilder sb = new StringBuilder();
+        for (com.minecraft.regionregen.models.Region region : group) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(region.getId());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write fresh terrain from the world generator into regions of one world.
+     * Each chunk is generated once in a scratch world, and only the blocks
+     * inside the regions are copied, through the regen scheduler's budget.
+     * Fails unless regeneration.seed-terrain is on, see {@link GeneratedTerrain}
+     * for why it is off by default.
+     */
+    private CompletableFuture<Boolean> regenerateTerrain(World world, List<com.minecraft.regionregen.models.Region> group) {
+        RegenerationSettings settings = plugin.getConfigManager().getSettings().getRegeneration();
+        if (!settings.isSeedTerrain()) {
+            MessageUtils.log("§cCannot regenerate " + describe(group) + " from the world seed: regeneration.seed-terrain is off.");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Set<Long> chunkSet = new HashSet<>();
+        for (com.minecraft.regionregen.models.Region region : group) {
+            collectChunks(region, chunkSet);
+        }
+        // Restore jobs read in snapshot order: by chunk X, then chunk Z
+        long[] chunks = chunkSet.stream()
+                .sorted(Comparator.comparingInt(ChunkWork::keyX).thenComparingInt(ChunkWork::keyZ))
+                .mapToLong(Long::longValue)
+                .toArray();
+
+        GeneratedTerrain terrain = GeneratedTerrain.start(plugin, regenScheduler.getScratchWorlds(), world, group, chunks,
+                settings.getDecodeWindow(), settings.getSeedChunksPerTick());
+        if (terrain == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        RestoreJob job = RestoreJob.forTerrain(plugin, group, world, settings.getDecodeWindow(), terrain);
+        regenScheduler.submit(job);
+        return job.getFuture().thenApply(success -> endChangeLogs(group, success));
+    }
+
+    /**
+     * Record the outcome of a regeneration and notify the initiator
+     *
+     * @param region The region that was regenerated
+     * @param initiator The player who initiated the regeneration (can be null)
+     * @param success Whether the regeneration succeeded
+     */
+    private void finishRegeneration(com.minecraft.regionregen.models.Region region, Player initiator, boolean success) {
+        if (success) {
+            // Record the regeneration
+            region.recordRegeneration();
+
+            // Log completion
+            MessageUtils.log("§aCompleted regeneration of region: " + region.getId());
+            if (initiator != null && initiator.isOnline()) {
+                MessageUtils.sendMessage(initiator, MSG_REGEN_COMPLETED, region.getId());
+            }
+        } else {
+            MessageUtils.log("§cFailed to regenerate region: " + region.getId());
+            if (initiator != null && initiator.isOnline()) {
+                MessageUtils.sendMessage(initiator, MSG_REGEN_FAILED, region.getId());
+            }
+        }
+
+        regenerationInProgress.put(region.getId(), false);
+    }
+
+    /**
+     * Save the updated region data if regions changed and saving on modification is enabled
+     *
+     * @param changed Whether any region was modified
+     */
+    private void saveIfConfigured(boolean changed) {
+        if (changed && plugin.getConfigManager().getSettings().getStorage().isSaveOnModify()) {
+            saveRegions();
+        }
+    }
+
+    /**
+     * Capture the current state of a region as its snapshot
+     *
+     * @param region The region to capture
+     * @param initiator The player to notify when done (can be null)
+     * @return A CompletableFuture that completes when the snapshot is written
+     */
+    public CompletableFuture<Boolean> captureSnapshot(com.minecraft.regionregen.models.Region region, Player initiator) {
+        if (isRegenerationInProgress(region.getId())) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // Report back on the main thread
+        return plugin.getSnapshotManager().captureSnapshot(region).whenCompleteAsync((success, error) -> {
+            // The region matches its new snapshot, changes from here on are logged and counted against it
+            if (Boolean.TRUE.equals(success)) {
+                changeLog.rebase(region.getId());
+                region.resetMined();
+                countBlocks(region);
+            }
+            if (initiator == null || !initiator.isOnline()) {
+                return;
+            }
+            if (Boolean.TRUE.equals(success)) {
+                MessageUtils.sendMessage(initiator, MSG_SNAPSHOT_SAVED, region.getId());
+            } else {
+                MessageUtils.sendMessage(initiator, MSG_SNAPSHOT_FAILED, region.getId());
+            }
+        }, plugin.getExecutors().mainThread());
+    }
+
+    /**
+     * Import a snapshot bundle exported by this or another server. A region
+     * the bundle names that does not exist yet is created from it; one that
+     * exists must have the same world and bounds, and takes the bundle's
+     * shape, threshold and snapshot. The region is regenerated to the
+     * snapshot on its next regeneration.
+     *
+     * @param file The bundle file
+     * @param creatorName Name recorded as the creator of a new region
+     * @return A CompletableFuture with what was copied, or null if the import failed; completes on the main thread
+     */
+    public CompletableFuture<SnapshotBundle.Transfer> importBundle(File file, String creatorName) {
+        SnapshotManager snapshots = plugin.getSnapshotManager();
+        return snapshots.readBundle(file).thenComposeAsync(bundle -> {
+            if (bundle == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            String problem = checkBundle(bundle);
+            if (problem != null) {
+                plugin.getLogger().log(Level.WARNING, "Cannot import bundle " + file.getName() + ": " + problem);
+                return CompletableFuture.completedFuture(null);
+            }
+            return snapshots.importBundle(bundle, file).thenApplyAsync(transfer -> {
+                if (transfer != null) {
+                    applyBundle(bundle, creatorName);
+                }
+                return transfer;
+            }, plugin.getExecutors().mainThread());
+        }, plugin.getExecutors().mainThread());
+    }
+
+    /**
+     * @return Why the bundle cannot be imported, or null if it can
+     */
+    private String checkBundle(SnapshotBundle bundle) {
+        String id = bundle.getRegionId();
+        if (Bukkit.getWorld(bundle.getWorldName()) == null) {
+            return "world " + bundle.getWorldName() + " does not exist";
+        }
+        com.minecraft.regionregen.models.Region region = regions.get(id);
+        if (region == null) {
+            return null;
+        }
+        if (isRegenerationInProgress(id) || plugin.getSnapshotManager().isCapturing(id)) {
+            return "region " + id + " is busy";
+        }
+        int[] min = bundle.getMin();
+        int[] max = bundle.getMax();
+        Location regionMin = region.getMinPoint();
+        Location regionMax = region.getMaxPoint();
+        boolean sameBounds = region.getWorldName().equals(bundle.getWorldName())
+                && regionMin.getBlockX() == min[0] && regionMin.getBlockY() == min[1] && regionMin.getBlockZ() == min[2]
+                && regionMax.getBlockX() == max[0] && regionMax.getBlockY() == max[1] && regionMax.getBlockZ() == max[2];
+        return sameBounds ? null : "region " + id + " exists here with other bounds, delete it first";
+    }
+
+    /**
+     * Create or update the region of an imported bundle
+     */
+    private void applyBundle(SnapshotBundle bundle, String creatorName) {
+        String id = bundle.getRegionId();
+        RegionMask mask = bundle.getMask();
+        try {
+            if (mask != null) {
+                mask.write(getMaskFile(id));
+            } else {
+                getMaskFile(id).delete();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to save mask of region: " + id, e);
+        }
+
+        com.minecraft.regionregen.models.Region region = regions.get(id);
+        if (region == null) {
+            World world = Bukkit.getWorld(bundle.getWorldName());
+            int[] min = bundle.getMin();
+            int[] max = bundle.getMax();
+            region = new com.minecraft.regionregen.models.Region(id, bundle.getWorldName(),
+                    new Location(world, min[0], min[1], min[2]), new Location(world, max[0], max[1], max[2]), creatorName);
+            regions.put(id, region);
+        } else {
+            unindexChunks(region);
+        }
+        region.setMask(mask != null ? bundle.getShape() : RegionMask.SHAPE_CUBOID, mask);
+        indexChunks(region);
+
+        region.setRegenThreshold(bundle.getRegenThreshold());
+        // The log so far is against the replaced snapshot; it starts again on the next regeneration
+        changeLog.end(id);
+        autoRegen.forget(id);
+        countBlocks(region);
+        saveIfConfigured(true);
+    }
+
+    /**
+     * Get the log of block changes inside regions
+     *
+     * @return The change log
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Get the sweep that regenerates regions once enough of them was mined
+     *
+     * @return The automatic regeneration
+     */
+    public AutoRegen getAutoRegen() {
+        return autoRegen;
+    }
+
+    /**
+     * Get the chunks waiting to be restored when they next load
+     *
+     * @return The deferred restores
+     */
+    public DeferredRestores getDeferredRestores() {
+        return regenScheduler.getDeferredRestores();
+    }
+
+    /**
+     * Get the scratch worlds fresh terrain is generated in
+     *
+     * @return The scratch world pool
+     */
+    public ScratchWorlds getScratchWorlds() {
+        return regenScheduler.getScratchWorlds();
+    }
+
+    /**
+     * Get the scheduler driving restore jobs
+     *
+     * @return The regen scheduler
+     */
+    public RegenScheduler getRegenScheduler() {
+        return regenScheduler;
+    }
+
+    /**
+     * Cancel running regenerations, used on shutdown
+     */
+    public void shutdown() {
+        autoRegen.shutdown();
+        regenScheduler.cancelAll();
+        changeLog.shutdown();
+    }
+
     /**
      * Notify players near a region that it's being regenerated
      *
@@ -315,17 +1463,22 @@ public class RegionManager {
         World world = Bukkit.getWorld(region.getWorldName());
         if (world == null) return;
 
-        int radius = plugin.getConfigManager().getConfig().getInt("regeneration.notification-radius", 100);
+        int radius = plugin.getConfigManager().getSettings().getRegeneration().getNotificationRadius();
         Location center = region.getMinPoint().clone().add(
                 (region.getMaxPoint().getX() - region.getMinPoint().getX()) / 2,
                 (region.getMaxPoint().getY() - region.getMinPoint().getY()) / 2,
                 (region.getMaxPoint().getZ() - region.getMinPoint().getZ()) / 2
         );
 
+        double radiusSquared = (double) radius * radius;
+        List<Player> nearby = new ArrayList<>();
         for (Player player : world.getPlayers()) {
-            if (player.getLocation().distance(center) <= radius) {
-                MessageUtils.sendMessage(player, "§eA nearby region (§6" + region.getId() + "§e) is being regenerated!");
+            if (player.getLocation().distanceSquared(center) <= radiusSquared) {
+                nearby.add(player);
             }
         }
+
+        // Render once, send to everyone in range
+        MessageUtils.sendMessage(nearby, MSG_NEARBY_REGEN, region.getId());
     }
 }
\ No newline at end of file
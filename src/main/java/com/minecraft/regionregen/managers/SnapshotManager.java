@@ -0,0 +1,1125 @@
+package com.minecraft.regionregen.managers;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.models.RegionMask;
+import com.minecraft.regionregen.models.SnapshotBlocks;
+import com.minecraft.regionregen.regen.ChunkWork;
+import com.minecraft.regionregen.snapshot.CachedSectionStream;
+import com.minecraft.regionregen.snapshot.CodecBenchmark;
+import com.minecraft.regionregen.snapshot.SchematicBridge;
+import com.minecraft.regionregen.snapshot.SectionCache;
+import com.minecraft.regionregen.snapshot.SectionCapture;
+import com.minecraft.regionregen.snapshot.SectionDecoder;
+import com.minecraft.regionregen.snapshot.SectionPrefetcher;
+import com.minecraft.regionregen.snapshot.SectionStore;
+import com.minecraft.regionregen.snapshot.SectionStream;
+import com.minecraft.regionregen.snapshot.SnapshotBundle;
+import com.minecraft.regionregen.snapshot.SnapshotDiff;
+import com.minecraft.regionregen.snapshot.SnapshotFormat;
+import com.minecraft.regionregen.snapshot.SnapshotReader;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import com.minecraft.regionregen.snapshot.SnapshotValidation;
+import com.minecraft.regionregen.snapshot.SnapshotWriter;
+import com.minecraft.regionregen.snapshot.TemplateSnapshot;
+import com.minecraft.regionregen.snapshot.UndoStore;
+import com.minecraft.regionregen.utils.MessageUtils;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+
+/**
+ * Captures and stores the block snapshots that regions are restored from
+ */
+public class SnapshotManager {
+
+    private final RegionRegenPlugin plugin;
+    private final File snapshotDir;
+    private final File schematicDir;
+    private final Set<String> capturing = ConcurrentHashMap.newKeySet();
+    // Header generation of each region's snapshot, 0 for none, so callers never read the file for it
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final SectionCache sectionCache;
+    private final SectionStore sectionStore;
+    private final SectionPrefetcher prefetcher;
+    private final UndoStore undoStore;
+    // Decoded templates stay shared for as long as a job still holds them; main thread only
+    private final Map<String, WeakReference<TemplateSnapshot>> templates = new HashMap<>();
+    private final Map<String, CompletableFuture<TemplateSnapshot>> templateLoads = new HashMap<>();
+
+    /**
+     * Create a new SnapshotManager
+     *
+     * @param plugin The plugin instance
+     */
+    public SnapshotManager(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+        this.snapshotDir = new File(plugin.getDataFolder(), "snapshots");
+        this.schematicDir = new File(plugin.getDataFolder(), "schematics");
+        this.sectionCache = new SectionCache(plugin.getConfigManager().getSettings().getSnapshot().getCacheMaxBytes());
+        this.sectionStore = new SectionStore(new File(snapshotDir, "store"), () -> plugin.getConfigManager().getSettings().getSnapshot().getCodec());
+        this.prefetcher = new SectionPrefetcher(plugin.getExecutors().io(), plugin.getConfigManager().getSettings().getSnapshot().getReadAhead());
+        this.undoStore = new UndoStore(new File(snapshotDir, "undo"), sectionStore, plugin.getExecutors().newSerialIo(), plugin.getLogger());
+    }
+
+    /**
+     * Count the section store references of every snapshot and undo generation,
+     * and delete sections nothing uses any more
+     */
+    public void loadStore() {
+        File[] snapshots = snapshotDir.listFiles((dir, name) -> name.endsWith(SnapshotFormat.FILE_EXTENSION));
+        if (snapshots == null) {
+            return;
+        }
+        List<File> files = new ArrayList<>(Arrays.asList(snapshots));
+        files.addAll(undoStore.getAllGenerations());
+
+        List<byte[]> references = new ArrayList<>();
+        boolean complete = true;
+        for (File file : files) {
+            try (SnapshotReader reader = new SnapshotReader(file, null)) {
+                while (reader.nextRecord()) {
+                    references.add(reader.getRecordHash());
+                }
+                if (file.getParentFile().equals(snapshotDir)) {
+                    generations.put(regionIdOf(file), reader.getGeneration());
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to read snapshot " + file.getName() + ", keeping all stored sections", e);
+                complete = false;
+            }
+        }
+
+        int collected = sectionStore.rebuild(references, complete);
+        MessageUtils.debug("Section store: " + sectionStore.getSectionCount() + " sections for " + references.size()
+                + " references, collected " + collected + " unused");
+    }
+
+    private static String regionIdOf(File snapshotFile) {
+        String name = snapshotFile.getName();
+        return URLDecoder.decode(name.substring(0, name.length() - SnapshotFormat.FILE_EXTENSION.length()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the snapshot file of a region
+     *
+     * @param regionId The region ID
+     * @return The snapshot file, which may not exist
+     */
+    public File getSnapshotFile(String regionId) {
+        // Region IDs are user input, keep them from escaping the snapshot folder
+        String name = URLEncoder.encode(regionId, StandardCharsets.UTF_8);
+        return new File(snapshotDir, name + SnapshotFormat.FILE_EXTENSION);
+    }
+
+    /**
+     * Check if a region has a stored snapshot
+     *
+     * @param regionId The region ID
+     * @return True if a snapshot exists
+     */
+    public boolean hasSnapshot(String regionId) {
+        return getSnapshotFile(regionId).isFile();
+    }
+
+    /**
+     * Check if a snapshot of a region is currently being captured
+     *
+     * @param regionId The region ID
+     * @return True if a capture is running
+     */
+    public boolean isCapturing(String regionId) {
+        return capturing.contains(regionId);
+    }
+
+    /**
+     * Delete the stored snapshot of a region.
+     *
+     * <p>The file is read and deleted on the I/O pool. The region counts as
+     * capturing until then, so no capture can write a new snapshot in between.
+     * Must be called on the main thread; the future completes on the main thread.</p>
+     *
+     * @param regionId The region ID
+     * @return A CompletableFuture with true if a snapshot was deleted, false if there
+     *         was none or it is being captured
+     */
+    public CompletableFuture<Boolean> deleteSnapshot(String regionId) {
+        if (!capturing.add(regionId)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        templates.remove(regionId);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                File file = getSnapshotFile(regionId);
+                List<byte[]> references;
+                try {
+                    references = file.isFile() ? SnapshotReader.readReferences(file) : new ArrayList<>();
+                } catch (IOException e) {
+                    // The sections are collected on the next startup instead
+                    references = new ArrayList<>();
+                }
+
+                if (!file.delete()) {
+                    return false;
+                }
+                generations.remove(regionId);
+                sectionCache.invalidate(regionId);
+                sectionStore.releaseAll(references);
+                return true;
+            } finally {
+                capturing.remove(regionId);
+            }
+        }, plugin.getExecutors().io()).thenApplyAsync(deleted -> deleted, plugin.getExecutors().mainThread());
+    }
+
+    /**
+     * Get the generation of a region's snapshot. It changes whenever the
+     * snapshot is replaced, see {@link SnapshotFormat}. Safe to call from any thread.
+     *
+     * @param regionId The region ID
+     * @return The generation, or 0 if the region has no readable snapshot
+     */
+    public long getGeneration(String regionId) {
+        return generations.computeIfAbsent(regionId, id -> {
+            File file = getSnapshotFile(id);
+            try {
+                return file.isFile() ? SnapshotReader.readGeneration(file) : 0L;
+            } catch (IOException e) {
+                return 0L;
+            }
+        });
+    }
+
+    /**
+     * Note a region snapshot that a writer just committed
+     */
+    private void committed(String regionId, SnapshotWriter writer) {
+        generations.put(regionId, writer.getGeneration());
+        sectionCache.invalidate(regionId);
+    }
+
+    /**
+     * Open a region's snapshot for streaming, served from the section cache where possible
+     *
+     * @param regionId The region ID
+     * @return The section stream
+     * @throws IOException If the snapshot cannot be opened
+     */
+    public SectionStream openStream(String regionId) throws IOException {
+        // Pick up size changes from a config reload
+        sectionCache.setMaxBytes(plugin.getConfigManager().getSettings().getSnapshot().getCacheMaxBytes());
+        prefetcher.setDepth(plugin.getConfigManager().getSettings().getSnapshot().getReadAhead());
+        return new CachedSectionStream(sectionCache, sectionStore, prefetcher, getSnapshotFile(regionId), regionId, getGeneration(regionId));
+    }
+
+    /**
+     * Get a region's snapshot decoded as a template, to restore into other regions.
+     *
+     * <p>A template is decoded once and shared: callers asking while it is
+     * being decoded get the same future, and later callers get the same
+     * template for as long as any restore still uses it and the snapshot has
+     * not been captured again. Must be called on the main thread; the future
+     * completes on the main thread.</p>
+     *
+     * @param regionId The template region's ID
+     * @return A CompletableFuture with the template, or null if the snapshot could not be read
+     */
+    public CompletableFuture<TemplateSnapshot> loadTemplate(String regionId) {
+        File file = getSnapshotFile(regionId);
+        WeakReference<TemplateSnapshot> cached = templates.get(regionId);
+        TemplateSnapshot template = cached != null ? cached.get() : null;
+        if (template != null && template.getGeneration() == getGeneration(regionId)) {
+            return CompletableFuture.completedFuture(template);
+        }
+
+        CompletableFuture<TemplateSnapshot> loading = templateLoads.get(regionId);
+        if (loading != null) {
+            return loading;
+        }
+
+        CompletableFuture<TemplateSnapshot> future = CompletableFuture.supplyAsync(() -> {
+            long startedAt = System.currentTimeMillis();
+            try {
+                TemplateSnapshot loaded = TemplateSnapshot.load(regionId, file, sectionStore, prefetcher);
+                MessageUtils.debug("Decoded template " + regionId + " (" + loaded.getSections().size() + " sections, ~"
+                        + loaded.getEstimatedBytes() / 1024 + " KB) in " + (System.currentTimeMillis() - startedAt) + " ms");
+                return loaded;
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to decode template: " + regionId, e);
+                return null;
+            }
+        }, plugin.getExecutors().workers()).thenApplyAsync(result -> {
+            templateLoads.remove(regionId);
+            if (result != null) {
+                templates.put(regionId, new WeakReference<>(result));
+            }
+            return result;
+        }, plugin.getExecutors().mainThread());
+        templateLoads.put(regionId, future);
+        return future;
+    }
+
+    /**
+     * Find the blocks of a region's snapshot that can be mined, i.e. that are
+     * not air or liquid, for measuring how much of the region was mined.
+     * Reads the snapshot on the worker pool; the future completes on the main thread.
+     *
+     * @param regionId The region ID
+     * @return A CompletableFuture with the snapshot's blocks, or null if the snapshot could not be read
+     */
+    public CompletableFuture<SnapshotBlocks> countBlocks(String regionId) {
+        return CompletableFuture.supplyAsync(() -> {
+            SnapshotBlocks blocks = new SnapshotBlocks();
+            try (SectionStream stream = openStream(regionId)) {
+                SnapshotSection section;
+                while ((section = stream.next()) != null) {
+                    String[] palette = section.getPalette();
+                    boolean[] minable = new boolean[palette.length];
+                    for (int i = 0; i < palette.length; i++) {
+                        minable[i] = isMinable(palette[i]);
+                    }
+                    short[] cells = section.getBlocks();
+                    long[] bits = new long[SnapshotSection.SIZE / 64];
+                    for (int i = 0; i < cells.length; i++) {
+                        if (cells[i] != SnapshotSection.NOT_CAPTURED && minable[cells[i]]) {
+                            bits[i >> 6] |= 1L << (i & 63);
+                        }
+                    }
+                    blocks.addSection(section.getX(), section.getY(), section.getZ(), bits);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to count the blocks of region: " + regionId, e);
+                return null;
+            }
+            return blocks;
+        }, plugin.getExecutors().workers()).thenApplyAsync(blocks -> blocks, plugin.getExecutors().mainThread());
+    }
+
+    /**
+     * Measure every section codec on a region's snapshot, see {@link CodecBenchmark}.
+     * Runs on the worker pool; the future completes on the main thread.
+     *
+     * @param regionId The region ID
+     * @return A CompletableFuture with one result per codec, or null if the benchmark failed
+     */
+    public CompletableFuture<List<CodecBenchmark.Result>> benchmarkCodecs(String regionId) {
+        // Not on the I/O pool, the stream waits on reads queued there
+        return CompletableFuture.supplyAsync(() -> {
+            try (SectionStream stream = openStream(regionId)) {
+                return CodecBenchmark.run(stream);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to benchmark codecs on region: " + regionId, e);
+                return null;
+            }
+        }, plugin.getExecutors().workers()).thenApplyAsync(results -> results, plugin.getExecutors().mainThread());
+    }
+
+    private static boolean isMinable(String state) {
+        int properties = state.indexOf('[');
+        String type = properties < 0 ? state : state.substring(0, properties);
+        switch (type) {
+            case "minecraft:air":
+            case "minecraft:cave_air":
+            case "minecraft:void_air":
+            case "minecraft:water":
+            case "minecraft:lava":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Get the cache of decoded snapshot sections
+     *
+     * @return The section cache
+     */
+    public SectionCache getSectionCache() {
+        return sectionCache;
+    }
+
+    /**
+     * Get the prefetcher that reads section payloads ahead of decoders
+     *
+     * @return The section prefetcher
+     */
+    public SectionPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Get the content-addressed store the snapshot sections are kept in
+     *
+     * @return The section store
+     */
+    public SectionStore getSectionStore() {
+        return sectionStore;
+    }
+
+    /**
+     * Get the undo generations recorded by restores
+     *
+     * @return The undo store
+     */
+    public UndoStore getUndoStore() {
+        return undoStore;
+    }
+
+    /**
+     * Capture the current blocks of a region into its snapshot.
+     *
+     * <p>Chunks are copied into {@link ChunkSnapshot}s on the main thread a few
+     * per tick and encoded to disk on the worker pool. The two sides are joined by
+     * a bounded queue, so memory stays flat however large the region is. Chunks
+     * a non-cuboid region does not reach into are never loaded.</p>
+     *
+     * @param region The region to capture
+     * @return A CompletableFuture that completes when the snapshot is written
+     */
+    public CompletableFuture<Boolean> captureSnapshot(Region region) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        World world = region.getWorld();
+        if (world == null || !capturing.add(region.getId())) {
+            future.complete(false);
+            return future;
+        }
+
+        int[] min = {region.getMinPoint().getBlockX(), region.getMinPoint().getBlockY(), region.getMinPoint().getBlockZ()};
+        int[] max = {region.getMaxPoint().getBlockX(), region.getMaxPoint().getBlockY(), region.getMaxPoint().getBlockZ()};
+        RegionMask mask = region.getMask();
+        long[] chunkKeys = memberChunks(min, max, mask);
+
+        int window = plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow();
+        int chunksPerTick = plugin.getConfigManager().getSettings().getSnapshot().getCaptureChunksPerTick();
+        CaptureEncoder encoder = new CaptureEncoder(region.getId(), world.getName(), min, max, mask, chunkKeys.length, window, future);
+        // Opens the writer, and commits at once when there are no chunks
+        encoder.schedule();
+
+        // Producer: copies chunks on the main thread, backing off while the encoder catches up
+        new BukkitRunnable() {
+            private int next = 0;
+
+            @Override
+            public void run() {
+                if (encoder.aborted.get() || !plugin.isEnabled()) {
+                    encoder.aborted.set(true);
+                    // Lets the encoder drop the unfinished file
+                    encoder.schedule();
+                    cancel();
+                    return;
+                }
+
+                for (int i = 0; i < chunksPerTick && next < chunkKeys.length; i++) {
+                    if (encoder.queue.remainingCapacity() == 0) {
+                        break;
+                    }
+
+                    long key = chunkKeys[next++];
+                    encoder.queue.offer(world.getChunkAt(ChunkWork.keyX(key), ChunkWork.keyZ(key)).getChunkSnapshot(false, false, false));
+                }
+                encoder.schedule();
+
+                if (next >= chunkKeys.length) {
+                    cancel();
+                }
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+
+        return future;
+    }
+
+    /**
+     * Encodes the chunks of a capture to disk. Runs on the worker pool whenever
+     * the producer queued chunks, and returns once the queue is empty instead of
+     * waiting for more, so a capture never holds a worker while the main thread
+     * copies chunks. At most one run is queued or running at a time.
+     */
+    private final class CaptureEncoder implements Runnable {
+
+        private final String regionId;
+        private final String worldName;
+        private final int[] min;
+        private final int[] max;
+        private final RegionMask mask;
+        private final int chunkCount;
+        private final CompletableFuture<Boolean> future;
+        private final BlockingQueue<ChunkSnapshot> queue;
+        private final AtomicBoolean aborted = new AtomicBoolean(false);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        // Only touched by runs, which never overlap
+        private SnapshotWriter writer;
+        private int encoded;
+
+        private CaptureEncoder(String regionId, String worldName, int[] min, int[] max, RegionMask mask, int chunkCount,
+                               int window, CompletableFuture<Boolean> future) {
+            this.regionId = regionId;
+            this.worldName = worldName;
+            this.min = min;
+            this.max = max;
+            this.mask = mask;
+            this.chunkCount = chunkCount;
+            this.future = future;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, window));
+        }
+
+        /**
+         * Queue a run unless one is queued or running already
+         */
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                plugin.getExecutors().workers().execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (writer == null) {
+                    writer = new SnapshotWriter(getSnapshotFile(regionId), worldName, min, max, sectionStore);
+                }
+                ChunkSnapshot chunk;
+                while (!aborted.get() && (chunk = queue.poll()) != null) {
+                    for (SnapshotSection section : SectionCapture.encodeChunk(chunk, min, max, mask)) {
+                        writer.write(section);
+                    }
+                    encoded++;
+                }
+                if (aborted.get()) {
+                    throw new IOException("Capture aborted");
+                }
+
+                if (encoded == chunkCount) {
+                    writer.commit();
+                    committed(regionId, writer);
+                    writer.close();
+                    MessageUtils.debug("Captured snapshot of region " + regionId + " (" + writer.getSectionCount() + " sections)");
+                    capturing.remove(regionId);
+                    future.complete(true);
+                    // Left scheduled, the capture is over
+                    return;
+                }
+            } catch (Exception e) {
+                aborted.set(true);
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                plugin.getLogger().log(Level.SEVERE, "Failed to capture snapshot of region: " + regionId, e);
+                capturing.remove(regionId);
+                future.complete(false);
+                return;
+            }
+
+            scheduled.set(false);
+            // A chunk queued after the queue looked empty, before the flag was cleared
+            if (!queue.isEmpty() || aborted.get()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Compare a region's live blocks with its snapshot.
+     *
+     * <p>Record headers are read on the I/O pool and grouped by chunk. Chunks
+     * are then copied into {@link ChunkSnapshot}s on the main thread a few per
+     * tick and compared on the worker pool in parallel, with at most a decode
+     * window of chunks in flight. Sections whose hash matches the snapshot are
+     * skipped without reading the stored payload.</p>
+     *
+     * @param region The region to compare
+     * @return A CompletableFuture with the diff, or null if the comparison failed
+     */
+    public CompletableFuture<SnapshotDiff> diffSnapshot(Region region) {
+        CompletableFuture<SnapshotDiff> future = new CompletableFuture<>();
+
+        World world = region.getWorld();
+        if (world == null || !hasSnapshot(region.getId())) {
+            future.complete(null);
+            return future;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        int chunksPerTick = plugin.getConfigManager().getSettings().getSnapshot().getCaptureChunksPerTick();
+        plugin.getExecutors().io().execute(() -> {
+            SnapshotRecords records = readRecords(region, world, future);
+            if (records == null) {
+                return;
+            }
+            SnapshotDiff diff = new SnapshotDiff(region.getId(), records.min, records.max, region.getMask());
+            scheduleCompare(region, world, records.chunks, chunksPerTick, () -> false, (chunk, chunkRecords) -> {
+                Map<BlockData, Long> stateHashes = new HashMap<>();
+                for (DiffRecord record : chunkRecords) {
+                    diff.compareSection(chunk, record.sectionY, record.hash, record.check, sectionStore, stateHashes);
+                }
+            }, () -> {
+                diff.finish(System.currentTimeMillis() - startedAt);
+                MessageUtils.debug("Compared region " + region.getId() + ": " + diff.getBlocksChanged() + " blocks changed, "
+                        + diff.getSectionsUnchanged() + "/" + diff.getSectionsCompared() + " sections unchanged");
+                future.complete(diff);
+            }, future);
+        });
+
+        return future;
+    }
+
+    /**
+     * Check which sections of a region's live blocks diverge from its snapshot.
+     *
+     * <p>Works like {@link #diffSnapshot}, but only hashes live sections and
+     * compares them with the checks stored in the snapshot records, so no
+     * stored payload is read. Chunks are copied as fast as the main thread
+     * budget allows rather than a fixed few per tick.</p>
+     *
+     * @param region The region to validate
+     * @param stopAtFirst Whether to stop at the first diverging section, when only cleanliness matters
+     * @return A CompletableFuture with the validation, or null if it failed
+     */
+    public CompletableFuture<SnapshotValidation> validateSnapshot(Region region, boolean stopAtFirst) {
+        CompletableFuture<SnapshotValidation> future = new CompletableFuture<>();
+
+        World world = region.getWorld();
+        if (world == null || !hasSnapshot(region.getId())) {
+            future.complete(null);
+            return future;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        plugin.getExecutors().io().execute(() -> {
+            SnapshotRecords records = readRecords(region, world, future);
+            if (records == null) {
+                return;
+            }
+            SnapshotValidation validation = new SnapshotValidation(region.getId(), records.min, records.max, region.getMask(), stopAtFirst);
+            scheduleCompare(region, world, records.chunks, Integer.MAX_VALUE, validation::isStopped, (chunk, chunkRecords) -> {
+                Map<BlockData, Long> stateHashes = new HashMap<>();
+                for (DiffRecord record : chunkRecords) {
+                    if (validation.isStopped()) {
+                        return;
+                    }
+                    validation.checkSection(chunk, record.sectionY, record.hash, record.check, stateHashes);
+                }
+            }, () -> {
+                validation.finish(System.currentTimeMillis() - startedAt);
+                MessageUtils.debug("Validated region " + region.getId() + ": " + validation.getDivergedSections().size() + " of "
+                        + validation.getSectionsChecked() + " sections diverge, " + String.format("%.2f", validation.getHashMillis())
+                        + " ms hashing");
+                future.complete(validation);
+            }, future);
+        });
+
+        return future;
+    }
+
+    /**
+     * Read the record headers of a region's snapshot, grouped by chunk in
+     * snapshot order. Completes the future with null if the snapshot cannot be read.
+     *
+     * @return The records, or null if reading failed
+     */
+    private SnapshotRecords readRecords(Region region, World world, CompletableFuture<?> future) {
+        SnapshotRecords records = new SnapshotRecords();
+        try (SnapshotReader reader = new SnapshotReader(getSnapshotFile(region.getId()), sectionStore)) {
+            if (!reader.getWorldName().equals(world.getName())) {
+                throw new IOException("Snapshot was taken in world " + reader.getWorldName());
+            }
+            records.min = reader.getMin();
+            records.max = reader.getMax();
+            while (reader.nextRecord()) {
+                DiffRecord record = new DiffRecord(reader.getRecordY(), reader.getRecordHash(), reader.getRecordCheck());
+                records.chunks.computeIfAbsent(ChunkWork.key(reader.getRecordX(), reader.getRecordZ()), k -> new ArrayList<>()).add(record);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to read snapshot of region: " + region.getId(), e);
+            future.complete(null);
+            return null;
+        }
+        return records;
+    }
+
+    /**
+     * Feed live chunks to the worker pool from the main thread, at most the
+     * given number per tick and within the main thread budget
+     *
+     * @param stop Tested before each chunk; once true the remaining chunks are skipped
+     * @param task Compares one chunk with its records on a worker
+     * @param finish Runs once every chunk was compared or skipped, unless comparing failed
+     * @param future Completed with null if comparing fails
+     */
+    private void scheduleCompare(Region region, World world, Map<Long, List<DiffRecord>> records, int chunksPerTick,
+                                 BooleanSupplier stop, CompareTask task, Runnable finish, CompletableFuture<?> future) {
+        if (records.isEmpty()) {
+            finish.run();
+            return;
+        }
+
+        int window = plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow();
+        long budgetNanos = plugin.getConfigManager().getSettings().getPerformance().getMainThreadBudgetMillis() * 1_000_000L;
+        Iterator<Map.Entry<Long, List<DiffRecord>>> chunks = records.entrySet().iterator();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(records.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0 && failure.get() == null) {
+                finish.run();
+            }
+        };
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (failure.get() != null || !plugin.isEnabled()) {
+                    cancel();
+                    if (failure.get() == null) {
+                        future.complete(null);
+                    }
+                    return;
+                }
+
+                long deadline = System.nanoTime() + budgetNanos;
+                for (int i = 0; i < chunksPerTick && chunks.hasNext() && inFlight.get() < window && System.nanoTime() < deadline; i++) {
+                    Map.Entry<Long, List<DiffRecord>> entry = chunks.next();
+                    if (stop.getAsBoolean()) {
+                        done.run();
+                        i--;
+                        continue;
+                    }
+                    long key = entry.getKey();
+                    ChunkSnapshot chunk = world.getChunkAt(ChunkWork.keyX(key), ChunkWork.keyZ(key)).getChunkSnapshot(false, false, false);
+                    inFlight.incrementAndGet();
+
+                    plugin.getExecutors().workers().execute(() -> {
+                        try {
+                            if (failure.get() == null) {
+                                task.compare(chunk, entry.getValue());
+                            }
+                        } catch (Exception e) {
+                            if (failure.compareAndSet(null, e)) {
+                                plugin.getLogger().log(Level.SEVERE, "Failed to compare region with its snapshot: " + region.getId(), e);
+                                future.complete(null);
+                            }
+                        } finally {
+                            inFlight.decrementAndGet();
+                            done.run();
+                        }
+                    });
+                }
+
+                if (!chunks.hasNext()) {
+                    cancel();
+                }
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Compares one live chunk with the snapshot records of that chunk
+     */
+    @FunctionalInterface
+    private interface CompareTask {
+        void compare(ChunkSnapshot chunk, List<DiffRecord> records) throws IOException;
+    }
+
+    /**
+     * Bounds and record headers of a snapshot, see {@link #readRecords}
+     */
+    private static final class SnapshotRecords {
+        private int[] min;
+        private int[] max;
+        private final Map<Long, List<DiffRecord>> chunks = new LinkedHashMap<>();
+    }
+
+    /**
+     * Header of one snapshot record queued for comparison
+     */
+    private static final class DiffRecord {
+        private final int sectionY;
+        private final byte[] hash;
+        private final long check;
+
+        private DiffRecord(int sectionY, byte[] hash, long check) {
+            this.sectionY = sectionY;
+            this.hash = hash;
+            this.check = check;
+        }
+    }
+
+    /**
+     * Get the folder schematics are imported from and exported to
+     *
+     * @return The schematics folder, which may not exist yet
+     */
+    public File getSchematicDirectory() {
+        return schematicDir;
+    }
+
+    /**
+     * Resolve a schematic name inside the schematics folder
+     *
+     * @param name The file name, with or without the .schem extension
+     * @return The schematic file, or null if the name points outside the folder
+     */
+    public File getSchematicFile(String name) {
+        if (!name.contains(".")) {
+            name += SchematicBridge.FILE_EXTENSION;
+        }
+        File file = new File(schematicDir, name);
+        try {
+            // Schematic names are user input, keep them inside the schematics folder
+            if (!file.getCanonicalFile().getParentFile().equals(schematicDir.getCanonicalFile())) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Export a region's snapshot as a Sponge schematic in the schematics folder
+     *
+     * @param region The region to export
+     * @return A CompletableFuture with the written file, or null if the export failed
+     */
+    public CompletableFuture<File> exportSchematic(Region region) {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        File file = getSchematicFile(region.getId());
+        if (file == null || !hasSnapshot(region.getId())) {
+            future.complete(null);
+            return future;
+        }
+
+        // Not on the I/O pool, the stream waits on reads queued there
+        plugin.getExecutors().workers().execute(() -> {
+            try (SectionStream stream = openStream(region.getId())) {
+                long blocks = SchematicBridge.exportSnapshot(region, stream, file);
+                MessageUtils.debug("Exported " + blocks + " blocks of region " + region.getId() + " to " + file.getName());
+                future.complete(file);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to export region " + region.getId() + " to " + file.getName(), e);
+                future.complete(null);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Replace a region's snapshot with the contents of a schematic. The
+     * schematic must have the same dimensions as the region's bounds.
+     *
+     * @param region The region to import into
+     * @param file The schematic file, in any format WorldEdit reads
+     * @return A CompletableFuture that completes with false if the schematic could not be imported
+     */
+    public CompletableFuture<Boolean> importSchematic(Region region, File file) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        World world = region.getWorld();
+        if (world == null || !capturing.add(region.getId())) {
+            future.complete(false);
+            return future;
+        }
+
+        int[] min = {region.getMinPoint().getBlockX(), region.getMinPoint().getBlockY(), region.getMinPoint().getBlockZ()};
+        int[] max = {region.getMaxPoint().getBlockX(), region.getMaxPoint().getBlockY(), region.getMaxPoint().getBlockZ()};
+
+        plugin.getExecutors().io().execute(() -> {
+            try (SnapshotWriter writer = new SnapshotWriter(getSnapshotFile(region.getId()), world.getName(), min, max, sectionStore)) {
+                Clipboard clipboard = SchematicBridge.readSchematic(file);
+                if (!SchematicBridge.fits(clipboard, region)) {
+                    throw new IOException("Schematic " + file.getName() + " is " + clipboard.getDimensions()
+                            + ", which does not match the bounds of region " + region.getId());
+                }
+
+                SchematicBridge.importClipboard(clipboard, region, writer);
+                writer.commit();
+                committed(region.getId(), writer);
+
+                MessageUtils.debug("Imported " + file.getName() + " into region " + region.getId() + " (" + writer.getSectionCount() + " sections)");
+                future.complete(true);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to import " + file.getName() + " into region " + region.getId(), e);
+                future.complete(false);
+            } finally {
+                capturing.remove(region.getId());
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Get the folder snapshot bundles are exported to and imported from
+     *
+     * @return The bundles folder, which may not exist yet
+     */
+    public File getBundleDirectory() {
+        File directory = new File(plugin.getConfigManager().getSettings().getStorage().getBundleDirectory());
+        return directory.isAbsolute() ? directory : new File(plugin.getDataFolder(), directory.getPath());
+    }
+
+    /**
+     * Resolve a bundle name inside the bundles folder
+     *
+     * @param name The file name, with or without the .rrb extension
+     * @return The bundle file, or null if the name points outside the folder
+     */
+    public File getBundleFile(String name) {
+        if (!name.endsWith(SnapshotBundle.FILE_EXTENSION)) {
+            name += SnapshotBundle.FILE_EXTENSION;
+        }
+        File directory = getBundleDirectory();
+        File file = new File(directory, name);
+        try {
+            // Bundle names are user input, keep them inside the bundles folder
+            if (!file.getCanonicalFile().getParentFile().equals(directory.getCanonicalFile())) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Export a region's snapshot as a bundle in the bundles folder.
+     *
+     * <p>A full bundle is written as {@code <region>.rrb}. A delta bundle is
+     * written as {@code <region>.delta.rrb} and leaves out every section the
+     * base bundle carries; importers fill those in from their own store, or
+     * from the base when they lack them.</p>
+     *
+     * @param region The region to export
+     * @param baseName Name of the bundle to make a delta against, or null for a full bundle
+     * @return A CompletableFuture with what was written, or null if the export failed
+     */
+    public CompletableFuture<SnapshotBundle.Transfer> exportBundle(Region region, String baseName) {
+        CompletableFuture<SnapshotBundle.Transfer> future = new CompletableFuture<>();
+        File baseFile = baseName == null ? null : getBundleFile(baseName);
+        if (!hasSnapshot(region.getId()) || (baseName != null && baseFile == null)) {
+            future.complete(null);
+            return future;
+        }
+
+        String encoded = URLEncoder.encode(region.getId(), StandardCharsets.UTF_8);
+        File target = new File(getBundleDirectory(), encoded + (baseFile != null ? ".delta" : "") + SnapshotBundle.FILE_EXTENSION);
+        String shape = region.getShape();
+        int regenThreshold = region.getRegenThreshold();
+        RegionMask mask = region.getMask();
+
+        plugin.getExecutors().io().execute(() -> {
+            try {
+                SnapshotBundle base = null;
+                if (baseFile != null) {
+                    if (baseFile.equals(target)) {
+                        throw new IOException("A delta cannot replace the bundle it is made against");
+                    }
+                    try (SnapshotBundle.Reader reader = SnapshotBundle.open(baseFile)) {
+                        base = reader.getBundle();
+                    }
+                }
+
+                SnapshotBundle bundle = SnapshotBundle.fromSnapshot(region.getId(), shape, regenThreshold, mask, getSnapshotFile(region.getId()));
+                SnapshotBundle.Transfer transfer = bundle.write(target, sectionStore, base, baseFile != null ? baseFile.getName() : null);
+                MessageUtils.debug("Exported region " + region.getId() + " to " + target.getName() + " (" + transfer.getCopied()
+                        + " sections, " + transfer.getSkipped() + " left to the base, " + transfer.getBytes() + " bytes)");
+                future.complete(transfer);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to export region " + region.getId() + " to " + target.getName(), e);
+                future.complete(null);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Read the header and records of a bundle, without its sections
+     *
+     * @param file The bundle file
+     * @return A CompletableFuture with the bundle, or null if it could not be read
+     */
+    public CompletableFuture<SnapshotBundle> readBundle(File file) {
+        CompletableFuture<SnapshotBundle> future = new CompletableFuture<>();
+        plugin.getExecutors().io().execute(() -> {
+            try (SnapshotBundle.Reader reader = SnapshotBundle.open(file)) {
+                future.complete(reader.getBundle());
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to read bundle " + file.getName(), e);
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Replace a region's snapshot with the one in a bundle.
+     *
+     * <p>Sections already in the section store are reused. The rest are
+     * streamed out of the bundle, and out of its base for a delta, each one
+     * checked against its hash before it is stored. The snapshot is only
+     * replaced once every section it refers to is stored, so a delta whose
+     * base is missing leaves the region as it was. Does not touch the region
+     * itself, see {@link com.minecraft.regionregen.managers.RegionManager#importBundle}.</p>
+     *
+     * @param bundle The bundle, as read by {@link #readBundle}
+     * @param file The bundle file
+     * @return A CompletableFuture with what was copied, or null if the import failed
+     */
+    public CompletableFuture<SnapshotBundle.Transfer> importBundle(SnapshotBundle bundle, File file) {
+        CompletableFuture<SnapshotBundle.Transfer> future = new CompletableFuture<>();
+        String regionId = bundle.getRegionId();
+        if (!capturing.add(regionId)) {
+            future.complete(null);
+            return future;
+        }
+
+        plugin.getExecutors().io().execute(() -> {
+            // One reference per distinct section, keeping it stored until the snapshot refers to it
+            List<byte[]> held = new ArrayList<>();
+            try {
+                Map<String, byte[]> missing = new LinkedHashMap<>();
+                Set<String> seen = new HashSet<>();
+                int reused = 0;
+                for (SnapshotBundle.Record record : bundle.getRecords()) {
+                    byte[] hash = record.getHash();
+                    String hex = SectionStore.toHex(hash);
+                    if (!seen.add(hex)) {
+                        continue;
+                    }
+                    if (sectionStore.acquire(hash)) {
+                        held.add(hash);
+                        reused++;
+                    } else {
+                        missing.put(hex, hash);
+                    }
+                }
+
+                int needed = missing.size();
+                long bytes = copySections(file, bundle.getId(), missing, held);
+                int fromBundle = needed - missing.size();
+                if (!missing.isEmpty() && bundle.getBaseName() != null) {
+                    File baseFile = new File(file.getParentFile(), bundle.getBaseName());
+                    if (baseFile.isFile()) {
+                        bytes += copySections(baseFile, bundle.getBaseId(), missing, held);
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    throw new IOException(missing.size() + " sections are neither stored on this server nor in " + file.getName()
+                            + (bundle.getBaseName() != null ? " or its base " + bundle.getBaseName() : "") + ", import a full bundle instead");
+                }
+
+                try (SnapshotWriter writer = new SnapshotWriter(getSnapshotFile(regionId), bundle.getWorldName(), bundle.getMin(), bundle.getMax(), sectionStore)) {
+                    for (SnapshotBundle.Record record : bundle.getRecords()) {
+                        byte[] hash = record.getHash();
+                        // Cannot fail while held, the writer takes this reference over
+                        if (!sectionStore.acquire(hash)) {
+                            throw new IOException("Section " + SectionStore.toHex(hash) + " was removed from the section store during the import");
+                        }
+                        writer.writeReference(record.getX(), record.getY(), record.getZ(), hash, record.getCheck());
+                    }
+                    writer.commit();
+                    committed(regionId, writer);
+                }
+
+                MessageUtils.debug("Imported " + file.getName() + " into region " + regionId + " (" + reused + " sections reused, "
+                        + fromBundle + " from the bundle, " + (needed - fromBundle) + " from its base, " + bytes + " bytes)");
+                future.complete(new SnapshotBundle.Transfer(file, bundle.getRecords().size(), needed, reused, bytes));
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to import bundle " + file.getName() + " into region " + regionId, e);
+                future.complete(null);
+            } finally {
+                sectionStore.releaseAll(held);
+                capturing.remove(regionId);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Copy the missing sections a bundle carries into the section store
+     *
+     * @param file The bundle file
+     * @param expectedId The ID the bundle must have
+     * @param missing Sections still needed by hex hash; copied ones are removed
+     * @param held Receives a reference to each copied section
+     * @return The compressed bytes copied
+     */
+    private long copySections(File file, byte[] expectedId, Map<String, byte[]> missing, List<byte[]> held) throws IOException {
+        long bytes = 0;
+        SectionDecoder decoder = new SectionDecoder();
+        try (SnapshotBundle.Reader reader = SnapshotBundle.open(file)) {
+            if (!Arrays.equals(reader.getBundle().getId(), expectedId)) {
+                throw new IOException(file.getName() + " is not the bundle the delta was made against");
+            }
+            while (!missing.isEmpty() && reader.nextBlob()) {
+                byte[] hash = missing.remove(SectionStore.toHex(reader.getBlobHash()));
+                if (hash == null) {
+                    continue;
+                }
+                byte[] blob = reader.readVerifiedBlob(decoder);
+                sectionStore.putBlob(hash, blob);
+                held.add(hash);
+                bytes += blob.length;
+            }
+        } finally {
+            decoder.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * List the chunks a region has member blocks in, in snapshot record order
+     */
+    private static long[] memberChunks(int[] min, int[] max, RegionMask mask) {
+        int minChunkX = min[0] >> 4;
+        int minChunkZ = min[2] >> 4;
+        int maxChunkX = max[0] >> 4;
+        int maxChunkZ = max[2] >> 4;
+
+        long[] keys = new long[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+        int count = 0;
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cz = minChunkZ; cz <= maxChunkZ; cz++) {
+                if (mask == null || mask.intersectsChunk(cx, cz)) {
+                    keys[count++] = ChunkWork.key(cx, cz);
+                }
+            }
+        }
+        return count == keys.length ? keys : Arrays.copyOf(keys, count);
+    }
+}
@@ -6,6 +6,7 @@ import org.bukkit.World;
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents a region that can be regenerated
@@ -20,6 +21,19 @@ public class Region implements ConfigurationSerializable {
     private Date creationDate;
     private Date lastRegenerationDate;
     private int regenerationCount;
+    private String shape;
+    private String template;
+    private boolean fromSeed;
+    private int regenThreshold;
+    // Blocks in the snapshot that count as minable, -1 until counted
+    private long blockCount = -1;
+    // Blocks of the snapshot removed since the last regeneration, counted by the block listener
+    private final LongAdder minedBlocks = new LongAdder();
+    // Where the snapshot holds blocks, read when the snapshot is counted; not saved
+    private transient SnapshotBlocks snapshotBlocks;
+
+    // Loaded from the masks folder, null for cuboids
+    private transient RegionMask mask;
 
     /**
      * Create a new region
@@ -38,6 +52,7 @@ public class Region implements ConfigurationSerializable {
         this.creatorName = creatorName;
         this.creationDate = new Date();
         this.regenerationCount = 0;
+        this.shape = RegionMask.SHAPE_CUBOID;
     }
 
     /**
@@ -83,6 +98,17 @@ public class Region implements ConfigurationSerializable {
 
         this.regenerationCount = map.containsKey("regenerationCount") ?
                 (Integer) map.get("regenerationCount") : 0;
+
+        this.shape = map.containsKey("shape") ?
+                (String) map.get("shape") : RegionMask.SHAPE_CUBOID;
+
+        this.template = (String) map.get("template");
+        this.fromSeed = map.containsKey("fromSeed") && (Boolean) map.get("fromSeed");
+        this.regenThreshold = map.containsKey("regenThreshold") ? ((Number) map.get("regenThreshold")).intValue() : 0;
+        this.blockCount = map.containsKey("blockCount") ? ((Number) map.get("blockCount")).longValue() : -1;
+        if (map.containsKey("minedBlocks")) {
+            minedBlocks.add(((Number) map.get("minedBlocks")).longValue());
+        }
     }
 
     /**
@@ -103,6 +129,24 @@ public class Region implements ConfigurationSerializable {
         }
 
         serialized.put("regenerationCount", regenerationCount);
+        serialized.put("shape", shape);
+
+        if (template != null) {
+            serialized.put("template", template);
+        }
+        if (fromSeed) {
+            serialized.put("fromSeed", true);
+        }
+        if (regenThreshold > 0) {
+            serialized.put("regenThreshold", regenThreshold);
+        }
+        if (blockCount >= 0) {
+            serialized.put("blockCount", blockCount);
+        }
+        long mined = minedBlocks.sum();
+        if (mined != 0) {
+            serialized.put("minedBlocks", mined);
+        }
 
         // Serialize locations
         Map<String, Object> minPointMap = new HashMap<>();
@@ -127,6 +171,10 @@ public class Region implements ConfigurationSerializable {
      * @return The volume of the region
      */
     public long getVolume() {
+        if (mask != null) {
+            return mask.getBlockCount();
+        }
+
         long width = (long) (maxPoint.getX() - minPoint.getX() + 1);
         long height = (long) (maxPoint.getY() - minPoint.getY() + 1);
         long depth = (long) (maxPoint.getZ() - minPoint.getZ() + 1);
@@ -135,11 +183,110 @@ public class Region implements ConfigurationSerializable {
     }
 
     /**
-     * Record that this region was regenerated
+     * Record that this region was regenerated, which also resets its mined block count
      */
     public void recordRegeneration() {
         this.lastRegenerationDate = new Date();
         this.regenerationCount++;
+        resetMined();
+    }
+
+    /**
+     * Start counting mined blocks from zero, e.g. when the region's current state was captured
+     */
+    public void resetMined() {
+        minedBlocks.reset();
+    }
+
+    /**
+     * Count a block change against the snapshot. Only cells where the
+     * snapshot has a block count: removing it counts as mined and putting a
+     * block back takes it off again, so nothing is kept per cell and the
+     * count stays right across restarts. Changes are not counted while the
+     * snapshot's blocks are not loaded, see {@link #needsSnapshotBlocks}.
+     * Regions regenerated from the seed have no snapshot to go by, so any
+     * block removed counts and any block placed counts against it; building
+     * in their air hides as much mining. Called from block listeners, on the
+     * main thread.
+     *
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @param wasBlock Whether the cell held a block before the change
+     * @param isBlock Whether it holds one after the change
+     */
+    public void recordMined(int x, int y, int z, boolean wasBlock, boolean isBlock) {
+        if (wasBlock == isBlock) {
+            return;
+        }
+        if (!fromSeed && (snapshotBlocks == null || !snapshotBlocks.contains(x, y, z))) {
+            return;
+        }
+        minedBlocks.add(wasBlock ? 1 : -1);
+    }
+
+    /**
+     * Check if block changes can only be counted once the snapshot's blocks are loaded
+     *
+     * @return True if they are needed and not loaded
+     */
+    public boolean needsSnapshotBlocks() {
+        return !fromSeed && snapshotBlocks == null;
+    }
+
+    /**
+     * Set where the region's snapshot holds blocks, which also sets its block count
+     *
+     * @param snapshotBlocks The snapshot's blocks, or null to stop counting until they are read again
+     */
+    public void setSnapshotBlocks(SnapshotBlocks snapshotBlocks) {
+        this.snapshotBlocks = snapshotBlocks;
+        if (snapshotBlocks != null) {
+            this.blockCount = snapshotBlocks.getBlockCount();
+        }
+    }
+
+    /**
+     * Get the number of the snapshot's blocks missing since the last regeneration
+     *
+     * @return The block count, never negative
+     */
+    public long getMinedBlocks() {
+        return Math.max(0, minedBlocks.sum());
+    }
+
+    /**
+     * Get how much of the region has been mined since the last regeneration,
+     * relative to the blocks in its snapshot, or its volume while they are not counted
+     *
+     * @return The share in percent
+     */
+    public double getMinedPercent() {
+        long total = blockCount > 0 ? blockCount : getVolume();
+        return total == 0 ? 0 : Math.min(100.0, getMinedBlocks() * 100.0 / total);
+    }
+
+    /**
+     * Get the mined share at which the region regenerates on its own
+     *
+     * @return The threshold in percent, 0 when automatic regeneration is off
+     */
+    public int getRegenThreshold() {
+        return regenThreshold;
+    }
+
+    public void setRegenThreshold(int regenThreshold) {
+        this.regenThreshold = regenThreshold;
+    }
+
+    /**
+     * Get the number of blocks in the region's snapshot that can be mined,
+     * i.e. that are not air or liquid
+     *
+     * @return The block count, or -1 if not counted yet
+     */
+    public long getBlockCount() {
+        return blockCount;
     }
 
     // Getters and setters
@@ -184,6 +331,74 @@ public class Region implements ConfigurationSerializable {
         return regenerationCount;
     }
 
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * Check if the region is a plain box, so its bounds are its membership
+     *
+     * @return True for cuboid regions
+     */
+    public boolean isCuboid() {
+        return RegionMask.SHAPE_CUBOID.equals(shape);
+    }
+
+    /**
+     * Get the template this region is restored from instead of its own snapshot
+     *
+     * @return The template region's ID, or null if the region uses its own snapshot
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+
+    /**
+     * Check if the region is regenerated with fresh terrain from the world
+     * generator instead of being restored from a snapshot
+     *
+     * @return True for regions regenerated from the world seed
+     */
+    public boolean isFromSeed() {
+        return fromSeed;
+    }
+
+    public void setFromSeed(boolean fromSeed) {
+        this.fromSeed = fromSeed;
+    }
+
+    /**
+     * Get the size of the region's bounding box
+     *
+     * @return {width, height, depth} in blocks
+     */
+    public int[] getSize() {
+        return new int[]{
+                maxPoint.getBlockX() - minPoint.getBlockX() + 1,
+                maxPoint.getBlockY() - minPoint.getBlockY() + 1,
+                maxPoint.getBlockZ() - minPoint.getBlockZ() + 1
+        };
+    }
+
+    public RegionMask getMask() {
+        return mask;
+    }
+
+    /**
+     * Set the membership mask of a non-cuboid region
+     *
+     * @param shape The shape name, see the SHAPE_ constants of {@link RegionMask}
+     * @param mask The mask, or null for cuboids
+     */
+    public void setMask(String shape, RegionMask mask) {
+        this.shape = shape;
+        this.mask = mask;
+    }
+
     /**
      * Check if a location is within this region
      *
@@ -195,9 +410,30 @@ public class Region implements ConfigurationSerializable {
             return false;
         }
 
-        return location.getX() >= minPoint.getX() && location.getX() <= maxPoint.getX() &&
+        boolean inBounds = location.getX() >= minPoint.getX() && location.getX() <= maxPoint.getX() &&
                 location.getY() >= minPoint.getY() && location.getY() <= maxPoint.getY() &&
                 location.getZ() >= minPoint.getZ() && location.getZ() <= maxPoint.getZ();
+
+        if (!inBounds || mask == null) {
+            return inBounds;
+        }
+        return mask.contains(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Check if a block position is within this region, ignoring the world
+     *
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return True if the block is within the region
+     */
+    public boolean contains(int x, int y, int z) {
+        boolean inBounds = x >= minPoint.getBlockX() && x <= maxPoint.getBlockX() &&
+                y >= minPoint.getBlockY() && y <= maxPoint.getBlockY() &&
+                z >= minPoint.getBlockZ() && z <= maxPoint.getBlockZ();
+
+        return inBounds && (mask == null || mask.contains(x, y, z));
     }
 
     @Override
@@ -0,0 +1,381 @@
+package com.minecraft.regionregen.models;
+
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.ConvexPolyhedralRegion;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.CylinderRegion;
+import com.sk89q.worldedit.regions.EllipsoidRegion;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Block membership of a non-cuboid region, stored per 16x16x16 section.
+ *
+ * <p>Sections fully inside the shape are stored as a bare key, sections fully
+ * outside are not stored at all, and only sections the shape's surface passes
+ * through carry a 4096-bit mask. Memory therefore grows with the surface of the
+ * shape, not its volume.</p>
+ */
+public final class RegionMask {
+
+    public static final String SHAPE_CUBOID = "cuboid";
+    public static final String SHAPE_POLYGON = "polygon";
+    public static final String SHAPE_CYLINDER = "cylinder";
+    public static final String SHAPE_ELLIPSOID = "ellipsoid";
+    public static final String SHAPE_CONVEX = "convex";
+    public static final String SHAPE_OTHER = "other";
+
+    private static final int MAGIC = 0x52524D4B; // "RRMK"
+    private static final int VERSION = 1;
+    private static final int WORDS = 64; // 4096 bits
+
+    // Shared marker for sections that are entirely inside the shape
+    private static final long[] FULL = new long[0];
+
+    private final Map<Long, long[]> sections;
+    private final Set<Long> chunks = new HashSet<>();
+    private final long blockCount;
+
+    private RegionMask(Map<Long, long[]> sections) {
+        this.sections = sections;
+
+        long count = 0;
+        for (Map.Entry<Long, long[]> entry : sections.entrySet()) {
+            long key = entry.getKey();
+            chunks.add(chunkKey(sectionX(key), sectionZ(key)));
+            long[] bits = entry.getValue();
+            if (bits == FULL) {
+                count += 4096;
+            } else {
+                for (long word : bits) {
+                    count += Long.bitCount(word);
+                }
+            }
+        }
+        this.blockCount = count;
+    }
+
+    /**
+     * Get the shape name of a WorldEdit selection
+     *
+     * @param selection The selection
+     * @return One of the SHAPE_ constants
+     */
+    public static String shapeOf(com.sk89q.worldedit.regions.Region selection) {
+        if (selection instanceof CuboidRegion) return SHAPE_CUBOID;
+        if (selection instanceof Polygonal2DRegion) return SHAPE_POLYGON;
+        if (selection instanceof CylinderRegion) return SHAPE_CYLINDER;
+        if (selection instanceof EllipsoidRegion) return SHAPE_ELLIPSOID;
+        if (selection instanceof ConvexPolyhedralRegion) return SHAPE_CONVEX;
+        return SHAPE_OTHER;
+    }
+
+    /**
+     * Build the membership mask of a WorldEdit selection
+     *
+     * @param selection The selection
+     * @return The mask, or null for cuboids, whose bounding box is their membership
+     */
+    public static RegionMask fromSelection(com.sk89q.worldedit.regions.Region selection) {
+        String shape = shapeOf(selection);
+        if (SHAPE_CUBOID.equals(shape)) {
+            return null;
+        }
+
+        BlockVector3 min = selection.getMinimumPoint();
+        BlockVector3 max = selection.getMaximumPoint();
+        // Vertical prisms only need one containment test per column
+        boolean prism = SHAPE_POLYGON.equals(shape) || SHAPE_CYLINDER.equals(shape);
+        // For convex shapes, a box whose corners are all inside is entirely inside
+        boolean convex = SHAPE_CYLINDER.equals(shape) || SHAPE_ELLIPSOID.equals(shape) || SHAPE_CONVEX.equals(shape);
+
+        Map<Long, long[]> sections = new HashMap<>();
+        for (int sx = min.getBlockX() >> 4; sx <= max.getBlockX() >> 4; sx++) {
+            for (int sz = min.getBlockZ() >> 4; sz <= max.getBlockZ() >> 4; sz++) {
+                int x0 = Math.max(min.getBlockX(), sx << 4), x1 = Math.min(max.getBlockX(), (sx << 4) + 15);
+                int z0 = Math.max(min.getBlockZ(), sz << 4), z1 = Math.min(max.getBlockZ(), (sz << 4) + 15);
+
+                long[] columns = prism ? columnMask(selection, min.getBlockY(), sx, sz, x0, x1, z0, z1) : null;
+                if (prism && isEmpty(columns)) {
+                    continue;
+                }
+
+                for (int sy = min.getBlockY() >> 4; sy <= max.getBlockY() >> 4; sy++) {
+                    int y0 = Math.max(min.getBlockY(), sy << 4), y1 = Math.min(max.getBlockY(), (sy << 4) + 15);
+                    boolean coversSection = x1 - x0 == 15 && y1 - y0 == 15 && z1 - z0 == 15;
+
+                    long[] bits;
+                    if (convex && coversSection && cornersInside(selection, x0, x1, y0, y1, z0, z1)) {
+                        bits = FULL;
+                    } else if (prism) {
+                        bits = extrude(columns, y0 - (sy << 4), y1 - (sy << 4));
+                    } else {
+                        bits = testCells(selection, sx, sy, sz, x0, x1, y0, y1, z0, z1);
+                    }
+
+                    if (bits != FULL && isFull(bits)) {
+                        bits = FULL;
+                    }
+                    if (bits == FULL || !isEmpty(bits)) {
+                        sections.put(sectionKey(sx, sy, sz), bits);
+                    }
+                }
+            }
+        }
+        return new RegionMask(sections);
+    }
+
+    private static long[] columnMask(com.sk89q.worldedit.regions.Region selection, int y,
+                                     int sx, int sz, int x0, int x1, int z0, int z1) {
+        // 256 bits, one per (x, z) column of the section
+        long[] columns = new long[4];
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                if (selection.contains(BlockVector3.at(x, y, z))) {
+                    int bit = ((z - (sz << 4)) << 4) | (x - (sx << 4));
+                    columns[bit >> 6] |= 1L << (bit & 63);
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static long[] extrude(long[] columns, int ly0, int ly1) {
+        // A layer of 256 bits is exactly four words, so each layer is a copy of the column mask
+        long[] bits = new long[WORDS];
+        for (int ly = ly0; ly <= ly1; ly++) {
+            System.arraycopy(columns, 0, bits, ly << 2, 4);
+        }
+        return bits;
+    }
+
+    private static long[] testCells(com.sk89q.worldedit.regions.Region selection, int sx, int sy, int sz,
+                                    int x0, int x1, int y0, int y1, int z0, int z1) {
+        long[] bits = new long[WORDS];
+        for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    if (selection.contains(BlockVector3.at(x, y, z))) {
+                        int index = ((y - (sy << 4)) << 8) | ((z - (sz << 4)) << 4) | (x - (sx << 4));
+                        bits[index >> 6] |= 1L << (index & 63);
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static boolean cornersInside(com.sk89q.worldedit.regions.Region selection,
+                                         int x0, int x1, int y0, int y1, int z0, int z1) {
+        return selection.contains(BlockVector3.at(x0, y0, z0)) && selection.contains(BlockVector3.at(x1, y0, z0))
+                && selection.contains(BlockVector3.at(x0, y1, z0)) && selection.contains(BlockVector3.at(x1, y1, z0))
+                && selection.contains(BlockVector3.at(x0, y0, z1)) && selection.contains(BlockVector3.at(x1, y0, z1))
+                && selection.contains(BlockVector3.at(x0, y1, z1)) && selection.contains(BlockVector3.at(x1, y1, z1));
+    }
+
+    private static boolean isEmpty(long[] bits) {
+        for (long word : bits) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean isFull(long[] bits) {
+        for (long word : bits) {
+            if (word != -1L) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pack section coordinates into a key
+     *
+     * @param sx Section X
+     * @param sy Section Y
+     * @param sz Section Z
+     * @return The packed key
+     */
+    public static long sectionKey(int sx, int sy, int sz) {
+        return ((long) (sx & 0x3FFFFFF) << 38) | ((long) (sz & 0x3FFFFFF) << 12) | (sy & 0xFFF);
+    }
+
+    private static int sectionX(long key) {
+        return (int) (key >> 38);
+    }
+
+    private static int sectionZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    private static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Check if a block is part of the region
+     *
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @return True if the block is a member
+     */
+    public boolean contains(int x, int y, int z) {
+        long[] bits = sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        if (bits == null) {
+            return false;
+        }
+        if (bits == FULL) {
+            return true;
+        }
+        int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        return (bits[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * Check if any block of a chunk column is part of the region
+     *
+     * @param cx Chunk X
+     * @param cz Chunk Z
+     * @return True if the chunk has member blocks
+     */
+    public boolean intersectsChunk(int cx, int cz) {
+        return chunks.contains(chunkKey(cx, cz));
+    }
+
+    /**
+     * Check if a whole section is inside the region
+     *
+     * @param sx Section X
+     * @param sy Section Y
+     * @param sz Section Z
+     * @return True if every block of the section is a member
+     */
+    public boolean isSectionFull(int sx, int sy, int sz) {
+        return sections.get(sectionKey(sx, sy, sz)) == FULL;
+    }
+
+    /**
+     * Check if a section has no member blocks
+     *
+     * @param sx Section X
+     * @param sy Section Y
+     * @param sz Section Z
+     * @return True if the section is entirely outside the region
+     */
+    public boolean isSectionEmpty(int sx, int sy, int sz) {
+        return !sections.containsKey(sectionKey(sx, sy, sz));
+    }
+
+    /**
+     * Get the number of member blocks
+     *
+     * @return The block count
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Write the mask to a file, replacing it atomically
+     *
+     * @param file The file to write
+     * @throws IOException If writing fails
+     */
+    public void write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            write(out);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the mask to a stream, in the layout of a mask file
+     *
+     * @param out The stream to write to
+     * @throws IOException If writing fails
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sections.size());
+        // In key order, so equal masks write equal bytes
+        long[] keys = new long[sections.size()];
+        int count = 0;
+        for (long key : sections.keySet()) {
+            keys[count++] = key;
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            out.writeLong(key);
+            long[] bits = sections.get(key);
+            out.writeBoolean(bits == FULL);
+            if (bits != FULL) {
+                for (long word : bits) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a mask written by {@link #write(File)}
+     *
+     * @param file The file to read
+     * @return The mask
+     * @throws IOException If the file is missing or corrupt
+     */
+    public static RegionMask read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException("Failed to read mask " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Read a mask written by {@link #write(DataOutputStream)}
+     *
+     * @param in The stream to read from
+     * @return The mask
+     * @throws IOException If the stream holds no mask or is truncated
+     */
+    public static RegionMask read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a region mask");
+        }
+
+        int count = in.readInt();
+        Map<Long, long[]> sections = new HashMap<>(Math.max(16, count * 4 / 3));
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            if (in.readBoolean()) {
+                sections.put(key, FULL);
+            } else {
+                long[] bits = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    bits[w] = in.readLong();
+                }
+                sections.put(key, bits);
+            }
+        }
+        return new RegionMask(sections);
+    }
+}
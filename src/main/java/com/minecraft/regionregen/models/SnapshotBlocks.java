@@ -0,0 +1,74 @@
+package com.minecraft.regionregen.models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cells of a region's snapshot that hold a minable block, i.e. not air
+ * or liquid, stored per 16x16x16 section like a {@link RegionMask}.
+ *
+ * <p>Sections without such a block are not stored, sections made of nothing
+ * else are a bare key, and the rest carry a 4096-bit set, so a mostly solid
+ * mine of a million blocks takes well under a megabyte.</p>
+ */
+public final class SnapshotBlocks {
+
+    private static final int WORDS = 64; // 4096 bits
+
+    // Shared marker for sections that are entirely blocks
+    private static final long[] FULL = new long[0];
+
+    private final Map<Long, long[]> sections = new HashMap<>();
+    private long blockCount;
+
+    /**
+     * Add a section of the snapshot. Sections are added while the snapshot is read,
+     * before the set is handed to the region.
+     *
+     * @param sx Section X
+     * @param sy Section Y
+     * @param sz Section Z
+     * @param bits The section's block cells, indexed like {@link com.minecraft.regionregen.snapshot.SnapshotSection#index};
+     *             kept, not copied
+     */
+    public void addSection(int sx, int sy, int sz, long[] bits) {
+        long count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        if (count == 0) {
+            return;
+        }
+        blockCount += count;
+        sections.put(RegionMask.sectionKey(sx, sy, sz), count == WORDS * 64 ? FULL : bits);
+    }
+
+    /**
+     * Check if the snapshot holds a block at a position
+     *
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @return True if the cell holds a minable block in the snapshot
+     */
+    public boolean contains(int x, int y, int z) {
+        long[] bits = sections.get(RegionMask.sectionKey(x >> 4, y >> 4, z >> 4));
+        if (bits == null) {
+            return false;
+        }
+        if (bits == FULL) {
+            return true;
+        }
+        int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        return (bits[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * Get the number of minable blocks in the snapshot
+     *
+     * @return The block count
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+}
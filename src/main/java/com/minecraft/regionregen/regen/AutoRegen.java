@@ -0,0 +1,135 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.managers.RegionManager;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.AutoRegenSettings;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regenerates regions on their own once enough of them was mined.
+ *
+ * <p>Block listeners keep a running count of the blocks removed from each
+ * region, see {@link Region#recordMined}, so how much of a region was mined
+ * is known at any time without looking at its blocks. A sweep compares that
+ * with each region's threshold every few seconds. A region is only
+ * regenerated once it has stayed over its threshold for the debounce time,
+ * so a region being mined out is not regenerated under the players' feet
+ * the moment it crosses. Regions that are due in the same sweep are
+ * regenerated as one merged job.</p>
+ */
+public class AutoRegen {
+
+    private final RegionRegenPlugin plugin;
+    private final RegionManager regionManager;
+    // Region ID -> when it was first seen over its threshold
+    private final Map<String, Long> overSince = new HashMap<>();
+    private BukkitRunnable task;
+    private long triggered;
+
+    /**
+     * Create a new AutoRegen
+     *
+     * @param plugin The plugin instance
+     * @param regionManager The region manager
+     */
+    public AutoRegen(RegionRegenPlugin plugin, RegionManager regionManager) {
+        this.plugin = plugin;
+        this.regionManager = regionManager;
+    }
+
+    /**
+     * Start sweeping regions at the configured interval. Must be called on
+     * the main thread, once regions and snapshots are loaded.
+     */
+    public void start() {
+        // Read the snapshots of regions with a threshold now, not on their first block change,
+        // which would not be counted
+        for (Region region : regionManager.getAllRegions()) {
+            if (region.getRegenThreshold() > 0) {
+                regionManager.loadSnapshotBlocks(region);
+            }
+        }
+
+        long interval = plugin.getConfigManager().getSettings().getAutoRegen().getCheckSeconds() * 20L;
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        };
+        task.runTaskTimer(plugin, interval, interval);
+    }
+
+    private void sweep() {
+        AutoRegenSettings settings = plugin.getConfigManager().getSettings().getAutoRegen();
+        long now = System.currentTimeMillis();
+        long debounce = settings.getDebounceSeconds() * 1000L;
+
+        List<Region> due = new ArrayList<>();
+        for (Region region : regionManager.getAllRegions()) {
+            int threshold = region.getRegenThreshold();
+            if (threshold <= 0 || region.getMinedPercent() < threshold) {
+                overSince.remove(region.getId());
+                continue;
+            }
+            if (regionManager.isRegenerationInProgress(region.getId()) || plugin.getSnapshotManager().isCapturing(region.getId())) {
+                continue;
+            }
+            long since = overSince.computeIfAbsent(region.getId(), id -> now);
+            if (now - since >= debounce) {
+                overSince.remove(region.getId());
+                due.add(region);
+            }
+        }
+
+        if (due.isEmpty()) {
+            return;
+        }
+        triggered += due.size();
+        if (due.size() == 1) {
+            Region region = due.get(0);
+            MessageUtils.log("§aRegion " + region.getId() + " is " + String.format("%.1f", region.getMinedPercent())
+                    + "% mined, regenerating it.");
+            regionManager.regenerateRegion(region, null);
+        } else {
+            MessageUtils.log("§a" + due.size() + " regions passed their mined threshold, regenerating them.");
+            regionManager.regenerateRegions(due, null);
+        }
+    }
+
+    /**
+     * Forget a region that was deleted or whose threshold changed
+     *
+     * @param regionId The region ID
+     */
+    public void forget(String regionId) {
+        overSince.remove(regionId);
+    }
+
+    /**
+     * Get the number of regenerations started by thresholds since startup
+     *
+     * @return The region count
+     */
+    public long getTriggered() {
+        return triggered;
+    }
+
+    /**
+     * Stop sweeping, used on shutdown
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        overSince.clear();
+    }
+}
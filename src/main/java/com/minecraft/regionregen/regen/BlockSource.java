@@ -0,0 +1,307 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.snapshot.SectionStream;
+import com.minecraft.regionregen.snapshot.SnapshotReader;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import com.minecraft.regionregen.snapshot.TemplateSnapshot;
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Where a {@link RestoreJob} takes the blocks it writes from.
+ *
+ * <p>A source opens one or more streams of sections in chunk order, which
+ * the job's decoder merges by chunk, and tells the job where the blocks go
+ * and which of its extras apply: only a full restore of the regions' own
+ * snapshots can be resumed from a checkpoint or have unloaded chunks
+ * deferred, since both are restored from those snapshots later.</p>
+ */
+abstract class BlockSource {
+
+    /**
+     * Open the streams to restore from. Called on a worker thread.
+     *
+     * @param plugin The plugin instance
+     * @param regions The job's regions
+     * @param world The world the job writes to
+     * @return The streams, each in chunk order
+     * @throws IOException If a stream cannot be opened
+     */
+    abstract List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) throws IOException;
+
+    /**
+     * Get the offset from the sections' block positions to the world's
+     *
+     * @return The offset {x, y, z}, or null if the blocks go where the sections are
+     */
+    int[] getOffset() {
+        return null;
+    }
+
+    /**
+     * Check if this is a full restore of the regions' own snapshots
+     *
+     * @return True if the job can be checkpointed and defer unloaded chunks
+     */
+    boolean isFullSnapshot() {
+        return false;
+    }
+
+    /**
+     * Check if the blocks the job replaces are recorded as an undo generation
+     *
+     * @return True unless the source undoes or completes an earlier job
+     */
+    boolean recordsUndo() {
+        return true;
+    }
+
+    /**
+     * Drop what the source holds on to, once the job is done
+     */
+    void release() {
+    }
+
+    /**
+     * The regions' own snapshots, merged
+     */
+    static BlockSource snapshots() {
+        return new BlockSource() {
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) throws IOException {
+                return openSnapshots(plugin, regions, world);
+            }
+
+            @Override
+            boolean isFullSnapshot() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * One chunk of the regions' snapshots, whose restore was deferred until it loaded
+     */
+    static BlockSource chunk(int chunkX, int chunkZ) {
+        return new BlockSource() {
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) throws IOException {
+                List<SectionStream> streams = openSnapshots(plugin, regions, world);
+                try {
+                    for (int i = 0; i < streams.size(); i++) {
+                        // Chunk order is by X then Z, so this stops right before the wanted chunk
+                        streams.get(i).skipThrough(chunkX, chunkZ - 1);
+                        streams.set(i, new OneChunk(streams.get(i), chunkX, chunkZ));
+                    }
+                } catch (IOException e) {
+                    for (SectionStream stream : streams) {
+                        closeQuietly(stream);
+                    }
+                    throw e;
+                }
+                return streams;
+            }
+
+            @Override
+            boolean recordsUndo() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Prepared sections of the job's single region, e.g. the changed blocks of a diff
+     */
+    static BlockSource sections(List<SnapshotSection> sections) {
+        List<SnapshotSection> copy = new ArrayList<>(sections);
+        return new BlockSource() {
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) {
+                return Collections.singletonList(new SectionList(world.getName(), copy));
+            }
+        };
+    }
+
+    /**
+     * An undo generation of the job's single region
+     */
+    static BlockSource undo(File generation) {
+        return new BlockSource() {
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) throws IOException {
+                SectionStream stream = new SnapshotReader(generation, plugin.getSnapshotManager().getSectionStore())
+                        .prefetch(plugin.getSnapshotManager().getPrefetcher(), null);
+                return Collections.singletonList(checkWorld(stream, regions.get(0), world));
+            }
+
+            @Override
+            boolean recordsUndo() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * A shared template, placed at an offset. The source keeps the template
+     * alive until the job is done, so other jobs keep sharing it.
+     */
+    static BlockSource template(TemplateSnapshot template, int[] offset) {
+        return new BlockSource() {
+            private TemplateSnapshot held = template;
+
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) {
+                // Read, not copied; the template may come from another world
+                return Collections.singletonList(new SectionList(world.getName(), held.getSections()));
+            }
+
+            @Override
+            int[] getOffset() {
+                return offset;
+            }
+
+            @Override
+            void release() {
+                held = null;
+            }
+        };
+    }
+
+    /**
+     * A single stream already clipped to all of the job's regions, such as
+     * generated terrain or a change log replay. The job closes it.
+     */
+    static BlockSource prepared(SectionStream stream) {
+        return new BlockSource() {
+            @Override
+            List<SectionStream> open(RegionRegenPlugin plugin, List<Region> regions, World world) {
+                return Collections.singletonList(checkWorld(stream, regions.get(0), world));
+            }
+        };
+    }
+
+    private static List<SectionStream> openSnapshots(RegionRegenPlugin plugin, List<Region> regions, World world) throws IOException {
+        List<SectionStream> streams = new ArrayList<>();
+        try {
+            for (Region region : regions) {
+                streams.add(checkWorld(plugin.getSnapshotManager().openStream(region.getId()), region, world));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (SectionStream stream : streams) {
+                closeQuietly(stream);
+            }
+            throw e;
+        }
+        return streams;
+    }
+
+    /**
+     * @return The stream, closed instead if it is not of the job's world
+     */
+    private static SectionStream checkWorld(SectionStream stream, Region region, World world) {
+        if (!stream.getWorldName().equals(world.getName())) {
+            closeQuietly(stream);
+            throw new IllegalStateException("Snapshot of " + region.getId() + " was taken in world " + stream.getWorldName());
+        }
+        return stream;
+    }
+
+    private static void closeQuietly(SectionStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Sections held in memory, in chunk order
+     */
+    private static final class SectionList implements SectionStream {
+
+        private final String worldName;
+        private Iterator<SnapshotSection> sections;
+        private SnapshotSection pending;
+
+        private SectionList(String worldName, List<SnapshotSection> sections) {
+            this.worldName = worldName;
+            this.sections = sections.iterator();
+        }
+
+        @Override
+        public String getWorldName() {
+            return worldName;
+        }
+
+        @Override
+        public SnapshotSection next() {
+            if (pending != null) {
+                SnapshotSection section = pending;
+                pending = null;
+                return section;
+            }
+            return sections != null && sections.hasNext() ? sections.next() : null;
+        }
+
+        @Override
+        public void skipThrough(int chunkX, int chunkZ) {
+            SnapshotSection section;
+            while ((section = next()) != null) {
+                if (section.getX() > chunkX || (section.getX() == chunkX && section.getZ() > chunkZ)) {
+                    pending = section;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            sections = null;
+            pending = null;
+        }
+    }
+
+    /**
+     * Ends a stream after the sections of one chunk
+     */
+    private static final class OneChunk implements SectionStream {
+
+        private final SectionStream stream;
+        private final int chunkX;
+        private final int chunkZ;
+
+        private OneChunk(SectionStream stream, int chunkX, int chunkZ) {
+            this.stream = stream;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        @Override
+        public String getWorldName() {
+            return stream.getWorldName();
+        }
+
+        @Override
+        public SnapshotSection next() throws IOException {
+            SnapshotSection section = stream.next();
+            return section != null && section.getX() == chunkX && section.getZ() == chunkZ ? section : null;
+        }
+
+        @Override
+        public void skipThrough(int chunkX, int chunkZ) throws IOException {
+            stream.skipThrough(chunkX, chunkZ);
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+/**
+ * Append-only log of the block changes made inside regions, so a region can
+ * be restored to any moment of its recent past.
+ *
+ * <p>A region's log is split into segments. A segment starts whenever the
+ * region is known to match its snapshot, i.e. after it was regenerated from
+ * it or captured, so the state at any moment of a segment is the snapshot
+ * with the segment's changes up to then replayed over it. Anything else that
+ * rewrites a region behind the log's back, like an undo or a template
+ * restore, ends its segment; the next one starts at the next regeneration.</p>
+ *
+ * <p>Block listeners hand over the position and previous state of each
+ * change. The new state is read once the tick is over, so the log holds
+ * what the change actually left behind. Changes are kept as fixed-size
+ * records in a per-segment batch and written by a background task once a
+ * second or when the batch is full. Block states are stored as indices into
+ * a per-segment palette, which lives next to the segment as one state per
+ * line.</p>
+ *
+ * <pre>
+ * segment := MAGIC VERSION baseGeneration:long startedAt:long record*
+ * record  := position:long oldState:int newState:int time:long
+ * </pre>
+ */
+public class ChangeLog {
+
+    private static final int MAGIC = 0x5252434C; // "RRCL"
+    private static final int VERSION = 1;
+    public static final int RECORD_SIZE = 8 + 4 + 4 + 8;
+    private static final String EXTENSION = ".rrl";
+    private static final String PALETTE_EXTENSION = ".palette";
+    private static final int BATCH_RECORDS = 1024;
+    private static final int FLUSH_INTERVAL_TICKS = 20;
+
+    private final RegionRegenPlugin plugin;
+    private final File root;
+    private final Executor writer;
+    // Region ID -> segment being logged; main thread only
+    private final Map<String, Segment> active = new HashMap<>();
+
+    // Changes of the current tick, whose new state is read once it is over
+    private Segment[] pendingSegments = new Segment[256];
+    private Block[] pendingBlocks = new Block[256];
+    private int[] pendingOld = new int[256];
+    private int pendingCount;
+
+    private BukkitRunnable task;
+    private int ticksSinceFlush;
+    private long recordsWritten;
+
+    /**
+     * Create a new ChangeLog
+     *
+     * @param plugin The plugin instance
+     */
+    public ChangeLog(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+        this.root = new File(plugin.getDataFolder(), "changes");
+        this.writer = plugin.getExecutors().newSerialIo();
+    }
+
+    /**
+     * Pack a block position into a record position
+     *
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return The packed position
+     */
+    public static long packPosition(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long position) {
+        return (int) (position >> 38);
+    }
+
+    public static int unpackY(long position) {
+        return (int) (position << 52 >> 52);
+    }
+
+    public static int unpackZ(long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    private File directory(String regionId) {
+        return new File(root, URLEncoder.encode(regionId, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Pick up the segments that were being logged before the last shutdown
+     * and start writing batches. Must be called on the main thread, once the
+     * snapshots are loaded.
+     */
+    public void load() {
+        File[] regionDirs = root.listFiles(File::isDirectory);
+        int resumed = 0;
+        if (regionDirs != null) {
+            for (File dir : regionDirs) {
+                String regionId = URLDecoder.decode(dir.getName(), StandardCharsets.UTF_8);
+                if (plugin.getRegionManager().getRegion(regionId) == null) {
+                    continue;
+                }
+                List<SegmentFile> segments = segmentsOf(regionId);
+                // Only the newest segment can still be appended to, and only against the same snapshot
+                if (segments.isEmpty() || segments.get(0).baseGeneration != baseGenerationOf(regionId)) {
+                    continue;
+                }
+                SegmentFile newest = segments.get(0);
+                try {
+                    Segment segment = new Segment(regionId, newest);
+                    segment.loadPalette(readPalette(newest.palette));
+                    active.put(regionId, segment);
+                    resumed++;
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to resume the change log of region " + regionId
+                            + ", it starts again at its next regeneration", e);
+                }
+            }
+        }
+        if (resumed > 0) {
+            MessageUtils.debug("Resumed the change log of " + resumed + " regions");
+        }
+
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        };
+        task.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    private long baseGenerationOf(String regionId) {
+        return plugin.getSnapshotManager().getGeneration(regionId);
+    }
+
+    /**
+     * Check if changes to a region are being logged
+     *
+     * @param regionId The region ID
+     * @return True if the region has an open segment
+     */
+    public boolean isLogging(String regionId) {
+        return active.containsKey(regionId);
+    }
+
+    /**
+     * Log a block that is about to change, or has just changed. Called from
+     * block listeners, on the main thread.
+     *
+     * @param regionId The region the block is in
+     * @param block The block
+     * @param previous The block's state before the change
+     */
+    public void record(String regionId, Block block, BlockData previous) {
+        Segment segment = active.get(regionId);
+        if (segment == null) {
+            return;
+        }
+        if (pendingCount == pendingBlocks.length) {
+            int size = pendingCount * 2;
+            pendingSegments = Arrays.copyOf(pendingSegments, size);
+            pendingBlocks = Arrays.copyOf(pendingBlocks, size);
+            pendingOld = Arrays.copyOf(pendingOld, size);
+        }
+        pendingSegments[pendingCount] = segment;
+        pendingBlocks[pendingCount] = block;
+        pendingOld[pendingCount] = segment.stateIndex(previous);
+        pendingCount++;
+    }
+
+    /**
+     * Read the new state of the last tick's changes into their batches, and
+     * hand batches to the writer once a second
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pendingCount; i++) {
+            Segment segment = pendingSegments[i];
+            Block block = pendingBlocks[i];
+            pendingSegments[i] = null;
+            pendingBlocks[i] = null;
+            // Ended meanwhile, or unloaded before the tick was over
+            if (active.get(segment.regionId) != segment || !block.getWorld().isChunkLoaded(block.getX() >> 4, block.getZ() >> 4)) {
+                continue;
+            }
+            segment.append(packPosition(block.getX(), block.getY(), block.getZ()), pendingOld[i],
+                    segment.stateIndex(block.getBlockData()), now);
+        }
+        pendingCount = 0;
+
+        if (++ticksSinceFlush >= FLUSH_INTERVAL_TICKS) {
+            ticksSinceFlush = 0;
+            for (Segment segment : active.values()) {
+                segment.flush();
+            }
+        }
+    }
+
+    /**
+     * Start a new segment for a region that now matches its snapshot, ending
+     * its current one. Must be called on the main thread.
+     *
+     * @param regionId The region ID
+     */
+    public void rebase(String regionId) {
+        end(regionId);
+        if (!plugin.getConfigManager().getSettings().getChangeLog().isEnabled()) {
+            return;
+        }
+        SegmentFile file = newSegmentFile(regionId, System.currentTimeMillis());
+        active.put(regionId, new Segment(regionId, file));
+        int keep = plugin.getConfigManager().getSettings().getChangeLog().getSegments();
+        writer.execute(() -> {
+            try {
+                writeHeader(file);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to start the change log of region " + regionId, e);
+            }
+            prune(regionId, keep);
+        });
+    }
+
+    /**
+     * Start a new segment for a region that was just restored to a point in
+     * time. The new segment begins with the changes replayed for it, so later
+     * points in time are still the snapshot plus one segment. Must be called
+     * on the main thread.
+     *
+     * @param regionId The region ID
+     * @param pointInTime The point in time the region was restored to
+     */
+    public void rebase(String regionId, PointInTime pointInTime) {
+        end(regionId);
+        if (!plugin.getConfigManager().getSettings().getChangeLog().isEnabled()) {
+            return;
+        }
+        SegmentFile file = newSegmentFile(regionId, System.currentTimeMillis());
+        Segment segment = new Segment(regionId, file);
+        segment.loadPalette(pointInTime.palette);
+        active.put(regionId, segment);
+
+        int keep = plugin.getConfigManager().getSettings().getChangeLog().getSegments();
+        writer.execute(() -> {
+            try {
+                writeHeader(file);
+                copyRecords(pointInTime, file);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to start the change log of region " + regionId, e);
+            }
+            prune(regionId, keep);
+        });
+    }
+
+    /**
+     * Stop logging a region until its next regeneration, e.g. because
+     * something other than its own snapshot was written into it. Must be
+     * called on the main thread.
+     *
+     * @param regionId The region ID
+     */
+    public void end(String regionId) {
+        Segment segment = active.remove(regionId);
+        if (segment != null) {
+            segment.flush();
+        }
+    }
+
+    /**
+     * Delete the log of a region, e.g. when it is deleted. Must be called on the main thread.
+     *
+     * @param regionId The region ID
+     */
+    public void forget(String regionId) {
+        active.remove(regionId);
+        writer.execute(() -> {
+            for (SegmentFile segment : segmentsOf(regionId)) {
+                segment.delete();
+            }
+            directory(regionId).delete();
+        });
+    }
+
+    /**
+     * Get the earliest moment a region can be restored to
+     *
+     * @param regionId The region ID
+     * @return The start of its oldest usable segment in milliseconds, or -1 if it has none
+     */
+    public long getHistoryStart(String regionId) {
+        long generation = baseGenerationOf(regionId);
+        long start = -1;
+        for (SegmentFile segment : segmentsOf(regionId)) {
+            if (segment.baseGeneration == generation) {
+                start = segment.startedAt;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Work out the blocks of a region that differ from its snapshot at a
+     * point in time. Must be called on the main thread; the future completes
+     * on the I/O pool.
+     *
+     * @param regionId The region ID
+     * @param time The point in time, in milliseconds
+     * @return A CompletableFuture with the result, or null if the log does not reach back that far
+     */
+    public CompletableFuture<PointInTime> replay(String regionId, long time) {
+        long generation = baseGenerationOf(regionId);
+        SegmentFile found = null;
+        for (SegmentFile segment : segmentsOf(regionId)) {
+            if (segment.baseGeneration == generation && segment.startedAt <= time) {
+                found = segment;
+                break;
+            }
+        }
+        if (found == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Changes logged so far must be on disk before the segment is read
+        Segment current = active.get(regionId);
+        if (current != null) {
+            current.flush();
+        }
+        SegmentFile segment = found;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return readPointInTime(segment, time);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, writer);
+    }
+
+    private PointInTime readPointInTime(SegmentFile segment, long time) throws IOException {
+        List<String> palette = readPalette(segment.palette);
+        Map<Long, String> states = new HashMap<>();
+        long records = 0;
+        try (DataInputStream in = openSegment(segment.file)) {
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(record);
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // The end, or a record cut short by a crash
+                    break;
+                }
+                int newState = view.getInt(12);
+                // Not a break: a clock set back may leave later records out of order
+                if (view.getLong(16) > time || newState < 0 || newState >= palette.size()) {
+                    continue;
+                }
+                states.put(view.getLong(0), palette.get(newState));
+                records++;
+            }
+        }
+        return new PointInTime(segment, time, palette, states, records);
+    }
+
+    private DataInputStream openSegment(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a change log: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported change log version " + version + " in " + file.getName());
+            }
+            in.readLong();
+            in.readLong();
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void copyRecords(PointInTime pointInTime, SegmentFile target) throws IOException {
+        SegmentFile source = pointInTime.segment;
+        try (DataInputStream in = openSegment(source.file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target.file, true)))) {
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(record);
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (view.getLong(16) <= pointInTime.time && view.getInt(12) < pointInTime.palette.size()) {
+                    out.write(record);
+                }
+            }
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(target.palette), StandardCharsets.UTF_8)) {
+            for (String state : pointInTime.palette) {
+                out.write(state);
+                out.write('\n');
+            }
+        }
+    }
+
+    private void writeHeader(SegmentFile segment) throws IOException {
+        segment.file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment.baseGeneration);
+            out.writeLong(segment.startedAt);
+        }
+        Files.deleteIfExists(segment.palette.toPath());
+    }
+
+    private static List<String> readPalette(File file) throws IOException {
+        if (!file.isFile()) {
+            return new ArrayList<>();
+        }
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            List<String> palette = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                palette.add(line);
+            }
+            return palette;
+        }
+    }
+
+    /**
+     * Delete the oldest segments of a region beyond the limit. Writer tasks only.
+     */
+    private void prune(String regionId, int keep) {
+        List<SegmentFile> segments = segmentsOf(regionId);
+        for (int i = Math.max(1, keep); i < segments.size(); i++) {
+            segments.get(i).delete();
+        }
+    }
+
+    private SegmentFile newSegmentFile(String regionId, long startedAt) {
+        File dir = directory(regionId);
+        long generation = baseGenerationOf(regionId);
+        // A rebase within the same millisecond gets the next one
+        for (SegmentFile existing : segmentsOf(regionId)) {
+            if (existing.startedAt >= startedAt) {
+                startedAt = existing.startedAt + 1;
+            }
+        }
+        return new SegmentFile(new File(dir, startedAt + "-" + generation + EXTENSION), startedAt, generation);
+    }
+
+    /**
+     * List the segments of a region
+     *
+     * @return The segments, newest first
+     */
+    private List<SegmentFile> segmentsOf(String regionId) {
+        File[] files = directory(regionId).listFiles((dir, name) -> name.endsWith(EXTENSION));
+        List<SegmentFile> segments = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                SegmentFile segment = SegmentFile.parse(file);
+                if (segment != null) {
+                    segments.add(segment);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong((SegmentFile segment) -> segment.startedAt).reversed());
+        return segments;
+    }
+
+    /**
+     * Write every open batch, used on shutdown. Changes of the current tick are lost.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        Arrays.fill(pendingSegments, 0, pendingCount, null);
+        Arrays.fill(pendingBlocks, 0, pendingCount, null);
+        pendingCount = 0;
+        for (Segment segment : active.values()) {
+            segment.flush();
+        }
+        active.clear();
+    }
+
+    /**
+     * Get the number of changes written to disk since startup
+     *
+     * @return The record count
+     */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * A segment file and what its name says about it
+     */
+    private static final class SegmentFile {
+        private final File file;
+        private final File palette;
+        private final long startedAt;
+        private final long baseGeneration;
+
+        private SegmentFile(File file, long startedAt, long baseGeneration) {
+            this.file = file;
+            String name = file.getName();
+            this.palette = new File(file.getParentFile(), name.substring(0, name.length() - EXTENSION.length()) + PALETTE_EXTENSION);
+            this.startedAt = startedAt;
+            this.baseGeneration = baseGeneration;
+        }
+
+        private static SegmentFile parse(File file) {
+            String name = file.getName();
+            String[] parts = name.substring(0, name.length() - EXTENSION.length()).split("-", 2);
+            if (parts.length != 2) {
+                return null;
+            }
+            try {
+                return new SegmentFile(file, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private void delete() {
+            file.delete();
+            palette.delete();
+        }
+    }
+
+    /**
+     * The open segment of a region; main thread only
+     */
+    private final class Segment {
+        private final String regionId;
+        private final SegmentFile file;
+        // Keyed by BlockData so each distinct state is stringified once
+        private final Map<BlockData, Integer> palette = new HashMap<>();
+        private final List<String> newStates = new ArrayList<>();
+        private int paletteSize;
+        private ByteBuffer batch;
+
+        private Segment(String regionId, SegmentFile file) {
+            this.regionId = regionId;
+            this.file = file;
+        }
+
+        /**
+         * Take over the palette already on disk
+         */
+        private void loadPalette(List<String> states) {
+            for (String state : states) {
+                try {
+                    palette.putIfAbsent(Bukkit.createBlockData(state), paletteSize);
+                } catch (IllegalArgumentException e) {
+                    // No longer a valid state, only its index is kept in line with the file
+                }
+                paletteSize++;
+            }
+        }
+
+        private int stateIndex(BlockData data) {
+            Integer index = palette.get(data);
+            if (index == null) {
+                index = paletteSize++;
+                palette.put(data, index);
+                newStates.add(data.getAsString());
+            }
+            return index;
+        }
+
+        private void append(long position, int oldState, int newState, long time) {
+            if (batch == null) {
+                batch = ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE);
+            }
+            batch.putLong(position).putInt(oldState).putInt(newState).putLong(time);
+            if (!batch.hasRemaining()) {
+                flush();
+            }
+        }
+
+        /**
+         * Hand the batch and the palette entries it uses to the writer
+         */
+        private void flush() {
+            if (batch == null || batch.position() == 0) {
+                return;
+            }
+            byte[] records = batch.array();
+            int length = batch.position();
+            List<String> states = new ArrayList<>(newStates);
+            batch = null;
+            newStates.clear();
+            recordsWritten += length / RECORD_SIZE;
+
+            writer.execute(() -> {
+                try {
+                    // Palette first, so no record ever refers to a state that is not on disk
+                    if (!states.isEmpty()) {
+                        try (Writer out = new OutputStreamWriter(new FileOutputStream(file.palette, true), StandardCharsets.UTF_8)) {
+                            for (String state : states) {
+                                out.write(state);
+                                out.write('\n');
+                            }
+                        }
+                    }
+                    try (FileOutputStream out = new FileOutputStream(file.file, true)) {
+                        out.write(records, 0, length);
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to write the change log of region " + regionId, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * The blocks of a region that differed from its snapshot at a point in time
+     */
+    public static final class PointInTime {
+        private final SegmentFile segment;
+        private final long time;
+        private final List<String> palette;
+        private final Map<Long, String> states;
+        private final long records;
+
+        private PointInTime(SegmentFile segment, long time, List<String> palette, Map<Long, String> states, long records) {
+            this.segment = segment;
+            this.time = time;
+            this.palette = palette;
+            this.states = states;
+            this.records = records;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Get the state of every block changed since the segment started, as it was at the point in time
+         *
+         * @return Block states by packed position, see {@link #packPosition}
+         */
+        public Map<Long, String> getStates() {
+            return states;
+        }
+
+        /**
+         * Get the number of logged changes replayed
+         *
+         * @return The record count
+         */
+        public long getRecords() {
+            return records;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.snapshot.SectionStream;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A region's snapshot with logged block changes laid over it, as a stream of
+ * sections in chunk order, so a point in time can be restored like a
+ * snapshot. See {@link ChangeLog}.
+ *
+ * <p>The changed blocks are grouped into sections up front. Sections of the
+ * snapshot that have changes are combined with them as they stream past;
+ * changes in sections the snapshot does not hold, like air it skipped, are
+ * streamed as sections of their own.</p>
+ */
+public final class ChangeReplay implements SectionStream {
+
+    private final SectionStream base;
+    // Section order key -> changed blocks of that section; compared unsigned, see orderKey
+    private final NavigableMap<Long, SnapshotSection> changes = new TreeMap<>(Long::compareUnsigned);
+    private SnapshotSection head;
+    private boolean headRead;
+
+    /**
+     * Lay block states over a snapshot
+     *
+     * @param base The region's snapshot
+     * @param states Block states by packed position, see {@link ChangeLog#packPosition}
+     */
+    public ChangeReplay(SectionStream base, Map<Long, String> states) {
+        this.base = base;
+
+        Map<Long, SectionBuilder> builders = new HashMap<>();
+        for (Map.Entry<Long, String> entry : states.entrySet()) {
+            long position = entry.getKey();
+            int x = ChangeLog.unpackX(position);
+            int y = ChangeLog.unpackY(position);
+            int z = ChangeLog.unpackZ(position);
+            builders.computeIfAbsent(orderKey(x >> 4, y >> 4, z >> 4), key -> new SectionBuilder(x >> 4, y >> 4, z >> 4))
+                    .set(SnapshotSection.index(x & 15, y & 15, z & 15), entry.getValue());
+        }
+        for (Map.Entry<Long, SectionBuilder> entry : builders.entrySet()) {
+            changes.put(entry.getKey(), entry.getValue().build());
+        }
+    }
+
+    /**
+     * Key that sorts sections in chunk order, by X, then Z, then Y, when compared unsigned
+     */
+    private static long orderKey(int x, int y, int z) {
+        return ((long) (x + (1 << 21)) << 42) | ((long) (z + (1 << 21)) << 20) | (y + (1 << 19));
+    }
+
+    private static long orderKey(SnapshotSection section) {
+        return orderKey(section.getX(), section.getY(), section.getZ());
+    }
+
+    @Override
+    public String getWorldName() {
+        return base.getWorldName();
+    }
+
+    @Override
+    public SnapshotSection next() throws IOException {
+        if (!headRead) {
+            head = base.next();
+            headRead = true;
+        }
+
+        Map.Entry<Long, SnapshotSection> changed = changes.firstEntry();
+        if (changed == null) {
+            return advance();
+        }
+        if (head == null) {
+            return changes.pollFirstEntry().getValue();
+        }
+
+        int order = Long.compareUnsigned(orderKey(head), changed.getKey());
+        if (order < 0) {
+            return advance();
+        }
+        changes.pollFirstEntry();
+        if (order > 0) {
+            return changed.getValue();
+        }
+        return advance().overlay(changed.getValue());
+    }
+
+    private SnapshotSection advance() throws IOException {
+        SnapshotSection section = head;
+        if (section != null) {
+            head = base.next();
+        }
+        return section;
+    }
+
+    @Override
+    public void skipThrough(int chunkX, int chunkZ) throws IOException {
+        boolean headAfter = head != null && (head.getX() > chunkX || (head.getX() == chunkX && head.getZ() > chunkZ));
+        if (!headRead || (head != null && !headAfter)) {
+            base.skipThrough(chunkX, chunkZ);
+            headRead = false;
+        }
+        // Everything up to the last section of the chunk
+        changes.headMap(orderKey(chunkX, (1 << 19) - 1, chunkZ), true).clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        changes.clear();
+        base.close();
+    }
+
+    /**
+     * Builds the changes of one section out of individual blocks
+     */
+    private static final class SectionBuilder {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final short[] blocks = new short[SnapshotSection.SIZE];
+        private final Map<String, Short> paletteIndex = new HashMap<>();
+        private final List<String> palette = new ArrayList<>();
+
+        private SectionBuilder(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            Arrays.fill(blocks, SnapshotSection.NOT_CAPTURED);
+        }
+
+        private void set(int index, String state) {
+            Short paletteEntry = paletteIndex.get(state);
+            if (paletteEntry == null) {
+                paletteEntry = (short) palette.size();
+                paletteIndex.put(state, paletteEntry);
+                palette.add(state);
+            }
+            blocks[index] = paletteEntry;
+        }
+
+        private SnapshotSection build() {
+            return new SnapshotSection(x, y, z, palette.toArray(new String[0]), blocks);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Persists {@link RestoreCheckpoint}s of running jobs to checkpoints.yml.
+ *
+ * <p>Checkpoints are serialized on the main thread and written off it. The
+ * file is replaced atomically, so a crash mid-write leaves the previous
+ * checkpoint intact.</p>
+ */
+public class CheckpointStore {
+
+    private final RegionRegenPlugin plugin;
+    private final File file;
+    private long nextSequence;
+    private long writtenSequence = -1;
+
+    /**
+     * Create a new CheckpointStore
+     *
+     * @param plugin The plugin instance
+     */
+    public CheckpointStore(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "checkpoints.yml");
+    }
+
+    /**
+     * Read the checkpoints left by the previous run
+     *
+     * @return The checkpoints, empty if the last run finished every job
+     */
+    public List<RestoreCheckpoint> load() {
+        List<RestoreCheckpoint> checkpoints = new ArrayList<>();
+        if (!file.isFile()) {
+            return checkpoints;
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(file);
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to read checkpoints.yml, interrupted regenerations cannot be resumed", e);
+            return checkpoints;
+        }
+
+        ConfigurationSection jobs = config.getConfigurationSection("jobs");
+        if (jobs == null) {
+            return checkpoints;
+        }
+        for (String jobId : jobs.getKeys(false)) {
+            ConfigurationSection job = jobs.getConfigurationSection(jobId);
+            if (job == null) {
+                continue;
+            }
+            checkpoints.add(new RestoreCheckpoint(
+                    jobId,
+                    job.getString("world"),
+                    job.getStringList("regions"),
+                    job.getLongList("generations"),
+                    job.getBoolean("started"),
+                    job.getInt("chunk-x"),
+                    job.getInt("chunk-z")
+            ));
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Persist the checkpoints of a set of jobs. Must be called on the main thread.
+     *
+     * @param jobs The running jobs
+     * @param async Write the file off the main thread
+     */
+    public void save(Collection<RestoreJob> jobs, boolean async) {
+        YamlConfiguration config = new YamlConfiguration();
+        for (RestoreJob job : jobs) {
+            RestoreCheckpoint checkpoint = job.checkpoint();
+            String path = "jobs." + checkpoint.getJobId();
+            config.set(path + ".world", checkpoint.getWorldName());
+            config.set(path + ".regions", checkpoint.getRegionIds());
+            config.set(path + ".generations", checkpoint.getGenerations());
+            config.set(path + ".started", checkpoint.isStarted());
+            config.set(path + ".chunk-x", checkpoint.getChunkX());
+            config.set(path + ".chunk-z", checkpoint.getChunkZ());
+        }
+
+        String contents = jobs.isEmpty() ? null : config.saveToString();
+        long sequence = nextSequence++;
+        if (!async) {
+            write(contents, sequence);
+            return;
+        }
+
+        plugin.getExecutors().io().execute(() -> write(contents, sequence));
+    }
+
+    /**
+     * Write checkpoint contents unless a newer state has already been written
+     */
+    private synchronized void write(String contents, long sequence) {
+        if (sequence < writtenSequence) {
+            return;
+        }
+        writtenSequence = sequence;
+
+        try {
+            if (contents == null) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            Files.write(temp.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to write regeneration checkpoints", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decoded sections of one chunk, the unit handed from the decoder to the applier
+ */
+public final class ChunkWork {
+
+    private final int chunkX;
+    private final int chunkZ;
+    private final List<SnapshotSection> sections = new ArrayList<>();
+    private long sequence;
+
+    public ChunkWork(int chunkX, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    /**
+     * Pack chunk coordinates into a single key
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The packed key
+     */
+    public static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int keyZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Order chunks the way snapshots are written: by chunk X, then chunk Z
+     *
+     * @param section A section
+     * @param other Another section
+     * @return Negative, zero or positive as the first section's chunk sorts before, with or after the other's
+     */
+    public static int compareChunks(SnapshotSection section, SnapshotSection other) {
+        int byX = Integer.compare(section.getX(), other.getX());
+        return byX != 0 ? byX : Integer.compare(section.getZ(), other.getZ());
+    }
+
+    /**
+     * Add a section. A section at the same height as one already added is laid over it,
+     * so overlapping regions write each block once.
+     *
+     * @param section The section to add
+     */
+    public void add(SnapshotSection section) {
+        for (int i = 0; i < sections.size(); i++) {
+            SnapshotSection existing = sections.get(i);
+            if (existing.getY() == section.getY()) {
+                sections.set(i, existing.overlay(section));
+                return;
+            }
+        }
+        sections.add(section);
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    /**
+     * Get the position of this chunk in its job's decode order
+     *
+     * @return The sequence number, starting at 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public List<SnapshotSection> getSections() {
+        return sections;
+    }
+
+    /**
+     * Check if a section belongs to this chunk
+     *
+     * @param section The section to check
+     * @return True if the section is in this chunk's column
+     */
+    public boolean contains(SnapshotSection section) {
+        return section.getX() == chunkX && section.getZ() == chunkZ;
+    }
+}
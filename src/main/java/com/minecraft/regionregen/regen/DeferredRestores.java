@@ -0,0 +1,315 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Restore work for chunks that were not loaded when their region was
+ * restored. Rather than loading such a chunk just to write it, the chunk is
+ * recorded here and restored from the snapshots when it next loads.
+ *
+ * <p>Pending chunks are persisted to deferred.dat, so they are still restored
+ * after a restart. A chunk stays pending until it has been fully written.</p>
+ */
+public class DeferredRestores {
+
+    private static final int MAGIC = 0x52524446; // "RRDF"
+    private static final int VERSION = 1;
+
+    private final RegionRegenPlugin plugin;
+    private final RegenScheduler scheduler;
+    private final File file;
+    // World name -> chunk key -> regions to restore, later regions win where they overlap
+    private final Map<String, Map<Long, List<String>>> pending = new HashMap<>();
+    private final Map<String, Set<Long>> restoring = new HashMap<>();
+    private boolean dirty;
+    private long nextSequence;
+    private long writtenSequence = -1;
+    private BukkitRunnable saveTask;
+
+    /**
+     * Create a new DeferredRestores
+     *
+     * @param plugin The plugin instance
+     * @param scheduler The scheduler chunk restores are submitted to
+     */
+    public DeferredRestores(RegionRegenPlugin plugin, RegenScheduler scheduler) {
+        this.plugin = plugin;
+        this.scheduler = scheduler;
+        this.file = new File(plugin.getDataFolder(), "deferred.dat");
+    }
+
+    /**
+     * Read the chunks left pending by the previous run and restore the ones
+     * that are already loaded. Must be called on the main thread once worlds are loaded.
+     */
+    public void load() {
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a deferred restore file");
+                }
+                int entries = in.readInt();
+                for (int i = 0; i < entries; i++) {
+                    String worldName = in.readUTF();
+                    long key = ChunkWork.key(in.readInt(), in.readInt());
+                    int count = in.readInt();
+                    List<String> regionIds = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        regionIds.add(in.readUTF());
+                    }
+                    pending.computeIfAbsent(worldName, w -> new HashMap<>()).put(key, regionIds);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to read deferred.dat, chunks waiting to be restored will not be", e);
+            }
+        }
+
+        if (getPendingCount() > 0) {
+            MessageUtils.log("§a" + getPendingCount() + " chunks will be restored when they next load.");
+        }
+
+        // Chunks that are already loaded will not fire a load event
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                onChunkLoad(chunk);
+            }
+        }
+
+        saveTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (dirty) {
+                    save(true);
+                }
+            }
+        };
+        saveTask.runTaskTimer(plugin, 20L, 20L);
+    }
+
+    /**
+     * Record that a chunk has to be restored when it next loads
+     *
+     * @param world The world the chunk is in
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @param regions The regions to restore in the chunk, later regions win where they overlap
+     */
+    public void defer(World world, int chunkX, int chunkZ, List<Region> regions) {
+        List<String> regionIds = pending.computeIfAbsent(world.getName(), w -> new HashMap<>())
+                .computeIfAbsent(ChunkWork.key(chunkX, chunkZ), k -> new ArrayList<>());
+        for (Region region : regions) {
+            // Move to the end, the latest restore wins
+            regionIds.remove(region.getId());
+            regionIds.add(region.getId());
+        }
+        dirty = true;
+    }
+
+    /**
+     * Drop pending work for regions that have just been restored in a loaded chunk,
+     * so a later load does not restore them again over newer changes
+     *
+     * @param world The world the chunk is in
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @param regions The regions that were restored
+     */
+    public void restored(World world, int chunkX, int chunkZ, List<Region> regions) {
+        Map<Long, List<String>> chunks = pending.get(world.getName());
+        if (chunks == null) {
+            return;
+        }
+        long key = ChunkWork.key(chunkX, chunkZ);
+        List<String> regionIds = chunks.get(key);
+        if (regionIds == null) {
+            return;
+        }
+        for (Region region : regions) {
+            dirty |= regionIds.remove(region.getId());
+        }
+        if (regionIds.isEmpty()) {
+            chunks.remove(key);
+        }
+    }
+
+    /**
+     * Drop all pending work of a region, e.g. when it is deleted
+     *
+     * @param regionId The region ID
+     */
+    public void forget(String regionId) {
+        for (Map<Long, List<String>> chunks : pending.values()) {
+            for (Iterator<List<String>> it = chunks.values().iterator(); it.hasNext(); ) {
+                List<String> regionIds = it.next();
+                dirty |= regionIds.remove(regionId);
+                if (regionIds.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Restore a chunk that has just loaded, if it has pending work. Must be called on the main thread.
+     *
+     * @param chunk The loaded chunk
+     */
+    public void onChunkLoad(Chunk chunk) {
+        World world = chunk.getWorld();
+        Map<Long, List<String>> chunks = pending.get(world.getName());
+        if (chunks == null) {
+            return;
+        }
+        long key = ChunkWork.key(chunk.getX(), chunk.getZ());
+        List<String> regionIds = chunks.get(key);
+        if (regionIds == null) {
+            return;
+        }
+        Set<Long> inProgress = restoring.computeIfAbsent(world.getName(), w -> new HashSet<>());
+        if (!inProgress.add(key)) {
+            return;
+        }
+
+        List<Region> regions = new ArrayList<>();
+        for (String regionId : regionIds) {
+            Region region = plugin.getRegionManager().getRegion(regionId);
+            if (region != null && plugin.getSnapshotManager().hasSnapshot(regionId)) {
+                regions.add(region);
+            }
+        }
+        if (regions.isEmpty()) {
+            chunks.remove(key);
+            inProgress.remove(key);
+            dirty = true;
+            return;
+        }
+
+        // The job calls restored() once the chunk is written, which clears it from pending
+        RestoreJob job = RestoreJob.forChunk(plugin, regions, world, chunk.getX(), chunk.getZ());
+        scheduler.submit(job);
+        job.getFuture().thenAccept(success -> inProgress.remove(key));
+    }
+
+    /**
+     * Get the number of chunks waiting to be restored
+     *
+     * @return The pending chunk count
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Map<Long, List<String>> chunks : pending.values()) {
+            count += chunks.size();
+        }
+        return count;
+    }
+
+    /**
+     * Persist the pending chunks. Must be called on the main thread.
+     *
+     * @param async Write the file off the main thread
+     */
+    public void save(boolean async) {
+        dirty = false;
+        byte[] contents;
+        try {
+            contents = serialize();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to serialize deferred restores", e);
+            return;
+        }
+        long sequence = nextSequence++;
+        if (!async) {
+            write(contents, sequence);
+            return;
+        }
+
+        plugin.getExecutors().io().execute(() -> write(contents, sequence));
+    }
+
+    /**
+     * Stop the periodic save and write any unsaved changes, used on shutdown
+     */
+    public void shutdown() {
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+        if (dirty) {
+            save(false);
+        }
+    }
+
+    private byte[] serialize() throws IOException {
+        int entries = getPendingCount();
+        if (entries == 0) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries);
+            for (Map.Entry<String, Map<Long, List<String>>> world : pending.entrySet()) {
+                for (Map.Entry<Long, List<String>> chunk : world.getValue().entrySet()) {
+                    out.writeUTF(world.getKey());
+                    out.writeInt(ChunkWork.keyX(chunk.getKey()));
+                    out.writeInt(ChunkWork.keyZ(chunk.getKey()));
+                    out.writeInt(chunk.getValue().size());
+                    for (String regionId : chunk.getValue()) {
+                        out.writeUTF(regionId);
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the file unless a newer state has already been written
+     */
+    private synchronized void write(byte[] contents, long sequence) {
+        if (sequence < writtenSequence) {
+            return;
+        }
+        writtenSequence = sequence;
+
+        try {
+            if (contents == null) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()))) {
+                out.write(contents);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to write deferred restores", e);
+        }
+    }
+}
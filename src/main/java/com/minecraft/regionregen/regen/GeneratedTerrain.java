@@ -0,0 +1,246 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.snapshot.SectionCapture;
+import com.minecraft.regionregen.snapshot.SectionStream;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fresh terrain from the world generator, as a stream of sections clipped to
+ * a set of regions, so it can be restored like a snapshot.
+ *
+ * <p>Chunks are generated in a {@link ScratchWorlds scratch world}, never in
+ * the live world. A main-thread task requests a few of them per tick, copies
+ * each into a {@link ChunkSnapshot} and unloads it again; the stream's
+ * reader, normally a restore job's decoder, encodes only the blocks inside
+ * the regions. The two sides are joined by a bounded queue, so no more than
+ * a window of generated chunks is held at once. The reader never waits on
+ * the queue: it checks {@link #isReady()} and comes back later.</p>
+ *
+ * <p>On Paper, chunks are requested with its async chunk API, which
+ * generates them on its worldgen threads; the main thread only copies the
+ * finished chunk. Spigot has no such API: there the main thread generates
+ * each requested chunk itself, decoration included, which is why
+ * regeneration from the seed is off unless enabled in the config.</p>
+ */
+public final class GeneratedTerrain implements SectionStream {
+
+    // Paper's World#getChunkAtAsync(int, int), null on Spigot
+    private static final Method GET_CHUNK_AT_ASYNC = findChunkAtAsync();
+
+    private final RegionRegenPlugin plugin;
+    private final ScratchWorlds scratchWorlds;
+    private final World source;
+    private final List<Region> regions;
+    private final long[] chunks;
+    private final BlockingQueue<ChunkSnapshot> queue;
+    private final int windowSize;
+    private final Deque<SnapshotSection> pending = new ArrayDeque<>();
+    private volatile boolean closed;
+    private volatile Exception failure;
+    private int consumed;
+
+    /**
+     * Start generating terrain for regions. Must be called on the main thread.
+     *
+     * @param plugin The plugin instance
+     * @param scratchWorlds The scratch world pool
+     * @param source The world the regions are in
+     * @param regions The regions to generate, later regions win where they overlap
+     * @param chunks Packed keys of the chunks to generate, see {@link ChunkWork#key}
+     * @param windowSize Number of generated chunks to buffer ahead of the reader
+     * @param chunksPerTick Number of chunks to generate per tick
+     * @return The stream, or null if no scratch world could be created
+     */
+    public static GeneratedTerrain start(RegionRegenPlugin plugin, ScratchWorlds scratchWorlds, World source, List<Region> regions,
+                                         long[] chunks, int windowSize, int chunksPerTick) {
+        World scratch = scratchWorlds.acquire(source);
+        if (scratch == null) {
+            return null;
+        }
+        GeneratedTerrain terrain = new GeneratedTerrain(plugin, scratchWorlds, source, regions, chunks, windowSize);
+        terrain.produce(scratch, chunksPerTick);
+        return terrain;
+    }
+
+    private GeneratedTerrain(RegionRegenPlugin plugin, ScratchWorlds scratchWorlds, World source, List<Region> regions,
+                             long[] chunks, int windowSize) {
+        this.plugin = plugin;
+        this.scratchWorlds = scratchWorlds;
+        this.source = source;
+        this.regions = new ArrayList<>(regions);
+        this.chunks = chunks.clone();
+        this.windowSize = Math.max(1, windowSize);
+        this.queue = new ArrayBlockingQueue<>(this.windowSize);
+    }
+
+    private static Method findChunkAtAsync() {
+        try {
+            return World.class.getMethod("getChunkAtAsync", int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if chunks are generated off the main thread, see the class description
+     *
+     * @return True on servers with Paper's async chunk API
+     */
+    public static boolean isAsyncGeneration() {
+        return GET_CHUNK_AT_ASYNC != null;
+    }
+
+    /**
+     * Generate chunks in the scratch world a few per tick, backing off while the reader catches up
+     */
+    private void produce(World scratch, int chunksPerTick) {
+        new BukkitRunnable() {
+            private int next = 0;
+            // Async chunks may finish out of order, they are queued in chunk order
+            private final Map<Integer, ChunkSnapshot> arrived = new HashMap<>();
+            private int nextQueued = 0;
+
+            @Override
+            public void run() {
+                if (closed || failure != null || !plugin.isEnabled()) {
+                    finish();
+                    return;
+                }
+
+                for (int i = 0; i < chunksPerTick && next < chunks.length; i++) {
+                    // Requested but not yet queued, plus queued but not yet read
+                    if (next - nextQueued + queue.size() >= windowSize) {
+                        break;
+                    }
+                    int index = next++;
+                    int chunkX = ChunkWork.keyX(chunks[index]);
+                    int chunkZ = ChunkWork.keyZ(chunks[index]);
+                    if (GET_CHUNK_AT_ASYNC == null) {
+                        // Generates the chunk on the main thread
+                        arrive(index, scratch.getChunkAt(chunkX, chunkZ));
+                        continue;
+                    }
+                    requestAsync(scratch, chunkX, chunkZ).whenComplete((chunk, error) -> {
+                        if (error != null) {
+                            failure = error instanceof Exception ? (Exception) error : new Exception(error);
+                        } else if (closed) {
+                            scratch.unloadChunkRequest(chunk.getX(), chunk.getZ());
+                        } else {
+                            arrive(index, chunk);
+                        }
+                    });
+                }
+
+                if (nextQueued >= chunks.length) {
+                    finish();
+                }
+            }
+
+            /**
+             * Copy a generated chunk, then queue every chunk that is next in order
+             */
+            private void arrive(int index, Chunk chunk) {
+                arrived.put(index, chunk.getChunkSnapshot(false, false, false));
+                scratch.unloadChunkRequest(chunk.getX(), chunk.getZ());
+                ChunkSnapshot snapshot;
+                while ((snapshot = arrived.remove(nextQueued)) != null) {
+                    queue.offer(snapshot);
+                    nextQueued++;
+                }
+            }
+
+            private void finish() {
+                cancel();
+                arrived.clear();
+                scratchWorlds.release(source);
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Request a chunk through Paper's async chunk API. The future completes on the main thread.
+     */
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Chunk> requestAsync(World world, int chunkX, int chunkZ) {
+        try {
+            return (CompletableFuture<Chunk>) GET_CHUNK_AT_ASYNC.invoke(world, chunkX, chunkZ);
+        } catch (ReflectiveOperationException e) {
+            CompletableFuture<Chunk> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public String getWorldName() {
+        return source.getName();
+    }
+
+    @Override
+    public SnapshotSection next() throws IOException {
+        while (pending.isEmpty()) {
+            if (consumed >= chunks.length) {
+                return null;
+            }
+            if (closed || !plugin.isEnabled()) {
+                throw new IOException("Terrain generation was stopped");
+            }
+            if (failure != null) {
+                throw new IOException("Failed to generate terrain", failure);
+            }
+            ChunkSnapshot chunk = queue.poll();
+            if (chunk == null) {
+                throw new IOException("No generated chunk is ready, see isReady()");
+            }
+            consumed++;
+
+            // Sections of one chunk stay together, so the decoder lays overlapping regions over each other
+            for (Region region : regions) {
+                int[] min = {region.getMinPoint().getBlockX(), region.getMinPoint().getBlockY(), region.getMinPoint().getBlockZ()};
+                int[] max = {region.getMaxPoint().getBlockX(), region.getMaxPoint().getBlockY(), region.getMaxPoint().getBlockZ()};
+                pending.addAll(SectionCapture.encodeChunk(chunk, min, max, region.getMask()));
+            }
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Ready once a generated chunk is queued, or when the stream ended or was stopped
+     */
+    @Override
+    public boolean isReady() {
+        return !pending.isEmpty() || consumed >= chunks.length || !queue.isEmpty() || closed || failure != null
+                || !plugin.isEnabled();
+    }
+
+    @Override
+    public void skipThrough(int chunkX, int chunkZ) throws IOException {
+        throw new IOException("Generated terrain cannot be resumed part way");
+    }
+
+    @Override
+    public void close() {
+        // The producer notices on its next run and releases the scratch world
+        closed = true;
+        queue.clear();
+        pending.clear();
+    }
+}
@@ -0,0 +1,257 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.utils.RegenerationSettings;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Drives every active {@link RestoreJob} from a single main-thread task,
+ * sharing the configured blocks-per-tick budget between them. Job progress
+ * is checkpointed at the configured interval and whenever a job starts or
+ * ends, so interrupted jobs can be resumed on the next startup.
+ * Restores of single chunks that were deferred until they loaded are not
+ * checkpointed; {@link DeferredRestores} keeps track of those.
+ *
+ * <p>The time and heap the appliers take on the main thread are counted, see
+ * {@link #getApplyNanos()}, so their cost per tick can be measured.</p>
+ */
+public class RegenScheduler {
+
+    private final RegionRegenPlugin plugin;
+    private final List<RestoreJob> jobs = new ArrayList<>();
+    private final CheckpointStore checkpoints;
+    private final DeferredRestores deferredRestores;
+    private final ScratchWorlds scratchWorlds;
+    private BukkitRunnable task;
+    private long tick;
+    private long lastCheckpointTick;
+    private boolean jobsChanged;
+
+    private long ticksApplied;
+    private long blocksApplied;
+    private long applyNanos;
+    private long maxApplyNanos;
+    private long applyAllocatedBytes;
+
+    /**
+     * Create a new RegenScheduler
+     *
+     * @param plugin The plugin instance
+     */
+    public RegenScheduler(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+        this.checkpoints = new CheckpointStore(plugin);
+        this.deferredRestores = new DeferredRestores(plugin, this);
+        this.scratchWorlds = new ScratchWorlds(plugin);
+    }
+
+    /**
+     * Get the store interrupted jobs are checkpointed to
+     *
+     * @return The checkpoint store
+     */
+    public CheckpointStore getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Get the chunks waiting to be restored when they next load
+     *
+     * @return The deferred restores
+     */
+    public DeferredRestores getDeferredRestores() {
+        return deferredRestores;
+    }
+
+    /**
+     * Get the scratch worlds fresh terrain is generated in
+     *
+     * @return The scratch world pool
+     */
+    public ScratchWorlds getScratchWorlds() {
+        return scratchWorlds;
+    }
+
+    /**
+     * Start a job: its decoder begins immediately, the applier on the next run
+     *
+     * @param job The job to schedule
+     */
+    public void submit(RestoreJob job) {
+        jobs.add(job);
+        jobsChanged |= job.isCheckpointed();
+        job.startDecoding();
+
+        if (task == null) {
+            task = new BukkitRunnable() {
+                @Override
+                public void run() {
+                    runTick();
+                }
+            };
+            task.runTaskTimer(plugin, 1L, 1L);
+        }
+    }
+
+    private void runTick() {
+        RegenerationSettings settings = plugin.getConfigManager().getSettings().getRegeneration();
+        if (tick++ % settings.getBlockDelay() != 0) {
+            checkpoint(settings);
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        long allocatedBefore = currentThreadAllocatedBytes();
+        int budget = settings.getBlocksPerTick();
+        int share = Math.max(1, budget / Math.max(1, jobs.size()));
+
+        // Iterate over a copy, completion callbacks may submit new jobs
+        for (RestoreJob job : new ArrayList<>(jobs)) {
+            if (budget <= 0) {
+                break;
+            }
+            int applied = job.apply(Math.min(share, budget));
+            budget -= applied;
+            blocksApplied += applied;
+        }
+
+        long elapsed = System.nanoTime() - startedAt;
+        ticksApplied++;
+        applyNanos += elapsed;
+        maxApplyNanos = Math.max(maxApplyNanos, elapsed);
+        if (allocatedBefore >= 0) {
+            applyAllocatedBytes += currentThreadAllocatedBytes() - allocatedBefore;
+        }
+
+        for (Iterator<RestoreJob> it = jobs.iterator(); it.hasNext(); ) {
+            RestoreJob job = it.next();
+            if (job.isDone()) {
+                it.remove();
+                jobsChanged |= job.isCheckpointed();
+            }
+        }
+
+        checkpoint(settings);
+
+        if (jobs.isEmpty()) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Get the bytes the calling thread has allocated so far
+     *
+     * @return The byte count, or -1 if the JVM does not track it
+     */
+    private static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Persist job progress when a job started or ended, or the interval has passed
+     */
+    private void checkpoint(RegenerationSettings settings) {
+        long interval = settings.getCheckpointIntervalSeconds() * 20L;
+        if (interval <= 0) {
+            return;
+        }
+        if (jobsChanged || tick - lastCheckpointTick >= interval) {
+            checkpoints.save(checkpointedJobs(), true);
+            jobsChanged = false;
+            lastCheckpointTick = tick;
+        }
+    }
+
+    private List<RestoreJob> checkpointedJobs() {
+        List<RestoreJob> checkpointed = new ArrayList<>();
+        for (RestoreJob job : jobs) {
+            if (job.isCheckpointed()) {
+                checkpointed.add(job);
+            }
+        }
+        return checkpointed;
+    }
+
+    /**
+     * Cancel all running jobs, used on shutdown. Their progress is checkpointed
+     * first, so they resume on the next startup, and deferred chunks are saved.
+     * Scratch worlds are unloaded.
+     */
+    public void cancelAll() {
+        if (plugin.getConfigManager().getSettings().getRegeneration().getCheckpointIntervalSeconds() > 0) {
+            checkpoints.save(checkpointedJobs(), false);
+        }
+        for (RestoreJob job : new ArrayList<>(jobs)) {
+            job.cancel();
+        }
+        jobs.clear();
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        deferredRestores.shutdown();
+        scratchWorlds.shutdown();
+    }
+
+    /**
+     * Get the number of jobs currently running
+     *
+     * @return The active job count
+     */
+    public int getActiveJobCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Get the number of ticks the appliers ran on
+     *
+     * @return The tick count since startup
+     */
+    public long getTicksApplied() {
+        return ticksApplied;
+    }
+
+    public long getBlocksApplied() {
+        return blocksApplied;
+    }
+
+    /**
+     * Get the main-thread time spent applying blocks
+     *
+     * @return The time in nanoseconds since startup
+     */
+    public long getApplyNanos() {
+        return applyNanos;
+    }
+
+    /**
+     * Get the longest a single tick spent applying blocks
+     *
+     * @return The time in nanoseconds
+     */
+    public long getMaxApplyNanos() {
+        return maxApplyNanos;
+    }
+
+    /**
+     * Get the heap allocated on the main thread while applying blocks
+     *
+     * @return The byte count since startup, 0 if the JVM does not track allocations
+     */
+    public long getApplyAllocatedBytes() {
+        return applyAllocatedBytes;
+    }
+}
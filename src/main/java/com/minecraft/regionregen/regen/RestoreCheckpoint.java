@@ -0,0 +1,89 @@
+package com.minecraft.regionregen.regen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Progress of a {@link RestoreJob}, persisted so an interrupted job can
+ * resume after a restart.
+ *
+ * <p>Chunks are applied in chunk order, so the last fully applied chunk is
+ * enough to know what is done. Restoring a block is idempotent: the chunk
+ * that was in progress when the server stopped is simply applied again.</p>
+ */
+public final class RestoreCheckpoint {
+
+    private final String jobId;
+    private final String worldName;
+    private final List<String> regionIds;
+    private final List<Long> generations;
+    private final boolean started;
+    private final int chunkX;
+    private final int chunkZ;
+
+    /**
+     * Create a checkpoint
+     *
+     * @param jobId ID of the job
+     * @param worldName World the job restores
+     * @param regionIds Regions of the job, in merge order
+     * @param generations Snapshot generation per region, see {@code SnapshotManager#getGeneration}
+     * @param started Whether any chunk has been fully applied
+     * @param chunkX X of the last fully applied chunk
+     * @param chunkZ Z of the last fully applied chunk
+     */
+    public RestoreCheckpoint(String jobId, String worldName, List<String> regionIds, List<Long> generations,
+                             boolean started, int chunkX, int chunkZ) {
+        this.jobId = jobId;
+        this.worldName = worldName;
+        this.regionIds = Collections.unmodifiableList(new ArrayList<>(regionIds));
+        this.generations = Collections.unmodifiableList(new ArrayList<>(generations));
+        this.started = started;
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+    }
+
+    /**
+     * Get a copy of this checkpoint that restarts the job from the first chunk
+     *
+     * @param generations The current snapshot generations
+     * @return The restarted checkpoint
+     */
+    public RestoreCheckpoint restart(List<Long> generations) {
+        return new RestoreCheckpoint(jobId, worldName, regionIds, generations, false, 0, 0);
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public List<String> getRegionIds() {
+        return regionIds;
+    }
+
+    public List<Long> getGenerations() {
+        return generations;
+    }
+
+    /**
+     * Check if any chunk was fully applied before the checkpoint was taken
+     *
+     * @return False if the job has to start from the first chunk
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+}
@@ -0,0 +1,749 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.snapshot.SchematicBridge;
+import com.minecraft.regionregen.snapshot.SectionStream;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import com.minecraft.regionregen.snapshot.TemplateSnapshot;
+import com.minecraft.regionregen.snapshot.UndoStore;
+import com.minecraft.regionregen.utils.MessageUtils;
+import com.minecraft.regionregen.utils.RegenerationSettings;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Restores one or more regions of a world from their snapshots.
+ *
+ * <p>An async decoder streams the snapshots in chunk order and merges them,
+ * so every chunk becomes a single unit of work however many regions share
+ * it. Merged chunks go into a small bounded window. The main thread pulls chunks out of that window via
+ * {@link #apply(int)} and releases each one as soon as it has been written,
+ * so memory use depends on the window size, not on the region size.
+ * The decoder runs on the worker pool until the window is full, then
+ * returns; the applier queues it again as it frees room, so a job never
+ * holds a worker while it waits on the main thread.</p>
+ *
+ * <p>With the worldedit backend, blocks are written through an edit session
+ * with side effects off and flushed once per {@link #apply(int)} call.</p>
+ *
+ * <p>With a priority lookahead, the applier keeps up to that many decoded
+ * chunks at hand and always applies the one nearest to a player next,
+ * re-ranking them as players move. The order changes, the work does not.</p>
+ *
+ * <p>Unless undo is disabled, the previous state of every block a job changes
+ * is recorded per region as an undo generation, see {@link UndoStore}.</p>
+ *
+ * <p>The blocks come from a {@link BlockSource}: the regions' snapshots, or
+ * prepared sections, an undo generation, a template, generated terrain or a
+ * change log replay. A job restoring a {@link TemplateSnapshot} writes each
+ * block at an offset; chunks and sections are ranked in template space, with
+ * player positions moved by the same offset.</p>
+ *
+ * <p>When deferring is enabled, chunks that are not loaded are not written;
+ * they are handed to {@link DeferredRestores} and restored when they next load.</p>
+ *
+ * <p>Progress is exposed as a {@link RestoreCheckpoint}; a job created from
+ * one skips every chunk the checkpoint marks as applied. Since chunks may be
+ * applied out of decode order, the checkpoint is the last chunk before which
+ * every chunk has been applied.</p>
+ */
+public class RestoreJob {
+
+    // Visiting a block that already matches is far cheaper than setting one
+    private static final int VISITS_PER_CHANGE = 8;
+
+    private final RegionRegenPlugin plugin;
+    private final List<Region> regions;
+    private final World world;
+    private final BlockingQueue<ChunkWork> window;
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+    private final boolean worldEditBackend;
+    private final String jobId;
+    private final List<Long> generations = new ArrayList<>();
+    private final RestoreCheckpoint resumeFrom;
+    private final BlockSource source;
+    private final int lookahead;
+    private final DeferredRestores deferredRestores;
+    private final boolean deferUnloaded;
+    private final boolean templated;
+    private final int offsetX;
+    private final int offsetY;
+    private final int offsetZ;
+
+    private volatile boolean decodeFinished;
+    // Set while a decode run is queued or running, so runs never overlap
+    private final AtomicBoolean decoding = new AtomicBoolean(false);
+    private volatile boolean cancelled;
+    private volatile Exception failure;
+
+    // Decoder state, only touched by decode runs
+    private List<SectionStream> streams;
+    private SnapshotSection[] heads;
+    // Heads that were merged, the stream's next section is read before merging again
+    private boolean[] headsPending;
+    private ChunkWork merging;
+
+    // Applier cursor, main thread only
+    private final List<ChunkWork> ready = new ArrayList<>();
+    private final RestorePriority priority;
+    private final Map<Long, ChunkWork> appliedAhead = new HashMap<>();
+    private long decodedChunks;
+    private long nextSequence;
+    private ChunkWork current;
+    private int sectionIndex;
+    private int cellIndex;
+    private long blocksChanged;
+    private long blocksVisited;
+    private EditSession editSession;
+    private SnapshotSection adaptedSection;
+    private BlockState[] adaptedPalette;
+    private boolean started;
+    private int lastChunkX;
+    private int lastChunkZ;
+    private long chunksDeferred;
+    private UndoStore.Recording[] undo;
+
+    /**
+     * Create a restore job
+     *
+     * @param plugin The plugin instance
+     * @param regions The regions to restore, later regions win where they overlap
+     * @param world The world the regions are in
+     * @param windowSize Number of decoded chunks to buffer ahead of the applier
+     */
+    public RestoreJob(RegionRegenPlugin plugin, List<Region> regions, World world, int windowSize) {
+        this(plugin, regions, world, windowSize, null);
+    }
+
+    /**
+     * Create a restore job that continues from a checkpoint
+     *
+     * @param plugin The plugin instance
+     * @param regions The regions to restore, in the checkpoint's order
+     * @param world The world the regions are in
+     * @param windowSize Number of decoded chunks to buffer ahead of the applier
+     * @param resumeFrom The checkpoint to continue from, or null to start from the first chunk
+     */
+    public RestoreJob(RegionRegenPlugin plugin, List<Region> regions, World world, int windowSize, RestoreCheckpoint resumeFrom) {
+        this(plugin, regions, world, windowSize, resumeFrom, BlockSource.snapshots());
+    }
+
+    private RestoreJob(RegionRegenPlugin plugin, List<Region> regions, World world, int windowSize, RestoreCheckpoint resumeFrom,
+                       BlockSource source) {
+        RegenerationSettings settings = plugin.getConfigManager().getSettings().getRegeneration();
+        this.plugin = plugin;
+        this.source = source;
+        int[] offset = source.getOffset();
+        this.templated = offset != null;
+        this.offsetX = templated ? offset[0] : 0;
+        this.offsetY = templated ? offset[1] : 0;
+        this.offsetZ = templated ? offset[2] : 0;
+        this.priority = new RestorePriority(offsetX, offsetY, offsetZ);
+        this.deferredRestores = plugin.getRegionManager().getDeferredRestores();
+        // Deferred chunks are restored from the regions' snapshots when they load
+        this.deferUnloaded = source.isFullSnapshot() && settings.isDeferUnloaded();
+        this.regions = new ArrayList<>(regions);
+        this.world = world;
+        this.window = new ArrayBlockingQueue<>(Math.max(1, windowSize));
+        this.lookahead = settings.getPriorityLookahead();
+        this.worldEditBackend = settings.isWorldEditBackend();
+        this.jobId = resumeFrom != null ? resumeFrom.getJobId() : UUID.randomUUID().toString();
+        this.resumeFrom = resumeFrom != null && resumeFrom.isStarted() && source.isFullSnapshot() ? resumeFrom : null;
+        for (Region region : this.regions) {
+            generations.add(plugin.getSnapshotManager().getGeneration(region.getId()));
+        }
+        if (this.resumeFrom != null) {
+            started = true;
+            lastChunkX = this.resumeFrom.getChunkX();
+            lastChunkZ = this.resumeFrom.getChunkZ();
+        }
+
+        if (source.recordsUndo() && settings.getUndoGenerations() > 0) {
+            UndoStore undoStore = plugin.getSnapshotManager().getUndoStore();
+            undo = new UndoStore.Recording[this.regions.size()];
+            for (int i = 0; i < undo.length; i++) {
+                Region region = this.regions.get(i);
+                int[] min = {region.getMinPoint().getBlockX(), region.getMinPoint().getBlockY(), region.getMinPoint().getBlockZ()};
+                int[] max = {region.getMaxPoint().getBlockX(), region.getMaxPoint().getBlockY(), region.getMaxPoint().getBlockZ()};
+                undo[i] = undoStore.begin(region.getId(), world.getName(), min, max);
+            }
+        }
+    }
+
+    /**
+     * Create a job that restores a prepared set of sections instead of whole
+     * snapshots, e.g. the changed blocks of a {@link com.minecraft.regionregen.snapshot.SnapshotDiff}.
+     * Such jobs are not checkpointed and never defer unloaded chunks, since
+     * both would restore the whole snapshot later; undo is recorded as usual.
+     *
+     * @param plugin The plugin instance
+     * @param region The region the sections belong to
+     * @param world The world the region is in
+     * @param windowSize Number of chunks to buffer ahead of the applier
+     * @param sections The sections to restore, in chunk order
+     * @return The job
+     */
+    public static RestoreJob forSections(RegionRegenPlugin plugin, Region region, World world, int windowSize,
+                                         List<SnapshotSection> sections) {
+        return new RestoreJob(plugin, Collections.singletonList(region), world, windowSize, null, BlockSource.sections(sections));
+    }
+
+    /**
+     * Create a job that restores a single chunk of one or more regions, used
+     * for chunks whose restore was deferred until they loaded. Such jobs are
+     * not checkpointed; the chunk stays pending until it has been written.
+     *
+     * @param plugin The plugin instance
+     * @param regions The regions to restore, later regions win where they overlap
+     * @param world The world the chunk is in
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The job
+     */
+    public static RestoreJob forChunk(RegionRegenPlugin plugin, List<Region> regions, World world, int chunkX, int chunkZ) {
+        return new RestoreJob(plugin, regions, world, 1, null, BlockSource.chunk(chunkX, chunkZ));
+    }
+
+    /**
+     * Create a job that rolls a region back to one of its undo generations.
+     * Such jobs are not checkpointed and record no undo themselves.
+     *
+     * @param plugin The plugin instance
+     * @param region The region to roll back
+     * @param world The world the region is in
+     * @param windowSize Number of decoded chunks to buffer ahead of the applier
+     * @param generation The undo generation file, see {@link UndoStore#getGenerations}
+     * @return The job
+     */
+    public static RestoreJob forUndo(RegionRegenPlugin plugin, Region region, World world, int windowSize, File generation) {
+        return new RestoreJob(plugin, Collections.singletonList(region), world, windowSize, null, BlockSource.undo(generation));
+    }
+
+    /**
+     * Create a job that restores a template into a target region. The
+     * template's minimum corner is placed on the target's minimum corner.
+     * The template's sections are read, not copied, so any number of jobs
+     * can share one template. Such jobs are not checkpointed and never defer
+     * unloaded chunks; the undo of the target is recorded as usual.
+     *
+     * @param plugin The plugin instance
+     * @param template The decoded template, see {@link com.minecraft.regionregen.managers.SnapshotManager#loadTemplate}
+     * @param target The region to restore the template into
+     * @param world The world the target is in
+     * @param windowSize Number of chunks to buffer ahead of the applier
+     * @return The job
+     */
+    public static RestoreJob forTemplate(RegionRegenPlugin plugin, TemplateSnapshot template, Region target, World world, int windowSize) {
+        int[] min = template.getMin();
+        int[] offset = {
+                target.getMinPoint().getBlockX() - min[0],
+                target.getMinPoint().getBlockY() - min[1],
+                target.getMinPoint().getBlockZ() - min[2]
+        };
+        return new RestoreJob(plugin, Collections.singletonList(target), world, windowSize, null, BlockSource.template(template, offset));
+    }
+
+    /**
+     * Create a job that writes fresh terrain from the world generator into
+     * regions. Such jobs are not checkpointed and never defer unloaded
+     * chunks; undo is recorded as usual.
+     *
+     * @param plugin The plugin instance
+     * @param regions The regions the terrain is clipped to
+     * @param world The world the regions are in
+     * @param windowSize Number of chunks to buffer ahead of the applier
+     * @param terrain The generated terrain; the job closes it when done
+     * @return The job
+     */
+    public static RestoreJob forTerrain(RegionRegenPlugin plugin, List<Region> regions, World world, int windowSize,
+                                        GeneratedTerrain terrain) {
+        return new RestoreJob(plugin, regions, world, windowSize, null, BlockSource.prepared(terrain));
+    }
+
+    /**
+     * Create a job that restores a region to a point in time: its snapshot
+     * with the logged changes up to then replayed over it. Such jobs are not
+     * checkpointed and never defer unloaded chunks; undo is recorded as usual.
+     *
+     * @param plugin The plugin instance
+     * @param region The region to restore
+     * @param world The world the region is in
+     * @param windowSize Number of decoded chunks to buffer ahead of the applier
+     * @param replay The replay; the job closes it when done
+     * @return The job
+     */
+    public static RestoreJob forReplay(RegionRegenPlugin plugin, Region region, World world, int windowSize, ChangeReplay replay) {
+        return new RestoreJob(plugin, Collections.singletonList(region), world, windowSize, null, BlockSource.prepared(replay));
+    }
+
+    /**
+     * Start decoding the snapshot on the worker pool
+     */
+    public void startDecoding() {
+        resumeDecoding();
+    }
+
+    /**
+     * Queue a decode run if the window has room, or the job was cancelled and the
+     * streams are still open, and no run is queued or running
+     */
+    private void resumeDecoding() {
+        if (!decodeFinished && (cancelled || window.remainingCapacity() > 0) && decoding.compareAndSet(false, true)) {
+            plugin.getExecutors().workers().execute(this::decode);
+        }
+    }
+
+    /**
+     * Decode chunks until the window is full or a stream has nothing ready, then
+     * return. The applier queues the next run as it takes chunks out of the
+     * window, so the job never holds a worker while it waits on the main thread.
+     */
+    private void decode() {
+        boolean done = true;
+        boolean waitingOnSource = false;
+        try {
+            if (streams == null) {
+                streams = source.open(plugin, regions, world);
+                heads = new SnapshotSection[streams.size()];
+                headsPending = new boolean[heads.length];
+                for (int i = 0; i < heads.length; i++) {
+                    if (resumeFrom != null) {
+                        streams.get(i).skipThrough(resumeFrom.getChunkX(), resumeFrom.getChunkZ());
+                    }
+                    headsPending[i] = true;
+                }
+            }
+
+            // Merge the streams: they are all in chunk order, so take the lowest chunk each round
+            while (!cancelled) {
+                if (!refillHeads()) {
+                    done = false;
+                    waitingOnSource = true;
+                    break;
+                }
+
+                if (merging == null) {
+                    if (window.remainingCapacity() == 0) {
+                        done = false;
+                        break;
+                    }
+                    SnapshotSection lowest = null;
+                    for (SnapshotSection head : heads) {
+                        if (head != null && (lowest == null || ChunkWork.compareChunks(head, lowest) < 0)) {
+                            lowest = head;
+                        }
+                    }
+                    if (lowest == null) {
+                        break;
+                    }
+                    merging = new ChunkWork(lowest.getX(), lowest.getZ());
+                }
+
+                boolean took = false;
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && merging.contains(heads[i])) {
+                        merging.add(heads[i]);
+                        heads[i] = null;
+                        headsPending[i] = true;
+                        took = true;
+                    }
+                }
+                if (took) {
+                    // The next sections may belong to the same chunk
+                    continue;
+                }
+
+                for (SnapshotSection section : merging.getSections()) {
+                    section.resolvePalette();
+                }
+                merging.setSequence(decodedChunks++);
+                // Only this run adds to the window, and it had room
+                window.add(merging);
+                merging = null;
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        if (done) {
+            for (SectionStream stream : streams != null ? streams : Collections.<SectionStream>emptyList()) {
+                try {
+                    stream.close();
+                } catch (Exception ignored) {
+                }
+            }
+            merging = null;
+            decodeFinished = true;
+            return;
+        }
+        decoding.set(false);
+        // The applier may have taken chunks after this run found the window full, or cancelled
+        // the job. A source that is not ready is tried again on the applier's next pass.
+        if (!waitingOnSource || cancelled) {
+            resumeDecoding();
+        }
+    }
+
+    /**
+     * Read the next section of every stream whose head was merged
+     *
+     * @return False if a stream has nothing ready yet, see {@link SectionStream#isReady}
+     */
+    private boolean refillHeads() throws IOException {
+        for (int i = 0; i < heads.length; i++) {
+            if (headsPending[i]) {
+                if (!streams.get(i).isReady()) {
+                    return false;
+                }
+                heads[i] = streams.get(i).next();
+                headsPending[i] = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply decoded blocks to the world. Must be called on the main thread.
+     *
+     * @param budget Maximum number of blocks to change
+     * @return The number of blocks changed
+     */
+    public int apply(int budget) {
+        if (future.isDone()) {
+            return 0;
+        }
+        if (failure != null) {
+            plugin.getLogger().log(Level.SEVERE, "Error restoring regions: " + describeRegions(), failure);
+            finish(false);
+            return 0;
+        }
+
+        if (worldEditBackend && editSession == null) {
+            editSession = SchematicBridge.openFastSession(world);
+        }
+
+        if (lookahead > 1) {
+            priority.update(world);
+        }
+
+        int changed = 0;
+        int visitBudget = budget * VISITS_PER_CHANGE;
+
+        while (changed < budget && visitBudget > 0) {
+            if (current == null) {
+                current = nextChunk();
+                if (current == null) {
+                    break;
+                }
+                sectionIndex = 0;
+                cellIndex = 0;
+
+                if (deferUnloaded && !world.isChunkLoaded(current.getChunkX(), current.getChunkZ())) {
+                    // Written when the chunk next loads instead of loading it now
+                    deferredRestores.defer(world, current.getChunkX(), current.getChunkZ(), regionsIn(current));
+                    chunksDeferred++;
+                    markApplied(current);
+                    current = null;
+                    continue;
+                }
+            }
+
+            if (sectionIndex >= current.getSections().size()) {
+                // Chunk fully applied, release it
+                if (!templated) {
+                    deferredRestores.restored(world, current.getChunkX(), current.getChunkZ(), regions);
+                }
+                markApplied(current);
+                current = null;
+                continue;
+            }
+
+            SnapshotSection section = current.getSections().get(sectionIndex);
+            BlockData[] palette = section.resolvePalette();
+            BlockState[] states = editSession != null ? adaptPalette(section) : null;
+            short[] blocks = section.getBlocks();
+            int baseX = (section.getX() << 4) + offsetX;
+            int baseY = (section.getY() << 4) + offsetY;
+            int baseZ = (section.getZ() << 4) + offsetZ;
+
+            while (cellIndex < SnapshotSection.SIZE && changed < budget && visitBudget > 0) {
+                int index = cellIndex++;
+                short paletteIndex = blocks[index];
+                if (paletteIndex == SnapshotSection.NOT_CAPTURED || palette[paletteIndex] == null) {
+                    continue;
+                }
+
+                visitBudget--;
+                blocksVisited++;
+                int x = baseX + (index & 15);
+                int y = baseY + (index >> 8);
+                int z = baseZ + ((index >> 4) & 15);
+                Block block = world.getBlockAt(x, y, z);
+                BlockData target = palette[paletteIndex];
+                BlockData existing = block.getBlockData();
+                if (!existing.equals(target)) {
+                    recordUndo(x, y, z, existing);
+                    if (states != null) {
+                        try {
+                            editSession.setBlock(BlockVector3.at(x, y, z), states[paletteIndex]);
+                        } catch (WorldEditException e) {
+                            // Reported and finished on the next call
+                            failure = e;
+                            visitBudget = 0;
+                            break;
+                        }
+                    } else {
+                        block.setBlockData(target, false);
+                    }
+                    changed++;
+                }
+            }
+
+            if (cellIndex >= SnapshotSection.SIZE) {
+                sectionIndex++;
+                cellIndex = 0;
+            }
+        }
+
+        blocksChanged += changed;
+        if (editSession != null) {
+            editSession.flushSession();
+        }
+
+        if (current == null && decodeFinished && ready.isEmpty() && window.isEmpty()) {
+            if (failure != null) {
+                plugin.getLogger().log(Level.SEVERE, "Error restoring regions: " + describeRegions(), failure);
+                finish(false);
+            } else {
+                finish(!cancelled);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Record a block's state before it is changed, in the undo of every region it belongs to
+     */
+    private void recordUndo(int x, int y, int z, BlockData previous) {
+        if (undo == null) {
+            return;
+        }
+        if (undo.length == 1) {
+            undo[0].record(x, y, z, previous);
+            return;
+        }
+        for (int i = 0; i < undo.length; i++) {
+            if (regions.get(i).contains(x, y, z)) {
+                undo[i].record(x, y, z, previous);
+            }
+        }
+    }
+
+    /**
+     * WorldEdit states of a section's palette, converted once per section
+     */
+    private BlockState[] adaptPalette(SnapshotSection section) {
+        if (adaptedSection != section) {
+            adaptedPalette = SchematicBridge.adapt(section.resolvePalette());
+            adaptedSection = section;
+        }
+        return adaptedPalette;
+    }
+
+    private ChunkWork nextChunk() {
+        if (lookahead <= 1) {
+            ChunkWork work = window.poll();
+            if (work == null && decodeFinished) {
+                // The decoder may have published its last chunk just before finishing
+                work = window.poll();
+            }
+            resumeDecoding();
+            return work;
+        }
+
+        window.drainTo(ready, lookahead - ready.size());
+        if (ready.isEmpty() && decodeFinished) {
+            window.drainTo(ready, lookahead);
+        }
+        resumeDecoding();
+        if (ready.isEmpty()) {
+            return null;
+        }
+        ChunkWork work = ready.remove(priority.pick(ready));
+        priority.orderSections(work);
+        return work;
+    }
+
+    /**
+     * The regions of this job that reach into a chunk
+     */
+    private List<Region> regionsIn(ChunkWork work) {
+        List<Region> touching = new ArrayList<>();
+        for (Region region : regions) {
+            boolean inBounds = work.getChunkX() >= region.getMinPoint().getBlockX() >> 4
+                    && work.getChunkX() <= region.getMaxPoint().getBlockX() >> 4
+                    && work.getChunkZ() >= region.getMinPoint().getBlockZ() >> 4
+                    && work.getChunkZ() <= region.getMaxPoint().getBlockZ() >> 4;
+            if (inBounds && (region.getMask() == null || region.getMask().intersectsChunk(work.getChunkX(), work.getChunkZ()))) {
+                touching.add(region);
+            }
+        }
+        return touching;
+    }
+
+    /**
+     * Record a fully applied chunk and advance the checkpoint past every
+     * chunk that has now been applied in decode order
+     */
+    private void markApplied(ChunkWork work) {
+        if (work.getSequence() != nextSequence) {
+            appliedAhead.put(work.getSequence(), work);
+            return;
+        }
+        while (work != null) {
+            started = true;
+            lastChunkX = work.getChunkX();
+            lastChunkZ = work.getChunkZ();
+            nextSequence++;
+            work = appliedAhead.remove(nextSequence);
+        }
+    }
+
+    /**
+     * Stop the job. The decoder exits and the future completes with false.
+     */
+    public void cancel() {
+        cancelled = true;
+        window.clear();
+        ready.clear();
+        current = null;
+        finish(false);
+    }
+
+    private void finish(boolean success) {
+        cancelled = cancelled || !success;
+        window.clear();
+        // A decoder waiting for room closes its streams
+        resumeDecoding();
+        ready.clear();
+        appliedAhead.clear();
+        if (editSession != null) {
+            editSession.close();
+            editSession = null;
+        }
+        adaptedSection = null;
+        adaptedPalette = null;
+        source.release();
+        if (undo != null) {
+            // Also kept for failed or cancelled jobs, which may have changed blocks all the same
+            int keep = plugin.getConfigManager().getSettings().getRegeneration().getUndoGenerations();
+            for (UndoStore.Recording recording : undo) {
+                recording.commit(keep);
+            }
+            undo = null;
+        }
+        if (success && chunksDeferred > 0) {
+            MessageUtils.debug("Deferred " + chunksDeferred + " unloaded chunks of " + describeRegions() + " until they load");
+        }
+        future.complete(success);
+    }
+
+    private String describeRegions() {
+        StringBuilder sb = new StringBuilder();
+        for (Region region : regions) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(region.getId());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Capture the job's progress. Must be called on the main thread.
+     *
+     * @return The checkpoint
+     */
+    public RestoreCheckpoint checkpoint() {
+        List<String> regionIds = new ArrayList<>();
+        for (Region region : regions) {
+            regionIds.add(region.getId());
+        }
+        return new RestoreCheckpoint(jobId, world.getName(), regionIds, generations, started, lastChunkX, lastChunkZ);
+    }
+
+    /**
+     * Get the snapshot generation of each region at the time the job was created
+     *
+     * @return The generations, in region order
+     */
+    public List<Long> getGenerations() {
+        return generations;
+    }
+
+    /**
+     * Check if this job's progress is persisted, see {@link #checkpoint()}
+     *
+     * @return True only for full restores of the regions' snapshots
+     */
+    public boolean isCheckpointed() {
+        return source.isFullSnapshot();
+    }
+
+    /**
+     * Get the number of unloaded chunks left to be restored when they next load
+     *
+     * @return The deferred chunk count
+     */
+    public long getChunksDeferred() {
+        return chunksDeferred;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public CompletableFuture<Boolean> getFuture() {
+        return future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public long getBlocksChanged() {
+        return blocksChanged;
+    }
+
+    public long getBlocksVisited() {
+        return blocksVisited;
+    }
+}
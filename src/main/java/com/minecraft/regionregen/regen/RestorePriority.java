@@ -0,0 +1,150 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ranks decoded chunks by how close they are to the players in a world, so
+ * the blocks players can see are restored first. Player positions are read
+ * once per {@link #update(World)}, which the applier calls every run.
+ * For a template restore they are moved into template space, where the
+ * chunks being ranked are.
+ */
+final class RestorePriority {
+
+    // Chunks this close rank by distance alone, whichever way the player faces
+    private static final double ALWAYS_VISIBLE_SQUARED = 24 * 24;
+    // Roughly a 120 degree horizontal field of view
+    private static final double VIEW_COS = 0.5;
+    // Chunks in view rank as if they were half as far away
+    private static final double IN_VIEW_FACTOR = 0.25;
+
+    private final int offsetX;
+    private final int offsetY;
+    private final int offsetZ;
+    private double[] playerX = new double[0];
+    private double[] playerY = new double[0];
+    private double[] playerZ = new double[0];
+    private double[] facingX = new double[0];
+    private double[] facingZ = new double[0];
+    private int count;
+
+    /**
+     * Create a ranking for chunks that are written at an offset
+     *
+     * @param offsetX Offset from chunk space to world space on X, in blocks
+     * @param offsetY Offset on Y, in blocks
+     * @param offsetZ Offset on Z, in blocks
+     */
+    RestorePriority(int offsetX, int offsetY, int offsetZ) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+    }
+
+    /**
+     * Read the current player positions of a world. Must be called on the main thread.
+     *
+     * @param world The world being restored
+     */
+    void update(World world) {
+        List<Player> players = world.getPlayers();
+        if (playerX.length < players.size()) {
+            int size = players.size() + 8;
+            playerX = new double[size];
+            playerY = new double[size];
+            playerZ = new double[size];
+            facingX = new double[size];
+            facingZ = new double[size];
+        }
+
+        count = 0;
+        for (Player player : players) {
+            Location location = player.getLocation();
+            double yaw = Math.toRadians(location.getYaw());
+            playerX[count] = location.getX() - offsetX;
+            playerY[count] = location.getY() - offsetY;
+            playerZ[count] = location.getZ() - offsetZ;
+            facingX[count] = -Math.sin(yaw);
+            facingZ[count] = Math.cos(yaw);
+            count++;
+        }
+    }
+
+    /**
+     * Pick the chunk to restore next
+     *
+     * @param ready Decoded chunks, in decode order
+     * @return Index of the chunk nearest to a player, or of the first chunk if nobody is around
+     */
+    int pick(List<ChunkWork> ready) {
+        if (count == 0 || ready.size() < 2) {
+            return 0;
+        }
+        int best = 0;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < ready.size(); i++) {
+            double score = score(ready.get(i));
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Order a chunk's sections so those level with the nearest player come first
+     *
+     * @param work The chunk about to be applied
+     */
+    void orderSections(ChunkWork work) {
+        if (count == 0 || work.getSections().size() < 2) {
+            return;
+        }
+        double y = playerY[nearest(work)];
+        work.getSections().sort(Comparator.comparingDouble((SnapshotSection s) -> Math.abs((s.getY() << 4) + 8 - y)));
+    }
+
+    private int nearest(ChunkWork work) {
+        double centerX = (work.getChunkX() << 4) + 8;
+        double centerZ = (work.getChunkZ() << 4) + 8;
+        int nearest = 0;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double dx = centerX - playerX[i];
+            double dz = centerZ - playerZ[i];
+            double distance = dx * dx + dz * dz;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Squared horizontal distance to the closest player, reduced for chunks in front of them
+     */
+    private double score(ChunkWork work) {
+        double centerX = (work.getChunkX() << 4) + 8;
+        double centerZ = (work.getChunkZ() << 4) + 8;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double dx = centerX - playerX[i];
+            double dz = centerZ - playerZ[i];
+            double distance = dx * dx + dz * dz;
+            if (distance > ALWAYS_VISIBLE_SQUARED
+                    && (dx * facingX[i] + dz * facingZ[i]) / Math.sqrt(distance) > VIEW_COS) {
+                distance *= IN_VIEW_FACTOR;
+            }
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,172 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Pool of scratch worlds that fresh terrain is generated in, one per source
+ * world. A scratch world is a copy of its source's settings (seed,
+ * environment, type and generator) without any of its chunks, so the
+ * terrain it generates is what the source's generator would produce.
+ *
+ * <p>Scratch worlds are created on first use, shared by every job restoring
+ * terrain of the same source world, and unloaded and deleted once they have
+ * been idle for a minute. Their spawn area is never loaded or saved.
+ * Bukkit only creates worlds on the main thread, so the first job for a
+ * source world waits there while its scratch world is set up.</p>
+ */
+public class ScratchWorlds {
+
+    private static final String SUFFIX = "_regionregen_scratch";
+    private static final long IDLE_TICKS = 20L * 60;
+
+    private final RegionRegenPlugin plugin;
+    // Source world name -> scratch world
+    private final Map<String, World> worlds = new HashMap<>();
+    private final Map<String, Integer> users = new HashMap<>();
+    private final Set<String> creating = new HashSet<>();
+    private long releases;
+    // Source world name -> release that made its scratch world idle
+    private final Map<String, Long> idleSince = new HashMap<>();
+
+    /**
+     * Create a new ScratchWorlds
+     *
+     * @param plugin The plugin instance
+     */
+    public ScratchWorlds(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Get the scratch world of a source world, creating it if needed, and
+     * hold it until {@link #release} is called. Must be called on the main thread.
+     *
+     * @param source The world terrain is generated for
+     * @return The scratch world, or null if it could not be created
+     */
+    public World acquire(World source) {
+        World scratch = worlds.get(source.getName());
+        if (scratch == null) {
+            String name = source.getName() + SUFFIX;
+            // Left behind by a crash, it may be from an older seed
+            deleteFolder(new File(Bukkit.getWorldContainer(), name));
+
+            creating.add(name);
+            try {
+                scratch = new WorldCreator(name).copy(source).createWorld();
+            } finally {
+                creating.remove(name);
+            }
+            if (scratch == null) {
+                plugin.getLogger().warning("Failed to create scratch world for " + source.getName());
+                return null;
+            }
+            scratch.setAutoSave(false);
+            worlds.put(source.getName(), scratch);
+            MessageUtils.debug("Created scratch world " + name);
+        }
+        users.merge(source.getName(), 1, Integer::sum);
+        return scratch;
+    }
+
+    /**
+     * Stop holding the scratch world of a source world. It is unloaded once
+     * nobody has used it for a while. Must be called on the main thread.
+     *
+     * @param source The world terrain was generated for
+     */
+    public void release(World source) {
+        String sourceName = source.getName();
+        int remaining = users.merge(sourceName, -1, Integer::sum);
+        if (remaining > 0) {
+            return;
+        }
+        users.remove(sourceName);
+        long release = ++releases;
+        idleSince.put(sourceName, release);
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                // Skip if it was used again meanwhile; a later release schedules its own unload
+                if (!users.containsKey(sourceName) && Long.valueOf(release).equals(idleSince.get(sourceName))) {
+                    idleSince.remove(sourceName);
+                    unload(sourceName);
+                }
+            }
+        }.runTaskLater(plugin, IDLE_TICKS);
+    }
+
+    /**
+     * Keep a scratch world that is being created from loading its spawn area,
+     * called from the world init event, which fires before the spawn is prepared
+     *
+     * @param world The world being initialized
+     */
+    public void onWorldInit(World world) {
+        if (creating.contains(world.getName())) {
+            world.setKeepSpawnInMemory(false);
+        }
+    }
+
+    /**
+     * Unload and delete every scratch world, used on shutdown
+     */
+    public void shutdown() {
+        for (String sourceName : new ArrayList<>(worlds.keySet())) {
+            unload(sourceName);
+        }
+        users.clear();
+        idleSince.clear();
+    }
+
+    private void unload(String sourceName) {
+        World scratch = worlds.remove(sourceName);
+        if (scratch == null) {
+            return;
+        }
+        File folder = scratch.getWorldFolder();
+        if (Bukkit.unloadWorld(scratch, false)) {
+            deleteFolder(folder);
+            MessageUtils.debug("Unloaded scratch world " + scratch.getName());
+        } else {
+            plugin.getLogger().warning("Failed to unload scratch world " + scratch.getName());
+        }
+    }
+
+    private void deleteFolder(File folder) {
+        if (!folder.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            List<Path> contents = new ArrayList<>();
+            paths.forEach(contents::add);
+            // Children before their folders
+            contents.sort(Comparator.reverseOrder());
+            for (Path path : contents) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to delete scratch world folder " + folder, e);
+        }
+    }
+}
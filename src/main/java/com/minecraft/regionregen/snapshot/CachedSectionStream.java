@@ -0,0 +1,239 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Streams a snapshot through a {@link SectionCache}.
+ *
+ * <p>Cached sections skip decompression; once a snapshot has been read in
+ * full its layout is known, and sections that are still cached skip the
+ * disk entirely. The file is only opened, and read forward to the missing
+ * section, when something is not in the cache; with a {@link SnapshotIndex}
+ * it jumps there instead. Payloads of sections that are not cached are read
+ * ahead by the {@link SectionPrefetcher}.</p>
+ */
+public class CachedSectionStream implements SectionStream {
+
+    private final SectionCache cache;
+    private final SectionStore store;
+    private final SectionPrefetcher prefetcher;
+    private final File file;
+    private final String snapshotId;
+    private final long generation;
+    private final SectionCache.Layout layout;
+    private final String worldName;
+
+    private SnapshotReader reader;
+    private int readerOrdinal;
+    private int ordinal;
+    // The reader has read a record header that next() has not consumed yet
+    private boolean headerPending;
+
+    // Coordinates seen on a first full read, to publish as the layout
+    private int[] coords = new int[3 * 64];
+    // Cleared once the reader jumped over records, the layout would have holes
+    private boolean collectingLayout = true;
+    // Cached payloads are copied out of the cache into this, reused for every section
+    private ByteBuffer scratch;
+
+    /**
+     * Open a cached stream
+     *
+     * @param cache The section cache
+     * @param store The store holding the section payloads
+     * @param prefetcher Reads payloads ahead of the stream
+     * @param file The snapshot file
+     * @param snapshotId ID the snapshot is cached under
+     * @param generation The snapshot's generation, see {@link SnapshotFormat}
+     * @throws IOException If the snapshot cannot be opened, or it is not of that generation
+     */
+    public CachedSectionStream(SectionCache cache, SectionStore store, SectionPrefetcher prefetcher, File file,
+                               String snapshotId, long generation) throws IOException {
+        this.cache = cache;
+        this.store = store;
+        this.prefetcher = prefetcher;
+        this.file = file;
+        this.snapshotId = snapshotId;
+        this.generation = generation;
+        this.layout = cache.getLayout(snapshotId, generation);
+
+        if (layout != null) {
+            this.worldName = layout.getWorldName();
+        } else {
+            this.reader = openReader();
+            this.worldName = reader.getWorldName();
+        }
+    }
+
+    @Override
+    public String getWorldName() {
+        return worldName;
+    }
+
+    @Override
+    public SnapshotSection next() throws IOException {
+        return layout != null ? nextFromLayout() : nextFromFile();
+    }
+
+    private SnapshotSection nextFromLayout() throws IOException {
+        if (ordinal >= layout.size()) {
+            return null;
+        }
+
+        int x = layout.getX(ordinal);
+        int y = layout.getY(ordinal);
+        int z = layout.getZ(ordinal);
+        int current = ordinal++;
+        SectionCache.Key key = new SectionCache.Key(snapshotId, generation, current);
+
+        ByteBuffer cached = cache.get(key, scratch);
+        if (cached != null) {
+            scratch = cached;
+            return SnapshotFormat.decodePayload(x, y, z, cached);
+        }
+
+        seekReader(current);
+        if (!reader.nextRecord()) {
+            throw new IOException("Snapshot " + file.getName() + " is shorter than its cached layout");
+        }
+        readerOrdinal++;
+        return load(key, x, y, z);
+    }
+
+    private SnapshotSection nextFromFile() throws IOException {
+        if (!headerPending && !advanceFile()) {
+            return null;
+        }
+        headerPending = false;
+
+        int current = ordinal - 1;
+        SectionCache.Key key = new SectionCache.Key(snapshotId, generation, current);
+        ByteBuffer cached = cache.get(key, scratch);
+        if (cached != null) {
+            scratch = cached;
+            reader.skipPayload();
+            return SnapshotFormat.decodePayload(reader.getRecordX(), reader.getRecordY(), reader.getRecordZ(), cached);
+        }
+        return load(key, reader.getRecordX(), reader.getRecordY(), reader.getRecordZ());
+    }
+
+    /**
+     * Read the next record header from the file, recording its coordinates for the layout
+     */
+    private boolean advanceFile() throws IOException {
+        if (!reader.nextRecord()) {
+            if (collectingLayout) {
+                cache.putLayout(snapshotId, new SectionCache.Layout(worldName, generation, coords, ordinal));
+            }
+            return false;
+        }
+        readerOrdinal++;
+
+        if (collectingLayout) {
+            if (coords.length < (ordinal + 1) * 3) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            coords[ordinal * 3] = reader.getRecordX();
+            coords[ordinal * 3 + 1] = reader.getRecordY();
+            coords[ordinal * 3 + 2] = reader.getRecordZ();
+        }
+        ordinal++;
+        return true;
+    }
+
+    @Override
+    public void skipThrough(int chunkX, int chunkZ) throws IOException {
+        if (layout != null) {
+            while (ordinal < layout.size() && !isAfter(layout.getX(ordinal), layout.getZ(ordinal), chunkX, chunkZ)) {
+                ordinal++;
+            }
+            return;
+        }
+
+        if (headerPending) {
+            if (isAfter(reader.getRecordX(), reader.getRecordZ(), chunkX, chunkZ)) {
+                return;
+            }
+            headerPending = false;
+            reader.skipPayload();
+        }
+        if (reader.seekPast(chunkX, chunkZ)) {
+            if (reader.getNextOrdinal() > readerOrdinal) {
+                collectingLayout = false;
+                readerOrdinal = reader.getNextOrdinal();
+                ordinal = readerOrdinal;
+            }
+            return;
+        }
+        while (advanceFile()) {
+            if (isAfter(reader.getRecordX(), reader.getRecordZ(), chunkX, chunkZ)) {
+                headerPending = true;
+                return;
+            }
+            reader.skipPayload();
+        }
+    }
+
+    private static boolean isAfter(int x, int z, int chunkX, int chunkZ) {
+        return x > chunkX || (x == chunkX && z > chunkZ);
+    }
+
+    private SnapshotSection load(SectionCache.Key key, int x, int y, int z) throws IOException {
+        byte[] payload = reader.readPayload();
+        cache.put(key, payload);
+        return SnapshotFormat.decodePayload(x, y, z, ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Open the file, prefetching only sections that are not cached
+     */
+    private SnapshotReader openReader() throws IOException {
+        SnapshotReader opened = new SnapshotReader(file, store);
+        // Replaced since the generation was looked up: its sections are not the ones cached under it
+        if (opened.getGeneration() != generation) {
+            opened.close();
+            throw new IOException("Snapshot " + file.getName() + " was replaced while it was being read");
+        }
+        return opened.prefetch(prefetcher, ordinal -> !cache.contains(new SectionCache.Key(snapshotId, generation, ordinal)));
+    }
+
+    /**
+     * Position the reader so its next record is the given ordinal
+     */
+    private void seekReader(int target) throws IOException {
+        if (reader == null) {
+            reader = openReader();
+            readerOrdinal = 0;
+        }
+        if (readerOrdinal == target) {
+            return;
+        }
+        // With an index the reader jumps either way
+        if (reader.seekTo(target)) {
+            readerOrdinal = target;
+            return;
+        }
+        if (readerOrdinal > target) {
+            reader.close();
+            reader = openReader();
+            readerOrdinal = 0;
+        }
+        while (readerOrdinal < target) {
+            if (!reader.nextRecord()) {
+                throw new IOException("Snapshot " + file.getName() + " is shorter than its cached layout");
+            }
+            reader.skipPayload();
+            readerOrdinal++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Measures every {@link SectionCodec} on the sections of a real snapshot, so
+ * a server can pick its codec from data rather than guesses.
+ *
+ * <p>Each codec compresses and decompresses the same raw payloads, once to
+ * warm up and then timed, and every decoded payload is checked against its
+ * original. Runs on the calling thread and takes a few seconds for a large
+ * region; call it off the main thread.</p>
+ */
+public final class CodecBenchmark {
+
+    /** Payloads beyond this are not read, so a huge region does not fill the heap */
+    public static final int MAX_SECTIONS = 2048;
+
+    private CodecBenchmark() {
+    }
+
+    /**
+     * Benchmark all codecs on the sections of a snapshot
+     *
+     * @param stream The snapshot to read sections from; not closed
+     * @return One result per codec, in codec ID order
+     * @throws IOException If the snapshot cannot be read, or a codec does not round-trip
+     */
+    public static List<Result> run(SectionStream stream) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        SnapshotSection section;
+        while (payloads.size() < MAX_SECTIONS && (section = stream.next()) != null) {
+            payloads.add(SnapshotFormat.encodePayload(section));
+        }
+
+        List<Result> results = new ArrayList<>();
+        if (payloads.isEmpty()) {
+            return results;
+        }
+        Deflater deflater = new Deflater();
+        SectionDecoder decoder = new SectionDecoder();
+        try {
+            for (SectionCodec codec : SectionCodec.values()) {
+                measure(codec, payloads, deflater, decoder);
+                results.add(measure(codec, payloads, deflater, decoder));
+            }
+        } finally {
+            deflater.end();
+            decoder.end();
+        }
+        return results;
+    }
+
+    private static Result measure(SectionCodec codec, List<byte[]> payloads, Deflater deflater, SectionDecoder decoder) throws IOException {
+        byte[][] blobs = new byte[payloads.size()][];
+        long rawBytes = 0;
+        long compressedBytes = 0;
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < blobs.length; i++) {
+            blobs[i] = codec.encode(payloads.get(i), deflater);
+        }
+        long encodeNanos = System.nanoTime() - startedAt;
+
+        startedAt = System.nanoTime();
+        for (byte[] blob : blobs) {
+            decoder.decode(ByteBuffer.wrap(blob));
+        }
+        long decodeNanos = System.nanoTime() - startedAt;
+
+        for (int i = 0; i < blobs.length; i++) {
+            byte[] payload = payloads.get(i);
+            int length = decoder.decode(ByteBuffer.wrap(blobs[i]));
+            if (length != payload.length || !Arrays.equals(decoder.getBuffer(), 0, length, payload, 0, length)) {
+                throw new IOException("Codec " + codec.getName() + " did not round-trip section " + i);
+            }
+            rawBytes += payload.length;
+            compressedBytes += blobs[i].length;
+        }
+        return new Result(codec, blobs.length, rawBytes, compressedBytes, encodeNanos, decodeNanos);
+    }
+
+    /**
+     * Measurements of one codec
+     */
+    public static final class Result {
+        private final SectionCodec codec;
+        private final int sections;
+        private final long rawBytes;
+        private final long compressedBytes;
+        private final long encodeNanos;
+        private final long decodeNanos;
+
+        private Result(SectionCodec codec, int sections, long rawBytes, long compressedBytes, long encodeNanos, long decodeNanos) {
+            this.codec = codec;
+            this.sections = sections;
+            this.rawBytes = rawBytes;
+            this.compressedBytes = compressedBytes;
+            this.encodeNanos = encodeNanos;
+            this.decodeNanos = decodeNanos;
+        }
+
+        public SectionCodec getCodec() {
+            return codec;
+        }
+
+        public int getSections() {
+            return sections;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        /**
+         * Get how many times smaller the payloads are compressed
+         *
+         * @return Raw size over compressed size
+         */
+        public double getRatio() {
+            return (double) rawBytes / Math.max(1, compressedBytes);
+        }
+
+        /**
+         * Get the compression throughput
+         *
+         * @return Raw megabytes compressed per second
+         */
+        public double getEncodeMegabytesPerSecond() {
+            return megabytesPerSecond(encodeNanos);
+        }
+
+        /**
+         * Get the decompression throughput
+         *
+         * @return Raw megabytes decompressed per second
+         */
+        public double getDecodeMegabytesPerSecond() {
+            return megabytesPerSecond(decodeNanos);
+        }
+
+        private double megabytesPerSecond(long nanos) {
+            return rawBytes / (1024.0 * 1024.0) / (Math.max(1, nanos) / 1_000_000_000.0);
+        }
+    }
+}
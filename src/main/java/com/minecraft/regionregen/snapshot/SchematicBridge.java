@@ -0,0 +1,252 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.models.RegionMask;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.bukkit.BukkitWorld;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.session.ClipboardHolder;
+import com.sk89q.worldedit.util.SideEffectSet;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts between region snapshots and WorldEdit clipboards / schematics.
+ *
+ * <p>Both directions walk the region one section at a time, so only a single
+ * decoded section is held next to the clipboard. Conversions are safe to run
+ * off the main thread; pasting is not.</p>
+ */
+public final class SchematicBridge {
+
+    public static final String FILE_EXTENSION = ".schem";
+
+    private SchematicBridge() {
+    }
+
+    /**
+     * Write a region's snapshot to a Sponge schematic. Cells outside a
+     * non-cuboid region are left as air.
+     *
+     * @param region The region the snapshot belongs to
+     * @param stream The region's snapshot
+     * @param file The schematic file to write
+     * @return The number of blocks written
+     * @throws IOException If reading the snapshot or writing the file fails
+     */
+    public static long exportSnapshot(Region region, SectionStream stream, File file) throws IOException {
+        BlockVector3 min = BukkitAdapter.asBlockVector(region.getMinPoint());
+        BlockVector3 max = BukkitAdapter.asBlockVector(region.getMaxPoint());
+
+        BlockArrayClipboard clipboard = new BlockArrayClipboard(new CuboidRegion(min, max));
+        clipboard.setOrigin(min);
+
+        long written = 0;
+        try {
+            SnapshotSection section;
+            while ((section = stream.next()) != null) {
+                BlockState[] states = adapt(section.resolvePalette());
+                short[] blocks = section.getBlocks();
+                int baseX = section.getX() << 4;
+                int baseY = section.getY() << 4;
+                int baseZ = section.getZ() << 4;
+
+                for (int index = 0; index < SnapshotSection.SIZE; index++) {
+                    short paletteIndex = blocks[index];
+                    if (paletteIndex == SnapshotSection.NOT_CAPTURED || states[paletteIndex] == null) {
+                        continue;
+                    }
+                    clipboard.setBlock(BlockVector3.at(baseX + (index & 15), baseY + (index >> 8), baseZ + ((index >> 4) & 15)),
+                            states[paletteIndex]);
+                    written++;
+                }
+            }
+        } catch (WorldEditException e) {
+            throw new IOException("Failed to fill clipboard for region " + region.getId(), e);
+        }
+
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (ClipboardWriter writer = BuiltInClipboardFormat.SPONGE_SCHEMATIC.getWriter(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            writer.write(clipboard);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Read a schematic in any format WorldEdit understands
+     *
+     * @param file The schematic file
+     * @return The clipboard
+     * @throws IOException If the file is missing, unknown or malformed
+     */
+    public static Clipboard readSchematic(File file) throws IOException {
+        ClipboardFormat format = ClipboardFormats.findByFile(file);
+        if (format == null) {
+            throw new IOException("Unknown schematic format: " + file.getName());
+        }
+        try (ClipboardReader reader = format.getReader(new BufferedInputStream(new FileInputStream(file)))) {
+            return reader.read();
+        }
+    }
+
+    /**
+     * Check that a clipboard has the same dimensions as a region's bounds
+     *
+     * @param clipboard The clipboard
+     * @param region The region
+     * @return True if the clipboard fits the region exactly
+     */
+    public static boolean fits(Clipboard clipboard, Region region) {
+        BlockVector3 size = clipboard.getDimensions();
+        return size.getX() == region.getMaxPoint().getBlockX() - region.getMinPoint().getBlockX() + 1
+                && size.getY() == region.getMaxPoint().getBlockY() - region.getMinPoint().getBlockY() + 1
+                && size.getZ() == region.getMaxPoint().getBlockZ() - region.getMinPoint().getBlockZ() + 1;
+    }
+
+    /**
+     * Write a clipboard into a snapshot of a region. The clipboard's minimum
+     * corner is placed on the region's minimum corner; only member cells of the
+     * region are recorded.
+     *
+     * @param clipboard The clipboard, see {@link #fits(Clipboard, Region)}
+     * @param region The region the snapshot is for
+     * @param writer The snapshot writer, positioned after its header
+     * @throws IOException If writing fails
+     */
+    public static void importClipboard(Clipboard clipboard, Region region, SnapshotWriter writer) throws IOException {
+        int[] min = {region.getMinPoint().getBlockX(), region.getMinPoint().getBlockY(), region.getMinPoint().getBlockZ()};
+        int[] max = {region.getMaxPoint().getBlockX(), region.getMaxPoint().getBlockY(), region.getMaxPoint().getBlockZ()};
+        BlockVector3 offset = clipboard.getMinimumPoint();
+        RegionMask mask = region.getMask();
+
+        // Records must be in chunk order: chunk X, then chunk Z, then section Y
+        for (int sx = min[0] >> 4; sx <= max[0] >> 4; sx++) {
+            for (int sz = min[2] >> 4; sz <= max[2] >> 4; sz++) {
+                if (mask != null && !mask.intersectsChunk(sx, sz)) {
+                    continue;
+                }
+                for (int sy = min[1] >> 4; sy <= max[1] >> 4; sy++) {
+                    if (mask != null && mask.isSectionEmpty(sx, sy, sz)) {
+                        continue;
+                    }
+                    SnapshotSection section = encodeSection(clipboard, offset, sx, sy, sz, min, max, mask);
+                    if (section != null) {
+                        writer.write(section);
+                    }
+                }
+            }
+        }
+    }
+
+    private static SnapshotSection encodeSection(Clipboard clipboard, BlockVector3 offset, int sx, int sy, int sz,
+                                                 int[] min, int[] max, RegionMask mask) {
+        int baseX = sx << 4;
+        int baseY = sy << 4;
+        int baseZ = sz << 4;
+        RegionMask cells = mask != null && !mask.isSectionFull(sx, sy, sz) ? mask : null;
+
+        short[] blocks = new short[SnapshotSection.SIZE];
+        Arrays.fill(blocks, SnapshotSection.NOT_CAPTURED);
+        Map<BlockState, Short> paletteIndex = new HashMap<>();
+        List<String> palette = new ArrayList<>();
+
+        for (int y = Math.max(min[1], baseY); y <= Math.min(max[1], baseY + 15); y++) {
+            for (int z = Math.max(min[2], baseZ); z <= Math.min(max[2], baseZ + 15); z++) {
+                for (int x = Math.max(min[0], baseX); x <= Math.min(max[0], baseX + 15); x++) {
+                    if (cells != null && !cells.contains(x, y, z)) {
+                        continue;
+                    }
+                    BlockState state = clipboard.getBlock(offset.add(x - min[0], y - min[1], z - min[2]));
+                    Short index = paletteIndex.get(state);
+                    if (index == null) {
+                        index = (short) palette.size();
+                        paletteIndex.put(state, index);
+                        palette.add(state.getAsString());
+                    }
+                    blocks[SnapshotSection.index(x - baseX, y - baseY, z - baseZ)] = index;
+                }
+            }
+        }
+
+        return palette.isEmpty() ? null : new SnapshotSection(sx, sy, sz, palette.toArray(new String[0]), blocks);
+    }
+
+    /**
+     * Paste a clipboard into a world with all side effects (lighting, physics,
+     * neighbour updates) off. Uses FAWE's placement when FAWE provides WorldEdit.
+     * Must be called on the main thread.
+     *
+     * @param world The world to paste into
+     * @param clipboard The clipboard
+     * @param to Where the clipboard's origin goes
+     * @return The number of blocks changed
+     * @throws WorldEditException If the paste fails
+     */
+    public static int paste(World world, Clipboard clipboard, BlockVector3 to) throws WorldEditException {
+        try (EditSession editSession = openFastSession(world)) {
+            Operations.complete(new ClipboardHolder(clipboard)
+                    .createPaste(editSession)
+                    .to(to)
+                    .ignoreAirBlocks(false)
+                    .copyEntities(false)
+                    .build());
+            return editSession.getBlockChangeCount();
+        }
+    }
+
+    /**
+     * Open an edit session that skips all block side effects
+     *
+     * @param world The world to edit
+     * @return The edit session, which must be closed to flush it
+     */
+    public static EditSession openFastSession(World world) {
+        EditSession editSession = WorldEdit.getInstance().newEditSession(new BukkitWorld(world));
+        editSession.setSideEffectApplier(SideEffectSet.none());
+        return editSession;
+    }
+
+    /**
+     * Convert a resolved palette to WorldEdit block states
+     *
+     * @param palette The Bukkit palette, may contain nulls
+     * @return The WorldEdit palette, null where the Bukkit entry is null
+     */
+    public static BlockState[] adapt(BlockData[] palette) {
+        BlockState[] states = new BlockState[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            states[i] = palette[i] == null ? null : BukkitAdapter.adapt(palette[i]);
+        }
+        return states;
+    }
+}
@@ -0,0 +1,320 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-capped LRU cache of decompressed section payloads.
+ *
+ * <p>Payloads live off-heap in direct slabs allocated once, up front, for
+ * the whole cap. A slab is cut into fixed-size slots and a payload takes as
+ * many as it needs; evicting it hands its slots back for the next payload,
+ * so the cap bounds the memory in use and the cache adds nothing for the
+ * garbage collector to track. Since a slot is reused as soon as it is
+ * evicted, payloads are copied out under the cache lock rather than handed
+ * out as views. Only decoder threads touch the cache; the main-thread
+ * applier consumes already decoded chunks and never waits on it.</p>
+ */
+public class SectionCache {
+
+    // A section payload is a little over 8 KB, so this wastes under a slot per entry
+    static final int SLOT_SIZE = 1024;
+    // Upper bound of one direct buffer, a cap above it is split over several slabs
+    private static final int SLAB_SLOTS = 16384;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+    private ByteBuffer[] slabs;
+    private int[] freeSlots;
+    private int freeCount;
+    private volatile long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache, allocating its slabs
+     *
+     * @param maxBytes Maximum bytes of payload to keep, 0 disables caching
+     */
+    public SectionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        allocate(maxBytes);
+    }
+
+    private void allocate(long maxBytes) {
+        int slots = (int) Math.min(maxBytes / SLOT_SIZE, Integer.MAX_VALUE);
+        slabs = new ByteBuffer[(slots + SLAB_SLOTS - 1) / SLAB_SLOTS];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(Math.min(SLAB_SLOTS, slots - i * SLAB_SLOTS) * SLOT_SIZE);
+        }
+        freeSlots = new int[slots];
+        // Handed out from the top, so the lowest slots are used first
+        for (int i = 0; i < slots; i++) {
+            freeSlots[i] = slots - 1 - i;
+        }
+        freeCount = slots;
+    }
+
+    /**
+     * Copy a cached payload out of the cache
+     *
+     * @param key The section key
+     * @param into Buffer to reuse for the copy, may be null or too small
+     * @return A heap buffer holding the payload from 0 to its limit, {@code into} if it was
+     *         large enough, or null on a miss
+     */
+    public ByteBuffer get(Key key, ByteBuffer into) {
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+
+            ByteBuffer copy = into != null && into.capacity() >= entry.length ? into : ByteBuffer.allocate(entry.length);
+            byte[] array = copy.array();
+            int copied = 0;
+            for (int slot : entry.slots) {
+                int length = Math.min(SLOT_SIZE, entry.length - copied);
+                slabs[slot / SLAB_SLOTS].get((slot % SLAB_SLOTS) * SLOT_SIZE, array, copied, length);
+                copied += length;
+            }
+            copy.clear().limit(entry.length);
+            return copy;
+        }
+    }
+
+    /**
+     * Check if a payload is cached, without counting a hit or miss
+     *
+     * @param key The section key
+     * @return True if cached
+     */
+    public boolean contains(Key key) {
+        synchronized (lock) {
+            return entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Cache a payload, evicting least recently used entries to free the slots it needs
+     *
+     * @param key The section key
+     * @param payload The decompressed payload, copied into the cache
+     */
+    public void put(Key key, byte[] payload) {
+        int needed = (payload.length + SLOT_SIZE - 1) / SLOT_SIZE;
+        synchronized (lock) {
+            if (payload.length == 0 || needed > freeSlots.length) {
+                return;
+            }
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                release(previous);
+            }
+            Iterator<Entry> it = entries.values().iterator();
+            while (freeCount < needed) {
+                release(it.next());
+                it.remove();
+                evictions.increment();
+            }
+
+            int[] slots = new int[needed];
+            for (int i = 0; i < needed; i++) {
+                int slot = freeSlots[--freeCount];
+                int offset = i * SLOT_SIZE;
+                slabs[slot / SLAB_SLOTS].put((slot % SLAB_SLOTS) * SLOT_SIZE, payload, offset,
+                        Math.min(SLOT_SIZE, payload.length - offset));
+                slots[i] = slot;
+            }
+            entries.put(key, new Entry(slots, payload.length));
+        }
+    }
+
+    private void release(Entry entry) {
+        for (int slot : entry.slots) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Drop everything cached for a snapshot, e.g. after it was recaptured
+     *
+     * @param snapshotId The snapshot ID
+     */
+    public void invalidate(String snapshotId) {
+        layouts.remove(snapshotId);
+        synchronized (lock) {
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (entry.getKey().snapshotId.equals(snapshotId)) {
+                    release(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Change the size cap. The slabs are allocated again for the new cap, which drops
+     * everything cached; the old ones are freed once the garbage collector finds them.
+     *
+     * @param maxBytes The new cap in bytes
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (this.maxBytes == maxBytes) {
+            return;
+        }
+        synchronized (lock) {
+            this.maxBytes = maxBytes;
+            entries.clear();
+            allocate(maxBytes);
+        }
+    }
+
+    /**
+     * Get the section layout recorded for a snapshot generation
+     *
+     * @param snapshotId The snapshot ID
+     * @param generation The snapshot file generation
+     * @return The layout, or null if the snapshot was never fully read
+     */
+    public Layout getLayout(String snapshotId, long generation) {
+        Layout layout = layouts.get(snapshotId);
+        return layout != null && layout.generation == generation ? layout : null;
+    }
+
+    /**
+     * Record the section layout of a fully read snapshot, so later reads can be served
+     * from the cache without opening the file
+     *
+     * @param snapshotId The snapshot ID
+     * @param layout The layout
+     */
+    public void putLayout(String snapshotId, Layout layout) {
+        layouts.put(snapshotId, layout);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the bytes held by cached payloads, counted in whole slots
+     *
+     * @return Bytes in use
+     */
+    public long getUsedBytes() {
+        synchronized (lock) {
+            return (long) (freeSlots.length - freeCount) * SLOT_SIZE;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getEntryCount() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Slots holding a payload, in payload order
+     */
+    private static final class Entry {
+
+        private final int[] slots;
+        private final int length;
+
+        private Entry(int[] slots, int length) {
+            this.slots = slots;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Identifies one section of one snapshot file generation
+     */
+    public static final class Key {
+
+        private final String snapshotId;
+        private final long generation;
+        private final int ordinal;
+
+        public Key(String snapshotId, long generation, int ordinal) {
+            this.snapshotId = snapshotId;
+            this.generation = generation;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return generation == key.generation && ordinal == key.ordinal && snapshotId.equals(key.snapshotId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(snapshotId, generation, ordinal);
+        }
+    }
+
+    /**
+     * World name and section coordinates of a snapshot, in file order
+     */
+    public static final class Layout {
+
+        private final String worldName;
+        private final long generation;
+        private final int[] coords;
+
+        public Layout(String worldName, long generation, int[] coords, int sectionCount) {
+            this.worldName = worldName;
+            this.generation = generation;
+            this.coords = Arrays.copyOf(coords, sectionCount * 3);
+        }
+
+        public String getWorldName() {
+            return worldName;
+        }
+
+        public int size() {
+            return coords.length / 3;
+        }
+
+        public int getX(int ordinal) {
+            return coords[ordinal * 3];
+        }
+
+        public int getY(int ordinal) {
+            return coords[ordinal * 3 + 1];
+        }
+
+        public int getZ(int ordinal) {
+            return coords[ordinal * 3 + 2];
+        }
+    }
+}
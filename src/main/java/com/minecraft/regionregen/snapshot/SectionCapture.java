@@ -0,0 +1,176 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.RegionMask;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the part of a {@link ChunkSnapshot} that lies inside a region's
+ * bounds into {@link SnapshotSection}s. When a {@link RegionMask} is given,
+ * only member cells are captured. Safe to call off the main thread.
+ */
+public final class SectionCapture {
+
+    private SectionCapture() {
+    }
+
+    /**
+     * Encode every section of a chunk that overlaps the given bounds
+     *
+     * @param chunk The captured chunk
+     * @param min Minimum block corner {x, y, z}
+     * @param max Maximum block corner {x, y, z}
+     * @param mask Membership of a non-cuboid region, or null to capture the whole bounds
+     * @return Sections in ascending Y order, empty if the chunk is outside the bounds
+     */
+    public static List<SnapshotSection> encodeChunk(ChunkSnapshot chunk, int[] min, int[] max, RegionMask mask) {
+        List<SnapshotSection> sections = new ArrayList<>();
+        for (int sy = min[1] >> 4; sy <= max[1] >> 4; sy++) {
+            SnapshotSection section = encodeSection(chunk, sy, min, max, mask);
+            if (section != null) {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Encode one section of a chunk, clipped to the given bounds
+     *
+     * @param chunk The captured chunk
+     * @param sy Section Y coordinate
+     * @param min Minimum block corner {x, y, z}
+     * @param max Maximum block corner {x, y, z}
+     * @param mask Membership of a non-cuboid region, or null to capture the whole bounds
+     * @return The section, or null if no cell of it is inside the bounds
+     */
+    public static SnapshotSection encodeSection(ChunkSnapshot chunk, int sy, int[] min, int[] max, RegionMask mask) {
+        int[] clip = clip(chunk, sy, min, max, mask);
+        if (clip == null) {
+            return null;
+        }
+        // Full sections skip the per-cell membership test
+        RegionMask cells = mask != null && !mask.isSectionFull(chunk.getX(), sy, chunk.getZ()) ? mask : null;
+
+        int baseX = chunk.getX() << 4;
+        int baseY = sy << 4;
+        int baseZ = chunk.getZ() << 4;
+        int fromX = clip[0];
+        int toX = clip[1];
+        int fromY = clip[2];
+        int toY = clip[3];
+        int fromZ = clip[4];
+        int toZ = clip[5];
+
+        short[] blocks = new short[SnapshotSection.SIZE];
+        Arrays.fill(blocks, SnapshotSection.NOT_CAPTURED);
+        // Keyed by BlockData so each distinct state is stringified once
+        Map<BlockData, Short> paletteIndex = new HashMap<>();
+        List<String> palette = new ArrayList<>();
+
+        for (int ly = fromY; ly <= toY; ly++) {
+            int y = baseY + ly;
+            for (int lz = fromZ; lz <= toZ; lz++) {
+                for (int lx = fromX; lx <= toX; lx++) {
+                    if (cells != null && !cells.contains(baseX + lx, y, baseZ + lz)) {
+                        continue;
+                    }
+                    BlockData data = chunk.getBlockData(lx, y, lz);
+                    Short index = paletteIndex.get(data);
+                    if (index == null) {
+                        index = (short) palette.size();
+                        paletteIndex.put(data, index);
+                        palette.add(data.getAsString());
+                    }
+                    blocks[SnapshotSection.index(lx, ly, lz)] = index;
+                }
+            }
+        }
+
+        return new SnapshotSection(chunk.getX(), sy, chunk.getZ(), palette.toArray(new String[0]), blocks);
+    }
+
+    /**
+     * Compute the check value the section would have if it were encoded with
+     * {@link #encodeSection}, see {@link SectionHash}. Much cheaper than
+     * encoding: no palette or payload is built, and each distinct state is
+     * only stringified once per map.
+     *
+     * @param chunk The captured chunk
+     * @param sy Section Y coordinate
+     * @param min Minimum block corner {x, y, z}
+     * @param max Maximum block corner {x, y, z}
+     * @param mask Membership of a non-cuboid region, or null to capture the whole bounds
+     * @param stateHashes State hashes by block data, shared between the sections of a chunk; not thread-safe
+     * @return The check value, or {@link SectionHash#UNKNOWN} if no cell of the section is inside the bounds
+     */
+    public static long hashSection(ChunkSnapshot chunk, int sy, int[] min, int[] max, RegionMask mask, Map<BlockData, Long> stateHashes) {
+        int[] clip = clip(chunk, sy, min, max, mask);
+        if (clip == null) {
+            return SectionHash.UNKNOWN;
+        }
+        RegionMask cells = mask != null && !mask.isSectionFull(chunk.getX(), sy, chunk.getZ()) ? mask : null;
+
+        int baseX = chunk.getX() << 4;
+        int baseY = sy << 4;
+        int baseZ = chunk.getZ() << 4;
+        BlockData last = null;
+        long lastHash = 0;
+        long sum = 0;
+
+        for (int ly = clip[2]; ly <= clip[3]; ly++) {
+            int y = baseY + ly;
+            for (int lz = clip[4]; lz <= clip[5]; lz++) {
+                for (int lx = clip[0]; lx <= clip[1]; lx++) {
+                    if (cells != null && !cells.contains(baseX + lx, y, baseZ + lz)) {
+                        continue;
+                    }
+                    BlockData data = chunk.getBlockData(lx, y, lz);
+                    // Runs of the same state are the common case, skip the map for them
+                    if (data != last) {
+                        Long hash = stateHashes.get(data);
+                        if (hash == null) {
+                            hash = SectionHash.ofState(data.getAsString());
+                            stateHashes.put(data, hash);
+                        }
+                        last = data;
+                        lastHash = hash;
+                    }
+                    sum += SectionHash.cell(lastHash, SnapshotSection.index(lx, ly, lz));
+                }
+            }
+        }
+        return SectionHash.finish(sum);
+    }
+
+    /**
+     * Clip the bounds to one section
+     *
+     * @return {fromX, toX, fromY, toY, fromZ, toZ} in local coordinates, or null if no cell is inside
+     */
+    private static int[] clip(ChunkSnapshot chunk, int sy, int[] min, int[] max, RegionMask mask) {
+        if (mask != null && mask.isSectionEmpty(chunk.getX(), sy, chunk.getZ())) {
+            return null;
+        }
+        int baseX = chunk.getX() << 4;
+        int baseY = sy << 4;
+        int baseZ = chunk.getZ() << 4;
+
+        int fromX = Math.max(min[0], baseX) - baseX;
+        int toX = Math.min(max[0], baseX + 15) - baseX;
+        int fromY = Math.max(min[1], baseY) - baseY;
+        int toY = Math.min(max[1], baseY + 15) - baseY;
+        int fromZ = Math.max(min[2], baseZ) - baseZ;
+        int toZ = Math.min(max[2], baseZ + 15) - baseZ;
+        if (fromX > toX || fromY > toY || fromZ > toZ) {
+            return null;
+        }
+        return new int[]{fromX, toX, fromY, toY, fromZ, toZ};
+    }
+}
@@ -0,0 +1,298 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compression of the section payloads kept in the {@link SectionStore}.
+ *
+ * <p>Every blob starts with a mark byte naming the codec that wrote it, so
+ * blobs written with different codecs can share one store and switching
+ * codecs never requires rewriting it. See {@link SectionDecoder} for
+ * reading blobs back.</p>
+ *
+ * <pre>
+ * blob := (0x80 | id) body
+ * none    body := payload
+ * deflate body := zlib(payload)
+ * lz      body := payloadLength:int lz(payload)
+ * </pre>
+ */
+public enum SectionCodec {
+
+    /** Stored as is: the fastest to read, the largest on disk */
+    NONE(0, "none", 0),
+    DEFLATE_FAST(1, "deflate-1", Deflater.BEST_SPEED),
+    DEFLATE(2, "deflate-6", 6),
+    DEFLATE_BEST(3, "deflate-9", Deflater.BEST_COMPRESSION),
+    /** Byte-oriented LZ77 without entropy coding: larger than deflate, but decodes a few times faster */
+    LZ(4, "lz", 0);
+
+    private static final int MARK = 0x80;
+    private static final int LZ_MIN_MATCH = 4;
+    private static final int LZ_HASH_BITS = 12;
+    private static final int LZ_MAX_OFFSET = 0xFFFF;
+    private static final SectionCodec[] BY_ID = new SectionCodec[values().length];
+
+    static {
+        for (SectionCodec codec : values()) {
+            BY_ID[codec.id] = codec;
+        }
+    }
+
+    private final int id;
+    private final String name;
+    private final int level;
+
+    SectionCodec(int id, String name, int level) {
+        this.id = id;
+        this.name = name;
+        this.level = level;
+    }
+
+    /**
+     * Get the ID written in the mark byte of the codec's blobs
+     *
+     * @return The codec ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the name the codec is configured by
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    boolean isDeflate() {
+        return this == DEFLATE_FAST || this == DEFLATE || this == DEFLATE_BEST;
+    }
+
+    /**
+     * Look up a codec by its configured name
+     *
+     * @param name The name, case-insensitive
+     * @return The codec, or null if there is none by that name
+     */
+    public static SectionCodec byName(String name) {
+        for (SectionCodec codec : values()) {
+            if (codec.name.equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * List the names of all codecs, for messages
+     *
+     * @return The names, comma separated
+     */
+    public static String names() {
+        StringBuilder names = new StringBuilder();
+        for (SectionCodec codec : values()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(codec.name);
+        }
+        return names.toString();
+    }
+
+    /**
+     * Find the codec that wrote a blob from its first byte
+     *
+     * @param first The blob's first byte
+     * @return The codec
+     * @throws IOException If the byte is no mark or names no known codec
+     */
+    static SectionCodec ofMark(byte first) throws IOException {
+        int mark = first & 0xFF;
+        if (mark < MARK) {
+            throw new IOException("Corrupt section: no codec mark");
+        }
+        int id = mark & ~MARK;
+        if (id >= BY_ID.length) {
+            throw new IOException("Section was written with unknown codec " + id);
+        }
+        return BY_ID[id];
+    }
+
+    /**
+     * Compress a payload into a blob
+     *
+     * @param payload The raw payload, see {@link SnapshotFormat#encodePayload}
+     * @param deflater Deflater for the deflate codecs, reset before use; its level is changed
+     * @return The blob, mark byte included
+     * @throws IOException If compressing fails
+     */
+    public byte[] encode(byte[] payload, Deflater deflater) throws IOException {
+        switch (this) {
+            case NONE: {
+                byte[] blob = new byte[payload.length + 1];
+                blob[0] = (byte) (MARK | id);
+                System.arraycopy(payload, 0, blob, 1, payload.length);
+                return blob;
+            }
+            case LZ:
+                return lzCompress(payload, (byte) (MARK | id));
+            default: {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4 + 64);
+                compressed.write(MARK | id);
+                deflater.reset();
+                deflater.setLevel(level);
+                try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater, 8192)) {
+                    deflate.write(payload);
+                }
+                return compressed.toByteArray();
+            }
+        }
+    }
+
+    /**
+     * Compress with a greedy LZ77 in the layout of LZ4 blocks: each sequence
+     * is a token holding the literal count and match length in its nibbles,
+     * each extended by 255-runs past 15, then the literals and a two-byte
+     * match offset. The last sequence has literals only.
+     */
+    private static byte[] lzCompress(byte[] src, byte mark) {
+        int length = src.length;
+        byte[] out = new byte[1 + 4 + length + length / 255 + 16];
+        out[0] = mark;
+        out[1] = (byte) (length >>> 24);
+        out[2] = (byte) (length >>> 16);
+        out[3] = (byte) (length >>> 8);
+        out[4] = (byte) length;
+        int op = 5;
+
+        // Position + 1 of the last occurrence of each 4-byte hash, 0 for none
+        int[] table = new int[1 << LZ_HASH_BITS];
+        int anchor = 0;
+        int ip = 0;
+        while (ip + LZ_MIN_MATCH <= length) {
+            int sequence = readInt(src, ip);
+            int slot = (sequence * -1640531535) >>> (32 - LZ_HASH_BITS);
+            int ref = table[slot] - 1;
+            table[slot] = ip + 1;
+            if (ref < 0 || ip - ref > LZ_MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+
+            int matchLength = LZ_MIN_MATCH;
+            while (ip + matchLength < length && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            int literals = ip - anchor;
+            int extra = matchLength - LZ_MIN_MATCH;
+            out[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(extra, 15));
+            op = lzLength(out, op, literals);
+            System.arraycopy(src, anchor, out, op, literals);
+            op += literals;
+            int offset = ip - ref;
+            out[op++] = (byte) offset;
+            out[op++] = (byte) (offset >>> 8);
+            op = lzLength(out, op, extra);
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        int literals = length - anchor;
+        out[op++] = (byte) (Math.min(literals, 15) << 4);
+        op = lzLength(out, op, literals);
+        System.arraycopy(src, anchor, out, op, literals);
+        return Arrays.copyOf(out, op + literals);
+    }
+
+    /**
+     * Write the part of a length that does not fit its token nibble
+     */
+    private static int lzLength(byte[] out, int op, int value) {
+        if (value < 15) {
+            return op;
+        }
+        value -= 15;
+        while (value >= 255) {
+            out[op++] = (byte) 255;
+            value -= 255;
+        }
+        out[op++] = (byte) value;
+        return op;
+    }
+
+    /**
+     * Decompress an LZ body, see {@link #lzCompress}
+     *
+     * @param src The compressed sequences
+     * @param from Offset of the first sequence
+     * @param to End of the sequences
+     * @param dst Receives the payload
+     * @param length The payload length
+     * @throws IOException If the sequences are corrupt
+     */
+    static void lzDecompress(byte[] src, int from, int to, byte[] dst, int length) throws IOException {
+        int ip = from;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int extra;
+                    do {
+                        extra = src[ip++] & 0xFF;
+                        literals += extra;
+                    } while (extra == 255);
+                }
+                if (literals > to - ip || literals > length - op) {
+                    throw new IOException("Corrupt section: literals run past the end");
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip >= to) {
+                    break;
+                }
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int extra;
+                    do {
+                        extra = src[ip++] & 0xFF;
+                        matchLength += extra;
+                    } while (extra == 255);
+                }
+                matchLength += LZ_MIN_MATCH;
+                if (offset == 0 || offset > op || matchLength > length - op) {
+                    throw new IOException("Corrupt section: match out of range");
+                }
+                // A match may overlap the bytes it produces; the copied span doubles each round so copies never overlap
+                int source = op - offset;
+                int end = op + matchLength;
+                while (op < end) {
+                    int count = Math.min(op - source, end - op);
+                    System.arraycopy(dst, source, dst, op, count);
+                    op += count;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt section: truncated sequence", e);
+        }
+        if (op != length) {
+            throw new IOException("Corrupt section: expected " + length + " bytes, got " + op);
+        }
+    }
+
+    private static int readInt(byte[] src, int at) {
+        return (src[at] & 0xFF) | (src[at + 1] & 0xFF) << 8 | (src[at + 2] & 0xFF) << 16 | (src[at + 3] & 0xFF) << 24;
+    }
+}
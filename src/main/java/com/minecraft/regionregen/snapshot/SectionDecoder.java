@@ -0,0 +1,120 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Turns section blobs back into raw payloads, whatever {@link SectionCodec}
+ * wrote them. Keeps its inflater and output buffer between blobs, so one
+ * decoder per reading thread decodes without allocating. Not thread-safe.
+ */
+public final class SectionDecoder {
+
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[SnapshotSection.SIZE * 2 + 1024];
+    private byte[] input = new byte[0];
+
+    /**
+     * Decode a blob into the output buffer
+     *
+     * @param blob Buffer holding the blob between position and limit, may be direct; its position is not modified
+     * @return The payload length, the payload is at the start of {@link #getBuffer()}
+     * @throws IOException If the blob is corrupt
+     */
+    public int decode(ByteBuffer blob) throws IOException {
+        ByteBuffer body = blob.duplicate();
+        if (!body.hasRemaining()) {
+            throw new EOFException("Corrupt section: empty blob");
+        }
+        SectionCodec codec = SectionCodec.ofMark(body.get());
+        if (codec.isDeflate()) {
+            return inflate(body);
+        }
+        if (codec == SectionCodec.NONE) {
+            int length = body.remaining();
+            ensureCapacity(length);
+            body.get(buffer, 0, length);
+            return length;
+        }
+
+        if (body.remaining() < 4) {
+            throw new EOFException("Corrupt section: truncated blob");
+        }
+        int length = body.getInt();
+        if (length < 0 || length > SnapshotSection.SIZE * 64) {
+            throw new IOException("Corrupt section: bad payload length " + length);
+        }
+        ensureCapacity(length);
+        if (body.hasArray()) {
+            int from = body.arrayOffset() + body.position();
+            SectionCodec.lzDecompress(body.array(), from, from + body.remaining(), buffer, length);
+        } else {
+            // Direct buffers of the prefetcher are copied once rather than read byte by byte
+            int size = body.remaining();
+            if (input.length < size) {
+                input = new byte[size];
+            }
+            body.get(input, 0, size);
+            SectionCodec.lzDecompress(input, 0, size, buffer, length);
+        }
+        return length;
+    }
+
+    /**
+     * Decode a blob into a payload of its own
+     *
+     * @param blob The blob
+     * @return A copy of the payload
+     * @throws IOException If the blob is corrupt
+     */
+    public byte[] decode(byte[] blob) throws IOException {
+        return Arrays.copyOf(buffer, decode(ByteBuffer.wrap(blob)));
+    }
+
+    private int inflate(ByteBuffer body) throws IOException {
+        inflater.reset();
+        inflater.setInput(body);
+        try {
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = inflater.inflate(buffer, length, buffer.length - length);
+                if (read == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Corrupt section: truncated payload");
+                }
+                length += read;
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt section: " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+    }
+
+    /**
+     * Get the buffer the last payload was decoded into. Valid until the next decode.
+     *
+     * @return The buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Release the inflater
+     */
+    public void end() {
+        inflater.end();
+    }
+}
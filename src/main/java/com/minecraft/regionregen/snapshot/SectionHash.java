@@ -0,0 +1,96 @@
+package com.minecraft.regionregen.snapshot;
+
+/**
+ * Fast 64-bit check value of a section's blocks, stored next to the payload
+ * hash of each snapshot record so live blocks can be validated without
+ * encoding them, see {@link SectionCapture#hashSection}.
+ *
+ * <p>The value is a sum of one mixed term per captured cell, built from the
+ * cell's index and a hash of its block state string. Cells that are not
+ * captured add nothing, and the order cells are visited in does not matter,
+ * so a live section hashes the same as the payload it was captured into.
+ * It is not cryptographic: it tells a changed section from an unchanged one,
+ * not a forged one.</p>
+ */
+public final class SectionHash {
+
+    /** Check value of records written without one, such as undo generations */
+    public static final long UNKNOWN = 0L;
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private SectionHash() {
+    }
+
+    /**
+     * Hash a block state string
+     *
+     * @param state The state, as {@code BlockData#getAsString()} writes it
+     * @return The state hash
+     */
+    public static long ofState(String state) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < state.length(); i++) {
+            hash = (hash ^ state.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Get the term one cell adds to the section's value
+     *
+     * @param stateHash Hash of the cell's block state, see {@link #ofState}
+     * @param index The cell index, see {@link SnapshotSection#index}
+     * @return The term
+     */
+    public static long cell(long stateHash, int index) {
+        return mix(stateHash + (index + 1) * GOLDEN);
+    }
+
+    /**
+     * Turn a sum of cell terms into a check value
+     *
+     * @param sum The sum of every captured cell's term
+     * @return The check value, never {@link #UNKNOWN}
+     */
+    public static long finish(long sum) {
+        return sum == UNKNOWN ? 1L : sum;
+    }
+
+    /**
+     * Compute the check value of a decoded section
+     *
+     * @param section The section
+     * @return The check value
+     */
+    public static long of(SnapshotSection section) {
+        String[] palette = section.getPalette();
+        long[] stateHashes = new long[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            stateHashes[i] = ofState(palette[i]);
+        }
+
+        short[] blocks = section.getBlocks();
+        long sum = 0;
+        for (int index = 0; index < SnapshotSection.SIZE; index++) {
+            if (blocks[index] != SnapshotSection.NOT_CAPTURED) {
+                sum += cell(stateHashes[blocks[index]], index);
+            }
+        }
+        return finish(sum);
+    }
+
+    /**
+     * murmur3's 64-bit finaliser
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE53B6F53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,229 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads section payloads from the {@link SectionStore} ahead of the decoder,
+ * so reading the next sections from disk overlaps with decompressing the
+ * current one.
+ *
+ * <p>A {@link SnapshotReader} with prefetching enabled keeps up to
+ * {@link #getDepth()} record headers ahead of its caller and has their
+ * payloads read on the I/O pool with positional {@link FileChannel} reads,
+ * into direct buffers that are pooled and reused. The depth bounds how much
+ * each reader has in flight. When the disk is slower than the decoder, the
+ * decoder waits, the restore window drains and the applier simply has less to
+ * do that tick. The main thread is never blocked. Waits are counted, so a
+ * slow disk shows up in the stats.</p>
+ *
+ * <p>Readers that prefetch must not run on the I/O pool themselves, or they
+ * could end up waiting on reads queued behind them.</p>
+ */
+public class SectionPrefetcher {
+
+    // Deflated sections are a few KB; larger buffers are used once and dropped
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final Executor executor;
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private volatile int depth;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Create a prefetcher
+     *
+     * @param executor The executor payloads are read on
+     * @param depth Number of sections each reader reads ahead, 0 disables prefetching
+     */
+    public SectionPrefetcher(Executor executor, int depth) {
+        this.executor = executor;
+        this.depth = depth;
+    }
+
+    /**
+     * Get how many sections each reader reads ahead
+     *
+     * @return The depth, 0 when prefetching is disabled
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Change how many sections readers opened from now on read ahead
+     *
+     * @param depth The new depth
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Start reading a payload in the background
+     *
+     * @param store The store holding the payload
+     * @param hash The payload hash
+     * @return A future with the compressed payload in a pooled buffer, to be {@link #release released} after use
+     */
+    CompletableFuture<ByteBuffer> submit(SectionStore store, byte[] hash) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return read(store, hash);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, read on the caller's thread instead
+            CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+            try {
+                future.complete(read(store, hash));
+            } catch (IOException io) {
+                future.completeExceptionally(io);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Wait for a payload read by {@link #submit}
+     *
+     * @param future The read
+     * @return The compressed payload in a pooled buffer
+     * @throws IOException If the read failed
+     */
+    ByteBuffer await(CompletableFuture<ByteBuffer> future) throws IOException {
+        if (!future.isDone()) {
+            waits.increment();
+            long startedAt = System.nanoTime();
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw asIOException(e);
+            } finally {
+                waitNanos.add(System.nanoTime() - startedAt);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw asIOException(e);
+        }
+    }
+
+    private static IOException asIOException(CompletionException e) {
+        return e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+
+    /**
+     * Give up on a read, returning its buffer once it completes
+     *
+     * @param future The read
+     */
+    void discard(CompletableFuture<ByteBuffer> future) {
+        future.thenAccept(this::release);
+    }
+
+    /**
+     * Read a payload into a pooled buffer on the calling thread
+     *
+     * @param store The store holding the payload
+     * @param hash The payload hash
+     * @return The compressed payload, flipped for reading
+     * @throws IOException If the blob is missing or truncated
+     */
+    ByteBuffer read(SectionStore store, byte[] hash) throws IOException {
+        try (FileChannel channel = store.openBlob(hash)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Section " + SectionStore.toHex(hash) + " is too large");
+            }
+            ByteBuffer buffer = acquire((int) size);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, buffer.position()) < 0) {
+                        throw new EOFException("Section " + SectionStore.toHex(hash) + " is truncated");
+                    }
+                }
+            } catch (IOException e) {
+                release(buffer);
+                throw e;
+            }
+            buffer.flip();
+            reads.increment();
+            bytesRead.add(size);
+            return buffer;
+        }
+    }
+
+    private ByteBuffer acquire(int size) {
+        ByteBuffer buffer = pool.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+            if (buffer.capacity() < size) {
+                buffer = null;
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, size));
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool
+     *
+     * @param buffer A buffer returned by {@link #read} or {@link #await}
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+            return;
+        }
+        if (pooled.incrementAndGet() > MAX_POOLED_BUFFERS) {
+            pooled.decrementAndGet();
+            return;
+        }
+        pool.offer(buffer);
+    }
+
+    public long getReads() {
+        return reads.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Get how often a decoder had to wait for a section still being read
+     *
+     * @return The wait count
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    public long getWaitMillis() {
+        return waitNanos.sum() / 1_000_000L;
+    }
+}
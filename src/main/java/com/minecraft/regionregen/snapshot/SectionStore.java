@@ -0,0 +1,390 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+/**
+ * Content-addressed store of compressed section payloads, shared by all snapshots.
+ *
+ * <p>Each distinct payload is written once, as {@code <hash[0..2]>/<hash>.sec},
+ * and snapshots only hold its SHA-256. Reference counts are kept in memory,
+ * rebuilt from the snapshot files on startup; a blob is deleted as soon as
+ * its count drops to zero. Blobs are compressed, written and deleted outside
+ * the store's lock; a blob in flight is marked so puts of the same payload
+ * wait for it instead of racing it. New blobs are compressed with the configured
+ * {@link SectionCodec}; existing blobs keep the codec they were written with.</p>
+ */
+public class SectionStore {
+
+    public static final int HASH_LENGTH = 32;
+
+    private static final String BLOB_EXTENSION = ".sec";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File root;
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    // Blobs being written or deleted outside the lock; other threads wait for them to settle
+    private final Set<String> inFlight = new HashSet<>();
+    private long storedBytes;
+    private final Supplier<SectionCodec> codec;
+
+    /**
+     * Create a store rooted at a folder
+     *
+     * @param root The folder blobs are kept in
+     * @param codec Supplies the codec new blobs are written with, asked on every write
+     */
+    public SectionStore(File root, Supplier<SectionCodec> codec) {
+        this.root = root;
+        this.codec = codec;
+    }
+
+    /**
+     * Hash an uncompressed section payload
+     *
+     * @param payload The raw payload, see {@link SnapshotFormat#encodePayload}
+     * @return The SHA-256 of the payload
+     */
+    public static byte[] hash(byte[] payload) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(payload);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Encode a hash as lowercase hex
+     *
+     * @param hash The hash
+     * @return The hex string
+     */
+    public static String toHex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 15];
+            chars[i * 2 + 1] = HEX[hash[i] & 15];
+        }
+        return new String(chars);
+    }
+
+    private File blobFile(String hex) {
+        return new File(new File(root, hex.substring(0, 2)), hex + BLOB_EXTENSION);
+    }
+
+    /**
+     * Store a payload and take a reference to it. The caller owns the reference
+     * and must {@link #release} it if the snapshot it was written for is discarded.
+     * Compression and the write happen outside the store's lock.
+     *
+     * @param payload The raw payload
+     * @param deflater Deflater for the deflate codecs, reset before use
+     * @return The payload's hash
+     * @throws IOException If the blob cannot be written
+     */
+    public byte[] put(byte[] payload, Deflater deflater) throws IOException {
+        byte[] hash = hash(payload);
+        String hex = toHex(hash);
+        // Most puts are duplicates and return without touching the disk
+        if (!referenceOrClaim(hex)) {
+            write(hex, () -> codec.get().encode(payload, deflater));
+        }
+        return hash;
+    }
+
+    /**
+     * Take a reference to a blob that is already stored, see {@link #put}
+     *
+     * @param hash The payload hash
+     * @return True if the blob exists and a reference was taken
+     * @throws InterruptedIOException If interrupted while the blob was being written or deleted
+     */
+    public synchronized boolean acquire(byte[] hash) throws InterruptedIOException {
+        String hex = toHex(hash);
+        awaitIdle(hex);
+        return reference(hex);
+    }
+
+    /**
+     * Store an already compressed blob as is and take a reference to it. The
+     * caller must have checked that the blob decodes to a payload with this
+     * hash; see {@link #put} for the reference.
+     *
+     * @param hash The payload hash
+     * @param blob The compressed payload, see {@link SectionCodec}
+     * @throws IOException If the blob cannot be written
+     */
+    public void putBlob(byte[] hash, byte[] blob) throws IOException {
+        String hex = toHex(hash);
+        if (!referenceOrClaim(hex)) {
+            write(hex, () -> blob);
+        }
+    }
+
+    /**
+     * Take a reference to a blob, or claim it for the caller to write
+     *
+     * @return True if a reference was taken, false if the caller must now {@link #write} the blob
+     */
+    private synchronized boolean referenceOrClaim(String hex) throws InterruptedIOException {
+        awaitIdle(hex);
+        if (reference(hex)) {
+            return true;
+        }
+        inFlight.add(hex);
+        return false;
+    }
+
+    /**
+     * Take a reference to a blob that is stored and not in flight. Lock held.
+     */
+    private boolean reference(String hex) {
+        int count = refCounts.getOrDefault(hex, 0);
+        if (count > 0) {
+            refCounts.put(hex, count + 1);
+            return true;
+        }
+
+        // Left unreferenced since the last startup, kept until then
+        File blob = blobFile(hex);
+        if (!blob.isFile()) {
+            return false;
+        }
+        refCounts.put(hex, 1);
+        storedBytes += blob.length();
+        return true;
+    }
+
+    /**
+     * Wait until no other thread writes or deletes a blob. Lock held.
+     */
+    private void awaitIdle(String hex) throws InterruptedIOException {
+        while (inFlight.contains(hex)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while section " + hex + " was being stored");
+            }
+        }
+    }
+
+    private synchronized void settle(String hex) {
+        inFlight.remove(hex);
+        notifyAll();
+    }
+
+    /**
+     * Write a blob claimed by {@link #referenceOrClaim} to a temp file, then
+     * move it in place and take the first reference under the lock
+     */
+    private void write(String hex, BlobSource source) throws IOException {
+        File file = blobFile(hex);
+        File temp = new File(file.getParentFile(), hex + ".tmp");
+        boolean stored = false;
+        try {
+            byte[] blob = source.get();
+            file.getParentFile().mkdirs();
+            Files.write(temp.toPath(), blob);
+            synchronized (this) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                refCounts.put(hex, 1);
+                storedBytes += blob.length;
+            }
+            stored = true;
+        } finally {
+            settle(hex);
+            if (!stored) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Read the compressed payload of a blob
+     *
+     * @param hash The payload hash
+     * @return The compressed payload, see {@link SectionCodec}
+     * @throws IOException If the blob is missing
+     */
+    public byte[] read(byte[] hash) throws IOException {
+        String hex = toHex(hash);
+        try {
+            return Files.readAllBytes(blobFile(hex).toPath());
+        } catch (NoSuchFileException e) {
+            throw new IOException("Section " + hex + " is missing from the section store", e);
+        }
+    }
+
+    /**
+     * Open a blob for positional reads
+     *
+     * @param hash The payload hash
+     * @return A read-only channel over the compressed payload
+     * @throws IOException If the blob is missing
+     */
+    FileChannel openBlob(byte[] hash) throws IOException {
+        String hex = toHex(hash);
+        try {
+            return FileChannel.open(blobFile(hex).toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Section " + hex + " is missing from the section store", e);
+        }
+    }
+
+    /**
+     * Read and decompress the payload of a blob. Safe to call from any thread.
+     *
+     * @param hash The payload hash
+     * @return The raw payload, see {@link SnapshotFormat#decodePayload}
+     * @throws IOException If the blob is missing or corrupt
+     */
+    public byte[] readPayload(byte[] hash) throws IOException {
+        SectionDecoder decoder = new SectionDecoder();
+        try {
+            return decoder.decode(read(hash));
+        } finally {
+            decoder.end();
+        }
+    }
+
+    /**
+     * Drop one reference to a blob, deleting it when it is no longer used.
+     * The file is deleted outside the store's lock.
+     *
+     * @param hash The payload hash
+     */
+    public void release(byte[] hash) {
+        String hex = toHex(hash);
+        synchronized (this) {
+            Integer count = refCounts.get(hex);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                refCounts.put(hex, count - 1);
+                return;
+            }
+            // Puts of the same payload wait until it is gone, then write it anew
+            refCounts.remove(hex);
+            inFlight.add(hex);
+        }
+
+        File blob = blobFile(hex);
+        long length = blob.length();
+        blob.delete();
+        synchronized (this) {
+            storedBytes -= length;
+        }
+        settle(hex);
+    }
+
+    /**
+     * Drop a list of references, see {@link #release(byte[])}
+     *
+     * @param hashes The payload hashes
+     */
+    public void releaseAll(List<byte[]> hashes) {
+        for (byte[] hash : hashes) {
+            release(hash);
+        }
+    }
+
+    /**
+     * Replace the reference counts with the references held by a set of
+     * snapshots, then optionally delete every blob nothing refers to
+     *
+     * @param references The references of every live snapshot
+     * @param collect Whether to delete unreferenced blobs; pass false if some snapshot could not be read
+     * @return The number of unreferenced blobs deleted
+     */
+    public synchronized int rebuild(List<byte[]> references, boolean collect) {
+        refCounts.clear();
+        for (byte[] hash : references) {
+            refCounts.merge(toHex(hash), 1, Integer::sum);
+        }
+
+        int deleted = 0;
+        storedBytes = 0;
+        File[] buckets = root.listFiles(File::isDirectory);
+        if (buckets == null) {
+            return 0;
+        }
+        for (File bucket : buckets) {
+            File[] blobs = bucket.listFiles();
+            if (blobs == null) {
+                continue;
+            }
+            for (File blob : blobs) {
+                String name = blob.getName();
+                int dot = name.indexOf('.');
+                if (inFlight.contains(dot < 0 ? name : name.substring(0, dot))) {
+                    // Being written or deleted right now, accounted for when that is done
+                    continue;
+                }
+                boolean live = name.endsWith(BLOB_EXTENSION)
+                        && refCounts.containsKey(name.substring(0, name.length() - BLOB_EXTENSION.length()));
+                if (live) {
+                    storedBytes += blob.length();
+                } else if (collect && blob.delete()) {
+                    // Unreferenced blob or a temp file left by a crash
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Get the number of distinct sections stored
+     *
+     * @return The blob count
+     */
+    public synchronized int getSectionCount() {
+        return refCounts.size();
+    }
+
+    /**
+     * Get the total number of references held by snapshots
+     *
+     * @return The reference count
+     */
+    public synchronized long getReferenceCount() {
+        long total = 0;
+        for (int count : refCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Get the compressed size of all stored sections
+     *
+     * @return Bytes on disk
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Produces the bytes of a blob being written
+     */
+    private interface BlobSource {
+        byte[] get() throws IOException;
+    }
+}
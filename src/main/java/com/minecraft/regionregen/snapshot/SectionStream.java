@@ -0,0 +1,46 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of snapshot sections in chunk order
+ */
+public interface SectionStream extends Closeable {
+
+    /**
+     * Get the name of the world the snapshot was taken in
+     *
+     * @return The world name
+     */
+    String getWorldName();
+
+    /**
+     * Get the next section
+     *
+     * @return The next section, or null when the snapshot is exhausted
+     * @throws IOException If the snapshot cannot be read
+     */
+    SnapshotSection next() throws IOException;
+
+    /**
+     * Check if {@link #next()} can be called without waiting on another thread.
+     * Streams fed from the main thread return false until their next section
+     * is there, so a worker reading them can return and try again later.
+     *
+     * @return True if the next section, or the end, is available
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * Skip every section up to and including the given chunk, in chunk order,
+     * without decoding them. Used to resume an interrupted restore.
+     *
+     * @param chunkX X of the last chunk to skip
+     * @param chunkZ Z of the last chunk to skip
+     * @throws IOException If the snapshot cannot be read
+     */
+    void skipThrough(int chunkX, int chunkZ) throws IOException;
+}
@@ -0,0 +1,574 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.RegionMask;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A portable copy of a region's snapshot: the region's bounds and shape,
+ * its snapshot records, and the stored sections they refer to, in one file
+ * another server can import.
+ *
+ * <p>A full bundle carries every section its records refer to. A delta
+ * bundle names a base bundle and leaves out the sections the base already
+ * carries, so a changed region ships only its changed sections. Sections are
+ * matched by payload hash: an importer takes each one from its own
+ * {@link SectionStore} first, then from the delta, then from the base. Every
+ * section copied out of a bundle is decompressed and hashed before it is
+ * stored, and the records are checked against the bundle ID.</p>
+ *
+ * <pre>
+ * bundle  := MAGIC VERSION id[32] base region records blobs
+ * base    := hasBase:boolean [baseName:UTF baseId[32]]
+ * region  := regionId:UTF world:UTF min:int[3] max:int[3] shape:UTF regenThreshold:int
+ *            capturedAt:long hasMask:boolean [mask]
+ * records := count:int (sx:int sy:int sz:int hash[32] check:long)*
+ * blobs   := count:int (hash[32] length:int blob[length])*
+ * </pre>
+ *
+ * <p>The ID is the SHA-256 of the region and records parts as written, so
+ * a damaged header is noticed and a delta can tell whether the base it finds
+ * is the one it was made against.</p>
+ */
+public final class SnapshotBundle {
+
+    public static final int MAGIC = 0x5252424E; // "RRBN"
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".rrb";
+
+    // A stored blob is at most a little over its raw payload; anything larger is corruption
+    private static final int MAX_BLOB_LENGTH = 1 << 20;
+
+    private final String regionId;
+    private final String worldName;
+    private final int[] min;
+    private final int[] max;
+    private final String shape;
+    private final int regenThreshold;
+    private final long capturedAt;
+    private final RegionMask mask;
+    private final List<Record> records;
+    private final byte[] id;
+    private final String baseName;
+    private final byte[] baseId;
+
+    private SnapshotBundle(String regionId, String worldName, int[] min, int[] max, String shape, int regenThreshold,
+                           long capturedAt, RegionMask mask, List<Record> records, String baseName, byte[] baseId) {
+        this.regionId = regionId;
+        this.worldName = worldName;
+        this.min = min;
+        this.max = max;
+        this.shape = shape;
+        this.regenThreshold = regenThreshold;
+        this.capturedAt = capturedAt;
+        this.mask = mask;
+        this.records = records;
+        this.baseName = baseName;
+        this.baseId = baseId;
+        this.id = digest();
+    }
+
+    /**
+     * Build a bundle from a region's snapshot file, reading its records only
+     *
+     * @param regionId The region ID
+     * @param shape The region's shape name
+     * @param regenThreshold The region's mined threshold
+     * @param mask Membership of a non-cuboid region, or null for a cuboid
+     * @param snapshot The region's snapshot file
+     * @return The bundle
+     * @throws IOException If the snapshot cannot be read
+     */
+    public static SnapshotBundle fromSnapshot(String regionId, String shape, int regenThreshold, RegionMask mask, File snapshot) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(snapshot, null)) {
+            List<Record> records = new ArrayList<>();
+            while (reader.nextRecord()) {
+                records.add(new Record(reader.getRecordX(), reader.getRecordY(), reader.getRecordZ(),
+                        reader.getRecordHash(), reader.getRecordCheck()));
+            }
+            return new SnapshotBundle(regionId, reader.getWorldName(), reader.getMin(), reader.getMax(), shape, regenThreshold,
+                    reader.getCapturedAt(), mask, Collections.unmodifiableList(records), null, null);
+        }
+    }
+
+    /**
+     * Write the bundle with the sections it needs, replacing the target atomically
+     *
+     * @param target The bundle file to produce
+     * @param store The store to read sections from
+     * @param base The bundle to leave sections out for, or null to write a full bundle
+     * @param baseName The base's file name, which importers look for next to the target
+     * @return What was written
+     * @throws IOException If a section is missing from the store or the file cannot be written
+     */
+    public Transfer write(File target, SectionStore store, SnapshotBundle base, String baseName) throws IOException {
+        Set<String> excluded = new HashSet<>();
+        if (base != null) {
+            for (Record record : base.records) {
+                excluded.add(SectionStore.toHex(record.hash));
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        int skipped = 0;
+        for (Record record : records) {
+            String hex = SectionStore.toHex(record.hash);
+            if (!seen.add(hex)) {
+                continue;
+            }
+            if (excluded.contains(hex)) {
+                skipped++;
+            } else {
+                blobs.put(hex, record.hash);
+            }
+        }
+
+        target.getParentFile().mkdirs();
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(id);
+            out.writeBoolean(base != null);
+            if (base != null) {
+                out.writeUTF(baseName);
+                out.write(base.id);
+            }
+            writeRegion(out);
+
+            out.writeInt(blobs.size());
+            for (byte[] hash : blobs.values()) {
+                byte[] blob = store.read(hash);
+                out.write(hash);
+                out.writeInt(blob.length);
+                out.write(blob);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Transfer(target, records.size(), blobs.size(), skipped, target.length());
+    }
+
+    /**
+     * Open a bundle file and read everything but its sections
+     *
+     * @param file The bundle file
+     * @return A reader positioned at the first section
+     * @throws IOException If the file is not a bundle, or its header or records do not match its ID
+     */
+    public static Reader open(File file) throws IOException {
+        return new Reader(file);
+    }
+
+    /**
+     * Write the region and records parts of the bundle, which its ID is the hash of
+     */
+    private void writeRegion(DataOutputStream out) throws IOException {
+        out.writeUTF(regionId);
+        out.writeUTF(worldName);
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(min[i]);
+        }
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(max[i]);
+        }
+        out.writeUTF(shape);
+        out.writeInt(regenThreshold);
+        out.writeLong(capturedAt);
+        out.writeBoolean(mask != null);
+        if (mask != null) {
+            mask.write(out);
+        }
+
+        out.writeInt(records.size());
+        for (Record record : records) {
+            out.writeInt(record.x);
+            out.writeInt(record.y);
+            out.writeInt(record.z);
+            out.write(record.hash);
+            out.writeLong(record.check);
+        }
+    }
+
+    private byte[] digest() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest), 8 * 1024))) {
+            writeRegion(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to hash bundle of region " + regionId, e);
+        }
+        return digest.digest();
+    }
+
+    public String getRegionId() {
+        return regionId;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public int[] getMin() {
+        return min.clone();
+    }
+
+    public int[] getMax() {
+        return max.clone();
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public int getRegenThreshold() {
+        return regenThreshold;
+    }
+
+    /**
+     * Get when the bundled snapshot was captured
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    /**
+     * Get the membership of a non-cuboid region
+     *
+     * @return The mask, or null for a cuboid
+     */
+    public RegionMask getMask() {
+        return mask;
+    }
+
+    /**
+     * Get the snapshot records, in chunk order
+     *
+     * @return The records
+     */
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * Get the bundle ID, the SHA-256 of its region, bounds and records
+     *
+     * @return A copy of the ID
+     */
+    public byte[] getId() {
+        return id.clone();
+    }
+
+    /**
+     * Get the file name of the bundle a delta was made against
+     *
+     * @return The base's name, or null for a full bundle
+     */
+    public String getBaseName() {
+        return baseName;
+    }
+
+    /**
+     * Get the ID of the bundle a delta was made against
+     *
+     * @return A copy of the base's ID, or null for a full bundle
+     */
+    public byte[] getBaseId() {
+        return baseId == null ? null : baseId.clone();
+    }
+
+    /**
+     * One snapshot record: a section's coordinates, payload hash and check value
+     */
+    public static final class Record {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final byte[] hash;
+        private final long check;
+
+        private Record(int x, int y, int z, byte[] hash, long check) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.hash = hash;
+            this.check = check;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        /**
+         * Get the payload hash the record refers to
+         *
+         * @return A copy of the hash
+         */
+        public byte[] getHash() {
+            return hash.clone();
+        }
+
+        /**
+         * Get the check value of the record, see {@link SectionHash}
+         *
+         * @return The check value, or {@link SectionHash#UNKNOWN}
+         */
+        public long getCheck() {
+            return check;
+        }
+    }
+
+    /**
+     * Streams the sections of a bundle file, after reading its header and records
+     */
+    public static final class Reader implements Closeable {
+        private final String fileName;
+        private final DataInputStream in;
+        private final SnapshotBundle bundle;
+        private final MessageDigest digest;
+        private final byte[] blobHash = new byte[SectionStore.HASH_LENGTH];
+        private int blobsLeft;
+        // Length of the current section while it is unread, -1 once read or skipped
+        private int blobLength = -1;
+
+        private Reader(File file) throws IOException {
+            this.fileName = file.getName();
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                this.bundle = readHeader();
+                this.blobsLeft = in.readInt();
+                if (blobsLeft < 0) {
+                    throw new IOException("Bundle " + fileName + " is corrupt: negative section count");
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private SnapshotBundle readHeader() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a snapshot bundle");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Bundle " + fileName + " has unsupported version " + version);
+            }
+            byte[] id = new byte[SectionStore.HASH_LENGTH];
+            in.readFully(id);
+
+            String baseName = null;
+            byte[] baseId = null;
+            if (in.readBoolean()) {
+                baseName = in.readUTF();
+                baseId = new byte[SectionStore.HASH_LENGTH];
+                in.readFully(baseId);
+            }
+
+            String regionId = in.readUTF();
+            String worldName = in.readUTF();
+            int[] min = new int[3];
+            int[] max = new int[3];
+            for (int i = 0; i < 3; i++) {
+                min[i] = in.readInt();
+            }
+            for (int i = 0; i < 3; i++) {
+                max[i] = in.readInt();
+            }
+            String shape = in.readUTF();
+            int regenThreshold = in.readInt();
+            long capturedAt = in.readLong();
+            RegionMask mask = in.readBoolean() ? RegionMask.read(in) : null;
+
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Bundle " + fileName + " is corrupt: negative record count");
+            }
+            List<Record> records = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                int x = in.readInt();
+                int y = in.readInt();
+                int z = in.readInt();
+                byte[] hash = new byte[SectionStore.HASH_LENGTH];
+                in.readFully(hash);
+                records.add(new Record(x, y, z, hash, in.readLong()));
+            }
+
+            SnapshotBundle bundle = new SnapshotBundle(regionId, worldName, min, max, shape, regenThreshold, capturedAt, mask,
+                    Collections.unmodifiableList(records), baseName, baseId);
+            if (!Arrays.equals(bundle.id, id)) {
+                throw new IOException("Bundle " + fileName + " is corrupt: its header or records do not match its ID");
+            }
+            return bundle;
+        }
+
+        /**
+         * Get the bundle's header and records
+         *
+         * @return The bundle
+         */
+        public SnapshotBundle getBundle() {
+            return bundle;
+        }
+
+        /**
+         * Move to the next section, skipping the current one if it was not read
+         *
+         * @return False at the end of the bundle
+         * @throws IOException If the file is truncated or corrupt
+         */
+        public boolean nextBlob() throws IOException {
+            if (blobLength >= 0) {
+                skipBlob();
+            }
+            if (blobsLeft == 0) {
+                return false;
+            }
+            blobsLeft--;
+            in.readFully(blobHash);
+            blobLength = in.readInt();
+            if (blobLength <= 0 || blobLength > MAX_BLOB_LENGTH) {
+                throw new IOException("Bundle " + fileName + " is corrupt: section " + SectionStore.toHex(blobHash)
+                        + " has length " + blobLength);
+            }
+            return true;
+        }
+
+        /**
+         * Get the payload hash of the current section
+         *
+         * @return A copy of the hash
+         */
+        public byte[] getBlobHash() {
+            return blobHash.clone();
+        }
+
+        /**
+         * Skip the current section without reading it
+         *
+         * @throws IOException If the file is truncated
+         */
+        public void skipBlob() throws IOException {
+            in.skipNBytes(blobLength);
+            blobLength = -1;
+        }
+
+        /**
+         * Read the current section and check that it decompresses to a payload with its hash
+         *
+         * @param decoder Decoder for the check, its buffer is overwritten
+         * @return The compressed blob, as it is kept in the {@link SectionStore}
+         * @throws IOException If the section is truncated, corrupt or does not match its hash
+         */
+        public byte[] readVerifiedBlob(SectionDecoder decoder) throws IOException {
+            byte[] blob = new byte[blobLength];
+            in.readFully(blob);
+            blobLength = -1;
+
+            int length = decoder.decode(ByteBuffer.wrap(blob));
+            digest.reset();
+            digest.update(decoder.getBuffer(), 0, length);
+            if (!Arrays.equals(digest.digest(), blobHash)) {
+                throw new IOException("Bundle " + fileName + " is corrupt: section " + SectionStore.toHex(blobHash)
+                        + " does not match its hash");
+            }
+            return blob;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * What an export or import moved
+     */
+    public static final class Transfer {
+        private final File file;
+        private final int records;
+        private final int copied;
+        private final int skipped;
+        private final long bytes;
+
+        /**
+         * @param file The bundle file
+         * @param records Sections in the region's snapshot
+         * @param copied Distinct sections written to or copied out of bundles
+         * @param skipped Distinct sections left out of a delta, or already in the importer's store
+         * @param bytes Size of the bundle written, or of the sections copied out of bundles
+         */
+        public Transfer(File file, int records, int copied, int skipped, long bytes) {
+            this.file = file;
+            this.records = records;
+            this.copied = copied;
+            this.skipped = skipped;
+            this.bytes = bytes;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
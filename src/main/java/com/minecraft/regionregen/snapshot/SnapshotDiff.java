@@ -0,0 +1,215 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.RegionMask;
+import com.minecraft.regionregen.regen.ChunkWork;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Differences between a region's live blocks and its snapshot.
+ *
+ * <p>Sections are compared independently, so any number of workers can call
+ * {@link #compareSection} at once. A live section is first hashed the same
+ * way a capture would hash it, see {@link SectionHash}; if that matches the
+ * check of the snapshot record the section is unchanged and the stored
+ * payload is never read. Records without a check fall back to encoding the
+ * live section and comparing payload hashes. Only sections whose hashes
+ * differ are decoded and compared cell by cell.</p>
+ *
+ * <p>The changed blocks are kept as {@link SnapshotSection}s in which only
+ * the changed cells are captured, holding the snapshot state of each cell, so
+ * the diff can be restored like any other snapshot.</p>
+ */
+public class SnapshotDiff {
+
+    private final String regionId;
+    private final int[] min;
+    private final int[] max;
+    private final RegionMask mask;
+
+    private final LongAdder sectionsCompared = new LongAdder();
+    private final LongAdder sectionsUnchanged = new LongAdder();
+    private final LongAdder blocksChanged = new LongAdder();
+    private final ConcurrentLinkedQueue<SnapshotSection> pending = new ConcurrentLinkedQueue<>();
+    private final Map<Material, LongAdder> expected = new ConcurrentHashMap<>();
+    private final Map<Material, LongAdder> actual = new ConcurrentHashMap<>();
+
+    private List<SnapshotSection> changedSections;
+    private long elapsedMillis;
+
+    /**
+     * Create an empty diff
+     *
+     * @param regionId The region being compared
+     * @param min Minimum block corner of the snapshot {x, y, z}
+     * @param max Maximum block corner of the snapshot {x, y, z}
+     * @param mask Membership of a non-cuboid region, or null for a cuboid
+     */
+    public SnapshotDiff(String regionId, int[] min, int[] max, RegionMask mask) {
+        this.regionId = regionId;
+        this.min = min.clone();
+        this.max = max.clone();
+        this.mask = mask;
+    }
+
+    /**
+     * Compare one section of a live chunk with its snapshot record. Safe to
+     * call from any thread.
+     *
+     * @param chunk The live chunk
+     * @param sy Section Y coordinate
+     * @param hash Payload hash of the record
+     * @param check Check value of the record, or {@link SectionHash#UNKNOWN}
+     * @param store The store holding the snapshot's payloads
+     * @param stateHashes State hashes by block data, shared between the sections of a chunk
+     * @throws IOException If the stored payload cannot be read
+     */
+    public void compareSection(ChunkSnapshot chunk, int sy, byte[] hash, long check, SectionStore store,
+                               Map<BlockData, Long> stateHashes) throws IOException {
+        sectionsCompared.increment();
+
+        if (check != SectionHash.UNKNOWN) {
+            if (SectionCapture.hashSection(chunk, sy, min, max, mask, stateHashes) == check) {
+                sectionsUnchanged.increment();
+                return;
+            }
+        } else {
+            SnapshotSection live = SectionCapture.encodeSection(chunk, sy, min, max, mask);
+            if (live != null && Arrays.equals(hash, SectionStore.hash(SnapshotFormat.encodePayload(live)))) {
+                sectionsUnchanged.increment();
+                return;
+            }
+        }
+        byte[] payload = store.readPayload(hash);
+
+        SnapshotSection stored = SnapshotFormat.decodePayload(chunk.getX(), sy, chunk.getZ(),
+                new DataInputStream(new ByteArrayInputStream(payload)));
+        BlockData[] palette = stored.resolvePalette();
+        short[] blocks = stored.getBlocks();
+        short[] changed = null;
+        int baseY = sy << 4;
+
+        for (int index = 0; index < SnapshotSection.SIZE; index++) {
+            short paletteIndex = blocks[index];
+            if (paletteIndex == SnapshotSection.NOT_CAPTURED || palette[paletteIndex] == null) {
+                continue;
+            }
+            BlockData current = chunk.getBlockData(index & 15, baseY + (index >> 8), (index >> 4) & 15);
+            if (current.equals(palette[paletteIndex])) {
+                continue;
+            }
+
+            if (changed == null) {
+                changed = new short[SnapshotSection.SIZE];
+                Arrays.fill(changed, SnapshotSection.NOT_CAPTURED);
+            }
+            changed[index] = paletteIndex;
+            blocksChanged.increment();
+            expected.computeIfAbsent(palette[paletteIndex].getMaterial(), m -> new LongAdder()).increment();
+            actual.computeIfAbsent(current.getMaterial(), m -> new LongAdder()).increment();
+        }
+
+        if (changed == null) {
+            // Same blocks, but encoded differently than a fresh capture would
+            sectionsUnchanged.increment();
+        } else {
+            pending.add(new SnapshotSection(stored.getX(), stored.getY(), stored.getZ(), stored.getPalette(), changed));
+        }
+    }
+
+    /**
+     * Mark the diff as complete once every section has been compared
+     *
+     * @param elapsedMillis Time the comparison took
+     */
+    public void finish(long elapsedMillis) {
+        List<SnapshotSection> sections = new ArrayList<>(pending);
+        pending.clear();
+        // Workers finish out of order, restore needs chunk order
+        sections.sort((a, b) -> {
+            int order = ChunkWork.compareChunks(a, b);
+            return order != 0 ? order : Integer.compare(a.getY(), b.getY());
+        });
+        this.changedSections = sections;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    private static Map<Material, Long> sorted(Map<Material, LongAdder> histogram) {
+        Map<Material, Long> result = new LinkedHashMap<>();
+        histogram.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Material, LongAdder> e) -> e.getValue().sum()).reversed())
+                .forEach(e -> result.put(e.getKey(), e.getValue().sum()));
+        return result;
+    }
+
+    public String getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * Get the changed blocks. Each section captures exactly the cells that
+     * differ, holding the state the snapshot expects.
+     *
+     * @return The changed sections in chunk order, empty if the region matches its snapshot
+     */
+    public List<SnapshotSection> getChangedSections() {
+        return changedSections;
+    }
+
+    public long getSectionsCompared() {
+        return sectionsCompared.sum();
+    }
+
+    /**
+     * Get the number of sections with no changes, most of which are skipped by hash
+     *
+     * @return The unchanged section count
+     */
+    public long getSectionsUnchanged() {
+        return sectionsUnchanged.sum();
+    }
+
+    public long getBlocksChanged() {
+        return blocksChanged.sum();
+    }
+
+    public boolean isClean() {
+        return blocksChanged.sum() == 0;
+    }
+
+    /**
+     * Get how many changed blocks the snapshot expects of each material
+     *
+     * @return Materials by count, highest first
+     */
+    public Map<Material, Long> getExpectedMaterials() {
+        return sorted(expected);
+    }
+
+    /**
+     * Get how many changed blocks are currently of each material
+     *
+     * @return Materials by count, highest first
+     */
+    public Map<Material, Long> getActualMaterials() {
+        return sorted(actual);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
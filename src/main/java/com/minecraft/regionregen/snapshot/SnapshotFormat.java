@@ -0,0 +1,150 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary layout shared by {@link SnapshotWriter} and {@link SnapshotReader}.
+ *
+ * <pre>
+ * file    := MAGIC VERSION header record* END [index]
+ * header  := worldName:UTF minX minY minZ maxX maxY maxZ:int capturedAt:long generation:long
+ * record  := SECTION sx sy sz:int hash:byte[32] check:long
+ * payload := paletteSize:short palette:UTF[paletteSize] blocks:short[4096]
+ * </pre>
+ *
+ * Records are written in chunk order (chunk X, then chunk Z, then section Y)
+ * so a reader can stream a snapshot one chunk at a time. Payloads are not
+ * stored in the file: the hash is the SHA-256 of the payload, whose compressed
+ * bytes live in the shared {@link SectionStore}. The check is a fast hash of
+ * the section's blocks, see {@link SectionHash}, for validating live blocks
+ * against the snapshot without encoding them.
+ *
+ * <p>Records are a fixed {@link #RECORD_SIZE} bytes, so the index trailer,
+ * see {@link SnapshotIndex}, can locate the records of any chunk. Files whose
+ * records are out of chunk order have none.</p>
+ *
+ * <p>The generation is greater than that of the file the snapshot replaced,
+ * so caches and logs keyed by it never mistake a new capture for an old one.</p>
+ */
+public final class SnapshotFormat {
+
+    public static final int MAGIC = 0x5252534E; // "RRSN"
+    public static final int VERSION = 1;
+
+    public static final byte TAG_SECTION = 1;
+    public static final byte TAG_END = 0;
+
+    /** Bytes of a record: tag, coordinates, hash and check */
+    public static final int RECORD_SIZE = 1 + 3 * 4 + SectionStore.HASH_LENGTH + 8;
+    public static final int INDEX_MAGIC = 0x52524958; // "RRIX"
+
+    public static final String FILE_EXTENSION = ".rrs";
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Encode the uncompressed payload of a section
+     *
+     * @param section The section to encode
+     * @return The raw payload bytes
+     * @throws IOException If encoding fails
+     */
+    public static byte[] encodePayload(SnapshotSection section) throws IOException {
+        String[] palette = section.getPalette();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SnapshotSection.SIZE * 2 + palette.length * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeShort(palette.length);
+        for (String entry : palette) {
+            out.writeUTF(entry);
+        }
+        for (short block : section.getBlocks()) {
+            out.writeShort(block);
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode an uncompressed section payload
+     *
+     * @param x Section X coordinate
+     * @param y Section Y coordinate
+     * @param z Section Z coordinate
+     * @param in Stream positioned at the start of the payload
+     * @return The decoded section
+     * @throws IOException If the payload is malformed
+     */
+    public static SnapshotSection decodePayload(int x, int y, int z, DataInputStream in) throws IOException {
+        int paletteSize = in.readUnsignedShort();
+        String[] palette = new String[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = in.readUTF();
+        }
+
+        short[] blocks = new short[SnapshotSection.SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            short block = in.readShort();
+            if (block != SnapshotSection.NOT_CAPTURED && (block < 0 || block >= paletteSize)) {
+                throw new IOException("Palette index " + block + " out of range in section " + x + "," + y + "," + z);
+            }
+            blocks[i] = block;
+        }
+
+        return new SnapshotSection(x, y, z, palette, blocks);
+    }
+
+    /**
+     * Decode an uncompressed section payload held in a (possibly direct) buffer.
+     * The buffer's position is not modified.
+     *
+     * @param x Section X coordinate
+     * @param y Section Y coordinate
+     * @param z Section Z coordinate
+     * @param payload Buffer holding the payload between position and limit
+     * @return The decoded section
+     * @throws IOException If the payload is malformed
+     */
+    public static SnapshotSection decodePayload(int x, int y, int z, ByteBuffer payload) throws IOException {
+        return decodePayload(x, y, z, new DataInputStream(new BufferInputStream(payload.duplicate())));
+    }
+
+    /**
+     * Minimal stream over a ByteBuffer, so direct buffers can be decoded without a heap copy
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offset table of a snapshot file, for jumping straight to the records of a
+ * chunk instead of reading every header before it.
+ *
+ * <p>Records are a fixed size, see {@link SnapshotFormat#RECORD_SIZE}, and sorted
+ * by chunk, so the table only needs one entry per chunk column of the
+ * region's bounds: the ordinal of the column's first record. A record's
+ * offset is then arithmetic, and the records of a column are the range up
+ * to the next column's entry. The table is a trailer after the end tag,
+ * which readers that do not know it never get to; it is memory-mapped
+ * read-only when a reader first needs it.</p>
+ *
+ * <pre>
+ * trailer := INDEX_MAGIC minChunkX minChunkZ columnsX columnsZ:int
+ *            recordsStart:long start:int[columnsX * columnsZ + 1]
+ *            trailerStart:long INDEX_MAGIC
+ * </pre>
+ */
+public final class SnapshotIndex {
+
+    // Beyond 16 MB of table, scanning headers is the lesser evil
+    private static final int MAX_COLUMNS = 4 * 1024 * 1024;
+    private static final int FOOTER_SIZE = 12;
+    private static final int HEADER_SIZE = 4 * 5 + 8;
+
+    private final ByteBuffer table;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int columnsX;
+    private final int columnsZ;
+    private final long recordsStart;
+    private final int recordCount;
+
+    private SnapshotIndex(ByteBuffer table, int minChunkX, int minChunkZ, int columnsX, int columnsZ, long recordsStart) {
+        this.table = table;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.columnsX = columnsX;
+        this.columnsZ = columnsZ;
+        this.recordsStart = recordsStart;
+        this.recordCount = table.getInt(HEADER_SIZE + columnsX * columnsZ * 4);
+    }
+
+    /**
+     * Map the offset table of a snapshot file
+     *
+     * @param channel An open channel over the snapshot file
+     * @return The index, or null if the file has none or it does not match the file
+     * @throws IOException If the file cannot be read
+     */
+    static SnapshotIndex read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < FOOTER_SIZE + HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        while (footer.hasRemaining()) {
+            if (channel.read(footer, size - FOOTER_SIZE + footer.position()) < 0) {
+                return null;
+            }
+        }
+        footer.flip();
+        long trailerStart = footer.getLong();
+        if (footer.getInt() != SnapshotFormat.INDEX_MAGIC || trailerStart <= 0 || trailerStart > size - FOOTER_SIZE - HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, trailerStart, size - FOOTER_SIZE - trailerStart);
+        if (table.getInt(0) != SnapshotFormat.INDEX_MAGIC) {
+            return null;
+        }
+        int columnsX = table.getInt(12);
+        int columnsZ = table.getInt(16);
+        if (columnsX <= 0 || columnsZ <= 0 || (long) columnsX * columnsZ > MAX_COLUMNS
+                || table.capacity() != HEADER_SIZE + ((long) columnsX * columnsZ + 1) * 4) {
+            return null;
+        }
+        SnapshotIndex index = new SnapshotIndex(table, table.getInt(4), table.getInt(8), columnsX, columnsZ, table.getLong(20));
+        // The records and end tag must fill the space before the trailer exactly
+        if (index.recordOffset(index.recordCount) + 1 != trailerStart) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Get the file offset of a record
+     *
+     * @param ordinal The record's position in the file, counted from 0
+     * @return The offset of its tag byte
+     */
+    public long recordOffset(int ordinal) {
+        return recordsStart + (long) ordinal * SnapshotFormat.RECORD_SIZE;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Find the first record of a chunk
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The ordinal of its first record, or -1 if the chunk has none
+     */
+    public int firstRecordOf(int chunkX, int chunkZ) {
+        int column = column(chunkX, chunkZ);
+        if (column < 0) {
+            return -1;
+        }
+        int first = start(column);
+        return start(column + 1) > first ? first : -1;
+    }
+
+    /**
+     * Count the records of a chunk
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The number of records, 0 if the chunk is outside the snapshot
+     */
+    public int recordCountOf(int chunkX, int chunkZ) {
+        int column = column(chunkX, chunkZ);
+        return column < 0 ? 0 : start(column + 1) - start(column);
+    }
+
+    /**
+     * Find the first record that belongs to a chunk after the given one in chunk order
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return Its ordinal, or the record count if there is none
+     */
+    public int firstRecordAfter(int chunkX, int chunkZ) {
+        int x = chunkX - minChunkX;
+        int z = chunkZ - minChunkZ;
+        if (x < 0) {
+            return 0;
+        }
+        if (x >= columnsX) {
+            return recordCount;
+        }
+        if (z < 0) {
+            return start(x * columnsZ);
+        }
+        if (z >= columnsZ) {
+            return start((x + 1) * columnsZ);
+        }
+        return start(x * columnsZ + z + 1);
+    }
+
+    private int column(int chunkX, int chunkZ) {
+        int x = chunkX - minChunkX;
+        int z = chunkZ - minChunkZ;
+        if (x < 0 || x >= columnsX || z < 0 || z >= columnsZ) {
+            return -1;
+        }
+        return x * columnsZ + z;
+    }
+
+    private int start(int column) {
+        return table.getInt(HEADER_SIZE + column * 4);
+    }
+
+    /**
+     * Collects the table while records are written
+     */
+    static final class Builder {
+        private final int minChunkX;
+        private final int minChunkZ;
+        private final int columnsX;
+        private final int columnsZ;
+        private final int[] starts;
+        private int lastColumn = -1;
+        private int count;
+
+        /**
+         * @param min Minimum block corner {x, y, z} of the snapshot
+         * @param max Maximum block corner {x, y, z} of the snapshot
+         */
+        Builder(int[] min, int[] max) {
+            this.minChunkX = min[0] >> 4;
+            this.minChunkZ = min[2] >> 4;
+            this.columnsX = (max[0] >> 4) - minChunkX + 1;
+            this.columnsZ = (max[2] >> 4) - minChunkZ + 1;
+            long columns = (long) columnsX * columnsZ;
+            this.starts = columnsX > 0 && columnsZ > 0 && columns <= MAX_COLUMNS ? new int[(int) columns + 1] : null;
+        }
+
+        /**
+         * Note the next record
+         *
+         * @return False once records are outside the bounds or out of chunk order, no table is written then
+         */
+        boolean add(int chunkX, int chunkZ) {
+            if (starts == null || lastColumn == Integer.MAX_VALUE) {
+                return false;
+            }
+            int x = chunkX - minChunkX;
+            int z = chunkZ - minChunkZ;
+            int column = x * columnsZ + z;
+            if (x < 0 || x >= columnsX || z < 0 || z >= columnsZ || column < lastColumn) {
+                lastColumn = Integer.MAX_VALUE;
+                return false;
+            }
+            while (lastColumn < column) {
+                starts[++lastColumn] = count;
+            }
+            count++;
+            return true;
+        }
+
+        /**
+         * Encode the trailer
+         *
+         * @param recordsStart File offset of the first record
+         * @param trailerStart File offset the trailer will be written at, right after the end tag
+         * @return The trailer, or null if no table can be written
+         */
+        ByteBuffer toTrailer(long recordsStart, long trailerStart) {
+            if (starts == null || lastColumn == Integer.MAX_VALUE) {
+                return null;
+            }
+            while (lastColumn < starts.length - 1) {
+                starts[++lastColumn] = count;
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(HEADER_SIZE + starts.length * 4 + FOOTER_SIZE);
+            trailer.putInt(SnapshotFormat.INDEX_MAGIC)
+                    .putInt(minChunkX)
+                    .putInt(minChunkZ)
+                    .putInt(columnsX)
+                    .putInt(columnsZ)
+                    .putLong(recordsStart);
+            for (int start : starts) {
+                trailer.putInt(start);
+            }
+            trailer.putLong(trailerStart).putInt(SnapshotFormat.INDEX_MAGIC);
+            trailer.flip();
+            return trailer;
+        }
+    }
+}
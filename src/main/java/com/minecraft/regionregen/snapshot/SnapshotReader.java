@@ -0,0 +1,484 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
+
+/**
+ * Streams sections out of a snapshot file one at a time, in the order they
+ * were written. Only the section being decoded is held in memory. Unlike
+ * {@link CachedSectionStream}, nothing read is cached.
+ *
+ * <p>Payloads are fetched from the {@link SectionStore}. With {@link #prefetch}
+ * they are read ahead of the caller on the I/O pool. Files with a
+ * {@link SnapshotIndex} let the reader jump to any chunk without reading
+ * the headers before it.</p>
+ */
+public class SnapshotReader implements SectionStream {
+
+    private final FileChannel channel;
+    private DataInputStream in;
+    private final SectionStore store;
+    private final SectionDecoder decoder = new SectionDecoder();
+    private final String worldName;
+    private final int[] min = new int[3];
+    private final int[] max = new int[3];
+    private final long capturedAt;
+    private final long generation;
+    private boolean ended;
+    // Ordinal of the record the next nextRecord() call returns
+    private int nextOrdinal;
+    private SnapshotIndex index;
+    private boolean indexLoaded;
+
+    // Records read ahead of the caller, see prefetch()
+    private SectionPrefetcher prefetcher;
+    private IntPredicate prefetchFilter;
+    private int prefetchDepth;
+    private final Deque<Record> lookahead = new ArrayDeque<>();
+    private int headerOrdinal;
+    private boolean fileEnded;
+
+    // Header of the record the reader is positioned on
+    private int recordX;
+    private int recordY;
+    private int recordZ;
+    private final byte[] recordHash = new byte[SectionStore.HASH_LENGTH];
+    private long recordCheck;
+    private boolean pending;
+    private CompletableFuture<ByteBuffer> pendingPayload;
+    // skipThrough() stopped on a record that next() has not returned yet
+    private boolean headerPending;
+
+    /**
+     * Open a snapshot file and read its header
+     *
+     * @param file The snapshot file
+     * @param store The store holding the section payloads, may be null to only read record headers
+     * @throws IOException If the file is missing or not a snapshot
+     */
+    public SnapshotReader(File file, SectionStore store) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.in = openStream();
+        this.store = store;
+        try {
+            if (in.readInt() != SnapshotFormat.MAGIC) {
+                throw new IOException(file.getName() + " is not a region snapshot");
+            }
+            int version = in.readInt();
+            if (version != SnapshotFormat.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file.getName());
+            }
+
+            this.worldName = in.readUTF();
+            for (int i = 0; i < 3; i++) {
+                min[i] = in.readInt();
+            }
+            for (int i = 0; i < 3; i++) {
+                max[i] = in.readInt();
+            }
+            this.capturedAt = in.readLong();
+            this.generation = in.readLong();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private DataInputStream openStream() {
+        // Reads from the channel's current position
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+    }
+
+    /**
+     * Read store payloads ahead of the caller from now on. Has no effect on
+     * readers without a store. Must be called before the first record is read.
+     *
+     * @param prefetcher The prefetcher to read with
+     * @param filter Tests the ordinal of each record, counted from 0, and only
+     *               prefetches records whose payload the caller will read; null prefetches all
+     * @return This reader
+     */
+    public SnapshotReader prefetch(SectionPrefetcher prefetcher, IntPredicate filter) {
+        if (store != null && prefetcher.getDepth() > 0) {
+            this.prefetcher = prefetcher;
+            this.prefetchFilter = filter;
+            this.prefetchDepth = prefetcher.getDepth();
+        }
+        return this;
+    }
+
+    /**
+     * Read the generation of a snapshot, see {@link SnapshotFormat}
+     *
+     * @param file The snapshot file
+     * @return The generation
+     * @throws IOException If the file is not a readable snapshot
+     */
+    public static long readGeneration(File file) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file, null)) {
+            return reader.getGeneration();
+        }
+    }
+
+    /**
+     * List the store references of a snapshot without reading any payload
+     *
+     * @param file The snapshot file
+     * @return The referenced payload hashes, one per section
+     * @throws IOException If the file is not a readable snapshot
+     */
+    public static List<byte[]> readReferences(File file) throws IOException {
+        List<byte[]> references = new ArrayList<>();
+        try (SnapshotReader reader = new SnapshotReader(file, null)) {
+            while (reader.nextRecord()) {
+                references.add(reader.getRecordHash());
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Read and decode the next section
+     *
+     * @return The next section, or null at the end of the snapshot
+     * @throws IOException If the file is truncated or corrupt
+     */
+    @Override
+    public SnapshotSection next() throws IOException {
+        if (headerPending) {
+            headerPending = false;
+        } else if (!nextRecord()) {
+            return null;
+        }
+        int length = inflatePayload();
+        return SnapshotFormat.decodePayload(recordX, recordY, recordZ, ByteBuffer.wrap(decoder.getBuffer(), 0, length));
+    }
+
+    @Override
+    public void skipThrough(int chunkX, int chunkZ) throws IOException {
+        if (headerPending) {
+            if (isAfter(chunkX, chunkZ)) {
+                return;
+            }
+            headerPending = false;
+        }
+        if (seekPast(chunkX, chunkZ)) {
+            return;
+        }
+        while (nextRecord()) {
+            if (isAfter(chunkX, chunkZ)) {
+                headerPending = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Position the reader so the next record read is the first one after a
+     * chunk, in chunk order, using the file's index
+     *
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return False if the file has no index, the reader has not moved then
+     * @throws IOException If the index cannot be read
+     */
+    public boolean seekPast(int chunkX, int chunkZ) throws IOException {
+        SnapshotIndex index = getIndex();
+        if (index == null) {
+            return false;
+        }
+        int target = index.firstRecordAfter(chunkX, chunkZ);
+        // Never move back, records already passed are before the target
+        if (target > nextOrdinal) {
+            seekTo(target);
+        }
+        return true;
+    }
+
+    /**
+     * Position the reader so the next record read is the given one, using the file's index
+     *
+     * @param ordinal The record's position in the file, counted from 0
+     * @return False if the file has no index, the reader has not moved then
+     * @throws IOException If the index cannot be read
+     */
+    public boolean seekTo(int ordinal) throws IOException {
+        SnapshotIndex index = getIndex();
+        if (index == null) {
+            return false;
+        }
+        int target = Math.min(Math.max(ordinal, 0), index.getRecordCount());
+        if (pending) {
+            skipPayload();
+        }
+        discardLookahead();
+        headerPending = false;
+        ended = false;
+        fileEnded = false;
+
+        // The old stream's buffer is simply dropped, closing it would close the channel
+        channel.position(index.recordOffset(target));
+        in = openStream();
+        nextOrdinal = target;
+        headerOrdinal = target;
+        return true;
+    }
+
+    /**
+     * Get the ordinal of the record the next {@link #nextRecord()} call returns
+     *
+     * @return The ordinal, counted from 0
+     */
+    public int getNextOrdinal() {
+        return nextOrdinal;
+    }
+
+    /**
+     * Get the file's offset table, mapping it on first use
+     *
+     * @return The index, or null if the file has none
+     * @throws IOException If the file cannot be read
+     */
+    private SnapshotIndex getIndex() throws IOException {
+        if (!indexLoaded) {
+            indexLoaded = true;
+            index = SnapshotIndex.read(channel);
+        }
+        return index;
+    }
+
+    private boolean isAfter(int chunkX, int chunkZ) {
+        return recordX > chunkX || (recordX == chunkX && recordZ > chunkZ);
+    }
+
+    /**
+     * Advance to the next section record, reading only its header. Follow with
+     * {@link #readPayload()} or {@link #skipPayload()}.
+     *
+     * @return False at the end of the snapshot
+     * @throws IOException If the file is truncated or corrupt
+     */
+    public boolean nextRecord() throws IOException {
+        if (ended) {
+            return false;
+        }
+        if (pending) {
+            skipPayload();
+        }
+
+        Record record;
+        if (prefetcher != null) {
+            fillLookahead();
+            record = lookahead.poll();
+        } else {
+            record = readRecord();
+        }
+        if (record == null) {
+            ended = true;
+            return false;
+        }
+
+        recordX = record.x;
+        recordY = record.y;
+        recordZ = record.z;
+        System.arraycopy(record.hash, 0, recordHash, 0, recordHash.length);
+        recordCheck = record.check;
+        pendingPayload = record.payload;
+        pending = true;
+        nextOrdinal++;
+        return true;
+    }
+
+    /**
+     * Read record headers until the lookahead is full, starting their payload reads
+     */
+    private void fillLookahead() throws IOException {
+        while (!fileEnded && lookahead.size() < prefetchDepth) {
+            Record record = readRecord();
+            if (record == null) {
+                fileEnded = true;
+                return;
+            }
+            if (prefetchFilter == null || prefetchFilter.test(headerOrdinal)) {
+                record.payload = prefetcher.submit(store, record.hash);
+            }
+            headerOrdinal++;
+            lookahead.add(record);
+        }
+    }
+
+    /**
+     * Read the next record header from the file
+     *
+     * @return The record, or null at the end of the snapshot
+     */
+    private Record readRecord() throws IOException {
+        byte tag = in.readByte();
+        if (tag == SnapshotFormat.TAG_END) {
+            return null;
+        }
+        if (tag != SnapshotFormat.TAG_SECTION) {
+            throw new IOException("Corrupt snapshot: unexpected record tag " + tag);
+        }
+
+        Record record = new Record(in.readInt(), in.readInt(), in.readInt());
+        in.readFully(record.hash);
+        record.check = in.readLong();
+        return record;
+    }
+
+    /**
+     * Read and decompress the payload of the current record
+     *
+     * @return The raw section payload, see {@link SnapshotFormat#decodePayload}
+     * @throws IOException If the payload is corrupt
+     */
+    public byte[] readPayload() throws IOException {
+        int length = inflatePayload();
+        return Arrays.copyOf(decoder.getBuffer(), length);
+    }
+
+    /**
+     * Skip the payload of the current record without decompressing it
+     */
+    public void skipPayload() {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+        if (pendingPayload != null) {
+            prefetcher.discard(pendingPayload);
+            pendingPayload = null;
+        }
+    }
+
+    /**
+     * Decompress the payload of the current record into the decoder's buffer
+     *
+     * @return The payload length
+     */
+    private int inflatePayload() throws IOException {
+        if (!pending) {
+            throw new IllegalStateException("No section record to read");
+        }
+        pending = false;
+
+        if (pendingPayload != null) {
+            CompletableFuture<ByteBuffer> payload = pendingPayload;
+            pendingPayload = null;
+            ByteBuffer prefetched = prefetcher.await(payload);
+            try {
+                return decoder.decode(prefetched);
+            } finally {
+                prefetcher.release(prefetched);
+            }
+        }
+        if (store == null) {
+            throw new IllegalStateException("Reader was opened without a section store");
+        }
+        return decoder.decode(ByteBuffer.wrap(store.read(recordHash)));
+    }
+
+    public int getRecordX() {
+        return recordX;
+    }
+
+    public int getRecordY() {
+        return recordY;
+    }
+
+    public int getRecordZ() {
+        return recordZ;
+    }
+
+    /**
+     * Get the store reference of the current record
+     *
+     * @return A copy of the payload hash
+     */
+    public byte[] getRecordHash() {
+        return recordHash.clone();
+    }
+
+    /**
+     * Get the check value of the current record, see {@link SectionHash}
+     *
+     * @return The check value, or {@link SectionHash#UNKNOWN} if the record was written without one
+     */
+    public long getRecordCheck() {
+        return recordCheck;
+    }
+
+    @Override
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public int[] getMin() {
+        return min.clone();
+    }
+
+    public int[] getMax() {
+        return max.clone();
+    }
+
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingPayload != null) {
+            prefetcher.discard(pendingPayload);
+            pendingPayload = null;
+        }
+        discardLookahead();
+        decoder.end();
+        in.close();
+        channel.close();
+    }
+
+    private void discardLookahead() {
+        for (Record record : lookahead) {
+            if (record.payload != null) {
+                prefetcher.discard(record.payload);
+            }
+        }
+        lookahead.clear();
+    }
+
+    /**
+     * Header of a record read from the file, with its payload read if prefetched
+     */
+    private static final class Record {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final byte[] hash = new byte[SectionStore.HASH_LENGTH];
+        private long check;
+        private CompletableFuture<ByteBuffer> payload;
+
+        private Record(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One 16x16x16 section of a region snapshot.
+ *
+ * <p>Blocks are stored as indices into a palette of block state strings.
+ * Cells that are not part of the region hold {@link #NOT_CAPTURED} and are
+ * left untouched on restore.</p>
+ */
+public final class SnapshotSection {
+
+    public static final int SIZE = 16 * 16 * 16;
+    public static final short NOT_CAPTURED = -1;
+
+    private final int x;
+    private final int y;
+    private final int z;
+    private final String[] palette;
+    private final short[] blocks;
+    private final int capturedCount;
+
+    // Resolved lazily, normally on the decoding thread
+    private volatile BlockData[] blockData;
+
+    /**
+     * Create a section
+     *
+     * @param x Section X coordinate (block X >> 4)
+     * @param y Section Y coordinate (block Y >> 4)
+     * @param z Section Z coordinate (block Z >> 4)
+     * @param palette Distinct block states referenced by this section
+     * @param blocks Palette index per cell, see {@link #index(int, int, int)}
+     */
+    public SnapshotSection(int x, int y, int z, String[] palette, short[] blocks) {
+        if (blocks.length != SIZE) {
+            throw new IllegalArgumentException("Section must have " + SIZE + " cells, got " + blocks.length);
+        }
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.palette = palette;
+        this.blocks = blocks;
+
+        int count = 0;
+        for (short block : blocks) {
+            if (block != NOT_CAPTURED) {
+                count++;
+            }
+        }
+        this.capturedCount = count;
+    }
+
+    /**
+     * Get the cell index for local coordinates
+     *
+     * @param lx Local X (0-15)
+     * @param ly Local Y (0-15)
+     * @param lz Local Z (0-15)
+     * @return The cell index
+     */
+    public static int index(int lx, int ly, int lz) {
+        return (ly << 8) | (lz << 4) | lx;
+    }
+
+    /**
+     * Combine this section with another one at the same position. Cells captured by
+     * the other section win.
+     *
+     * @param top The section to lay over this one
+     * @return The combined section
+     */
+    public SnapshotSection overlay(SnapshotSection top) {
+        if (top.x != x || top.y != y || top.z != z) {
+            throw new IllegalArgumentException("Cannot overlay sections at different positions");
+        }
+
+        Map<String, Short> indices = new HashMap<>();
+        List<String> merged = new ArrayList<>(palette.length + top.palette.length);
+        short[] baseMap = remap(palette, indices, merged);
+        short[] topMap = remap(top.palette, indices, merged);
+
+        short[] combined = new short[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            short topBlock = top.blocks[i];
+            if (topBlock != NOT_CAPTURED) {
+                combined[i] = topMap[topBlock];
+            } else {
+                short baseBlock = blocks[i];
+                combined[i] = baseBlock == NOT_CAPTURED ? NOT_CAPTURED : baseMap[baseBlock];
+            }
+        }
+        return new SnapshotSection(x, y, z, merged.toArray(new String[0]), combined);
+    }
+
+    private static short[] remap(String[] palette, Map<String, Short> indices, List<String> merged) {
+        short[] mapping = new short[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            Short index = indices.get(palette[i]);
+            if (index == null) {
+                index = (short) merged.size();
+                indices.put(palette[i], index);
+                merged.add(palette[i]);
+            }
+            mapping[i] = index;
+        }
+        return mapping;
+    }
+
+    /**
+     * Resolve the palette into Bukkit block data. Entries that no longer parse
+     * (e.g. a block removed by a server update) resolve to null and are skipped.
+     *
+     * @return The resolved palette
+     */
+    public BlockData[] resolvePalette() {
+        BlockData[] resolved = blockData;
+        if (resolved == null) {
+            resolved = new BlockData[palette.length];
+            for (int i = 0; i < palette.length; i++) {
+                try {
+                    resolved[i] = Bukkit.createBlockData(palette[i]);
+                } catch (IllegalArgumentException e) {
+                    resolved[i] = null;
+                }
+            }
+            blockData = resolved;
+        }
+        return resolved;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public String[] getPalette() {
+        return palette;
+    }
+
+    public short[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the number of cells that belong to the region
+     *
+     * @return The captured cell count
+     */
+    public int getCapturedCount() {
+        return capturedCount;
+    }
+
+    /**
+     * Rough heap footprint, used to size decode windows
+     *
+     * @return Estimated bytes
+     */
+    public long estimateBytes() {
+        long bytes = 64 + SIZE * 2L;
+        for (String entry : palette) {
+            bytes += 48 + entry.length() * 2L;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,143 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.RegionMask;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.data.BlockData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Which sections of a region's live blocks diverge from its snapshot.
+ *
+ * <p>Unlike a {@link SnapshotDiff} no stored payload is read: each live
+ * section is hashed and compared with the check of its snapshot record, see
+ * {@link SectionHash}, so a clean region is validated in a few milliseconds
+ * of CPU. Records without a check are compared by payload hash instead.
+ * Sections are checked independently, so any number of workers can call
+ * {@link #checkSection} at once.</p>
+ */
+public class SnapshotValidation {
+
+    private final String regionId;
+    private final int[] min;
+    private final int[] max;
+    private final RegionMask mask;
+    private final boolean stopAtFirst;
+
+    private final LongAdder sectionsChecked = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final ConcurrentLinkedQueue<int[]> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean diverged;
+
+    private List<int[]> divergedSections;
+    private long elapsedMillis;
+
+    /**
+     * Create an empty validation
+     *
+     * @param regionId The region being validated
+     * @param min Minimum block corner of the snapshot {x, y, z}
+     * @param max Maximum block corner of the snapshot {x, y, z}
+     * @param mask Membership of a non-cuboid region, or null for a cuboid
+     * @param stopAtFirst Whether the validation may stop at the first diverging section
+     */
+    public SnapshotValidation(String regionId, int[] min, int[] max, RegionMask mask, boolean stopAtFirst) {
+        this.regionId = regionId;
+        this.min = min.clone();
+        this.max = max.clone();
+        this.mask = mask;
+        this.stopAtFirst = stopAtFirst;
+    }
+
+    /**
+     * Check one section of a live chunk against its snapshot record. Safe to
+     * call from any thread.
+     *
+     * @param chunk The live chunk
+     * @param sy Section Y coordinate
+     * @param hash Payload hash of the record
+     * @param check Check value of the record, or {@link SectionHash#UNKNOWN}
+     * @param stateHashes State hashes by block data, shared between the sections of a chunk
+     * @throws IOException If the live section cannot be encoded
+     */
+    public void checkSection(ChunkSnapshot chunk, int sy, byte[] hash, long check, Map<BlockData, Long> stateHashes) throws IOException {
+        long startedAt = System.nanoTime();
+        boolean matches;
+        if (check != SectionHash.UNKNOWN) {
+            matches = SectionCapture.hashSection(chunk, sy, min, max, mask, stateHashes) == check;
+        } else {
+            SnapshotSection live = SectionCapture.encodeSection(chunk, sy, min, max, mask);
+            matches = live != null && Arrays.equals(hash, SectionStore.hash(SnapshotFormat.encodePayload(live)));
+        }
+        hashNanos.add(System.nanoTime() - startedAt);
+        sectionsChecked.increment();
+
+        if (!matches) {
+            diverged = true;
+            pending.add(new int[]{chunk.getX(), sy, chunk.getZ()});
+        }
+    }
+
+    /**
+     * Check if the remaining sections need not be checked any more
+     *
+     * @return True once a section diverged, if the validation stops at the first
+     */
+    public boolean isStopped() {
+        return stopAtFirst && diverged;
+    }
+
+    /**
+     * Mark the validation as complete once every section was checked, or it stopped
+     *
+     * @param elapsedMillis Time the validation took
+     */
+    public void finish(long elapsedMillis) {
+        List<int[]> sections = new ArrayList<>(pending);
+        pending.clear();
+        sections.sort(Comparator.comparingInt((int[] s) -> s[0]).thenComparingInt(s -> s[2]).thenComparingInt(s -> s[1]));
+        this.divergedSections = sections;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * Get the sections whose live blocks differ from the snapshot
+     *
+     * @return Section coordinates {x, y, z} in chunk order, empty if the region matches its snapshot
+     */
+    public List<int[]> getDivergedSections() {
+        return divergedSections;
+    }
+
+    public long getSectionsChecked() {
+        return sectionsChecked.sum();
+    }
+
+    public boolean isClean() {
+        return !diverged;
+    }
+
+    /**
+     * Get the CPU time spent hashing live sections, summed over all workers
+     *
+     * @return The time in milliseconds
+     */
+    public double getHashMillis() {
+        return hashNanos.sum() / 1_000_000.0;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
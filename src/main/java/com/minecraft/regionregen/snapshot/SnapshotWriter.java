@@ -0,0 +1,192 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Streams sections into a snapshot file.
+ *
+ * <p>Data goes to a temporary file that only replaces the target on
+ * {@link #commit()}, so a failed capture never clobbers a good snapshot.
+ * Section payloads go to the {@link SectionStore}; references taken for an
+ * aborted write are released again, and a commit releases the references of
+ * the snapshot it replaces.</p>
+ */
+public class SnapshotWriter implements Closeable {
+
+    private final File target;
+    private final File tempFile;
+    private final SectionStore store;
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final List<byte[]> references = new ArrayList<>();
+    private final SnapshotIndex.Builder index;
+    private final int recordsStart;
+    private final long generation;
+    private int sectionCount;
+    private boolean finished;
+
+    /**
+     * Open a writer and write the snapshot header
+     *
+     * @param target The snapshot file to produce
+     * @param worldName Name of the world the region is in
+     * @param min Minimum block corner {x, y, z}
+     * @param max Maximum block corner {x, y, z}
+     * @param store The store section payloads are written to
+     * @throws IOException If the file cannot be created
+     */
+    public SnapshotWriter(File target, String worldName, int[] min, int[] max, SectionStore store) throws IOException {
+        this.target = target;
+        this.store = store;
+        this.tempFile = new File(target.getParentFile(), target.getName() + ".tmp");
+        this.generation = Math.max(previousGeneration(target) + 1, System.currentTimeMillis());
+        target.getParentFile().mkdirs();
+
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.writeInt(SnapshotFormat.VERSION);
+        out.writeUTF(worldName);
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(min[i]);
+        }
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(max[i]);
+        }
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(generation);
+        this.recordsStart = out.size();
+        this.index = new SnapshotIndex.Builder(min, max);
+    }
+
+    private static long previousGeneration(File target) {
+        if (!target.isFile()) {
+            return 0;
+        }
+        try {
+            return SnapshotReader.readGeneration(target);
+        } catch (IOException e) {
+            // Time keeps the generation ahead of an unreadable file
+            return 0;
+        }
+    }
+
+    /**
+     * Append a section. Sections must be written in chunk order.
+     *
+     * @param section The section to write
+     * @throws IOException If writing fails
+     */
+    public void write(SnapshotSection section) throws IOException {
+        byte[] hash = store.put(SnapshotFormat.encodePayload(section), deflater);
+        references.add(hash);
+
+        index.add(section.getX(), section.getZ());
+        out.writeByte(SnapshotFormat.TAG_SECTION);
+        out.writeInt(section.getX());
+        out.writeInt(section.getY());
+        out.writeInt(section.getZ());
+        out.write(hash);
+        out.writeLong(SectionHash.of(section));
+        sectionCount++;
+    }
+
+    /**
+     * Append a record for a payload that is already in the store. The writer
+     * takes over the caller's reference, see {@link SectionStore#put}.
+     * Sections must be written in chunk order.
+     *
+     * @param x Section X coordinate
+     * @param y Section Y coordinate
+     * @param z Section Z coordinate
+     * @param hash The payload hash
+     * @param check The check value of the payload's section, or {@link SectionHash#UNKNOWN}
+     * @throws IOException If writing fails
+     */
+    public void writeReference(int x, int y, int z, byte[] hash, long check) throws IOException {
+        references.add(hash);
+
+        index.add(x, z);
+        out.writeByte(SnapshotFormat.TAG_SECTION);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+        out.write(hash);
+        out.writeLong(check);
+        sectionCount++;
+    }
+
+    /**
+     * Finish the file and atomically move it over the target
+     *
+     * @throws IOException If the file cannot be finalised
+     */
+    public void commit() throws IOException {
+        out.writeByte(SnapshotFormat.TAG_END);
+        // Sections written out of chunk order leave the file without an index, readers then scan
+        ByteBuffer trailer = index.toTrailer(recordsStart, out.size());
+        if (trailer != null) {
+            out.write(trailer.array(), 0, trailer.limit());
+        }
+        out.close();
+
+        List<byte[]> previous = Collections.emptyList();
+        if (target.isFile()) {
+            try {
+                previous = SnapshotReader.readReferences(target);
+            } catch (IOException e) {
+                // Unreadable old snapshot: its blobs are collected on the next startup instead
+            }
+        }
+        Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        deflater.end();
+        store.releaseAll(previous);
+    }
+
+    /**
+     * Get the generation written into the snapshot's header
+     *
+     * @return The generation, see {@link SnapshotFormat}
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the number of sections written so far
+     *
+     * @return The section count
+     */
+    public int getSectionCount() {
+        return sectionCount;
+    }
+
+    /**
+     * Abort the write if it was not committed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            deflater.end();
+            store.releaseAll(references);
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        }
+    }
+}
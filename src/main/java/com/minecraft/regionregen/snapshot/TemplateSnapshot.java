@@ -0,0 +1,114 @@
+package com.minecraft.regionregen.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A region snapshot decoded once and held in memory, so it can be restored
+ * into any number of target regions at the same time.
+ *
+ * <p>Sections are decoded and their palettes resolved up front; after that
+ * the template is never modified, so concurrent restore jobs share the same
+ * section objects and only keep their own cursor. Each job places the
+ * template at its own offset, in its own world.</p>
+ */
+public final class TemplateSnapshot {
+
+    private final String regionId;
+    private final long generation;
+    private final String worldName;
+    private final int[] min;
+    private final int[] max;
+    private final List<SnapshotSection> sections;
+    private final long estimatedBytes;
+
+    private TemplateSnapshot(String regionId, long generation, String worldName, int[] min, int[] max, List<SnapshotSection> sections) {
+        this.regionId = regionId;
+        this.generation = generation;
+        this.worldName = worldName;
+        this.min = min;
+        this.max = max;
+        this.sections = Collections.unmodifiableList(sections);
+
+        long bytes = 0;
+        for (SnapshotSection section : sections) {
+            bytes += section.estimateBytes();
+        }
+        this.estimatedBytes = bytes;
+    }
+
+    /**
+     * Decode a snapshot into a template. Safe to call from any thread.
+     *
+     * @param regionId The region the snapshot belongs to
+     * @param file The snapshot file
+     * @param store The store holding the snapshot's sections
+     * @param prefetcher Reads payloads ahead of the decoder
+     * @return The template
+     * @throws IOException If the snapshot cannot be read
+     */
+    public static TemplateSnapshot load(String regionId, File file, SectionStore store, SectionPrefetcher prefetcher) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(file, store).prefetch(prefetcher, null)) {
+            List<SnapshotSection> sections = new ArrayList<>();
+            SnapshotSection section;
+            while ((section = reader.next()) != null) {
+                // Resolved here once, instead of by every job that uses the template
+                section.resolvePalette();
+                sections.add(section);
+            }
+            return new TemplateSnapshot(regionId, reader.getGeneration(), reader.getWorldName(), reader.getMin(), reader.getMax(), sections);
+        }
+    }
+
+    public String getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * Get the version of the snapshot file this template was decoded from
+     *
+     * @return The generation, see {@link SnapshotFormat}
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Get the minimum block corner the template was captured at, which
+     * offsets into target regions are measured from
+     *
+     * @return {x, y, z}
+     */
+    public int[] getMin() {
+        return min.clone();
+    }
+
+    public int[] getMax() {
+        return max.clone();
+    }
+
+    /**
+     * Get the decoded sections. They are shared, callers must not modify them.
+     *
+     * @return The sections in chunk order
+     */
+    public List<SnapshotSection> getSections() {
+        return sections;
+    }
+
+    /**
+     * Rough heap footprint of the decoded sections
+     *
+     * @return Estimated bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+}
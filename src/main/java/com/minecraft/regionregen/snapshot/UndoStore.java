@@ -0,0 +1,355 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.regen.ChunkWork;
+import org.bukkit.block.data.BlockData;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/**
+ * Undo generations of regions: the blocks a restore overwrote, as they were
+ * before it.
+ *
+ * <p>A {@link Recording} is fed only the blocks a restore actually changes,
+ * so an undo generation is a sparse delta, not a copy of the region. Each
+ * generation is a snapshot file in {@code undo/<region>/} whose sections live
+ * in the shared {@link SectionStore}. Encoding and writing happen in the
+ * background, one task at a time, so the main thread only copies block data.</p>
+ */
+public class UndoStore {
+
+    // A template written at an offset spreads each source chunk over up to four chunks
+    private static final int MAX_OPEN_CHUNKS = 8;
+
+    private final File root;
+    private final SectionStore store;
+    private final Logger logger;
+    private final Executor writer;
+    // Only used by writer tasks, which never run concurrently
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    /**
+     * Create an undo store
+     *
+     * @param root The folder undo generations are kept in
+     * @param store The store section payloads are written to
+     * @param writer Executor that runs write tasks one at a time, in order
+     * @param logger Logger for write failures
+     */
+    public UndoStore(File root, SectionStore store, Executor writer, Logger logger) {
+        this.root = root;
+        this.store = store;
+        this.writer = writer;
+        this.logger = logger;
+    }
+
+    private File directory(String regionId) {
+        return new File(root, URLEncoder.encode(regionId, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start recording an undo generation for a region
+     *
+     * @param regionId The region being restored
+     * @param worldName The world the region is in
+     * @param min Minimum block corner {x, y, z}
+     * @param max Maximum block corner {x, y, z}
+     * @return The recording, to be committed or aborted when the restore ends
+     */
+    public Recording begin(String regionId, String worldName, int[] min, int[] max) {
+        return new Recording(regionId, worldName, min, max);
+    }
+
+    /**
+     * List the undo generations of a region
+     *
+     * @param regionId The region ID
+     * @return The generation files, newest first
+     */
+    public List<File> getGenerations(String regionId) {
+        File[] files = directory(regionId).listFiles((dir, name) -> name.endsWith(SnapshotFormat.FILE_EXTENSION));
+        List<File> generations = files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+        generations.sort(Comparator.comparing(File::getName, Comparator.comparingLong(UndoStore::timestampOf)).reversed());
+        return generations;
+    }
+
+    private static long timestampOf(String name) {
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SnapshotFormat.FILE_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * List every undo generation of every region
+     *
+     * @return The generation files
+     */
+    public List<File> getAllGenerations() {
+        List<File> all = new ArrayList<>();
+        File[] regions = root.listFiles(File::isDirectory);
+        if (regions != null) {
+            for (File region : regions) {
+                File[] files = region.listFiles((dir, name) -> name.endsWith(SnapshotFormat.FILE_EXTENSION));
+                if (files != null) {
+                    all.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Delete an undo generation, e.g. once it has been rolled back
+     *
+     * @param generation The generation file
+     * @return A CompletableFuture that completes once the file is gone
+     */
+    public CompletableFuture<Void> discard(File generation) {
+        return CompletableFuture.runAsync(() -> delete(generation), writer);
+    }
+
+    /**
+     * Delete every undo generation of a region, e.g. when it is deleted
+     *
+     * @param regionId The region ID
+     */
+    public void forget(String regionId) {
+        writer.execute(() -> {
+            for (File generation : getGenerations(regionId)) {
+                delete(generation);
+            }
+            directory(regionId).delete();
+        });
+    }
+
+    private void delete(File generation) {
+        List<byte[]> references;
+        try {
+            references = SnapshotReader.readReferences(generation);
+        } catch (IOException e) {
+            // The sections are collected on the next startup instead
+            references = new ArrayList<>();
+        }
+        if (generation.delete()) {
+            store.releaseAll(references);
+        }
+    }
+
+    /**
+     * Record header of a section that has been put in the store
+     */
+    private static final class Entry {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final byte[] hash;
+
+        private Entry(int x, int y, int z, byte[] hash) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The blocks one restore overwrote in one region. {@link #record} is
+     * called on the main thread before each block is changed.
+     */
+    public final class Recording {
+
+        private final String regionId;
+        private final String worldName;
+        private final int[] min;
+        private final int[] max;
+
+        // Sections of the chunks being recorded, least recently used first, by section Y; main thread only
+        private final LinkedHashMap<Long, Map<Integer, SectionBuilder>> open = new LinkedHashMap<>(16, 0.75f, true);
+        private long lastChunk;
+        private Map<Integer, SectionBuilder> lastSections;
+        // Stored sections; writer tasks only
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Recording(String regionId, String worldName, int[] min, int[] max) {
+            this.regionId = regionId;
+            this.worldName = worldName;
+            this.min = min.clone();
+            this.max = max.clone();
+        }
+
+        /**
+         * Record the state of a block that is about to be changed
+         *
+         * @param x Block X coordinate
+         * @param y Block Y coordinate
+         * @param z Block Z coordinate
+         * @param previous The block's current state
+         */
+        public void record(int x, int y, int z, BlockData previous) {
+            long chunk = ChunkWork.key(x >> 4, z >> 4);
+            if (lastSections == null || chunk != lastChunk) {
+                lastSections = open.get(chunk);
+                if (lastSections == null) {
+                    if (open.size() >= MAX_OPEN_CHUNKS) {
+                        // A chunk touched again later is simply recorded twice, readers merge the records
+                        Iterator<Map.Entry<Long, Map<Integer, SectionBuilder>>> eldest = open.entrySet().iterator();
+                        Map.Entry<Long, Map<Integer, SectionBuilder>> entry = eldest.next();
+                        eldest.remove();
+                        flushChunk(entry.getKey(), entry.getValue());
+                    }
+                    lastSections = new HashMap<>();
+                    open.put(chunk, lastSections);
+                }
+                lastChunk = chunk;
+            }
+            lastSections.computeIfAbsent(y >> 4, sy -> new SectionBuilder()).set(SnapshotSection.index(x & 15, y & 15, z & 15), previous);
+        }
+
+        /**
+         * Hand the sections of every open chunk to the writer
+         */
+        private void flushAll() {
+            for (Map.Entry<Long, Map<Integer, SectionBuilder>> entry : open.entrySet()) {
+                flushChunk(entry.getKey(), entry.getValue());
+            }
+            open.clear();
+            lastSections = null;
+        }
+
+        /**
+         * Hand the sections of one chunk to the writer
+         */
+        private void flushChunk(long chunk, Map<Integer, SectionBuilder> builders) {
+            int chunkX = ChunkWork.keyX(chunk);
+            int chunkZ = ChunkWork.keyZ(chunk);
+            List<SnapshotSection> sections = new ArrayList<>(builders.size());
+            for (Map.Entry<Integer, SectionBuilder> section : builders.entrySet()) {
+                sections.add(section.getValue().build(chunkX, section.getKey(), chunkZ));
+            }
+
+            writer.execute(() -> {
+                for (SnapshotSection section : sections) {
+                    try {
+                        byte[] hash = store.put(SnapshotFormat.encodePayload(section), deflater);
+                        entries.add(new Entry(section.getX(), section.getY(), section.getZ(), hash));
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Failed to store undo data of region: " + regionId, e);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Write the recording as the region's newest undo generation and drop
+         * generations beyond the limit. Must be called on the main thread.
+         *
+         * @param keep Number of generations to keep, including this one
+         * @return A CompletableFuture with the generation file, or null if nothing was changed or writing failed
+         */
+        public CompletableFuture<File> commit(int keep) {
+            flushAll();
+            return CompletableFuture.supplyAsync(() -> {
+                if (entries.isEmpty()) {
+                    return null;
+                }
+                // Chunks may have been restored out of order, readers need chunk order
+                entries.sort(Comparator.comparingInt((Entry e) -> e.x).thenComparingInt(e -> e.z).thenComparingInt(e -> e.y));
+
+                File dir = directory(regionId);
+                long timestamp = System.currentTimeMillis();
+                File target;
+                while ((target = new File(dir, timestamp + SnapshotFormat.FILE_EXTENSION)).exists()) {
+                    timestamp++;
+                }
+
+                int written = 0;
+                try (SnapshotWriter out = new SnapshotWriter(target, worldName, min, max, store)) {
+                    // The writer owns each written reference, and releases them if the write fails
+                    for (Entry entry : entries) {
+                        // Undo generations are only ever restored, never validated
+                        out.writeReference(entry.x, entry.y, entry.z, entry.hash, SectionHash.UNKNOWN);
+                        written++;
+                    }
+                    out.commit();
+                } catch (IOException e) {
+                    for (int i = written; i < entries.size(); i++) {
+                        store.release(entries.get(i).hash);
+                    }
+                    logger.log(Level.WARNING, "Failed to write undo generation of region: " + regionId, e);
+                    return null;
+                } finally {
+                    entries.clear();
+                }
+
+                List<File> generations = getGenerations(regionId);
+                for (int i = Math.max(1, keep); i < generations.size(); i++) {
+                    delete(generations.get(i));
+                }
+                return target;
+            }, writer);
+        }
+
+        /**
+         * Discard the recording
+         */
+        public void abort() {
+            open.clear();
+            lastSections = null;
+            writer.execute(() -> {
+                for (Entry entry : entries) {
+                    store.release(entry.hash);
+                }
+                entries.clear();
+            });
+        }
+    }
+
+    /**
+     * Builds one undo section out of individual blocks
+     */
+    private static final class SectionBuilder {
+        private final short[] blocks = new short[SnapshotSection.SIZE];
+        // Keyed by BlockData so each distinct state is stringified once
+        private final Map<BlockData, Short> paletteIndex = new HashMap<>();
+        private final List<String> palette = new ArrayList<>();
+
+        private SectionBuilder() {
+            Arrays.fill(blocks, SnapshotSection.NOT_CAPTURED);
+        }
+
+        private void set(int index, BlockData data) {
+            if (blocks[index] != SnapshotSection.NOT_CAPTURED) {
+                // Keep the oldest state of a block changed twice
+                return;
+            }
+            Short paletteEntry = paletteIndex.get(data);
+            if (paletteEntry == null) {
+                paletteEntry = (short) palette.size();
+                paletteIndex.put(data, paletteEntry);
+                palette.add(data.getAsString());
+            }
+            blocks[index] = paletteEntry;
+        }
+
+        private SnapshotSection build(int x, int y, int z) {
+            return new SnapshotSection(x, y, z, palette.toArray(new String[0]), blocks);
+        }
+    }
+}
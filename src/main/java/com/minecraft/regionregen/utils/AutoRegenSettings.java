@@ -0,0 +1,33 @@
+package com.minecraft.regionregen.utils;
+
+/**
+ * Validated values of the auto-regen section of config.yml
+ */
+public final class AutoRegenSettings {
+
+    private final int checkSeconds;
+    private final int debounceSeconds;
+
+    AutoRegenSettings(SettingsSection section) {
+        this.checkSeconds = section.atLeast("check-interval", 5, 1);
+        this.debounceSeconds = section.atLeast("debounce", 10, 0);
+    }
+
+    /**
+     * Get how often regions are checked against their mined thresholds
+     *
+     * @return The interval in seconds
+     */
+    public int getCheckSeconds() {
+        return checkSeconds;
+    }
+
+    /**
+     * Get how long a region must stay over its mined threshold before it is regenerated
+     *
+     * @return The time in seconds
+     */
+    public int getDebounceSeconds() {
+        return debounceSeconds;
+    }
+}
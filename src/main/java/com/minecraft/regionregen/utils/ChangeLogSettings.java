@@ -0,0 +1,33 @@
+package com.minecraft.regionregen.utils;
+
+/**
+ * Validated values of the change-log section of config.yml
+ */
+public final class ChangeLogSettings {
+
+    private final boolean enabled;
+    private final int segments;
+
+    ChangeLogSettings(SettingsSection section) {
+        this.enabled = section.getBoolean("enabled", true);
+        this.segments = section.atLeast("segments", 3, 1);
+    }
+
+    /**
+     * Check if block changes inside regions are logged, for restoring regions to a point in time
+     *
+     * @return True if the change log is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get how many change log segments are kept per region, one per regeneration
+     *
+     * @return The segment count
+     */
+    public int getSegments() {
+        return segments;
+    }
+}
@@ -1,10 +1,21 @@
 package com.minecraft.regionregen.utils;
 
 import com.minecraft.regionregen.RegionRegenPlugin;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -12,8 +23,18 @@ import java.util.logging.Level;
  */
 public class ConfigManager {
 
+    private static final String CONFIG_FILE = "config.yml";
+    // Editors often write a file in several steps; wait for this much quiet before reloading
+    private static final long WATCH_SETTLE_MILLIS = 250;
+
     private final RegionRegenPlugin plugin;
     private FileConfiguration config;
+    private volatile PluginSettings settings;
+
+    private BukkitTask backupTask;
+    private int backupIntervalMinutes;
+    private WatchService watchService;
+    private Thread watchThread;
 
     /**
      * Create a new ConfigManager
@@ -31,16 +52,15 @@ public class ConfigManager {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
         this.config = plugin.getConfig();
+        this.settings = PluginSettings.from(config, plugin.getLogger());
 
         // Create directory for data files if it doesn't exist
         if (!plugin.getDataFolder().exists()) {
             plugin.getDataFolder().mkdirs();
         }
 
-        // Check if auto-backup is enabled
-        if (config.getBoolean("storage.auto-backup", true)) {
-            setupAutoBackup();
-        }
+        updateAutoBackup();
+        startWatcher();
     }
 
     /**
@@ -52,12 +72,23 @@ public class ConfigManager {
         return config;
     }
 
+    /**
+     * Get the current typed settings. Safe to call from any thread.
+     *
+     * @return The settings snapshot
+     */
+    public PluginSettings getSettings() {
+        return settings;
+    }
+
     /**
      * Reload the configuration
      */
     public void reloadConfig() {
         plugin.reloadConfig();
         this.config = plugin.getConfig();
+        this.settings = PluginSettings.from(config, plugin.getLogger());
+        updateAutoBackup();
     }
 
     /**
@@ -68,47 +99,186 @@ public class ConfigManager {
     }
 
     /**
-     * Set up automatic backups of the regions file
+     * Stop watching config.yml and cancel the backup task
      */
-    private void setupAutoBackup() {
-        long intervalTicks = config.getLong("storage.backup-interval", 60) * 20 * 60; // Convert minutes to ticks
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (backupTask != null) {
+            backupTask.cancel();
+            backupTask = null;
+        }
+    }
 
-        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
-            File regionsFile = new File(plugin.getDataFolder(), "regions.yml");
-            if (!regionsFile.exists()) {
-                return;
+    /**
+     * Watch the data folder and hot reload config.yml when it changes on disk
+     */
+    private void startWatcher() {
+        if (watchThread != null) {
+            return;
+        }
+
+        Path folder = plugin.getDataFolder().toPath();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to watch " + CONFIG_FILE + ", hot reload is disabled", e);
+            return;
+        }
+
+        WatchService service = watchService;
+        watchThread = new Thread(() -> watchLoop(service), "RegionRegen-ConfigWatcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                boolean changed = drainEvents(key);
+
+                // Keep draining until the file settles
+                while (changed) {
+                    WatchKey next = service.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    drainEvents(next);
+                }
+
+                if (changed) {
+                    reloadFromDisk();
+                }
             }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Plugin is shutting down
+        }
+    }
 
-            File backupDir = new File(plugin.getDataFolder(), "backups");
-            if (!backupDir.exists()) {
-                backupDir.mkdirs();
+    private boolean drainEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && CONFIG_FILE.equals(((Path) context).getFileName().toString())) {
+                changed = true;
             }
+        }
+        key.reset();
+        return changed;
+    }
 
-            // Create backup file with timestamp
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            File backupFile = new File(backupDir, "regions_" + timestamp + ".yml");
+    /**
+     * Parse and validate config.yml off the main thread, then publish it atomically.
+     * A file that fails to parse leaves the current settings in place.
+     */
+    private void reloadFromDisk() {
+        File file = new File(plugin.getDataFolder(), CONFIG_FILE);
+        if (!file.exists()) {
+            return;
+        }
 
-            try {
-                // Copy regions file to backup
-                java.nio.file.Files.copy(regionsFile.toPath(), backupFile.toPath());
-                MessageUtils.debug("Created backup of regions file: " + backupFile.getName());
-
-                // Clean up old backups (keep 10 most recent)
-                File[] backups = backupDir.listFiles((dir, name) -> name.startsWith("regions_") && name.endsWith(".yml"));
-                if (backups != null && backups.length > 10) {
-                    // Sort files by name (timestamp)
-                    java.util.Arrays.sort(backups);
-
-                    // Delete oldest files (keeping 10 newest)
-                    for (int i = 0; i < backups.length - 10; i++) {
-                        if (backups[i].delete()) {
-                            MessageUtils.debug("Deleted old backup: " + backups[i].getName());
-                        }
+        YamlConfiguration loaded = new YamlConfiguration();
+        try {
+            loaded.load(file);
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.WARNING, "Ignoring invalid " + CONFIG_FILE + ", keeping previous settings", e);
+            return;
+        }
+
+        this.settings = PluginSettings.from(loaded, plugin.getLogger());
+
+        // Bukkit's own config object and the backup task are main-thread state
+        if (plugin.isEnabled()) {
+            plugin.getExecutors().mainThread().execute(() -> {
+                plugin.reloadConfig();
+                this.config = plugin.getConfig();
+                updateAutoBackup();
+                MessageUtils.log("&aReloaded " + CONFIG_FILE + " from disk.");
+            });
+        }
+    }
+
+    /**
+     * Start, stop or reschedule the backup task to match the current settings
+     */
+    private void updateAutoBackup() {
+        StorageSettings current = settings.getStorage();
+        if (backupTask != null) {
+            if (current.isAutoBackup() && current.getBackupIntervalMinutes() == backupIntervalMinutes) {
+                return;
+            }
+            backupTask.cancel();
+            backupTask = null;
+        }
+
+        if (current.isAutoBackup()) {
+            setupAutoBackup(current.getBackupIntervalMinutes());
+        }
+    }
+
+    /**
+     * Set up automatic backups of the regions file
+     *
+     * @param intervalMinutes Minutes between backups
+     */
+    private void setupAutoBackup(int intervalMinutes) {
+        long intervalTicks = intervalMinutes * 20L * 60; // Convert minutes to ticks
+        this.backupIntervalMinutes = intervalMinutes;
+
+        // The timer only hands the copy to the I/O pool
+        this.backupTask = plugin.getServer().getScheduler().runTaskTimer(plugin,
+                () -> plugin.getExecutors().io().execute(this::backupRegions), intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Copy the regions file into the backups folder, keeping the 10 newest backups
+     */
+    private void backupRegions() {
+        File regionsFile = new File(plugin.getDataFolder(), "regions.yml");
+        if (!regionsFile.exists()) {
+            return;
+        }
+
+        File backupDir = new File(plugin.getDataFolder(), "backups");
+        if (!backupDir.exists()) {
+            backupDir.mkdirs();
+        }
+
+        // Create backup file with timestamp
+        String timestamp = String.valueOf(System.currentTimeMillis());
+        File backupFile = new File(backupDir, "regions_" + timestamp + ".yml");
+
+        try {
+            // Copy regions file to backup
+            java.nio.file.Files.copy(regionsFile.toPath(), backupFile.toPath());
+            MessageUtils.debug("Created backup of regions file: " + backupFile.getName());
+
+            // Clean up old backups (keep 10 most recent)
+            File[] backups = backupDir.listFiles((dir, name) -> name.startsWith("regions_") && name.endsWith(".yml"));
+            if (backups != null && backups.length > 10) {
+                // Sort files by name (timestamp)
+                java.util.Arrays.sort(backups);
+
+                // Delete oldest files (keeping 10 newest)
+                for (int i = 0; i < backups.length - 10; i++) {
+                    if (backups[i].delete()) {
+                        MessageUtils.debug("Deleted old backup: " + backups[i].getName());
                     }
                 }
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.WARNING, "Failed to create backup of regions file", e);
             }
-        }, intervalTicks, intervalTicks);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to create backup of regions file", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.minecraft.regionregen.utils;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Validated values of the gui section of config.yml
+ */
+public final class GuiSettings {
+
+    /** Regions shown per page of the main GUI is capped by its 4x7 slot grid */
+    public static final int MAX_REGIONS_PER_PAGE = 28;
+
+    private final String mainTitle;
+    private final String infoTitle;
+    private final int regionsPerPage;
+
+    GuiSettings(SettingsSection section) {
+        this.mainTitle = ChatColor.translateAlternateColorCodes('&', section.getString("main-title", "Region Manager"));
+        this.infoTitle = ChatColor.translateAlternateColorCodes('&', section.getString("info-title", "Region Info: %region%"));
+        this.regionsPerPage = section.between("regions-per-page", MAX_REGIONS_PER_PAGE, 1, MAX_REGIONS_PER_PAGE);
+    }
+
+    /**
+     * Get the colour-translated title of the main GUI
+     *
+     * @return The title
+     */
+    public String getMainTitle() {
+        return mainTitle;
+    }
+
+    /**
+     * Get the colour-translated title of the region info GUI, with its %region% placeholder intact
+     *
+     * @return The title
+     */
+    public String getInfoTitle() {
+        return infoTitle;
+    }
+
+    public int getRegionsPerPage() {
+        return regionsPerPage;
+    }
+}
@@ -0,0 +1,131 @@
+package com.minecraft.regionregen.utils;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message with its colour codes translated once up front and
+ * {@code %name%} placeholders compiled into positional slots.
+ *
+ * <p>Slots are numbered in order of first appearance, so
+ * {@code "&aRegion %region% in %world%"} takes its arguments as
+ * {@code (region, world)}. A placeholder that appears more than once
+ * reuses the same argument.</p>
+ */
+public final class MessageTemplate {
+
+    private final String[] literals;
+    private final int[] slots;
+    private final String[] slotNames;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, int[] slots, String[] slotNames) {
+        this.literals = literals;
+        this.slots = slots;
+        this.slotNames = slotNames;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compile a message template
+     *
+     * @param raw The raw message, using '&' colour codes and %name% placeholders
+     * @return The compiled template
+     */
+    public static MessageTemplate compile(String raw) {
+        String message = ChatColor.translateAlternateColorCodes('&', raw);
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        int literalStart = 0;
+        int open = message.indexOf('%');
+        while (open >= 0) {
+            int close = message.indexOf('%', open + 1);
+            if (close < 0) {
+                break;
+            }
+
+            String name = message.substring(open + 1, close);
+            if (name.isEmpty() || !isPlaceholderName(name)) {
+                // Not a placeholder (e.g. "50%"), keep scanning from the closing marker
+                open = close;
+                continue;
+            }
+
+            literals.add(message.substring(literalStart, open));
+            int slot = names.indexOf(name);
+            if (slot < 0) {
+                slot = names.size();
+                names.add(name);
+            }
+            slots.add(slot);
+
+            literalStart = close + 1;
+            open = message.indexOf('%', literalStart);
+        }
+        literals.add(message.substring(literalStart));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+
+        return new MessageTemplate(literals.toArray(new String[0]), slotArray, names.toArray(new String[0]));
+    }
+
+    private static boolean isPlaceholderName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Render the template
+     *
+     * @param args One value per distinct placeholder, in order of first appearance
+     * @return The rendered message
+     */
+    public String format(Object... args) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+
+        String[] values = new String[slotNames.length];
+        int length = literalLength;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < args.length ? String.valueOf(args[i]) : "%" + slotNames[i] + "%";
+        }
+        for (int slot : slots) {
+            length += values[slot].length();
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(literals[i]).append(values[slots[i]]);
+        }
+        sb.append(literals[literals.length - 1]);
+        return sb.toString();
+    }
+
+    /**
+     * Get the number of distinct placeholders in this template
+     *
+     * @return The placeholder count
+     */
+    public int getSlotCount() {
+        return slotNames.length;
+    }
+}
@@ -6,19 +6,43 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Utility class for handling messages
  */
 public class MessageUtils {
 
+    private static final int CENTER_PX = 154;
+    private static final int CENTERED_CACHE_SIZE = 256;
+
+    // Fully rendered centered lines, keyed by the raw message
+    private static final Map<String, String> centeredCache = new LinkedHashMap<String, String>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CENTERED_CACHE_SIZE;
+        }
+    };
+
     /**
      * Get the plugin prefix from config
      *
      * @return Formatted prefix string
      */
     public static String getPrefix() {
-        String prefix = RegionRegenPlugin.getInstance().getConfigManager().getConfig().getString("prefix", "&8[&bRegionRegen&8] &7");
-        return ChatColor.translateAlternateColorCodes('&', prefix);
+        return RegionRegenPlugin.getInstance().getConfigManager().getSettings().getPrefix();
+    }
+
+    /**
+     * Translate '&' colour codes, skipping the work for messages that have none
+     *
+     * @param message The message to translate
+     * @return The translated message
+     */
+    public static String colorize(String message) {
+        return message.indexOf('&') < 0 ? message : ChatColor.translateAlternateColorCodes('&', message);
     }
 
     /**
@@ -28,7 +52,36 @@ public class MessageUtils {
      * @param message The message to send
      */
     public static void sendMessage(CommandSender sender, String message) {
-        sender.sendMessage(getPrefix() + ChatColor.translateAlternateColorCodes('&', message));
+        sender.sendMessage(getPrefix() + colorize(message));
+    }
+
+    /**
+     * Send a templated message to a command sender
+     *
+     * @param sender The recipient of the message
+     * @param template The compiled message template
+     * @param args The placeholder values
+     */
+    public static void sendMessage(CommandSender sender, MessageTemplate template, Object... args) {
+        sender.sendMessage(getPrefix() + template.format(args));
+    }
+
+    /**
+     * Send the same templated message to many recipients, rendering it only once
+     *
+     * @param recipients The recipients of the message
+     * @param template The compiled message template
+     * @param args The placeholder values
+     */
+    public static void sendMessage(Collection<? extends CommandSender> recipients, MessageTemplate template, Object... args) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+
+        String line = getPrefix() + template.format(args);
+        for (CommandSender recipient : recipients) {
+            recipient.sendMessage(line);
+        }
     }
 
     /**
@@ -37,7 +90,7 @@ public class MessageUtils {
      * @param message The message to broadcast
      */
     public static void broadcast(String message) {
-        Bukkit.broadcastMessage(getPrefix() + ChatColor.translateAlternateColorCodes('&', message));
+        Bukkit.broadcastMessage(getPrefix() + colorize(message));
     }
 
     /**
@@ -46,7 +99,7 @@ public class MessageUtils {
      * @param message The message to log
      */
     public static void log(String message) {
-        Bukkit.getConsoleSender().sendMessage(getPrefix() + ChatColor.translateAlternateColorCodes('&', message));
+        Bukkit.getConsoleSender().sendMessage(getPrefix() + colorize(message));
     }
 
     /**
@@ -65,37 +118,58 @@ public class MessageUtils {
      * @param message The message to center
      */
     public static void sendCenteredMessage(Player player, String message) {
-        message = ChatColor.translateAlternateColorCodes('&', message);
+        player.sendMessage(centerMessage(message));
+    }
 
+    /**
+     * Center a message in the chat window, reusing previously rendered lines
+     *
+     * @param message The message to center
+     * @return The padded, colour-translated line
+     */
+    public static String centerMessage(String message) {
+        String centered;
+        synchronized (centeredCache) {
+            centered = centeredCache.get(message);
+        }
+        if (centered != null) {
+            return centered;
+        }
+
+        centered = renderCentered(ChatColor.translateAlternateColorCodes('&', message));
+        synchronized (centeredCache) {
+            centeredCache.put(message, centered);
+        }
+        return centered;
+    }
+
+    private static String renderCentered(String message) {
         int messagePxSize = 0;
         boolean previousCode = false;
         boolean isBold = false;
 
-        for (char c : message.toCharArray()) {
+        for (int i = 0, length = message.length(); i < length; i++) {
+            char c = message.charAt(i);
             if (c == '§') {
                 previousCode = true;
             } else if (previousCode) {
                 previousCode = false;
                 isBold = c == 'l' || c == 'L';
             } else {
-                DefaultFontInfo dfi = DefaultFontInfo.getDefaultFontInfo(c);
-                messagePxSize += isBold ? dfi.getBoldLength() : dfi.getLength();
-                messagePxSize++;
+                messagePxSize += DefaultFontInfo.widthOf(c, isBold) + 1;
             }
         }
 
         int halvedMessageSize = messagePxSize / 2;
-        int toCompensate = 154 - halvedMessageSize;
+        int toCompensate = CENTER_PX - halvedMessageSize;
         int spaceLength = DefaultFontInfo.SPACE.getLength() + 1;
-        int compensated = 0;
+        int spaces = toCompensate > 0 ? (toCompensate + spaceLength - 1) / spaceLength : 0;
 
-        StringBuilder sb = new StringBuilder();
-        while (compensated < toCompensate) {
-            sb.append(" ");
-            compensated += spaceLength;
+        StringBuilder sb = new StringBuilder(spaces + message.length());
+        for (int i = 0; i < spaces; i++) {
+            sb.append(' ');
         }
-
-        player.sendMessage(sb.toString() + message);
+        return sb.append(message).toString();
     }
 
     /**
@@ -220,11 +294,34 @@ public class MessageUtils {
             return length + 1;
         }
 
+        // Direct-indexed glyph tables, built once so lookups never touch values()
+        private static final DefaultFontInfo[] BY_CHAR = new DefaultFontInfo[128];
+        private static final int[] WIDTHS = new int[128];
+        private static final int[] BOLD_WIDTHS = new int[128];
+
+        static {
+            for (DefaultFontInfo dfi : values()) {
+                if (dfi != DEFAULT && BY_CHAR[dfi.character] == null) {
+                    BY_CHAR[dfi.character] = dfi;
+                }
+            }
+            for (int c = 0; c < BY_CHAR.length; c++) {
+                DefaultFontInfo dfi = BY_CHAR[c] != null ? BY_CHAR[c] : DEFAULT;
+                WIDTHS[c] = dfi.getLength();
+                BOLD_WIDTHS[c] = dfi.getBoldLength();
+            }
+        }
+
         public static DefaultFontInfo getDefaultFontInfo(char c) {
-            for (DefaultFontInfo dfi : DefaultFontInfo.values()) {
-                if (dfi.getCharacter() == c) return dfi;
+            DefaultFontInfo dfi = c < BY_CHAR.length ? BY_CHAR[c] : null;
+            return dfi != null ? dfi : DEFAULT;
+        }
+
+        public static int widthOf(char c, boolean bold) {
+            if (c < WIDTHS.length) {
+                return bold ? BOLD_WIDTHS[c] : WIDTHS[c];
             }
-            return DEFAULT;
+            return bold ? DEFAULT.getBoldLength() : DEFAULT.getLength();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.minecraft.regionregen.utils;
+
+/**
+ * Validated values of the performance section of config.yml
+ */
+public final class PerformanceSettings {
+
+    private final int workerThreads;
+    private final int ioThreads;
+    private final int mainThreadBudgetMillis;
+
+    PerformanceSettings(SettingsSection section) {
+        int workers = section.atLeast("worker-threads", 0, 0);
+        // Encoding and comparing are CPU bound, leave a core for the server thread
+        this.workerThreads = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.ioThreads = section.atLeast("io-threads", 2, 1);
+        this.mainThreadBudgetMillis = section.atLeast("main-thread-budget-ms", 2, 1);
+    }
+
+    /**
+     * Get the number of threads encoding, decoding and comparing snapshots
+     *
+     * @return The thread count, resolved from the core count when not configured
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Get the number of threads reading and writing plugin files
+     *
+     * @return The thread count
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Get how long per tick the main thread may spend on results handed back by background work
+     *
+     * @return The budget in milliseconds
+     */
+    public int getMainThreadBudgetMillis() {
+        return mainThreadBudgetMillis;
+    }
+}
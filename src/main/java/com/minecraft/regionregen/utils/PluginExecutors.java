@@ -0,0 +1,296 @@
+package com.minecraft.regionregen.utils;
+
+import com.minecraft.regionregen.RegionRegenPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * The threads the plugin's background work runs on.
+ *
+ * <ul>
+ *     <li>The worker pool encodes, decodes and compares snapshots. It is
+ *     bounded, so a burst of regenerations queues up instead of taking
+ *     over every core.</li>
+ *     <li>The I/O pool reads and writes plugin files, so slow disks do
+ *     not hold up the workers.</li>
+ *     <li>The main-thread executor hands results back to the game. It runs
+ *     queued tasks at the start of each tick until the configured budget is
+ *     used up, and leaves the rest for the next tick.</li>
+ * </ul>
+ *
+ * <p>Pool sizes follow the {@code performance} settings and are picked up
+ * on config reload.</p>
+ */
+public class PluginExecutors {
+
+    private final RegionRegenPlugin plugin;
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor io;
+    private final Queue<Runnable> mainTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mainQueued = new AtomicInteger();
+    private final LongAdder mainCompleted = new LongAdder();
+    private final LongAdder ticksOverBudget = new LongAdder();
+    private final Executor mainThread = this::submitToMainThread;
+    private BukkitRunnable mainTask;
+
+    /**
+     * Create the pools and start draining the main-thread queue. Must be called on the main thread.
+     *
+     * @param plugin The plugin instance
+     */
+    public PluginExecutors(RegionRegenPlugin plugin) {
+        this.plugin = plugin;
+        PerformanceSettings settings = plugin.getConfigManager().getSettings().getPerformance();
+        this.workers = newPool("RegionRegen Worker #", settings.getWorkerThreads());
+        this.io = newPool("RegionRegen IO #", settings.getIoThreads());
+
+        this.mainTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                runMainTasks();
+            }
+        };
+        mainTask.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    private static ThreadPoolExecutor newPool(String namePrefix, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Callers bound what they have in flight themselves, the queue only absorbs bursts
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the pool for CPU bound work: encoding, decoding and comparing snapshots
+     *
+     * @return The worker pool
+     */
+    public Executor workers() {
+        return workers;
+    }
+
+    /**
+     * Get the pool for reading and writing files
+     *
+     * @return The I/O pool
+     */
+    public Executor io() {
+        return io;
+    }
+
+    /**
+     * Get the executor that runs tasks on the main thread, within the per-tick budget
+     *
+     * @return The main-thread executor
+     */
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Create an executor that runs its tasks on the I/O pool one at a time,
+     * in the order they were submitted
+     *
+     * @return The serial executor
+     */
+    public Executor newSerialIo() {
+        return new SerialExecutor(io);
+    }
+
+    private void submitToMainThread(Runnable task) {
+        mainQueued.incrementAndGet();
+        mainTasks.add(task);
+    }
+
+    private void runMainTasks() {
+        PerformanceSettings settings = plugin.getConfigManager().getSettings().getPerformance();
+        // Pick up pool size changes from a config reload
+        resize(workers, settings.getWorkerThreads());
+        resize(io, settings.getIoThreads());
+
+        // At least one task runs every tick, so a slow task cannot stall the queue
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getMainThreadBudgetMillis());
+        Runnable task;
+        while ((task = mainTasks.poll()) != null) {
+            mainQueued.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Error in main-thread task", e);
+            }
+            mainCompleted.increment();
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        if (!mainTasks.isEmpty()) {
+            ticksOverBudget.increment();
+        }
+    }
+
+    private static void resize(ThreadPoolExecutor pool, int threads) {
+        if (pool.getMaximumPoolSize() == threads) {
+            return;
+        }
+        // The core size may never exceed the maximum
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Get the load of the worker pool
+     *
+     * @return The pool metrics
+     */
+    public PoolMetrics getWorkerMetrics() {
+        return new PoolMetrics(workers);
+    }
+
+    /**
+     * Get the load of the I/O pool
+     *
+     * @return The pool metrics
+     */
+    public PoolMetrics getIoMetrics() {
+        return new PoolMetrics(io);
+    }
+
+    public int getMainThreadQueued() {
+        return mainQueued.get();
+    }
+
+    public long getMainThreadCompleted() {
+        return mainCompleted.sum();
+    }
+
+    /**
+     * Get how many ticks ended with main-thread tasks still queued
+     *
+     * @return The tick count
+     */
+    public long getTicksOverBudget() {
+        return ticksOverBudget.sum();
+    }
+
+    /**
+     * Stop the pools, used on shutdown. Compare and decode tasks are dropped,
+     * pending file writes are given a few seconds to finish. Main-thread
+     * tasks that have not run by now never will.
+     */
+    public void shutdown() {
+        if (mainTask != null) {
+            mainTask.cancel();
+            mainTask = null;
+        }
+        int dropped = mainQueued.getAndSet(0);
+        mainTasks.clear();
+        if (dropped > 0) {
+            MessageUtils.debug("Dropped " + dropped + " main-thread tasks on shutdown");
+        }
+
+        workers.shutdownNow();
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out writing plugin files, the latest undo generations may be incomplete");
+                io.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            io.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Point-in-time load of a pool
+     */
+    public static final class PoolMetrics {
+        private final int threads;
+        private final int active;
+        private final int queued;
+        private final long completed;
+
+        private PoolMetrics(ThreadPoolExecutor pool) {
+            this.threads = pool.getMaximumPoolSize();
+            this.active = pool.getActiveCount();
+            this.queued = pool.getQueue().size();
+            this.completed = pool.getCompletedTaskCount();
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+    }
+
+    /**
+     * Runs tasks on a shared pool one at a time, in submission order, for
+     * work like undo writes that must not interleave
+     */
+    private final class SerialExecutor implements Executor {
+        private final Executor backing;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private SerialExecutor(Executor backing) {
+            this.backing = backing;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    backing.execute(this::drain);
+                } catch (RuntimeException e) {
+                    draining.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void drain() {
+            // Tasks added while the flag is being cleared are picked up here, not resubmitted
+            do {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        plugin.getLogger().log(Level.SEVERE, "Error in background task", e);
+                    }
+                }
+                draining.set(false);
+            } while (!tasks.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+}
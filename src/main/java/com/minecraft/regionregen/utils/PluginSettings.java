@@ -0,0 +1,85 @@
+package com.minecraft.regionregen.utils;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.logging.Logger;
+
+/**
+ * Immutable, validated view of config.yml.
+ *
+ * <p>Built once per (re)load by {@link ConfigManager} so hot paths read plain
+ * fields instead of walking YAML sections by string path. Each top-level
+ * section of the file has a value object of its own. Values below their
+ * minimum are raised to it.</p>
+ */
+public final class PluginSettings {
+
+    private final String prefix;
+    private final RegenerationSettings regeneration;
+    private final SnapshotSettings snapshot;
+    private final PerformanceSettings performance;
+    private final ChangeLogSettings changeLog;
+    private final AutoRegenSettings autoRegen;
+    private final StorageSettings storage;
+    private final GuiSettings gui;
+
+    private PluginSettings(ConfigurationSection config, Logger logger) {
+        this.prefix = ChatColor.translateAlternateColorCodes('&', config.getString("prefix", "&8[&bRegionRegen&8] &7"));
+        this.regeneration = new RegenerationSettings(new SettingsSection(config, "regeneration", logger));
+        this.snapshot = new SnapshotSettings(new SettingsSection(config, "snapshot", logger));
+        this.performance = new PerformanceSettings(new SettingsSection(config, "performance", logger));
+        this.changeLog = new ChangeLogSettings(new SettingsSection(config, "change-log", logger));
+        this.autoRegen = new AutoRegenSettings(new SettingsSection(config, "auto-regen", logger));
+        this.storage = new StorageSettings(new SettingsSection(config, "storage", logger));
+        this.gui = new GuiSettings(new SettingsSection(config, "gui", logger));
+    }
+
+    /**
+     * Build and validate settings from a loaded configuration
+     *
+     * @param config The configuration to read
+     * @param logger Logger for validation warnings
+     * @return The immutable settings
+     */
+    public static PluginSettings from(ConfigurationSection config, Logger logger) {
+        return new PluginSettings(config, logger);
+    }
+
+    /**
+     * Get the colour-translated message prefix
+     *
+     * @return The prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public RegenerationSettings getRegeneration() {
+        return regeneration;
+    }
+
+    public SnapshotSettings getSnapshot() {
+        return snapshot;
+    }
+
+    public PerformanceSettings getPerformance() {
+        return performance;
+    }
+
+    public ChangeLogSettings getChangeLog() {
+        return changeLog;
+    }
+
+    public AutoRegenSettings getAutoRegen() {
+        return autoRegen;
+    }
+
+    public StorageSettings getStorage() {
+        return storage;
+    }
+
+    public GuiSettings getGui() {
+        return gui;
+    }
+}
@@ -0,0 +1,140 @@
+package com.minecraft.regionregen.utils;
+
+/**
+ * Validated values of the regeneration section of config.yml
+ */
+public final class RegenerationSettings {
+
+    private final int blockDelay;
+    private final int blocksPerTick;
+    private final boolean notifyNearbyPlayers;
+    private final int notificationRadius;
+    private final int decodeWindow;
+    private final boolean worldEditBackend;
+    private final int checkpointIntervalSeconds;
+    private final int priorityLookahead;
+    private final boolean deferUnloaded;
+    private final int undoGenerations;
+    private final boolean seedTerrain;
+    private final int seedChunksPerTick;
+    private final boolean skipClean;
+
+    RegenerationSettings(SettingsSection section) {
+        this.blockDelay = section.atLeast("block-delay", 1, 1);
+        this.blocksPerTick = section.atLeast("blocks-per-tick", 50, 1);
+        this.notifyNearbyPlayers = section.getBoolean("notify-nearby-players", true);
+        this.notificationRadius = section.atLeast("notification-radius", 100, 0);
+        this.decodeWindow = section.atLeast("decode-window", 8, 1);
+
+        String backend = section.getString("backend", "bukkit");
+        if (!backend.equalsIgnoreCase("bukkit") && !backend.equalsIgnoreCase("worldedit")) {
+            section.warn(section.path("backend") + " must be 'bukkit' or 'worldedit' (was '" + backend + "'), using bukkit");
+        }
+        this.worldEditBackend = backend.equalsIgnoreCase("worldedit");
+        this.checkpointIntervalSeconds = section.atLeast("checkpoint-interval", 5, 0);
+        this.priorityLookahead = section.atLeast("priority-lookahead", 32, 0);
+        this.deferUnloaded = section.getBoolean("defer-unloaded", false);
+        this.undoGenerations = section.atLeast("undo-generations", 3, 0);
+        this.seedTerrain = section.getBoolean("seed-terrain", false);
+        this.seedChunksPerTick = section.atLeast("seed-chunks-per-tick", 1, 1);
+        this.skipClean = section.getBoolean("skip-clean", true);
+    }
+
+    public int getBlockDelay() {
+        return blockDelay;
+    }
+
+    public int getBlocksPerTick() {
+        return blocksPerTick;
+    }
+
+    public boolean isNotifyNearbyPlayers() {
+        return notifyNearbyPlayers;
+    }
+
+    public int getNotificationRadius() {
+        return notificationRadius;
+    }
+
+    /**
+     * Get how many decoded chunks may be buffered ahead of the applier
+     *
+     * @return The decode window in chunks
+     */
+    public int getDecodeWindow() {
+        return decodeWindow;
+    }
+
+    /**
+     * Check if restores write blocks through a WorldEdit edit session instead of the Bukkit API
+     *
+     * @return True for the worldedit backend
+     */
+    public boolean isWorldEditBackend() {
+        return worldEditBackend;
+    }
+
+    /**
+     * Get how often running restores persist their progress
+     *
+     * @return The interval in seconds, 0 when checkpoints are disabled
+     */
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+
+    /**
+     * Get how many decoded chunks the applier ranks by player proximity
+     *
+     * @return The lookahead in chunks, 0 or 1 to restore in plain chunk order
+     */
+    public int getPriorityLookahead() {
+        return priorityLookahead;
+    }
+
+    /**
+     * Check if restoring unloaded chunks is put off until they next load
+     *
+     * @return True if unloaded chunks are deferred
+     */
+    public boolean isDeferUnloaded() {
+        return deferUnloaded;
+    }
+
+    /**
+     * Get how many undo generations are kept per region
+     *
+     * @return The generation count, 0 when undo is disabled
+     */
+    public int getUndoGenerations() {
+        return undoGenerations;
+    }
+
+    /**
+     * Check if regions may be regenerated with fresh terrain from the world generator.
+     * Off by default: without Paper the main thread generates every chunk itself.
+     *
+     * @return True if regeneration from the seed is enabled
+     */
+    public boolean isSeedTerrain() {
+        return seedTerrain;
+    }
+
+    /**
+     * Get how many chunks of fresh terrain are generated per tick, in the scratch world
+     *
+     * @return The chunk count
+     */
+    public int getSeedChunksPerTick() {
+        return seedChunksPerTick;
+    }
+
+    /**
+     * Check if regenerating a region first validates it against its snapshot, and skips the restore if it matches
+     *
+     * @return True if clean regions are skipped
+     */
+    public boolean isSkipClean() {
+        return skipClean;
+    }
+}
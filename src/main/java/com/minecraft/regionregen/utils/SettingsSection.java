@@ -0,0 +1,66 @@
+package com.minecraft.regionregen.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.logging.Logger;
+
+/**
+ * Reads and validates the values of one top-level section of config.yml,
+ * warning about every value that has to be corrected.
+ */
+final class SettingsSection {
+
+    private final ConfigurationSection config;
+    private final String name;
+    private final Logger logger;
+
+    SettingsSection(ConfigurationSection config, String name, Logger logger) {
+        this.config = config;
+        this.name = name;
+        this.logger = logger;
+    }
+
+    String path(String key) {
+        return name + "." + key;
+    }
+
+    boolean getBoolean(String key, boolean def) {
+        return config.getBoolean(path(key), def);
+    }
+
+    String getString(String key, String def) {
+        return config.getString(path(key), def);
+    }
+
+    /**
+     * Read an integer that has a lower bound
+     *
+     * @return The value, raised to the bound if it is below it
+     */
+    int atLeast(String key, int def, int min) {
+        int value = config.getInt(path(key), def);
+        if (value < min) {
+            warn(path(key) + " must be at least " + min + " (was " + value + "), using " + min);
+            return min;
+        }
+        return value;
+    }
+
+    /**
+     * Read an integer that has bounds on both sides
+     *
+     * @return The value, clamped to the bounds
+     */
+    int between(String key, int def, int min, int max) {
+        int value = atLeast(key, def, min);
+        if (value > max) {
+            warn(path(key) + " cannot exceed " + max + " (was " + value + "), using " + max);
+            return max;
+        }
+        return value;
+    }
+
+    void warn(String message) {
+        logger.warning(message);
+    }
+}
@@ -0,0 +1,60 @@
+package com.minecraft.regionregen.utils;
+
+import com.minecraft.regionregen.snapshot.SectionCodec;
+
+/**
+ * Validated values of the snapshot section of config.yml
+ */
+public final class SnapshotSettings {
+
+    private final int captureChunksPerTick;
+    private final long cacheMaxBytes;
+    private final int readAhead;
+    private final SectionCodec codec;
+
+    SnapshotSettings(SettingsSection section) {
+        this.captureChunksPerTick = section.atLeast("chunks-per-tick", 2, 1);
+        this.cacheMaxBytes = section.atLeast("cache-size-mb", 64, 0) * 1024L * 1024L;
+        this.readAhead = section.atLeast("read-ahead", 16, 0);
+
+        String codecName = section.getString("codec", SectionCodec.DEFLATE_FAST.getName());
+        SectionCodec codec = SectionCodec.byName(codecName);
+        if (codec == null) {
+            section.warn(section.path("codec") + " must be one of " + SectionCodec.names() + " (was '" + codecName + "'), using "
+                    + SectionCodec.DEFLATE_FAST.getName());
+            codec = SectionCodec.DEFLATE_FAST;
+        }
+        this.codec = codec;
+    }
+
+    public int getCaptureChunksPerTick() {
+        return captureChunksPerTick;
+    }
+
+    /**
+     * Get the byte cap of the decoded section cache
+     *
+     * @return The cap in bytes, 0 when caching is disabled
+     */
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    /**
+     * Get how many sections each snapshot reader reads from disk ahead of the decoder
+     *
+     * @return The section count, 0 when read-ahead is disabled
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Get the codec new snapshot sections are compressed with
+     *
+     * @return The codec
+     */
+    public SectionCodec getCodec() {
+        return codec;
+    }
+}
@@ -0,0 +1,40 @@
+package com.minecraft.regionregen.utils;
+
+/**
+ * Validated values of the storage section of config.yml
+ */
+public final class StorageSettings {
+
+    private final boolean saveOnModify;
+    private final boolean autoBackup;
+    private final int backupIntervalMinutes;
+    private final String bundleDirectory;
+
+    StorageSettings(SettingsSection section) {
+        this.saveOnModify = section.getBoolean("save-on-modify", true);
+        this.autoBackup = section.getBoolean("auto-backup", true);
+        this.backupIntervalMinutes = section.atLeast("backup-interval", 60, 1);
+        this.bundleDirectory = section.getString("bundle-directory", "bundles");
+    }
+
+    public boolean isSaveOnModify() {
+        return saveOnModify;
+    }
+
+    public boolean isAutoBackup() {
+        return autoBackup;
+    }
+
+    public int getBackupIntervalMinutes() {
+        return backupIntervalMinutes;
+    }
+
+    /**
+     * Get the folder snapshot bundles are exported to and imported from
+     *
+     * @return The path, relative to the plugin folder unless absolute
+     */
+    public String getBundleDirectory() {
+        return bundleDirectory;
+    }
+}
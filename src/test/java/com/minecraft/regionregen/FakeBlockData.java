@@ -0,0 +1,72 @@
+package com.minecraft.regionregen;
+
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Block data that is nothing but its state string. Instances are interned,
+ * so equal states are the same object, as they are on a real server.
+ */
+public final class FakeBlockData implements InvocationHandler {
+
+    private static final Map<String, BlockData> INTERNED = new ConcurrentHashMap<>();
+
+    private final String state;
+    private final Material material;
+
+    private FakeBlockData(String state) {
+        this.state = state;
+        int properties = state.indexOf('[');
+        this.material = Material.matchMaterial(properties < 0 ? state : state.substring(0, properties));
+    }
+
+    /**
+     * Get the block data of a state string, e.g. {@code minecraft:stone}
+     *
+     * @param state The state, the namespace may be left out
+     * @return The block data
+     */
+    public static BlockData of(String state) {
+        String normalized = state.indexOf(':') < 0 ? "minecraft:" + state : state;
+        return INTERNED.computeIfAbsent(normalized, key -> (BlockData) Proxy.newProxyInstance(
+                FakeBlockData.class.getClassLoader(), new Class<?>[]{BlockData.class}, new FakeBlockData(key)));
+    }
+
+    /**
+     * Get the default block data of a material
+     *
+     * @param material The material
+     * @return The block data
+     */
+    public static BlockData of(Material material) {
+        return of(material.name().toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getAsString":
+            case "toString":
+                return state;
+            case "getMaterial":
+                return material;
+            case "clone":
+            case "merge":
+                return proxy;
+            case "matches":
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return state.hashCode();
+            default:
+                throw new UnsupportedOperationException("BlockData." + method.getName());
+        }
+    }
+}
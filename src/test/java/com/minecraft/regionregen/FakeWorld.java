@@ -0,0 +1,228 @@
+package com.minecraft.regionregen;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An in-memory world of air with every chunk loaded and no players.
+ * Only what the plugin calls is implemented, anything else throws.
+ */
+public final class FakeWorld {
+
+    private static final int HEIGHT = 256;
+    private static final BlockData AIR = FakeBlockData.of(Material.AIR);
+
+    private final String name;
+    private final UUID uid = UUID.randomUUID();
+    private final World world;
+    // Chunk key to the chunk's blocks, indexed (y << 8) | (z << 4) | x
+    private final Map<Long, BlockData[]> chunks = new HashMap<>();
+
+    public FakeWorld(String name) {
+        this.name = name;
+        this.world = (World) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "getUID":
+                    return uid;
+                case "getMaxHeight":
+                    return HEIGHT;
+                case "getMinHeight":
+                    return 0;
+                case "getBlockAt":
+                    if (args.length == 1) {
+                        Location location = (Location) args[0];
+                        return block(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                    }
+                    return block((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                case "getChunkAt":
+                    if (args.length == 1) {
+                        Location location = (Location) args[0];
+                        return chunk(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+                    }
+                    return chunk((Integer) args[0], (Integer) args[1]);
+                case "isChunkLoaded":
+                    return true;
+                case "getLoadedChunks": {
+                    List<Chunk> loaded = new ArrayList<>();
+                    for (long key : chunks.keySet()) {
+                        loaded.add(chunk((int) (key >> 32), (int) key));
+                    }
+                    return loaded.toArray(new Chunk[0]);
+                }
+                case "getPlayers":
+                    return Collections.emptyList();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return uid.hashCode();
+                default:
+                    throw new UnsupportedOperationException("World." + method.getName());
+            }
+        });
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the block data at a position
+     *
+     * @return The block data, air where nothing was set
+     */
+    public BlockData get(int x, int y, int z) {
+        BlockData[] blocks = chunks.get(key(x >> 4, z >> 4));
+        BlockData data = blocks == null || y < 0 || y >= HEIGHT ? null : blocks[index(x, y, z)];
+        return data != null ? data : AIR;
+    }
+
+    /**
+     * Set the block data at a position
+     */
+    public void set(int x, int y, int z, BlockData data) {
+        if (y < 0 || y >= HEIGHT) {
+            throw new IllegalArgumentException("y out of range: " + y);
+        }
+        chunks.computeIfAbsent(key(x >> 4, z >> 4), k -> new BlockData[16 * 16 * HEIGHT])[index(x, y, z)] = data;
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    private Block block(int x, int y, int z) {
+        return (Block) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Block.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getWorld":
+                    return world;
+                case "getChunk":
+                    return chunk(x >> 4, z >> 4);
+                case "getLocation":
+                    return new Location(world, x, y, z);
+                case "getBlockData":
+                    return get(x, y, z);
+                case "getType":
+                    return get(x, y, z).getMaterial();
+                case "isEmpty":
+                    return get(x, y, z).getMaterial().isAir();
+                case "setBlockData":
+                    set(x, y, z, (BlockData) args[0]);
+                    return null;
+                case "setType":
+                    set(x, y, z, FakeBlockData.of((Material) args[0]));
+                    return null;
+                case "toString":
+                    return "Block{" + name + " " + x + "," + y + "," + z + "}";
+                case "equals":
+                    return args[0] instanceof Block && ((Block) args[0]).getWorld() == world
+                            && ((Block) args[0]).getX() == x && ((Block) args[0]).getY() == y && ((Block) args[0]).getZ() == z;
+                case "hashCode":
+                    return (x * 31 + y) * 31 + z;
+                default:
+                    throw new UnsupportedOperationException("Block." + method.getName());
+            }
+        });
+    }
+
+    private Chunk chunk(int chunkX, int chunkZ) {
+        return (Chunk) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Chunk.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return chunkX;
+                case "getZ":
+                    return chunkZ;
+                case "getWorld":
+                    return world;
+                case "isLoaded":
+                case "load":
+                    return true;
+                case "getBlock":
+                    return block((chunkX << 4) + (Integer) args[0], (Integer) args[1], (chunkZ << 4) + (Integer) args[2]);
+                case "getChunkSnapshot":
+                    return snapshot(chunkX, chunkZ);
+                case "toString":
+                    return "Chunk{" + name + " " + chunkX + "," + chunkZ + "}";
+                case "equals":
+                    return args[0] instanceof Chunk && ((Chunk) args[0]).getWorld() == world
+                            && ((Chunk) args[0]).getX() == chunkX && ((Chunk) args[0]).getZ() == chunkZ;
+                case "hashCode":
+                    return chunkX * 31 + chunkZ;
+                default:
+                    throw new UnsupportedOperationException("Chunk." + method.getName());
+            }
+        });
+    }
+
+    /**
+     * Copy a chunk, like the server does, so later changes do not show through
+     */
+    private ChunkSnapshot snapshot(int chunkX, int chunkZ) {
+        BlockData[] live = chunks.get(key(chunkX, chunkZ));
+        BlockData[] blocks = live != null ? live.clone() : new BlockData[16 * 16 * HEIGHT];
+        return (ChunkSnapshot) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ChunkSnapshot.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return chunkX;
+                case "getZ":
+                    return chunkZ;
+                case "getWorldName":
+                    return name;
+                case "getBlockData": {
+                    BlockData data = blocks[index((Integer) args[0], (Integer) args[1], (Integer) args[2])];
+                    return data != null ? data : AIR;
+                }
+                case "getBlockType": {
+                    BlockData data = blocks[index((Integer) args[0], (Integer) args[1], (Integer) args[2])];
+                    return data != null ? data.getMaterial() : Material.AIR;
+                }
+                case "isSectionEmpty": {
+                    int from = (Integer) args[0] << 12;
+                    for (int i = from; i < from + 4096; i++) {
+                        if (blocks[i] != null && !blocks[i].getMaterial().isAir()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                case "toString":
+                    return "ChunkSnapshot{" + name + " " + chunkX + "," + chunkZ + "}";
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    throw new UnsupportedOperationException("ChunkSnapshot." + method.getName());
+            }
+        });
+    }
+}
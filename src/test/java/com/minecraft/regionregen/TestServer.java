@@ -0,0 +1,375 @@
+package com.minecraft.regionregen;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * A server for tests: worlds are {@link FakeWorld}s, scheduled tasks only
+ * run when the test calls {@link #tick()}, on the test's thread, and the
+ * plugin is enabled without a plugin class loader. Bukkit's server can only
+ * be set once, so all tests share one instance.
+ */
+public final class TestServer {
+
+    private static TestServer instance;
+
+    private final Logger logger = Logger.getLogger("TestServer");
+    private final Server server;
+    private final Map<String, FakeWorld> worlds = new ConcurrentHashMap<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private final Thread mainThread = Thread.currentThread();
+    private long currentTick;
+    private int nextTaskId = 1;
+    private RegionRegenPlugin plugin;
+
+    private TestServer() {
+        this.server = proxy(Server.class, this::handleServer);
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * Get the server, installing it on first use
+     *
+     * @return The server
+     */
+    public static synchronized TestServer get() {
+        if (instance == null) {
+            instance = new TestServer();
+        }
+        return instance;
+    }
+
+    /**
+     * Add an empty world
+     *
+     * @param name The world name
+     * @return The world
+     */
+    public FakeWorld createWorld(String name) {
+        FakeWorld world = new FakeWorld(name);
+        worlds.put(name, world);
+        return world;
+    }
+
+    /**
+     * Load and enable the plugin, then run the tasks it schedules for the first tick
+     *
+     * @param dataFolder The plugin's data folder
+     * @return The enabled plugin
+     */
+    public RegionRegenPlugin enablePlugin(File dataFolder) {
+        if (plugin != null) {
+            throw new IllegalStateException("The plugin is already enabled");
+        }
+        PluginDescriptionFile description = new PluginDescriptionFile("RegionRegen", "test", RegionRegenPlugin.class.getName());
+        @SuppressWarnings("deprecation")
+        JavaPluginLoader loader = new JavaPluginLoader(server);
+        plugin = new RegionRegenPlugin(loader, description, dataFolder, new File(dataFolder, "RegionRegen.jar"));
+        setEnabled(plugin, true);
+        if (!plugin.isEnabled()) {
+            throw new IllegalStateException("The plugin disabled itself while enabling");
+        }
+        tick();
+        return plugin;
+    }
+
+    /**
+     * Disable the plugin, then drop every task and world
+     */
+    public void disablePlugin() {
+        if (plugin != null) {
+            setEnabled(plugin, false);
+            plugin = null;
+        }
+        synchronized (tasks) {
+            tasks.clear();
+        }
+        worlds.clear();
+    }
+
+    private static void setEnabled(JavaPlugin plugin, boolean enabled) {
+        try {
+            Method method = JavaPlugin.class.getDeclaredMethod("setEnabled", boolean.class);
+            method.setAccessible(true);
+            method.invoke(plugin, enabled);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Failed to " + (enabled ? "enable" : "disable") + " the plugin", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Run one server tick: every task that is due, in the order they were scheduled
+     */
+    public void tick() {
+        List<Task> due;
+        synchronized (tasks) {
+            currentTick++;
+            due = new ArrayList<>(tasks);
+        }
+        for (Task task : due) {
+            if (task.cancelled || task.nextTick > currentTick) {
+                continue;
+            }
+            if (task.period > 0) {
+                task.nextTick = currentTick + task.period;
+            } else {
+                task.cancelled = true;
+            }
+            task.runnable.run();
+        }
+        synchronized (tasks) {
+            tasks.removeIf(task -> task.cancelled);
+        }
+    }
+
+    /**
+     * Run ticks until a condition holds. Background work is given a moment between ticks.
+     *
+     * @param condition Checked before every tick
+     * @param timeoutMillis Wall-clock time to give up after
+     * @return The number of ticks run
+     * @throws TimeoutException If the condition did not hold in time
+     */
+    public int tickUntil(BooleanSupplier condition, long timeoutMillis) throws TimeoutException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int ticks = 0;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("Condition not met after " + ticks + " ticks");
+            }
+            tick();
+            ticks++;
+            Thread.sleep(0, 200_000);
+        }
+        return ticks;
+    }
+
+    private Object handleServer(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return "TestServer";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "test";
+            case "getLogger":
+                return logger;
+            case "isPrimaryThread":
+                return Thread.currentThread() == mainThread;
+            case "getScheduler":
+                return scheduler;
+            case "getPluginManager":
+                return pluginManager;
+            case "getConsoleSender":
+                return console;
+            case "getOnlinePlayers":
+                return Collections.emptyList();
+            case "getWorld":
+                if (args[0] instanceof String) {
+                    FakeWorld world = worlds.get(args[0]);
+                    return world != null ? world.getWorld() : null;
+                }
+                for (FakeWorld world : worlds.values()) {
+                    if (world.getWorld().getUID().equals(args[0])) {
+                        return world.getWorld();
+                    }
+                }
+                return null;
+            case "getWorlds": {
+                List<World> loaded = new ArrayList<>();
+                for (FakeWorld world : worlds.values()) {
+                    loaded.add(world.getWorld());
+                }
+                return loaded;
+            }
+            case "createBlockData":
+                if (args[0] instanceof Material) {
+                    return args.length > 1 && args[1] != null
+                            ? FakeBlockData.of(((Material) args[0]).name().toLowerCase() + args[1])
+                            : FakeBlockData.of((Material) args[0]);
+                }
+                return FakeBlockData.of((String) args[0]);
+            case "getPluginCommand":
+                return pluginCommand((String) args[0]);
+            case "toString":
+                return "TestServer";
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                throw new UnsupportedOperationException("Server." + method.getName());
+        }
+    }
+
+    private PluginCommand pluginCommand(String name) {
+        if (plugin == null) {
+            return null;
+        }
+        try {
+            Constructor<PluginCommand> constructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(name, plugin);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final BukkitScheduler scheduler = proxy(BukkitScheduler.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "runTask":
+                return schedule((Runnable) args[1], 1, 0);
+            case "runTaskLater":
+                return schedule((Runnable) args[1], Math.max(1, (Long) args[2]), 0);
+            case "runTaskTimer":
+                return schedule((Runnable) args[1], Math.max(1, (Long) args[2]), Math.max(1, (Long) args[3]));
+            case "cancelTask":
+                synchronized (tasks) {
+                    for (Task task : tasks) {
+                        if (task.id == (Integer) args[0]) {
+                            task.cancelled = true;
+                        }
+                    }
+                }
+                return null;
+            case "cancelTasks":
+                synchronized (tasks) {
+                    for (Task task : tasks) {
+                        task.cancelled = true;
+                    }
+                }
+                return null;
+            case "isQueued":
+            case "isCurrentlyRunning":
+                synchronized (tasks) {
+                    for (Task task : tasks) {
+                        if (task.id == (Integer) args[0]) {
+                            return !task.cancelled;
+                        }
+                    }
+                }
+                return false;
+            default:
+                throw new UnsupportedOperationException("BukkitScheduler." + method.getName());
+        }
+    });
+
+    private BukkitTask schedule(Runnable runnable, long delay, long period) {
+        synchronized (tasks) {
+            Task task = new Task(nextTaskId++, runnable, currentTick + delay, period);
+            tasks.add(task);
+            return task.handle;
+        }
+    }
+
+    private final PluginManager pluginManager = proxy(PluginManager.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "getPlugin":
+                // Only WorldEdit's presence is checked, its API is not used by the code under test
+                return "WorldEdit".equals(args[0]) ? proxy(Plugin.class, (p, m, a) -> {
+                    if ("getName".equals(m.getName())) {
+                        return "WorldEdit";
+                    }
+                    throw new UnsupportedOperationException("Plugin." + m.getName());
+                }) : "RegionRegen".equals(args[0]) ? plugin : null;
+            case "registerEvents":
+            case "callEvent":
+                return null;
+            case "disablePlugin":
+                setEnabled((JavaPlugin) args[0], false);
+                return null;
+            default:
+                throw new UnsupportedOperationException("PluginManager." + method.getName());
+        }
+    });
+
+    private final ConsoleCommandSender console = proxy(ConsoleCommandSender.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "sendMessage":
+                if (args[0] instanceof String[]) {
+                    for (String message : (String[]) args[0]) {
+                        logger.info(message);
+                    }
+                } else {
+                    logger.info(String.valueOf(args[args.length - 1]));
+                }
+                return null;
+            case "getName":
+                return "CONSOLE";
+            case "isOp":
+            case "hasPermission":
+                return true;
+            default:
+                throw new UnsupportedOperationException("ConsoleCommandSender." + method.getName());
+        }
+    });
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TestServer.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private final class Task {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private final BukkitTask handle;
+        private long nextTick;
+        private volatile boolean cancelled;
+
+        private Task(int id, Runnable runnable, long nextTick, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+            this.handle = proxy(BukkitTask.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getTaskId":
+                        return this.id;
+                    case "getOwner":
+                        return plugin;
+                    case "isSync":
+                        return true;
+                    case "isCancelled":
+                        return cancelled;
+                    case "cancel":
+                        cancelled = true;
+                        return null;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return this.id;
+                    default:
+                        throw new UnsupportedOperationException("BukkitTask." + method.getName());
+                }
+            });
+        }
+    }
+}
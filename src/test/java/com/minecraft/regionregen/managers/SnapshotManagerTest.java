@@ -0,0 +1,72 @@
+package com.minecraft.regionregen.managers;
+
+import com.minecraft.regionregen.FakeBlockData;
+import com.minecraft.regionregen.FakeWorld;
+import com.minecraft.regionregen.TestServer;
+import com.minecraft.regionregen.models.Region;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotManagerTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestServer server;
+    private SnapshotManager snapshots;
+    private Region region;
+
+    @Before
+    public void setUp() throws Exception {
+        server = TestServer.get();
+        FakeWorld world = server.createWorld("world");
+        snapshots = server.enablePlugin(folder.newFolder("RegionRegen")).getSnapshotManager();
+        for (int x = 0; x < 40; x++) {
+            for (int z = 0; z < 40; z++) {
+                world.set(x, 4, z, FakeBlockData.of(Material.STONE));
+            }
+        }
+        region = new Region("mine", world.getName(), new Location(world.getWorld(), 0, 0, 0),
+                new Location(world.getWorld(), 39, 15, 39), "test");
+    }
+
+    @After
+    public void tearDown() {
+        server.disablePlugin();
+    }
+
+    @Test
+    public void deletesInTheBackgroundAndNotWhileCapturing() throws Exception {
+        CompletableFuture<Boolean> capture = snapshots.captureSnapshot(region);
+        assertTrue(snapshots.isCapturing(region.getId()));
+        CompletableFuture<Boolean> refused = snapshots.deleteSnapshot(region.getId());
+        assertTrue(refused.isDone());
+        assertFalse(refused.join());
+        server.tickUntil(capture::isDone, TIMEOUT_MILLIS);
+        assertTrue(capture.join());
+        assertTrue(snapshots.hasSnapshot(region.getId()));
+
+        // Nothing can capture the region again until the delete is done
+        CompletableFuture<Boolean> delete = snapshots.deleteSnapshot(region.getId());
+        assertTrue(snapshots.isCapturing(region.getId()));
+        assertFalse(snapshots.captureSnapshot(region).join());
+        server.tickUntil(delete::isDone, TIMEOUT_MILLIS);
+        assertTrue(delete.join());
+        assertFalse(snapshots.hasSnapshot(region.getId()));
+        assertFalse(snapshots.isCapturing(region.getId()));
+        assertEquals(0, snapshots.getSectionStore().getSectionCount());
+    }
+}
@@ -0,0 +1,153 @@
+package com.minecraft.regionregen.models;
+
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector2;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.CylinderRegion;
+import com.sk89q.worldedit.regions.EllipsoidRegion;
+import com.sk89q.worldedit.regions.Polygonal2DRegion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RegionMaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matchesAnEllipsoid() {
+        // Off the section grid and across the origin
+        assertMatches(new EllipsoidRegion(null, BlockVector3.at(-7, 40, 25), Vector3.at(20, 12, 17)));
+    }
+
+    @Test
+    public void matchesACylinder() {
+        assertMatches(new CylinderRegion(BlockVector3.at(3, 0, -9), Vector2.at(22, 9), 5, 60));
+    }
+
+    @Test
+    public void matchesAPolygon() {
+        assertMatches(new Polygonal2DRegion(null, Arrays.asList(BlockVector2.at(-30, -4), BlockVector2.at(10, -20),
+                BlockVector2.at(35, 12), BlockVector2.at(0, 3), BlockVector2.at(-12, 30)), 10, 27));
+    }
+
+    @Test
+    public void leavesCuboidsToTheirBounds() {
+        CuboidRegion cuboid = new CuboidRegion(BlockVector3.at(0, 0, 0), BlockVector3.at(10, 10, 10));
+        assertEquals(RegionMask.SHAPE_CUBOID, RegionMask.shapeOf(cuboid));
+        assertNull(RegionMask.fromSelection(cuboid));
+    }
+
+    @Test
+    public void survivesAWriteAndRead() throws IOException {
+        EllipsoidRegion ellipsoid = new EllipsoidRegion(null, BlockVector3.at(100, 64, -100), Vector3.at(24, 20, 24));
+        RegionMask mask = RegionMask.fromSelection(ellipsoid);
+        File file = new File(folder.getRoot(), "masks/region.mask");
+        mask.write(file);
+        RegionMask read = RegionMask.read(file);
+
+        // Bundle IDs hash the written mask, so it must come out byte for byte the same
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        read.write(new DataOutputStream(rewritten));
+        assertArrayEquals(Files.readAllBytes(file.toPath()), rewritten.toByteArray());
+
+        assertEquals(mask.getBlockCount(), read.getBlockCount());
+        for (int x = 76; x <= 124; x++) {
+            for (int y = 44; y <= 84; y++) {
+                for (int z = -124; z <= -76; z++) {
+                    assertEquals(x + "," + y + "," + z, mask.contains(x, y, z), read.contains(x, y, z));
+                }
+            }
+        }
+        for (int sx = 4; sx <= 7; sx++) {
+            for (int sy = 2; sy <= 5; sy++) {
+                for (int sz = -8; sz <= -5; sz++) {
+                    assertEquals(mask.isSectionFull(sx, sy, sz), read.isSectionFull(sx, sy, sz));
+                    assertEquals(mask.isSectionEmpty(sx, sy, sz), read.isSectionEmpty(sx, sy, sz));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsWhatIsNotAMask() throws IOException {
+        RegionMask mask = RegionMask.fromSelection(new CylinderRegion(BlockVector3.at(0, 0, 0), Vector2.at(8, 8), 0, 20));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mask.write(new DataOutputStream(bytes));
+        byte[] written = bytes.toByteArray();
+
+        byte[] badMagic = written.clone();
+        badMagic[0] ^= 1;
+        assertUnreadable(badMagic);
+        assertUnreadable(Arrays.copyOf(written, written.length - 1));
+        assertUnreadable(Arrays.copyOf(written, 10));
+    }
+
+    private static void assertMatches(com.sk89q.worldedit.regions.Region selection) {
+        RegionMask mask = RegionMask.fromSelection(selection);
+        BlockVector3 min = selection.getMinimumPoint();
+        BlockVector3 max = selection.getMaximumPoint();
+
+        long count = 0;
+        // One block of margin, and whole sections so full and empty sections are checked throughout
+        int fromX = (min.getBlockX() - 1) >> 4 << 4, toX = ((max.getBlockX() + 1) >> 4 << 4) + 15;
+        int fromY = Math.max(0, (min.getBlockY() - 1) >> 4 << 4), toY = ((max.getBlockY() + 1) >> 4 << 4) + 15;
+        int fromZ = (min.getBlockZ() - 1) >> 4 << 4, toZ = ((max.getBlockZ() + 1) >> 4 << 4) + 15;
+        for (int sx = fromX >> 4; sx <= toX >> 4; sx++) {
+            for (int sz = fromZ >> 4; sz <= toZ >> 4; sz++) {
+                boolean chunkHasMembers = false;
+                for (int sy = fromY >> 4; sy <= toY >> 4; sy++) {
+                    int members = 0;
+                    for (int x = sx << 4; x < (sx + 1) << 4; x++) {
+                        for (int y = sy << 4; y < (sy + 1) << 4; y++) {
+                            for (int z = sz << 4; z < (sz + 1) << 4; z++) {
+                                boolean inside = x >= min.getBlockX() && x <= max.getBlockX() && y >= min.getBlockY()
+                                        && y <= max.getBlockY() && z >= min.getBlockZ() && z <= max.getBlockZ()
+                                        && selection.contains(BlockVector3.at(x, y, z));
+                                assertEquals(x + "," + y + "," + z, inside, mask.contains(x, y, z));
+                                if (inside) {
+                                    members++;
+                                }
+                            }
+                        }
+                    }
+                    String section = "section " + sx + "," + sy + "," + sz;
+                    assertEquals(section, members == 4096, mask.isSectionFull(sx, sy, sz));
+                    assertEquals(section, members == 0, mask.isSectionEmpty(sx, sy, sz));
+                    chunkHasMembers |= members > 0;
+                    count += members;
+                }
+                assertEquals("chunk " + sx + "," + sz, chunkHasMembers, mask.intersectsChunk(sx, sz));
+            }
+        }
+        assertEquals(count, mask.getBlockCount());
+        assertFalse(mask.contains(max.getBlockX() + 1, min.getBlockY(), min.getBlockZ()));
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            RegionMask.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            fail("read " + bytes.length + " bytes as a mask");
+        } catch (IOException expected) {
+            // Bad magic or cut short
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.minecraft.regionregen.models;
+
+import org.bukkit.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegionTest {
+
+    private Region region;
+
+    @Before
+    public void setUp() {
+        region = new Region("mine", "world", new Location(null, 0, 0, 0), new Location(null, 9, 9, 9), "test");
+    }
+
+    @Test
+    public void countsOnlySnapshotBlocksMined() {
+        region.setSnapshotBlocks(blocks(1, 2, 4));
+        region.recordMined(1, 0, 0, true, false);
+        region.recordMined(2, 0, 0, true, false);
+        assertEquals(2, region.getMinedBlocks());
+
+        // Placed into and broken out of a cell where the snapshot has no block
+        region.recordMined(3, 0, 0, false, true);
+        region.recordMined(3, 0, 0, true, false);
+        region.recordMined(3, 0, 0, false, true);
+        assertEquals(2, region.getMinedBlocks());
+
+        // Put back into a mined cell, and mined again
+        region.recordMined(1, 0, 0, false, true);
+        assertEquals(1, region.getMinedBlocks());
+        region.recordMined(1, 0, 0, true, false);
+        assertEquals(2, region.getMinedBlocks());
+
+        // Replaced by another block
+        region.recordMined(4, 0, 0, true, true);
+        assertEquals(2, region.getMinedBlocks());
+    }
+
+    @Test
+    public void countsNothingUntilTheSnapshotIsRead() {
+        assertTrue(region.needsSnapshotBlocks());
+        region.recordMined(1, 0, 0, true, false);
+        assertEquals(0, region.getMinedBlocks());
+
+        region.setSnapshotBlocks(blocks(1));
+        assertFalse(region.needsSnapshotBlocks());
+        assertEquals(1, region.getBlockCount());
+    }
+
+    @Test
+    public void neverGoesNegative() {
+        region.setSnapshotBlocks(blocks(0, 1, 2));
+        for (int x = 0; x < 3; x++) {
+            region.recordMined(x, 0, 0, false, true);
+        }
+        assertEquals(0, region.getMinedBlocks());
+
+        // Seed regions count every block, without a snapshot to go by
+        region.setFromSeed(true);
+        assertFalse(region.needsSnapshotBlocks());
+        region.recordMined(5, 0, 0, false, true);
+        region.recordMined(6, 0, 0, true, false);
+        assertEquals(0, region.getMinedBlocks());
+    }
+
+    @Test
+    public void startsOverWhenReset() {
+        region.setSnapshotBlocks(blocks(1, 2));
+        region.recordMined(1, 0, 0, true, false);
+        region.recordMined(2, 0, 0, true, false);
+        region.resetMined();
+        assertEquals(0, region.getMinedBlocks());
+
+        region.recordMined(2, 0, 0, false, true);
+        region.recordMined(1, 0, 0, true, false);
+        assertEquals(0, region.getMinedBlocks());
+        region.recordMined(2, 0, 0, true, false);
+        assertEquals(1, region.getMinedBlocks());
+    }
+
+    @Test
+    public void storesSolidSectionsWithoutBits() {
+        SnapshotBlocks blocks = new SnapshotBlocks();
+        long[] solid = new long[64];
+        Arrays.fill(solid, -1L);
+        blocks.addSection(-1, 0, 2, solid);
+        blocks.addSection(0, 0, 0, new long[64]);
+        assertEquals(4096, blocks.getBlockCount());
+        assertTrue(blocks.contains(-16, 15, 47));
+        assertFalse(blocks.contains(0, 0, 0));
+        assertFalse(blocks.contains(-16, 16, 47));
+    }
+
+    /**
+     * A snapshot holding blocks at the given X coordinates, along y = 0 and z = 0
+     */
+    private static SnapshotBlocks blocks(int... xs) {
+        long[] bits = new long[64];
+        for (int x : xs) {
+            bits[0] |= 1L << x;
+        }
+        SnapshotBlocks blocks = new SnapshotBlocks();
+        blocks.addSection(0, 0, 0, bits);
+        return blocks;
+    }
+}
@@ -0,0 +1,243 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.FakeBlockData;
+import com.minecraft.regionregen.FakeWorld;
+import com.minecraft.regionregen.TestServer;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ChangeLogTest {
+
+    private static final String REGION = "logged";
+    private static final BlockData AIR = FakeBlockData.of(Material.AIR);
+    private static final BlockData STONE = FakeBlockData.of(Material.STONE);
+    private static final BlockData DIRT = FakeBlockData.of(Material.DIRT);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestServer server;
+    private FakeWorld world;
+    private File dataFolder;
+    private ChangeLog changeLog;
+
+    @Before
+    public void setUp() throws IOException {
+        server = TestServer.get();
+        world = server.createWorld("log");
+        dataFolder = folder.newFolder("RegionRegen");
+        changeLog = server.enablePlugin(dataFolder).getRegionManager().getChangeLog();
+    }
+
+    @After
+    public void tearDown() {
+        server.disablePlugin();
+    }
+
+    @Test
+    public void packsPositions() {
+        int[][] positions = {{0, 0, 0}, {-1, -64, -1}, {29_999_999, 319, -29_999_999}, {-29_999_999, 2047, 123}, {15, -2048, -16}};
+        for (int[] position : positions) {
+            long packed = ChangeLog.packPosition(position[0], position[1], position[2]);
+            assertEquals(position[0], ChangeLog.unpackX(packed));
+            assertEquals(position[1], ChangeLog.unpackY(packed));
+            assertEquals(position[2], ChangeLog.unpackZ(packed));
+        }
+    }
+
+    @Test
+    public void replaysChangesUpToAPointInTime() throws Exception {
+        rebase();
+        long start = System.currentTimeMillis();
+
+        change(1, 10, 1, STONE);
+        long between = pause();
+        change(1, 10, 1, DIRT);
+        change(2, 10, 1, STONE);
+        flush();
+
+        ChangeLog.PointInTime first = changeLog.replay(REGION, between).join();
+        assertEquals(1, first.getRecords());
+        assertEquals(states(1, 10, 1, "minecraft:stone"), first.getStates());
+
+        ChangeLog.PointInTime last = changeLog.replay(REGION, System.currentTimeMillis()).join();
+        assertEquals(3, last.getRecords());
+        Map<Long, String> expected = states(1, 10, 1, "minecraft:dirt");
+        expected.putAll(states(2, 10, 1, "minecraft:stone"));
+        assertEquals(expected, last.getStates());
+
+        // Each state is in the palette once, however often it is used
+        assertEquals(3, new HashSet<>(palette()).size());
+        assertEquals(3, palette().size());
+        assertNull(changeLog.replay(REGION, start - 60_000).join());
+    }
+
+    @Test
+    public void carriesAPointInTimeIntoTheNextSegment() throws Exception {
+        rebase();
+        change(5, 20, 5, STONE);
+        change(6, 20, 5, DIRT);
+        long between = pause();
+        change(5, 20, 5, AIR);
+        flush();
+
+        ChangeLog.PointInTime pointInTime = changeLog.replay(REGION, between).join();
+        assertNotNull(pointInTime);
+        pause();
+        changeLog.rebase(REGION, pointInTime);
+        awaitSegments(2);
+        // A state the copied palette already holds
+        change(7, 20, 5, STONE);
+        flush();
+
+        ChangeLog.PointInTime now = changeLog.replay(REGION, System.currentTimeMillis()).join();
+        Map<Long, String> expected = new HashMap<>(pointInTime.getStates());
+        expected.putAll(states(7, 20, 5, "minecraft:stone"));
+        assertEquals(expected, now.getStates());
+        assertEquals(new HashSet<>(palette()).size(), palette().size());
+    }
+
+    @Test
+    public void stopsLoggingWhenEnded() throws Exception {
+        rebase();
+        change(1, 1, 1, STONE);
+        changeLog.end(REGION);
+        change(1, 1, 1, DIRT);
+        flush();
+
+        ChangeLog.PointInTime pointInTime = changeLog.replay(REGION, System.currentTimeMillis()).join();
+        assertEquals(1, pointInTime.getRecords());
+        assertEquals(states(1, 1, 1, "minecraft:stone"), pointInTime.getStates());
+    }
+
+    @Test
+    public void ignoresARecordCutShort() throws Exception {
+        rebase();
+        change(1, 1, 1, STONE);
+        change(2, 1, 1, DIRT);
+        changeLog.end(REGION);
+        File segment = segmentFiles().get(0);
+        long header = 4 + 4 + 8 + 8;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (segment.length() < header + 2 * ChangeLog.RECORD_SIZE) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Records were not written");
+            }
+            Thread.sleep(1);
+        }
+
+        // Cut inside the second record's old state
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(header + ChangeLog.RECORD_SIZE + 10);
+        }
+        ChangeLog.PointInTime pointInTime = changeLog.replay(REGION, System.currentTimeMillis()).join();
+        assertEquals(1, pointInTime.getRecords());
+        assertEquals(states(1, 1, 1, "minecraft:stone"), pointInTime.getStates());
+    }
+
+    private void rebase() throws InterruptedException {
+        changeLog.rebase(REGION);
+        awaitSegments(1);
+    }
+
+    /**
+     * Wait for the writer to start a region's segments, replays only see segments on disk
+     */
+    private void awaitSegments(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (segmentFiles().size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Segment " + count + " was not started");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private List<File> segmentFiles() {
+        List<File> files = new ArrayList<>();
+        File[] dirs = new File(dataFolder, "changes").listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] segments = dir.listFiles((d, name) -> name.endsWith(".rrl"));
+                if (segments != null) {
+                    files.addAll(Arrays.asList(segments));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Change a block the way a listener sees it: the previous state is logged, the new one is read after the tick
+     */
+    private void change(int x, int y, int z, BlockData data) {
+        Block block = world.getWorld().getBlockAt(x, y, z);
+        changeLog.record(REGION, block, world.get(x, y, z));
+        world.set(x, y, z, data);
+        server.tick();
+    }
+
+    /**
+     * Let the clock move on, so changes before and after are told apart
+     *
+     * @return A time between the two
+     */
+    private static long pause() throws InterruptedException {
+        Thread.sleep(5);
+        long time = System.currentTimeMillis();
+        Thread.sleep(5);
+        return time;
+    }
+
+    private void flush() {
+        // Batches are handed to the writer once a second
+        for (int i = 0; i < 20; i++) {
+            server.tick();
+        }
+    }
+
+    private List<String> palette() throws IOException {
+        // The newest segment's
+        File newest = null;
+        for (File segment : segmentFiles()) {
+            if (newest == null || startedAt(segment) > startedAt(newest)) {
+                newest = segment;
+            }
+        }
+        String name = newest.getName();
+        File palette = new File(newest.getParentFile(), name.substring(0, name.length() - ".rrl".length()) + ".palette");
+        return Files.readAllLines(palette.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static long startedAt(File segment) {
+        return Long.parseLong(segment.getName().split("-")[0]);
+    }
+
+    private static Map<Long, String> states(int x, int y, int z, String state) {
+        Map<Long, String> states = new HashMap<>();
+        states.put(ChangeLog.packPosition(x, y, z), state);
+        return states;
+    }
+}
@@ -0,0 +1,165 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.FakeBlockData;
+import com.minecraft.regionregen.FakeWorld;
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.TestServer;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.utils.PluginSettings;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the regeneration pipeline: synthetic regions are built in a
+ * fake world, captured, dirtied and then restored as one merged job through
+ * {@link RegenScheduler}, under the configured block budget. Every tick of the
+ * restore is sampled and the throughput is logged.
+ *
+ * <p>The load is scaled with the system properties {@code regionregen.load.regions},
+ * {@code regionregen.load.size} and {@code regionregen.load.dirty-percent}.</p>
+ */
+public class RegenLoadTest {
+
+    private static final int REGIONS = Integer.getInteger("regionregen.load.regions", 4);
+    private static final int SIZE = Integer.getInteger("regionregen.load.size", 24);
+    private static final int DIRTY_PERCENT = Integer.getInteger("regionregen.load.dirty-percent", 10);
+    private static final int BASE_Y = 8;
+    private static final long TIMEOUT_MILLIS = 120_000;
+
+    private static final BlockData[] FILL = {
+            FakeBlockData.of(Material.STONE), FakeBlockData.of(Material.STONE), FakeBlockData.of(Material.ANDESITE),
+            FakeBlockData.of(Material.DIORITE), FakeBlockData.of(Material.GRANITE), FakeBlockData.of(Material.DIRT),
+            FakeBlockData.of(Material.GRAVEL), FakeBlockData.of(Material.COAL_ORE), FakeBlockData.of(Material.IRON_ORE)
+    };
+    private static final BlockData[] DIRT = {
+            FakeBlockData.of(Material.AIR), FakeBlockData.of(Material.COBBLESTONE),
+            FakeBlockData.of(Material.OAK_PLANKS), FakeBlockData.of(Material.GLASS)
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestServer server;
+    private FakeWorld world;
+    private RegionRegenPlugin plugin;
+    private final List<Region> regions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = TestServer.get();
+        world = server.createWorld("load");
+        plugin = server.enablePlugin(folder.newFolder("RegionRegen"));
+
+        // Regions on a square grid, a chunk apart so each one has chunks of its own
+        int spacing = ((SIZE + 15) >> 4 << 4) + 16;
+        int columns = (int) Math.ceil(Math.sqrt(REGIONS));
+        for (int i = 0; i < REGIONS; i++) {
+            int x = (i % columns) * spacing;
+            int z = (i / columns) * spacing;
+            regions.add(new Region("load-" + i, world.getName(),
+                    new Location(world.getWorld(), x, BASE_Y, z),
+                    new Location(world.getWorld(), x + SIZE - 1, BASE_Y + SIZE - 1, z + SIZE - 1), "test"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.disablePlugin();
+    }
+
+    @Test
+    public void restoresDirtiedRegionsWithinTheBlockBudget() throws Exception {
+        int volume = SIZE * SIZE * SIZE;
+        List<BlockData[]> built = new ArrayList<>();
+        for (int r = 0; r < regions.size(); r++) {
+            Random random = new Random(r);
+            BlockData[] blocks = new BlockData[volume];
+            for (int i = 0; i < volume; i++) {
+                blocks[i] = FILL[random.nextInt(FILL.length)];
+                set(regions.get(r), i, blocks[i]);
+            }
+            built.add(blocks);
+        }
+
+        List<CompletableFuture<Boolean>> captures = new ArrayList<>();
+        for (Region region : regions) {
+            captures.add(plugin.getSnapshotManager().captureSnapshot(region));
+        }
+        server.tickUntil(() -> captures.stream().allMatch(CompletableFuture::isDone), TIMEOUT_MILLIS);
+        for (CompletableFuture<Boolean> capture : captures) {
+            assertTrue("capture failed", capture.join());
+        }
+
+        for (int r = 0; r < regions.size(); r++) {
+            Random random = new Random(~r);
+            for (int i = 0; i < volume * DIRTY_PERCENT / 100; i++) {
+                set(regions.get(r), random.nextInt(volume), DIRT[random.nextInt(DIRT.length)]);
+            }
+        }
+
+        PluginSettings settings = plugin.getConfigManager().getSettings();
+        RegenScheduler scheduler = plugin.getRegionManager().getRegenScheduler();
+        long startBlocks = scheduler.getBlocksApplied();
+        long startApplyNanos = scheduler.getApplyNanos();
+        long startAllocated = scheduler.getApplyAllocatedBytes();
+        long startedAt = System.nanoTime();
+
+        RestoreJob job = new RestoreJob(plugin, regions, world.getWorld(), settings.getRegeneration().getDecodeWindow());
+        scheduler.submit(job);
+        int ticks = 0;
+        long peakBlocks = 0;
+        long lastBlocks = startBlocks;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!job.isDone()) {
+            assertTrue("restore timed out after " + ticks + " ticks", System.currentTimeMillis() < deadline);
+            server.tick();
+            ticks++;
+            // Leave the decoder some time, a real tick is 50 ms
+            Thread.sleep(1);
+            long blocks = scheduler.getBlocksApplied();
+            peakBlocks = Math.max(peakBlocks, blocks - lastBlocks);
+            lastBlocks = blocks;
+        }
+        long elapsedNanos = System.nanoTime() - startedAt;
+
+        assertTrue("restore failed", job.getFuture().join());
+        assertTrue("a tick applied " + peakBlocks + " blocks", peakBlocks <= settings.getRegeneration().getBlocksPerTick());
+        for (int r = 0; r < regions.size(); r++) {
+            for (int i = 0; i < volume; i++) {
+                assertEquals("block " + i + " of " + regions.get(r).getId(), built.get(r)[i], get(regions.get(r), i));
+            }
+        }
+
+        long blocks = scheduler.getBlocksApplied() - startBlocks;
+        assertEquals(job.getBlocksChanged(), blocks);
+        plugin.getLogger().info(String.format("Restored %d blocks of %d regions in %d ticks (%.1f ms): %d per tick avg, %d peak, "
+                        + "applier %.3f ms per tick, %.1f KB allocated per tick",
+                blocks, regions.size(), ticks, elapsedNanos / 1e6, blocks / Math.max(1, ticks), peakBlocks,
+                (scheduler.getApplyNanos() - startApplyNanos) / 1e6 / Math.max(1, ticks),
+                (scheduler.getApplyAllocatedBytes() - startAllocated) / 1024.0 / Math.max(1, ticks)));
+    }
+
+    private void set(Region region, int index, BlockData data) {
+        Location min = region.getMinPoint();
+        world.set(min.getBlockX() + index % SIZE, min.getBlockY() + index / (SIZE * SIZE), min.getBlockZ() + (index / SIZE) % SIZE, data);
+    }
+
+    private BlockData get(Region region, int index) {
+        Location min = region.getMinPoint();
+        return world.get(min.getBlockX() + index % SIZE, min.getBlockY() + index / (SIZE * SIZE), min.getBlockZ() + (index / SIZE) % SIZE);
+    }
+}
@@ -0,0 +1,106 @@
+package com.minecraft.regionregen.regen;
+
+import com.minecraft.regionregen.FakeBlockData;
+import com.minecraft.regionregen.FakeWorld;
+import com.minecraft.regionregen.RegionRegenPlugin;
+import com.minecraft.regionregen.TestServer;
+import com.minecraft.regionregen.models.Region;
+import com.minecraft.regionregen.snapshot.SnapshotSection;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RestoreJobTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+    private static final BlockData STONE = FakeBlockData.of(Material.STONE);
+    private static final BlockData DIRT = FakeBlockData.of(Material.DIRT);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestServer server;
+    private FakeWorld world;
+    private RegionRegenPlugin plugin;
+    private Region region;
+
+    @Before
+    public void setUp() throws Exception {
+        server = TestServer.get();
+        world = server.createWorld("restore");
+        plugin = server.enablePlugin(folder.newFolder("RegionRegen"));
+        // Three chunks along X
+        for (int x = 0; x < 48; x++) {
+            world.set(x, 4, 0, STONE);
+        }
+        region = new Region("quarry", world.getName(), new Location(world.getWorld(), 0, 0, 0),
+                new Location(world.getWorld(), 47, 15, 15), "test");
+        CompletableFuture<Boolean> capture = plugin.getSnapshotManager().captureSnapshot(region);
+        server.tickUntil(capture::isDone, TIMEOUT_MILLIS);
+        assertTrue(capture.join());
+    }
+
+    @After
+    public void tearDown() {
+        server.disablePlugin();
+    }
+
+    @Test
+    public void restoresOnlyTheDeferredChunk() throws Exception {
+        for (int x = 0; x < 48; x++) {
+            world.set(x, 4, 0, DIRT);
+        }
+
+        RestoreJob job = RestoreJob.forChunk(plugin, Collections.singletonList(region), world.getWorld(), 1, 0);
+        run(job);
+        assertEquals(DIRT, world.get(15, 4, 0));
+        for (int x = 16; x < 32; x++) {
+            assertEquals(STONE, world.get(x, 4, 0));
+        }
+        assertEquals(DIRT, world.get(32, 4, 0));
+        assertFalse(job.isCheckpointed());
+    }
+
+    @Test
+    public void decodesAgainAsTheWindowFrees() throws Exception {
+        for (int x = 0; x < 48; x++) {
+            world.set(x, 4, 0, DIRT);
+        }
+
+        // One chunk at a time: the decoder returns after each and is queued again by the applier
+        RestoreJob job = new RestoreJob(plugin, Collections.singletonList(region), world.getWorld(), 1);
+        run(job);
+        for (int x = 0; x < 48; x++) {
+            assertEquals(STONE, world.get(x, 4, 0));
+        }
+    }
+
+    @Test
+    public void checkpointsOnlyFullRestores() {
+        int windowSize = plugin.getConfigManager().getSettings().getRegeneration().getDecodeWindow();
+        assertTrue(new RestoreJob(plugin, Collections.singletonList(region), world.getWorld(), windowSize).isCheckpointed());
+
+        // A diff restore resumed from a checkpoint would restore the whole snapshot
+        SnapshotSection section = new SnapshotSection(1, 0, 0, new String[]{"minecraft:stone"}, new short[SnapshotSection.SIZE]);
+        RestoreJob diff = RestoreJob.forSections(plugin, region, world.getWorld(), windowSize, Collections.singletonList(section));
+        assertFalse(diff.isCheckpointed());
+    }
+
+    private void run(RestoreJob job) throws Exception {
+        plugin.getRegionManager().getRegenScheduler().submit(job);
+        server.tickUntil(job::isDone, TIMEOUT_MILLIS);
+        assertTrue(job.getFuture().join());
+    }
+}
@@ -0,0 +1,103 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SectionCacheTest {
+
+    // Two and a half slots, so each payload takes three
+    private static final int PAYLOAD = SectionCache.SLOT_SIZE * 5 / 2;
+    private static final int SLOTS = 3;
+
+    @Test
+    public void evictsTheLeastRecentlyUsedToFreeSlots() {
+        SectionCache cache = new SectionCache(SectionCache.SLOT_SIZE * SLOTS * 3);
+        for (int i = 0; i < 3; i++) {
+            cache.put(key("a", i), payload(i));
+        }
+        // Touch the first, so the second is the oldest
+        assertNotNull(cache.get(key("a", 0), null));
+        cache.put(key("a", 3), payload(3));
+
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(SectionCache.SLOT_SIZE * SLOTS * 3, cache.getUsedBytes());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.contains(key("a", 1)));
+        assertTrue(cache.contains(key("a", 0)));
+
+        // The new payload went into the evicted one's slots
+        assertEquals(PAYLOAD, cache.get(key("a", 3), null).remaining());
+        assertTrue(Arrays.equals(payload(3), copy(cache.get(key("a", 3), null))));
+        assertTrue(Arrays.equals(payload(0), copy(cache.get(key("a", 0), null))));
+    }
+
+    @Test
+    public void copiesIntoTheBufferItIsGiven() {
+        SectionCache cache = new SectionCache(SectionCache.SLOT_SIZE * SLOTS);
+        byte[] payload = payload(7);
+        payload[PAYLOAD - 1] = 9;
+        cache.put(key("a", 0), payload);
+
+        ByteBuffer scratch = ByteBuffer.allocate(PAYLOAD * 2);
+        ByteBuffer cached = cache.get(key("a", 0), scratch);
+        assertSame(scratch, cached);
+        assertEquals(0, cached.position());
+        assertTrue(Arrays.equals(payload, copy(cached)));
+
+        // Too small, a larger one is allocated
+        ByteBuffer larger = cache.get(key("a", 0), ByteBuffer.allocate(16));
+        assertTrue(Arrays.equals(payload, copy(larger)));
+
+        // Replacing a payload frees its old slots first
+        cache.put(key("a", 0), payload(8));
+        assertEquals(0, cache.getEvictions());
+        assertTrue(Arrays.equals(payload(8), copy(cache.get(key("a", 0), scratch))));
+    }
+
+    @Test
+    public void dropsWhatDoesNotFitOrWasInvalidated() {
+        SectionCache cache = new SectionCache(SectionCache.SLOT_SIZE * SLOTS * 2);
+        cache.put(key("a", 0), new byte[PAYLOAD * 3]);
+        assertEquals(0, cache.getEntryCount());
+
+        cache.put(key("a", 0), payload(0));
+        cache.put(key("b", 0), payload(1));
+        cache.invalidate("a");
+        assertNull(cache.get(key("a", 0), null));
+        assertEquals(SectionCache.SLOT_SIZE * SLOTS, cache.getUsedBytes());
+
+        // Another generation of the same snapshot never hits
+        assertNull(cache.get(new SectionCache.Key("b", 2, 0), null));
+
+        cache.setMaxBytes(PAYLOAD / 2);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getUsedBytes());
+        cache.put(key("b", 0), payload(1));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    private static SectionCache.Key key(String snapshotId, int ordinal) {
+        return new SectionCache.Key(snapshotId, 1, ordinal);
+    }
+
+    private static byte[] payload(int fill) {
+        byte[] payload = new byte[PAYLOAD];
+        Arrays.fill(payload, (byte) fill);
+        return payload;
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,173 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SectionCodecTest {
+
+    // Mark byte and payload length come before the LZ sequences
+    private static final int LZ_BODY = 5;
+
+    @Test
+    public void lzRoundTripsSectionPayloads() throws IOException {
+        Random random = new Random(1);
+        String[] palette = {"minecraft:stone", "minecraft:dirt", "minecraft:granite", "minecraft:iron_ore"};
+        short[] blocks = new short[SnapshotSection.SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (short) (random.nextInt(10) < 7 ? 0 : random.nextInt(palette.length));
+        }
+        assertLzRoundTrip(SnapshotFormat.encodePayload(new SnapshotSection(0, 0, 0, palette, blocks)));
+    }
+
+    @Test
+    public void lzRoundTripsIncompressibleInput() throws IOException {
+        byte[] payload = new byte[SnapshotSection.SIZE * 2];
+        new Random(2).nextBytes(payload);
+        byte[] blob = assertLzRoundTrip(payload);
+        // Literal runs only cost their length bytes
+        assertTrue("blob of " + blob.length + " bytes", blob.length < payload.length + payload.length / 200 + 16);
+    }
+
+    @Test
+    public void lzRoundTripsLongRunsOfOneByte() throws IOException {
+        byte[] payload = new byte[SnapshotSection.SIZE * 2];
+        Arrays.fill(payload, (byte) 7);
+        // A run is one literal and a match at offset 1 that overlaps the bytes it produces
+        byte[] blob = assertLzRoundTrip(payload);
+        assertTrue("blob of " + blob.length + " bytes", blob.length < 64);
+    }
+
+    @Test
+    public void lzRoundTripsMatchesEndingAtTheEnd() throws IOException {
+        byte[] pattern = "0123456789abcdef".getBytes();
+        for (int tail = 0; tail < 24; tail++) {
+            byte[] payload = new byte[pattern.length * 4 + tail];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = pattern[i % pattern.length];
+            }
+            assertLzRoundTrip(payload);
+        }
+    }
+
+    @Test
+    public void lzRoundTripsTinyInputs() throws IOException {
+        for (int length = 0; length < 20; length++) {
+            byte[] payload = new byte[length];
+            new Random(length).nextBytes(payload);
+            assertLzRoundTrip(payload);
+            Arrays.fill(payload, (byte) 1);
+            assertLzRoundTrip(payload);
+        }
+    }
+
+    @Test
+    public void lzRejectsTruncatedInput() throws IOException {
+        byte[] payload = new byte[SnapshotSection.SIZE];
+        Random random = new Random(3);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) random.nextInt(4);
+        }
+        byte[] blob = SectionCodec.LZ.encode(payload, null);
+        for (int cut = LZ_BODY; cut < blob.length; cut += Math.max(1, blob.length / 97)) {
+            byte[] truncated = Arrays.copyOf(blob, cut);
+            try {
+                SectionCodec.lzDecompress(truncated, LZ_BODY, truncated.length, new byte[payload.length], payload.length);
+                fail("blob cut at " + cut + " of " + blob.length + " was accepted");
+            } catch (IOException expected) {
+                // The sequences run past the end or come up short
+            }
+        }
+    }
+
+    @Test
+    public void lzRejectsMatchesBeforeTheStart() {
+        // One literal, then a match of 4 bytes reaching 5 bytes back
+        byte[] sequences = {0x10, 'a', 5, 0, 0x00};
+        assertCorrupt(sequences, 8);
+        // Offset 0 never occurs
+        sequences[2] = 0;
+        assertCorrupt(sequences, 8);
+    }
+
+    @Test
+    public void lzRejectsOutputOfTheWrongLength() {
+        byte[] sequences = {0x30, 'a', 'b', 'c'};
+        assertCorrupt(sequences, 2);
+        assertCorrupt(sequences, 4);
+    }
+
+    @Test
+    public void everyCodecDecodesWhatItEncodes() throws IOException {
+        byte[] payload = new byte[SnapshotSection.SIZE + 123];
+        Random random = new Random(4);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt() : i / 64);
+        }
+        SectionDecoder decoder = new SectionDecoder();
+        Deflater deflater = new Deflater();
+        try {
+            for (SectionCodec codec : SectionCodec.values()) {
+                byte[] blob = codec.encode(payload, deflater);
+                assertEquals(codec, SectionCodec.ofMark(blob[0]));
+                assertArrayEquals(codec.name(), payload, decoder.decode(blob));
+            }
+        } finally {
+            decoder.end();
+            deflater.end();
+        }
+    }
+
+    @Test
+    public void rejectsBlobsWithoutAMark() throws IOException {
+        // A bare zlib stream starts with 0x78, below every mark
+        ByteArrayOutputStream bare = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(bare)) {
+            deflate.write(new byte[64]);
+        }
+        SectionDecoder decoder = new SectionDecoder();
+        try {
+            decoder.decode(bare.toByteArray());
+            fail("blob without a codec mark was accepted");
+        } catch (IOException expected) {
+            // Every blob names its codec
+        } finally {
+            decoder.end();
+        }
+    }
+
+    @Test
+    public void codecsAreFoundByName() {
+        for (SectionCodec codec : SectionCodec.values()) {
+            assertEquals(codec, SectionCodec.byName(codec.getName()));
+        }
+    }
+
+    private static byte[] assertLzRoundTrip(byte[] payload) throws IOException {
+        byte[] blob = SectionCodec.LZ.encode(payload, null);
+        assertEquals(SectionCodec.LZ, SectionCodec.ofMark(blob[0]));
+        byte[] decoded = new byte[payload.length];
+        SectionCodec.lzDecompress(blob, LZ_BODY, blob.length, decoded, payload.length);
+        assertArrayEquals(payload, decoded);
+        return blob;
+    }
+
+    private static void assertCorrupt(byte[] sequences, int length) {
+        try {
+            SectionCodec.lzDecompress(sequences, 0, sequences.length, new byte[length], length);
+            fail("corrupt sequences were accepted");
+        } catch (IOException expected) {
+            // Rejected before anything was written out of bounds
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.FakeBlockData;
+import com.minecraft.regionregen.FakeWorld;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.data.BlockData;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SectionHashTest {
+
+    private static final String[] STATES = {"minecraft:stone", "minecraft:dirt", "minecraft:oak_log[axis=x]", "minecraft:air"};
+
+    @Test
+    public void paletteOrderDoesNotMatter() {
+        short[] blocks = randomBlocks(new Random(1), STATES.length);
+        String[] reversed = new String[STATES.length];
+        short[] remapped = new short[blocks.length];
+        for (int i = 0; i < STATES.length; i++) {
+            reversed[i] = STATES[STATES.length - 1 - i];
+        }
+        for (int i = 0; i < blocks.length; i++) {
+            remapped[i] = blocks[i] == SnapshotSection.NOT_CAPTURED ? blocks[i] : (short) (STATES.length - 1 - blocks[i]);
+        }
+        assertEquals(SectionHash.of(new SnapshotSection(0, 0, 0, STATES, blocks)),
+                SectionHash.of(new SnapshotSection(0, 0, 0, reversed, remapped)));
+    }
+
+    @Test
+    public void isTheSumOfItsCells() {
+        short[] blocks = randomBlocks(new Random(2), STATES.length);
+        long sum = 0;
+        // Visited backwards, the order must not matter
+        for (int index = blocks.length - 1; index >= 0; index--) {
+            if (blocks[index] != SnapshotSection.NOT_CAPTURED) {
+                sum += SectionHash.cell(SectionHash.ofState(STATES[blocks[index]]), index);
+            }
+        }
+        assertEquals(SectionHash.finish(sum), SectionHash.of(new SnapshotSection(0, 0, 0, STATES, blocks)));
+    }
+
+    @Test
+    public void detectsChangedAndMovedCells() {
+        short[] blocks = randomBlocks(new Random(3), STATES.length);
+        long original = SectionHash.of(new SnapshotSection(0, 0, 0, STATES, blocks));
+
+        short[] changed = blocks.clone();
+        int index = firstCaptured(changed);
+        changed[index] = (short) ((changed[index] + 1) % STATES.length);
+        assertNotEquals(original, SectionHash.of(new SnapshotSection(0, 0, 0, STATES, changed)));
+
+        // Two cells swapping states keep the same states but not the same positions
+        short[] swapped = blocks.clone();
+        int other = index + 1;
+        while (swapped[other] == SnapshotSection.NOT_CAPTURED || swapped[other] == swapped[index]) {
+            other++;
+        }
+        short state = swapped[index];
+        swapped[index] = swapped[other];
+        swapped[other] = state;
+        assertNotEquals(original, SectionHash.of(new SnapshotSection(0, 0, 0, STATES, swapped)));
+
+        // Capturing one more cell changes the value even if it holds air
+        short[] more = blocks.clone();
+        int uncaptured = 0;
+        while (more[uncaptured] != SnapshotSection.NOT_CAPTURED) {
+            uncaptured++;
+        }
+        more[uncaptured] = 3;
+        assertNotEquals(original, SectionHash.of(new SnapshotSection(0, 0, 0, STATES, more)));
+    }
+
+    @Test
+    public void ignoresCellsThatWereNotCaptured() {
+        short[] blocks = new short[SnapshotSection.SIZE];
+        Arrays.fill(blocks, SnapshotSection.NOT_CAPTURED);
+        long empty = SectionHash.of(new SnapshotSection(0, 0, 0, STATES, blocks));
+        assertEquals(SectionHash.finish(0), empty);
+        assertNotEquals(SectionHash.UNKNOWN, empty);
+    }
+
+    @Test
+    public void neverFinishesAsUnknown() {
+        assertNotEquals(SectionHash.UNKNOWN, SectionHash.finish(0));
+        assertEquals(42L, SectionHash.finish(42L));
+        assertEquals(-1L, SectionHash.finish(-1L));
+    }
+
+    @Test
+    public void liveBlocksHashLikeTheirCapture() {
+        FakeWorld world = new FakeWorld("hash");
+        Random random = new Random(4);
+        for (int x = 16; x < 32; x++) {
+            for (int y = 0; y < 48; y++) {
+                for (int z = -16; z < 0; z++) {
+                    world.set(x, y, z, FakeBlockData.of(STATES[random.nextInt(STATES.length)]));
+                }
+            }
+        }
+        ChunkSnapshot chunk = world.getWorld().getChunkAt(1, -1).getChunkSnapshot();
+        // Bounds that clip the chunk on every side
+        int[] min = {20, 5, -13};
+        int[] max = {40, 37, -2};
+        HashMap<BlockData, Long> stateHashes = new HashMap<>();
+        for (int sy = 0; sy <= 2; sy++) {
+            SnapshotSection section = SectionCapture.encodeSection(chunk, sy, min, max, null);
+            assertEquals("section " + sy, SectionHash.of(section), SectionCapture.hashSection(chunk, sy, min, max, null, stateHashes));
+        }
+        assertEquals(SectionHash.UNKNOWN, SectionCapture.hashSection(chunk, 3, min, max, null, stateHashes));
+
+        long before = SectionCapture.hashSection(chunk, 1, min, max, null, stateHashes);
+        world.set(25, 20, -10, FakeBlockData.of(world.get(25, 20, -10) == FakeBlockData.of(STATES[0]) ? STATES[1] : STATES[0]));
+        ChunkSnapshot changed = world.getWorld().getChunkAt(1, -1).getChunkSnapshot();
+        assertNotEquals(before, SectionCapture.hashSection(changed, 1, min, max, null, stateHashes));
+    }
+
+    private static short[] randomBlocks(Random random, int states) {
+        short[] blocks = new short[SnapshotSection.SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = random.nextInt(5) == 0 ? SnapshotSection.NOT_CAPTURED : (short) random.nextInt(states);
+        }
+        return blocks;
+    }
+
+    private static int firstCaptured(short[] blocks) {
+        int index = 0;
+        while (blocks[index] == SnapshotSection.NOT_CAPTURED) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,163 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SectionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private volatile CountDownLatch writeGate;
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private SectionStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("store");
+        // Writes stall while a gate is set, so a test can hold one in flight
+        store = new SectionStore(root, () -> {
+            CountDownLatch gate = writeGate;
+            if (gate != null) {
+                writing.countDown();
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return SectionCodec.DEFLATE_FAST;
+        });
+    }
+
+    @Test
+    public void countsReferencesAndDeletesUnusedBlobs() throws IOException {
+        byte[] payload = payload(1);
+        Deflater deflater = new Deflater();
+        byte[] hash = store.put(payload, deflater);
+        assertArrayEquals(hash, store.put(payload, deflater));
+        deflater.end();
+        assertEquals(1, store.getSectionCount());
+        assertEquals(2, store.getReferenceCount());
+        assertArrayEquals(payload, store.readPayload(hash));
+
+        store.release(hash);
+        assertArrayEquals(payload, store.readPayload(hash));
+        store.release(hash);
+        assertEquals(0, store.getSectionCount());
+        assertEquals(0, store.getStoredBytes());
+        assertFalse(store.acquire(hash));
+        assertEquals(0, blobFiles());
+    }
+
+    @Test
+    public void writesOutsideTheLock() throws Exception {
+        byte[] stored = store.put(payload(1), new Deflater());
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            writeGate = new CountDownLatch(1);
+            Future<byte[]> slow = threads.submit(() -> store.put(payload(2), new Deflater()));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            // Other blobs are referenced, released and counted while the write is stuck
+            long started = System.nanoTime();
+            assertTrue(store.acquire(stored));
+            store.release(stored);
+            assertEquals(1, store.getSectionCount());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+
+            // A put of the same payload waits for the write in flight, then shares its blob
+            Future<byte[]> same = threads.submit(() -> store.put(payload(2), new Deflater()));
+            Thread.sleep(20);
+            assertFalse(same.isDone());
+            writeGate.countDown();
+            assertArrayEquals(slow.get(10, TimeUnit.SECONDS), same.get(10, TimeUnit.SECONDS));
+            assertEquals(2, store.getSectionCount());
+            assertEquals(3, store.getReferenceCount());
+        } finally {
+            writeGate.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepsCountsStraightUnderConcurrentPutsAndReleases() throws Exception {
+        int threadCount = 8;
+        ExecutorService threads = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                int seed = t;
+                done.add(threads.submit(() -> {
+                    Random random = new Random(seed);
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    List<byte[]> held = new ArrayList<>();
+                    for (int i = 0; i < 300; i++) {
+                        if (!held.isEmpty() && random.nextInt(3) == 0) {
+                            store.release(held.remove(random.nextInt(held.size())));
+                            continue;
+                        }
+                        byte[] payload = payload(random.nextInt(12));
+                        byte[] hash = store.put(payload, deflater);
+                        held.add(hash);
+                        // Whatever is referenced can be read
+                        assertArrayEquals(payload, store.readPayload(hash));
+                    }
+                    deflater.end();
+                    store.releaseAll(held);
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(0, store.getSectionCount());
+        assertEquals(0, store.getReferenceCount());
+        assertEquals(0, store.getStoredBytes());
+        assertEquals(0, blobFiles());
+    }
+
+    private int blobFiles() {
+        int count = 0;
+        File[] buckets = root.listFiles(File::isDirectory);
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                File[] files = bucket.listFiles();
+                count += files != null ? files.length : 0;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] payload(int seed) {
+        byte[] payload = new byte[SnapshotSection.SIZE];
+        Random random = new Random(seed);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) random.nextInt(seed + 2);
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,157 @@
+package com.minecraft.regionregen.snapshot;
+
+import com.minecraft.regionregen.models.RegionMask;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector2;
+import com.sk89q.worldedit.regions.CylinderRegion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class SnapshotBundleTest {
+
+    private static final String REGION = "mine";
+    private static final String WORLD = "world";
+    private static final String SHAPE = RegionMask.SHAPE_CUBOID;
+    private static final int[] MIN = {0, 0, 0};
+    private static final int[] MAX = {31, 15, 15};
+
+    // Header offsets in a bundle without a base: magic, version, ID, base flag, then region and world names
+    private static final int REGION_AT = 4 + 4 + SectionStore.HASH_LENGTH + 1;
+    private static final int MIN_AT = REGION_AT + 2 + REGION.length() + 2 + WORLD.length();
+    private static final int MAX_AT = MIN_AT + 12;
+    private static final int SHAPE_AT = MAX_AT + 12;
+    private static final int THRESHOLD_AT = SHAPE_AT + 2 + SHAPE.length();
+    private static final int CAPTURED_AT = THRESHOLD_AT + 4;
+    private static final int RECORDS_AT = CAPTURED_AT + 8 + 1 + 4;
+    private static final int RECORD_SIZE = 12 + SectionStore.HASH_LENGTH + 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SectionStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new SectionStore(folder.newFolder("sections"), () -> SectionCodec.DEFLATE_FAST);
+    }
+
+    @Test
+    public void isIdentifiedByItsContent() throws IOException {
+        File snapshot = snapshot("a.rrs", 0);
+        SnapshotBundle bundle = SnapshotBundle.fromSnapshot(REGION, SHAPE, 0, null, snapshot);
+        assertArrayEquals(bundle.getId(), SnapshotBundle.fromSnapshot(REGION, SHAPE, 0, null, snapshot).getId());
+
+        SnapshotBundle changed = SnapshotBundle.fromSnapshot(REGION, SHAPE, 0, null, snapshot("b.rrs", 1));
+        assertFalse(Arrays.equals(bundle.getId(), changed.getId()));
+        assertFalse(Arrays.equals(bundle.getId(), SnapshotBundle.fromSnapshot("other", SHAPE, 0, null, snapshot).getId()));
+        assertFalse(Arrays.equals(bundle.getId(), SnapshotBundle.fromSnapshot(REGION, SHAPE, 40, null, snapshot).getId()));
+
+        RegionMask cylinder = RegionMask.fromSelection(new CylinderRegion(BlockVector3.at(16, 0, 8), Vector2.at(16, 8), 0, 15));
+        RegionMask narrower = RegionMask.fromSelection(new CylinderRegion(BlockVector3.at(16, 0, 8), Vector2.at(15, 8), 0, 15));
+        byte[] masked = SnapshotBundle.fromSnapshot(REGION, RegionMask.SHAPE_CYLINDER, 0, cylinder, snapshot).getId();
+        assertArrayEquals(masked, SnapshotBundle.fromSnapshot(REGION, RegionMask.SHAPE_CYLINDER, 0, cylinder, snapshot).getId());
+        assertFalse(Arrays.equals(bundle.getId(), masked));
+        assertFalse(Arrays.equals(masked, SnapshotBundle.fromSnapshot(REGION, RegionMask.SHAPE_ELLIPSOID, 0, cylinder, snapshot).getId()));
+        assertFalse(Arrays.equals(masked, SnapshotBundle.fromSnapshot(REGION, RegionMask.SHAPE_CYLINDER, 0, narrower, snapshot).getId()));
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        SnapshotBundle bundle = SnapshotBundle.fromSnapshot(REGION, SHAPE, 0, null, snapshot("a.rrs", 0));
+        File file = write(bundle);
+        try (SnapshotBundle.Reader reader = SnapshotBundle.open(file)) {
+            SnapshotBundle read = reader.getBundle();
+            assertArrayEquals(bundle.getId(), read.getId());
+            assertEquals(REGION, read.getRegionId());
+            assertArrayEquals(MIN, read.getMin());
+            assertArrayEquals(MAX, read.getMax());
+            assertEquals(bundle.getRecords().size(), read.getRecords().size());
+
+            SectionDecoder decoder = new SectionDecoder();
+            int blobs = 0;
+            while (reader.nextBlob()) {
+                reader.readVerifiedBlob(decoder);
+                blobs++;
+            }
+            decoder.end();
+            assertEquals(2, blobs);
+        }
+    }
+
+    @Test
+    public void rejectsAChangedHeaderOrRecord() throws IOException {
+        File file = write(SnapshotBundle.fromSnapshot(REGION, SHAPE, 0, null, snapshot("a.rrs", 0)));
+        assertRejected(file, REGION_AT + 2, "region ID");
+        assertRejected(file, MIN_AT + 3, "minimum X");
+        assertRejected(file, MAX_AT + 11, "maximum Z");
+        assertRejected(file, SHAPE_AT + 2, "shape");
+        assertRejected(file, THRESHOLD_AT + 3, "threshold");
+        assertRejected(file, CAPTURED_AT + 7, "capture time");
+        assertRejected(file, RECORDS_AT + 4, "record Y");
+        assertRejected(file, RECORDS_AT + RECORD_SIZE + 12, "record hash");
+        assertRejected(file, RECORDS_AT + RECORD_SIZE + RECORD_SIZE - 1, "record check");
+    }
+
+    /**
+     * Flip a bit of a bundle, check it no longer opens, and flip it back
+     */
+    private static void assertRejected(File file, long offset, String field) throws IOException {
+        flipBit(file, offset);
+        try (SnapshotBundle.Reader ignored = SnapshotBundle.open(file)) {
+            fail("bundle with a changed " + field + " was accepted");
+        } catch (IOException expected) {
+            // Its ID no longer matches
+        } finally {
+            flipBit(file, offset);
+        }
+        SnapshotBundle.open(file).close();
+    }
+
+    private static void flipBit(File file, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 1);
+        }
+    }
+
+    private File write(SnapshotBundle bundle) throws IOException {
+        File file = new File(folder.getRoot(), "bundles/" + REGION + SnapshotBundle.FILE_EXTENSION);
+        bundle.write(file, store, null, null);
+        return file;
+    }
+
+    /**
+     * Write a snapshot of two sections, the second one varied by a seed
+     */
+    private File snapshot(String name, int seed) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (SnapshotWriter writer = new SnapshotWriter(file, WORLD, MIN, MAX, store)) {
+            writer.write(section(0, 0));
+            writer.write(section(1, seed));
+            writer.commit();
+        }
+        return file;
+    }
+
+    private static SnapshotSection section(int x, int seed) {
+        short[] blocks = new short[SnapshotSection.SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (short) ((i / 16 + x + seed) % 2);
+        }
+        return new SnapshotSection(x, 0, 0, new String[]{"minecraft:stone", "minecraft:coal_ore"}, blocks);
+    }
+}
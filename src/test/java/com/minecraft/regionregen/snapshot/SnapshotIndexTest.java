@@ -0,0 +1,183 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SnapshotIndexTest {
+
+    // Chunks -2..2 by 0..3, two sections high
+    private static final int[] MIN = {-20, 0, 5};
+    private static final int[] MAX = {40, 31, 60};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SectionStore store;
+    private File file;
+    // Chunks with sections, {chunkX, chunkZ, sections}, in chunk order
+    private final int[][] chunks = {{-2, 0, 2}, {-2, 3, 1}, {0, 1, 2}, {1, 0, 1}, {1, 1, 1}, {1, 2, 2}, {2, 3, 2}};
+
+    @Before
+    public void setUp() throws IOException {
+        store = new SectionStore(folder.newFolder("sections"), () -> SectionCodec.DEFLATE_FAST);
+        file = new File(folder.getRoot(), "region.rrs");
+        try (SnapshotWriter writer = new SnapshotWriter(file, "world", MIN, MAX, store)) {
+            for (int[] chunk : chunks) {
+                for (int sy = 0; sy < chunk[2]; sy++) {
+                    writer.write(section(chunk[0], sy, chunk[1]));
+                }
+            }
+            writer.commit();
+        }
+    }
+
+    @Test
+    public void mapsEveryChunkToItsRecords() throws IOException {
+        SnapshotIndex index = readIndex();
+        assertNotNull(index);
+
+        int ordinal = 0;
+        for (int chunkX = -2; chunkX <= 2; chunkX++) {
+            for (int chunkZ = 0; chunkZ <= 3; chunkZ++) {
+                int count = sectionsOf(chunkX, chunkZ);
+                assertEquals(chunkX + "," + chunkZ, count, index.recordCountOf(chunkX, chunkZ));
+                assertEquals(chunkX + "," + chunkZ, count > 0 ? ordinal : -1, index.firstRecordOf(chunkX, chunkZ));
+                ordinal += count;
+                assertEquals(chunkX + "," + chunkZ, ordinal, index.firstRecordAfter(chunkX, chunkZ));
+            }
+        }
+        assertEquals(ordinal, index.getRecordCount());
+    }
+
+    @Test
+    public void answersForChunksOutsideTheBounds() throws IOException {
+        SnapshotIndex index = readIndex();
+        assertEquals(-1, index.firstRecordOf(-3, 0));
+        assertEquals(-1, index.firstRecordOf(0, 4));
+        assertEquals(0, index.recordCountOf(3, 3));
+        assertEquals(0, index.firstRecordAfter(-3, 2));
+        assertEquals(index.getRecordCount(), index.firstRecordAfter(3, 0));
+        // Before the first row of a column is the column's start, past its last row is the next column's
+        assertEquals(index.firstRecordOf(1, 0), index.firstRecordAfter(1, -1));
+        assertEquals(index.firstRecordAfter(1, 3), index.firstRecordAfter(1, 4));
+    }
+
+    @Test
+    public void seeksLikeAScan() throws IOException {
+        for (int chunkX = -3; chunkX <= 3; chunkX++) {
+            for (int chunkZ = -1; chunkZ <= 4; chunkZ++) {
+                try (SnapshotReader indexed = new SnapshotReader(file, store)) {
+                    indexed.skipThrough(chunkX, chunkZ);
+                    assertEquals(chunkX + "," + chunkZ, firstAfterByScan(chunkX, chunkZ), describe(indexed.next()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void isIgnoredWhenDamaged() throws IOException {
+        long length = file.length();
+        // The footer's magic
+        flipBit(length - 1);
+        assertNull(readIndex());
+        flipBit(length - 1);
+        assertNotNull(readIndex());
+
+        // A record count that no longer fills the space before the trailer, after its 28-byte header and 20 column starts
+        long count = trailerStart() + 28 + 20 * 4 + 3;
+        flipBit(count);
+        assertNull(readIndex());
+        flipBit(count);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 3);
+        }
+        assertNull(readIndex());
+    }
+
+    @Test
+    public void isLeftOutForRecordsOutOfOrder() throws IOException {
+        File unordered = new File(folder.getRoot(), "unordered.rrs");
+        try (SnapshotWriter writer = new SnapshotWriter(unordered, "world", MIN, MAX, store)) {
+            writer.write(section(1, 0, 1));
+            writer.write(section(0, 0, 1));
+            writer.commit();
+        }
+        try (FileChannel channel = FileChannel.open(unordered.toPath(), StandardOpenOption.READ)) {
+            assertNull(SnapshotIndex.read(channel));
+        }
+        // Still readable by scanning
+        try (SnapshotReader reader = new SnapshotReader(unordered, store)) {
+            assertEquals("1,0,1", describe(reader.next()));
+            assertEquals("0,0,1", describe(reader.next()));
+            assertNull(reader.next());
+        }
+    }
+
+    private SnapshotIndex readIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return SnapshotIndex.read(channel);
+        }
+    }
+
+    private void flipBit(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 1);
+        }
+    }
+
+    private long trailerStart() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 12);
+            return raf.readLong();
+        }
+    }
+
+    private int sectionsOf(int chunkX, int chunkZ) {
+        for (int[] chunk : chunks) {
+            if (chunk[0] == chunkX && chunk[1] == chunkZ) {
+                return chunk[2];
+            }
+        }
+        return 0;
+    }
+
+    private String firstAfterByScan(int chunkX, int chunkZ) {
+        List<String> after = new ArrayList<>();
+        for (int[] chunk : chunks) {
+            if (chunk[0] > chunkX || (chunk[0] == chunkX && chunk[1] > chunkZ)) {
+                after.add(chunk[0] + ",0," + chunk[1]);
+            }
+        }
+        return after.isEmpty() ? null : after.get(0);
+    }
+
+    private static String describe(SnapshotSection section) {
+        return section == null ? null : section.getX() + "," + section.getY() + "," + section.getZ();
+    }
+
+    private static SnapshotSection section(int x, int y, int z) {
+        short[] blocks = new short[SnapshotSection.SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = (short) Math.floorMod(i + x * 7 + y * 3 + z, 3);
+        }
+        return new SnapshotSection(x, y, z, new String[]{"minecraft:stone", "minecraft:dirt", "minecraft:gravel"}, blocks);
+    }
+}
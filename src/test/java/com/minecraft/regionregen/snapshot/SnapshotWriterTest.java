@@ -0,0 +1,81 @@
+package com.minecraft.regionregen.snapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotWriterTest {
+
+    private static final int[] MIN = {0, 0, 0};
+    private static final int[] MAX = {15, 15, 15};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SectionStore store;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new SectionStore(folder.newFolder("sections"), () -> SectionCodec.DEFLATE_FAST);
+        file = new File(folder.getRoot(), "region.rrs");
+    }
+
+    @Test
+    public void bumpsTheGenerationOnEveryCommit() throws IOException {
+        long previous = 0;
+        // Well within one millisecond of each other, so the clock alone would not tell them apart
+        for (int i = 0; i < 20; i++) {
+            long generation = write();
+            assertTrue(generation > previous);
+            assertEquals(generation, SnapshotReader.readGeneration(file));
+            previous = generation;
+        }
+    }
+
+    @Test
+    public void staysAheadOfTheFileItReplaces() throws IOException {
+        // Written while the clock was ahead
+        long generation = System.currentTimeMillis() + 3_600_000;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SnapshotFormat.MAGIC);
+            out.writeInt(SnapshotFormat.VERSION);
+            out.writeUTF("world");
+            for (int i = 0; i < 3; i++) {
+                out.writeInt(MIN[i]);
+            }
+            for (int i = 0; i < 3; i++) {
+                out.writeInt(MAX[i]);
+            }
+            out.writeLong(generation);
+            out.writeLong(generation);
+            out.writeByte(SnapshotFormat.TAG_END);
+        }
+        assertEquals(generation, SnapshotReader.readGeneration(file));
+        assertEquals(generation + 1, write());
+
+        // A broken file does not hold the next one back
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        assertTrue(write() >= System.currentTimeMillis() - 60_000);
+    }
+
+    private long write() throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(file, "world", MIN, MAX, store)) {
+            writer.write(new SnapshotSection(0, 0, 0, new String[]{"minecraft:stone"}, new short[SnapshotSection.SIZE]));
+            writer.commit();
+            return writer.getGeneration();
+        }
+    }
+}
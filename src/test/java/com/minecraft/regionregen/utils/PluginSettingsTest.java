@@ -0,0 +1,80 @@
+package com.minecraft.regionregen.utils;
+
+import com.minecraft.regionregen.snapshot.SectionCodec;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PluginSettingsTest {
+
+    private final List<String> warnings = new ArrayList<>();
+
+    @Test
+    public void raisesValuesBelowTheirMinimumToIt() throws InvalidConfigurationException {
+        PluginSettings settings = load("regeneration:\n  blocks-per-tick: 0\n  block-delay: -5\n  notification-radius: -1\n"
+                + "snapshot:\n  cache-size-mb: -64\n"
+                + "change-log:\n  segments: 0\n");
+        assertEquals(1, settings.getRegeneration().getBlocksPerTick());
+        assertEquals(1, settings.getRegeneration().getBlockDelay());
+        assertEquals(0, settings.getRegeneration().getNotificationRadius());
+        assertEquals(0, settings.getSnapshot().getCacheMaxBytes());
+        assertEquals(1, settings.getChangeLog().getSegments());
+        assertEquals(5, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("regeneration.block-delay must be at least 1"));
+    }
+
+    @Test
+    public void capsRegionsPerPageAtTheGrid() throws InvalidConfigurationException {
+        PluginSettings settings = load("gui:\n  regions-per-page: 100\n");
+        assertEquals(GuiSettings.MAX_REGIONS_PER_PAGE, settings.getGui().getRegionsPerPage());
+        assertEquals(1, warnings.size());
+    }
+
+    @Test
+    public void fallsBackToDefaultsForMissingAndUnknownValues() throws InvalidConfigurationException {
+        PluginSettings settings = load("regeneration:\n  backend: fast\n"
+                + "snapshot:\n  codec: zstd\n"
+                + "storage:\n  save-on-modify: false\n");
+        assertEquals(50, settings.getRegeneration().getBlocksPerTick());
+        assertFalse(settings.getRegeneration().isWorldEditBackend());
+        assertEquals(SectionCodec.DEFLATE_FAST, settings.getSnapshot().getCodec());
+        assertEquals(64L * 1024 * 1024, settings.getSnapshot().getCacheMaxBytes());
+        assertTrue(settings.getChangeLog().isEnabled());
+        assertFalse(settings.getStorage().isSaveOnModify());
+        assertEquals("bundles", settings.getStorage().getBundleDirectory());
+        assertTrue(settings.getPerformance().getWorkerThreads() >= 1);
+        assertEquals(2, warnings.size());
+    }
+
+    private PluginSettings load(String yaml) throws InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString(yaml);
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return PluginSettings.from(config, logger);
+    }
+}